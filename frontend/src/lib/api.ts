@@ -1,15 +1,18 @@
-import { encrypt, decrypt } from './encryption';
+import { encryptToBytes, decryptBytes } from './encryption';
 import { Product, ProductGroup } from './types';
 
 const API_BASE_URL = 'http://localhost:8000/api';
 
 async function fetchApi(path: string, options: RequestInit = {}) {
   const defaultHeaders = {
-    'Content-Type': 'text/plain; charset=UTF-8',
+    // Raw encrypted bytes instead of Base64 text
+    'Content-Type': 'application/octet-stream',
+    'Accept': 'application/octet-stream',
+    'X-Accept-Payload-Encoding': 'gzip, deflate',
   };
 
   if (options.body && typeof options.body === 'string') {
-    options.body = await encrypt(options.body);
+    options.body = await encryptToBytes(options.body);
   }
 
   const config: RequestInit = {
@@ -22,11 +25,12 @@ async function fetchApi(path: string, options: RequestInit = {}) {
 
   const response = await fetch(`${API_BASE_URL}${path}`, config);
 
-  const encryptedText = await response.text();
+  const encryptedData = new Uint8Array(await response.arrayBuffer());
+  const payloadEncoding = response.headers.get('X-Payload-Encoding');
   if (!response.ok) {
     let errorData = { message: 'An error occurred' };
     try {
-        const decryptedError = await decrypt(encryptedText);
+        const decryptedError = await decryptBytes(encryptedData, payloadEncoding);
         errorData = JSON.parse(decryptedError);
     } catch(e) {
         console.error("Could not decrypt or parse error response", e);
@@ -34,11 +38,11 @@ async function fetchApi(path: string, options: RequestInit = {}) {
     throw new Error(errorData.message);
   }
 
-  if (!encryptedText) {
+  if (encryptedData.length === 0) {
     return null;
   }
   
-  const decryptedText = await decrypt(encryptedText);
+  const decryptedText = await decryptBytes(encryptedData, payloadEncoding);
   return JSON.parse(decryptedText);
 }
 
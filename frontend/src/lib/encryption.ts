@@ -1,45 +1,135 @@
-const ALGORITHM = 'AES-CBC';
 const KEY_MATERIAL = new TextEncoder().encode('MySuperSecretKeyForEncryption123');
-const IV_LENGTH_BYTES = 16;
+// Must match the key id the server gives KEY_MATERIAL in its key ring
+const KEY_ID = 0;
 
-async function getCryptoKey() {
+// Envelope: version byte, key id byte, 32-byte random salt, then AES-GCM segments of up to
+// SEGMENT_SIZE bytes each followed by its 16-byte tag, sealed under HKDF-SHA256(key, salt, header)
+// (see GcmEnvelope on the server)
+const ENVELOPE_VERSION = 2;
+const SALT_LENGTH = 32;
+const HEADER_LENGTH = 2 + SALT_LENGTH;
+const TAG_LENGTH_BYTES = 16;
+const SEGMENT_SIZE = 64 * 1024;
+
+// Payloads from before the envelope format: a bare IV followed by AES-CBC ciphertext
+const LEGACY_IV_LENGTH_BYTES = 16;
+
+async function getLegacyKey() {
   return crypto.subtle.importKey('raw', KEY_MATERIAL, { name: 'AES-CBC' }, false, ['encrypt', 'decrypt']);
 }
 
-export async function encrypt(plainText: string): Promise<string> {
-  const key = await getCryptoKey();
-  const iv = crypto.getRandomValues(new Uint8Array(IV_LENGTH_BYTES));
-  
-  const encoder = new TextEncoder();
-  const encodedPlainText = encoder.encode(plainText);
-
-  const cipherText = await crypto.subtle.encrypt(
-    { name: ALGORITHM, iv },
-    key,
-    encodedPlainText
+// Every envelope has a key of its own, so its nonces only have to differ between its segments
+async function getSegmentKey(header: Uint8Array) {
+  const inputKey = await crypto.subtle.importKey('raw', KEY_MATERIAL, 'HKDF', false, ['deriveKey']);
+  return crypto.subtle.deriveKey(
+    { name: 'HKDF', hash: 'SHA-256', salt: header.slice(2, HEADER_LENGTH), info: header.slice(0, HEADER_LENGTH) },
+    inputKey,
+    { name: 'AES-GCM', length: 256 },
+    false,
+    ['encrypt', 'decrypt']
   );
+}
 
-  const encryptedData = new Uint8Array(iv.length + cipherText.byteLength);
-  encryptedData.set(iv, 0);
-  encryptedData.set(new Uint8Array(cipherText), iv.length);
+function segmentNonce(segment: number, last: boolean): Uint8Array {
+  const nonce = new Uint8Array(12);
+  new DataView(nonce.buffer).setUint32(7, segment);
+  nonce[11] = last ? 1 : 0;
+  return nonce;
+}
+
+// The envelope as sent in the application/octet-stream wire format
+export async function encryptToBytes(plainText: string): Promise<Uint8Array> {
+  const plain = new TextEncoder().encode(plainText);
+
+  const header = new Uint8Array(HEADER_LENGTH);
+  header[0] = ENVELOPE_VERSION;
+  header[1] = KEY_ID;
+  header.set(crypto.getRandomValues(new Uint8Array(SALT_LENGTH)), 2);
+  const key = await getSegmentKey(header);
+
+  const segments: Uint8Array[] = [header];
+  let offset = 0;
+  let segment = 0;
+  let last: boolean;
+  do {
+    const length = Math.min(SEGMENT_SIZE, plain.length - offset);
+    last = offset + length === plain.length;
+    const sealed = await crypto.subtle.encrypt(
+      { name: 'AES-GCM', iv: segmentNonce(segment++, last), additionalData: header, tagLength: TAG_LENGTH_BYTES * 8 },
+      key,
+      plain.subarray(offset, offset + length)
+    );
+    segments.push(new Uint8Array(sealed));
+    offset += length;
+  } while (!last);
+
+  const encryptedData = new Uint8Array(segments.reduce((total, part) => total + part.length, 0));
+  let position = 0;
+  for (const part of segments) {
+    encryptedData.set(part, position);
+    position += part.length;
+  }
+  return encryptedData;
+}
 
+export async function encrypt(plainText: string): Promise<string> {
+  const encryptedData = await encryptToBytes(plainText);
   return btoa(String.fromCharCode.apply(null, Array.from(encryptedData)));
 }
 
-export async function decrypt(encryptedText: string): Promise<string> {
-  const key = await getCryptoKey();
-  
-  const encryptedData = new Uint8Array(atob(encryptedText).split('').map(char => char.charCodeAt(0)));
-  
-  const iv = encryptedData.slice(0, IV_LENGTH_BYTES);
-  const cipherText = encryptedData.slice(IV_LENGTH_BYTES);
+async function openEnvelope(encryptedData: Uint8Array): Promise<ArrayBuffer> {
+  const header = encryptedData.subarray(0, HEADER_LENGTH);
+  const key = await getSegmentKey(header);
+  const segmentCount = Math.max(1, Math.ceil((encryptedData.length - HEADER_LENGTH) / (SEGMENT_SIZE + TAG_LENGTH_BYTES)));
+
+  const parts: Uint8Array[] = [];
+  let offset = HEADER_LENGTH;
+  for (let segment = 0; segment < segmentCount; segment++) {
+    const length = Math.min(SEGMENT_SIZE + TAG_LENGTH_BYTES, encryptedData.length - offset);
+    const plain = await crypto.subtle.decrypt(
+      { name: 'AES-GCM', iv: segmentNonce(segment, segment === segmentCount - 1), additionalData: header, tagLength: TAG_LENGTH_BYTES * 8 },
+      key,
+      encryptedData.subarray(offset, offset + length)
+    );
+    parts.push(new Uint8Array(plain));
+    offset += length;
+  }
+  return new Blob(parts).arrayBuffer();
+}
 
-  const decrypted = await crypto.subtle.decrypt(
-    { name: ALGORITHM, iv },
+async function openLegacy(encryptedData: Uint8Array): Promise<ArrayBuffer> {
+  const key = await getLegacyKey();
+  return crypto.subtle.decrypt(
+    { name: 'AES-CBC', iv: encryptedData.slice(0, LEGACY_IV_LENGTH_BYTES) },
     key,
-    cipherText
+    encryptedData.slice(LEGACY_IV_LENGTH_BYTES)
   );
+}
+
+// payloadEncoding is the server's X-Payload-Encoding: the plaintext was compressed before it was encrypted
+export async function decryptBytes(encryptedData: Uint8Array, payloadEncoding?: string | null): Promise<string> {
+  let decrypted: ArrayBuffer;
+  if (encryptedData[0] === ENVELOPE_VERSION && encryptedData[1] === KEY_ID) {
+    try {
+      decrypted = await openEnvelope(encryptedData);
+    } catch (e) {
+      // A legacy IV can start like an envelope header by chance
+      decrypted = await openLegacy(encryptedData);
+    }
+  } else {
+    decrypted = await openLegacy(encryptedData);
+  }
+
+  if (payloadEncoding === 'gzip' || payloadEncoding === 'deflate') {
+    const inflated = new Blob([decrypted]).stream().pipeThrough(new DecompressionStream(payloadEncoding));
+    return new Response(inflated).text();
+  }
 
   const decoder = new TextDecoder();
   return decoder.decode(decrypted);
-} 
\ No newline at end of file
+}
+
+export async function decrypt(encryptedText: string, payloadEncoding?: string | null): Promise<string> {
+  const encryptedData = new Uint8Array(atob(encryptedText).split('').map(char => char.charCodeAt(0)));
+  return decryptBytes(encryptedData, payloadEncoding);
+}
@@ -0,0 +1,68 @@
+package ua.edu.ukma.clientserver.bench;
+
+import ua.edu.ukma.clientserver.server.db.DbConnection;
+import ua.edu.ukma.clientserver.server.db.PoolConfig;
+import ua.edu.ukma.clientserver.server.db.ProductGroupRepository;
+import ua.edu.ukma.clientserver.server.db.ProductRepository;
+import ua.edu.ukma.clientserver.server.models.Product;
+import ua.edu.ukma.clientserver.server.models.ProductGroup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+final class BenchmarkDatabase {
+
+    static final int GROUPS = 10;
+
+    private BenchmarkDatabase() {
+    }
+
+    static DbConnection create(String name, int products) throws SQLException, IOException {
+        return create(name, products, PoolConfig.defaults());
+    }
+
+    static DbConnection create(String name, int products, PoolConfig config) throws SQLException, IOException {
+        String url = "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1";
+        try (Connection connection = DriverManager.getConnection(url, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+            for (String sql : readInitScript().split(";")) {
+                if (!sql.isBlank()) {
+                    statement.execute(sql);
+                }
+            }
+        }
+
+        DbConnection dbConnection = new DbConnection(url, "sa", "", config);
+        ProductGroupRepository groupRepository = new ProductGroupRepository(dbConnection);
+        List<Integer> groupIds = new ArrayList<>();
+        for (int i = 0; i < GROUPS; i++) {
+            groupIds.add(groupRepository.createProductGroup(new ProductGroup(0, "Group " + i, "Benchmark group")).value().id());
+        }
+        new ProductRepository(dbConnection).importProducts(products(groupIds, products).iterator());
+        return dbConnection;
+    }
+
+    static List<Product> products(List<Integer> groupIds, int count) {
+        List<Product> products = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            products.add(new Product(i + 1, groupIds.get(i % groupIds.size()), "Product " + i, "Description of product " + i,
+                "Manufacturer " + (i % 50), 1000 + i, BigDecimal.valueOf(100 + i % 1000, 2)));
+        }
+        return products;
+    }
+
+    private static String readInitScript() throws IOException {
+        try (InputStream in = BenchmarkDatabase.class.getClassLoader().getResourceAsStream("init.sql")) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
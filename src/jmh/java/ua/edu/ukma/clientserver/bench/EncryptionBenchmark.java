@@ -0,0 +1,73 @@
+package ua.edu.ukma.clientserver.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ua.edu.ukma.clientserver.util.EncryptionAlgorithm;
+import ua.edu.ukma.clientserver.util.EncryptionUtil;
+import ua.edu.ukma.clientserver.util.KeyRing;
+import ua.edu.ukma.clientserver.util.WireFormat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncryptionBenchmark {
+
+    @Param({"64", "4096", "262144"})
+    private int payloadSize;
+
+    @Param({"AES_GCM", "AES_CBC"})
+    private EncryptionAlgorithm algorithm;
+
+    private String plainText;
+    private byte[] plainBytes;
+    private String encryptedText;
+
+    @Setup
+    public void setUp() {
+        EncryptionUtil.configure(KeyRing.development(), algorithm, true);
+        plainText = "{\"name\":\"benchmark\"}".repeat(payloadSize / 20 + 1).substring(0, payloadSize);
+        plainBytes = plainText.getBytes(StandardCharsets.UTF_8);
+        encryptedText = EncryptionUtil.encrypt(plainText);
+    }
+
+    @Benchmark
+    public String encrypt() {
+        return EncryptionUtil.encrypt(plainText);
+    }
+
+    @Benchmark
+    public String decrypt() {
+        return EncryptionUtil.decrypt(encryptedText);
+    }
+
+    @Benchmark
+    public void encryptStream() throws IOException {
+        try (OutputStream out = EncryptionUtil.encryptingStream(OutputStream.nullOutputStream())) {
+            out.write(plainBytes);
+        }
+    }
+
+    @Benchmark
+    public void encryptBinaryStream() throws IOException {
+        try (OutputStream out = EncryptionUtil.encryptingStream(OutputStream.nullOutputStream(), WireFormat.BINARY)) {
+            out.write(plainBytes);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package ua.edu.ukma.clientserver.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ua.edu.ukma.clientserver.server.cache.CacheConfig;
+import ua.edu.ukma.clientserver.server.cache.CachingProductRepository;
+import ua.edu.ukma.clientserver.server.cache.CatalogCache;
+import ua.edu.ukma.clientserver.server.db.DbConnection;
+import ua.edu.ukma.clientserver.server.db.ProductRepository;
+import ua.edu.ukma.clientserver.server.handlers.ProductHandler;
+import ua.edu.ukma.clientserver.server.search.ProductSearchIndex;
+import ua.edu.ukma.clientserver.util.EncryptionUtil;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HandlerBenchmark {
+
+    @Param({"1000"})
+    private int rows;
+
+    @Param({"plain", "cached"})
+    private String repository;
+
+    private DbConnection dbConnection;
+    private ProductHandler handler;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dbConnection = BenchmarkDatabase.create("handler_benchmark", rows);
+        ProductRepository productRepository = repository.equals("cached")
+            ? new CachingProductRepository(dbConnection, new CatalogCache(CacheConfig.defaults()))
+            : new ProductRepository(dbConnection);
+        handler = new ProductHandler(productRepository, new ProductSearchIndex(productRepository), null, null, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dbConnection.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Exchanges {
+        StubHttpExchange getById;
+        StubHttpExchange getAll;
+        StubHttpExchange getByGroup;
+        StubHttpExchange addStock;
+        StubHttpExchange search;
+
+        @Setup
+        public void setUp() {
+            getById = new StubHttpExchange("GET", "/api/products/42", null);
+            getAll = new StubHttpExchange("GET", "/api/products", null);
+            getByGroup = new StubHttpExchange("GET", "/api/products?groupId=3", null);
+            addStock = new StubHttpExchange("POST", "/api/products/42/add", EncryptionUtil.encrypt("{\"amount\":1}"));
+            search = new StubHttpExchange("GET", "/api/products/search?q=manufactrer+12", null);
+        }
+    }
+
+    @Benchmark
+    public long getProductById(Exchanges exchanges) throws IOException {
+        return dispatch(exchanges.getById);
+    }
+
+    @Benchmark
+    public long getAllProducts(Exchanges exchanges) throws IOException {
+        return dispatch(exchanges.getAll);
+    }
+
+    @Benchmark
+    public long getProductsByGroupId(Exchanges exchanges) throws IOException {
+        return dispatch(exchanges.getByGroup);
+    }
+
+    @Benchmark
+    public long addStock(Exchanges exchanges) throws IOException {
+        return dispatch(exchanges.addStock);
+    }
+
+    @Benchmark
+    public long searchProducts(Exchanges exchanges) throws IOException {
+        return dispatch(exchanges.search);
+    }
+
+    private long dispatch(StubHttpExchange exchange) throws IOException {
+        exchange.reset();
+        handler.handle(exchange);
+        if (exchange.getResponseCode() != 200) {
+            throw new IllegalStateException("Unexpected status " + exchange.getResponseCode());
+        }
+        return exchange.bytesWritten();
+    }
+}
@@ -0,0 +1,91 @@
+package ua.edu.ukma.clientserver.bench;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ua.edu.ukma.clientserver.server.json.Json;
+import ua.edu.ukma.clientserver.server.json.Utf8Buffer;
+import ua.edu.ukma.clientserver.server.models.Product;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    private int rows;
+
+    // reflective is the plain Gson the handlers used before the registered adapters
+    @Param({"reflective", "adapters"})
+    private String gsonKind;
+
+    private Gson gson;
+    private List<Product> products;
+
+    @Setup
+    public void setUp() {
+        gson = gsonKind.equals("adapters") ? Json.gson() : new Gson();
+        products = BenchmarkDatabase.products(List.of(1, 2, 3), rows);
+    }
+
+    @Benchmark
+    public String serializeToString() {
+        return gson.toJson(products);
+    }
+
+    @Benchmark
+    public void serializeToWriter() {
+        gson.toJson(products, Writer.nullWriter());
+    }
+
+    // What sendJson used to do: the whole body as a String, then encoded again
+    @Benchmark
+    public byte[] serializeViaString() {
+        return gson.toJson(products).getBytes(StandardCharsets.UTF_8);
+    }
+
+    // What sendJson does now
+    @Benchmark
+    public byte[] serializeToBytes() throws IOException {
+        Utf8Buffer body = new Utf8Buffer(512);
+        gson.toJson(products, products.getClass(), gson.newJsonWriter(body));
+        return body.toByteArray();
+    }
+
+    // What sendJsonArray does for long lists: elements go straight to the (here discarded) output
+    @Benchmark
+    public void streamArray() throws IOException {
+        TypeAdapter<Product> adapter = gson.getAdapter(Product.class);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(OutputStream.nullOutputStream(), StandardCharsets.UTF_8), 16 * 1024);
+        JsonWriter jsonWriter = gson.newJsonWriter(writer);
+        jsonWriter.beginArray();
+        for (Product product : products) {
+            adapter.write(jsonWriter, product);
+        }
+        jsonWriter.endArray();
+        jsonWriter.flush();
+    }
+}
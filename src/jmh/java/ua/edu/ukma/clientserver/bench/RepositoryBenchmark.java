@@ -0,0 +1,84 @@
+package ua.edu.ukma.clientserver.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ua.edu.ukma.clientserver.server.cache.CacheConfig;
+import ua.edu.ukma.clientserver.server.cache.CachingProductRepository;
+import ua.edu.ukma.clientserver.server.cache.CatalogCache;
+import ua.edu.ukma.clientserver.server.db.DbConnection;
+import ua.edu.ukma.clientserver.server.db.PoolConfig;
+import ua.edu.ukma.clientserver.server.db.ProductRepository;
+import ua.edu.ukma.clientserver.server.models.Product;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RepositoryBenchmark {
+
+    @Param({"1000"})
+    private int rows;
+
+    @Param({"plain", "cached"})
+    private String repository;
+
+    // 0 prepares every statement afresh, as before the pool kept them
+    @Param({"0", "64"})
+    private int statementCacheSize;
+
+    private DbConnection dbConnection;
+    private ProductRepository productRepository;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        PoolConfig defaults = PoolConfig.defaults();
+        dbConnection = BenchmarkDatabase.create("repository_benchmark", rows, new PoolConfig(defaults.minSize(), defaults.maxSize(),
+            defaults.borrowTimeout(), defaults.idleTimeout(), defaults.validationTimeout(), statementCacheSize, defaults.prepareThreshold()));
+        productRepository = repository.equals("cached")
+            ? new CachingProductRepository(dbConnection, new CatalogCache(CacheConfig.defaults()))
+            : new ProductRepository(dbConnection);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dbConnection.close();
+    }
+
+    @Benchmark
+    public Optional<Product> getProductById() {
+        return productRepository.getProductById(ThreadLocalRandom.current().nextInt(rows) + 1);
+    }
+
+    @Benchmark
+    public Optional<Product> getProductByName() {
+        return productRepository.getProductByName("Product " + ThreadLocalRandom.current().nextInt(rows));
+    }
+
+    @Benchmark
+    public List<Product> getProductsByGroupId() {
+        return productRepository.getProductsByGroupId(ThreadLocalRandom.current().nextInt(BenchmarkDatabase.GROUPS) + 1);
+    }
+
+    @Benchmark
+    public List<Product> getAllProducts() {
+        return productRepository.getAllProducts();
+    }
+}
@@ -0,0 +1,162 @@
+package ua.edu.ukma.clientserver.bench;
+
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import ua.edu.ukma.clientserver.server.ExecutorMode;
+import ua.edu.ukma.clientserver.server.Transport;
+import ua.edu.ukma.clientserver.server.cache.CacheConfig;
+import ua.edu.ukma.clientserver.server.cache.CachingProductRepository;
+import ua.edu.ukma.clientserver.server.cache.CatalogCache;
+import ua.edu.ukma.clientserver.server.db.DbConnection;
+import ua.edu.ukma.clientserver.server.db.ProductRepository;
+import ua.edu.ukma.clientserver.server.handlers.ProductHandler;
+import ua.edu.ukma.clientserver.server.search.ProductSearchIndex;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// The same handler behind each transport, driven over loopback by concurrent clients. Requests go over one
+// keep-alive connection per client thread, except in newConnectionPerRequest.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+public class TransportBenchmark {
+
+    @Param({"1000"})
+    private int rows;
+
+    @Param({"JDK", "NIO"})
+    private String transport;
+
+    private DbConnection dbConnection;
+    private ExecutorService executor;
+    private HttpServer server;
+    private int port;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dbConnection = BenchmarkDatabase.create("transport_benchmark", rows);
+        ProductRepository productRepository = new CachingProductRepository(dbConnection, new CatalogCache(CacheConfig.defaults()));
+        executor = ExecutorMode.VIRTUAL.create(0);
+        server = Transport.valueOf(transport).create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        server.createContext("/api/products", new ProductHandler(productRepository, new ProductSearchIndex(productRepository), null, null, null));
+        server.setExecutor(executor);
+        server.start();
+        port = server.getAddress().getPort();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.stop(0);
+        executor.shutdown();
+        dbConnection.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        private Socket socket;
+        private InputStream in;
+        private OutputStream out;
+
+        @Setup(Level.Iteration)
+        public void connect(TransportBenchmark benchmark) throws IOException {
+            socket = new Socket("127.0.0.1", benchmark.port);
+            socket.setTcpNoDelay(true);
+            in = new BufferedInputStream(socket.getInputStream());
+            out = socket.getOutputStream();
+        }
+
+        @TearDown(Level.Iteration)
+        public void disconnect() throws IOException {
+            socket.close();
+        }
+
+        long get(String path) throws IOException {
+            out.write(("GET " + path + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            return readResponse(in);
+        }
+    }
+
+    @Benchmark
+    public long getProductById(Client client) throws IOException {
+        return client.get("/api/products/42");
+    }
+
+    // Streamed by the handler, so chunked on the wire
+    @Benchmark
+    public long getAllProducts(Client client) throws IOException {
+        return client.get("/api/products");
+    }
+
+    @Benchmark
+    public long newConnectionPerRequest() throws IOException {
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            socket.setTcpNoDelay(true);
+            socket.getOutputStream().write("GET /api/products/42 HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            return readResponse(new BufferedInputStream(socket.getInputStream()));
+        }
+    }
+
+    // Body length of a 200 response with a fixed-length or chunked body
+    private static long readResponse(InputStream in) throws IOException {
+        String statusLine = readLine(in);
+        if (!statusLine.startsWith("HTTP/1.1 200 ")) {
+            throw new IllegalStateException("Unexpected response " + statusLine);
+        }
+        long length = -1;
+        for (String line; !(line = readLine(in)).isEmpty(); ) {
+            if (line.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+                length = Long.parseLong(line.substring(15).strip());
+            }
+        }
+        if (length >= 0) {
+            in.skipNBytes(length);
+            return length;
+        }
+        long total = 0;
+        for (long chunk; (chunk = Long.parseLong(readLine(in), 16)) > 0; ) {
+            in.skipNBytes(chunk + 2);
+            total += chunk;
+        }
+        readLine(in);
+        return total;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (int b; (b = in.read()) != '\n'; ) {
+            if (b < 0) {
+                throw new IOException("Connection closed mid-response");
+            }
+            if (b != '\r') {
+                line.append((char) b);
+            }
+        }
+        return line.toString();
+    }
+}
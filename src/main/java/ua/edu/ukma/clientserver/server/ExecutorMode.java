@@ -0,0 +1,23 @@
+package ua.edu.ukma.clientserver.server;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public enum ExecutorMode {
+    VIRTUAL,
+    FIXED,
+    CACHED;
+
+    public static ExecutorMode fromSystemProperties() {
+        return valueOf(System.getProperty("server.executor", VIRTUAL.name()).toUpperCase(Locale.ROOT));
+    }
+
+    public ExecutorService create(int threads) {
+        return switch (this) {
+            case VIRTUAL -> Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("http-", 0).factory());
+            case FIXED -> Executors.newFixedThreadPool(threads, Thread.ofPlatform().name("http-", 0).factory());
+            case CACHED -> Executors.newCachedThreadPool();
+        };
+    }
+}
@@ -1,32 +1,188 @@
 package ua.edu.ukma.clientserver.server;
 
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
+import ua.edu.ukma.clientserver.server.cache.CacheConfig;
+import ua.edu.ukma.clientserver.server.cache.CachingProductGroupRepository;
+import ua.edu.ukma.clientserver.server.cache.CachingProductRepository;
+import ua.edu.ukma.clientserver.server.cache.CatalogCache;
+import ua.edu.ukma.clientserver.server.cache.CatalogVersions;
+import ua.edu.ukma.clientserver.server.cache.EvictionPolicy;
+import ua.edu.ukma.clientserver.server.cache.ResponseCache;
 import ua.edu.ukma.clientserver.server.db.DbConnection;
 import ua.edu.ukma.clientserver.server.db.ProductGroupRepository;
 import ua.edu.ukma.clientserver.server.db.ProductRepository;
+import ua.edu.ukma.clientserver.server.db.ReservationRepository;
+import ua.edu.ukma.clientserver.server.db.StockJournal;
+import ua.edu.ukma.clientserver.server.db.StockJournalConfig;
+import ua.edu.ukma.clientserver.server.events.ChangeFeed;
+import ua.edu.ukma.clientserver.server.events.ChangeFeedConfig;
+import ua.edu.ukma.clientserver.server.handlers.AdmissionControlFilter;
+import ua.edu.ukma.clientserver.server.handlers.ChangeFeedHandler;
+import ua.edu.ukma.clientserver.server.handlers.ConditionalResponses;
+import ua.edu.ukma.clientserver.server.handlers.MetricsFilter;
+import ua.edu.ukma.clientserver.server.handlers.MetricsHandler;
+import ua.edu.ukma.clientserver.server.handlers.PayloadCompression;
 import ua.edu.ukma.clientserver.server.handlers.ProductGroupHandler;
 import ua.edu.ukma.clientserver.server.handlers.ProductHandler;
+import ua.edu.ukma.clientserver.server.handlers.ReservationHandler;
+import ua.edu.ukma.clientserver.server.handlers.ServerStatsHandler;
 import ua.edu.ukma.clientserver.server.handlers.StatsHandler;
+import ua.edu.ukma.clientserver.server.metrics.RequestMetrics;
+import ua.edu.ukma.clientserver.server.nio.NioHttpServer;
+import ua.edu.ukma.clientserver.server.reservations.ReservationConfig;
+import ua.edu.ukma.clientserver.server.reservations.StockReservations;
+import ua.edu.ukma.clientserver.server.search.ProductSearchIndex;
+import ua.edu.ukma.clientserver.server.stats.InventoryValueAggregate;
+import ua.edu.ukma.clientserver.util.EncryptionUtil;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.util.concurrent.Executors;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.Supplier;
 
 public class Server {
 
     public static void main(String[] args) throws IOException {
+        EncryptionUtil.configureFromSystemProperties();
         DbConnection dbConnection = new DbConnection();
-        ProductGroupRepository productGroupRepository = new ProductGroupRepository(dbConnection);
-        ProductRepository productRepository = new ProductRepository(dbConnection);
+        CatalogCache catalogCache = null;
+        ProductGroupRepository productGroupRepository;
+        ProductRepository productRepository;
+        if (Boolean.parseBoolean(System.getProperty("cache.enabled", "true"))) {
+            catalogCache = new CatalogCache(CacheConfig.fromSystemProperties());
+            productGroupRepository = new CachingProductGroupRepository(dbConnection, catalogCache);
+            productRepository = new CachingProductRepository(dbConnection, catalogCache);
+        } else {
+            productGroupRepository = new ProductGroupRepository(dbConnection);
+            productRepository = new ProductRepository(dbConnection);
+        }
+        // Write-behind stock movements: sales are acknowledged once journaled and reach the table in batches
+        StockJournal stockJournal = Boolean.parseBoolean(System.getProperty("stockJournal.enabled", "false"))
+            ? StockJournal.open(productRepository, StockJournalConfig.fromSystemProperties())
+            : null;
+        if (stockJournal != null) {
+            productRepository.attachStockJournal(stockJournal);
+            productGroupRepository.addListener(stockJournal);
+        }
+        // Checkout holds on stock, kept in memory and written to the table behind the requests
+        StockReservations reservations = Boolean.parseBoolean(System.getProperty("reservations.enabled", "true"))
+            ? new StockReservations(productRepository, new ReservationRepository(dbConnection), ReservationConfig.fromSystemProperties())
+            : null;
+        if (reservations != null) {
+            productRepository.addListener(reservations);
+            productGroupRepository.addListener(reservations);
+        }
+        InventoryValueAggregate inventoryValue = new InventoryValueAggregate(
+            productRepository,
+            Duration.ofMillis(Long.getLong("stats.reconcileIntervalMs", 60_000))
+        );
+        productRepository.addListener(inventoryValue);
+        productGroupRepository.addListener(inventoryValue);
+        ProductSearchIndex searchIndex = new ProductSearchIndex(productRepository);
+        productRepository.addListener(searchIndex);
+        productGroupRepository.addListener(searchIndex);
+        CatalogVersions catalogVersions = new CatalogVersions();
+        productRepository.addListener(catalogVersions);
+        productGroupRepository.addListener(catalogVersions);
+        // Pushes catalog writes to clients that would otherwise poll for them. Registered after the version
+        // bump, so a client refetching on an event does not get the old ETag's response.
+        ChangeFeed changeFeed = Boolean.parseBoolean(System.getProperty("events.enabled", "true"))
+            ? new ChangeFeed(ChangeFeedConfig.fromSystemProperties())
+            : null;
+        if (changeFeed != null) {
+            productRepository.addListener(changeFeed);
+            productGroupRepository.addListener(changeFeed);
+        }
+        ResponseCache responseCache = new ResponseCache(new CacheConfig(
+            Integer.getInteger("responseCache.maxEntries", 256),
+            Duration.ofMillis(Long.getLong("responseCache.ttlMs", 30_000)),
+            EvictionPolicy.LRU
+        ));
+        PayloadCompression compression = PayloadCompression.fromSystemProperties();
 
-        HttpServer server = HttpServer.create(new InetSocketAddress(8000), 0);
+        ExecutorMode executorMode = ExecutorMode.fromSystemProperties();
+        ExecutorService executor = executorMode.create(Integer.getInteger("server.threads", Runtime.getRuntime().availableProcessors() * 4));
+        // Requests beyond what the DB pool can serve would only queue up behind it, so shed them early
+        AdmissionControlFilter admissionControl = new AdmissionControlFilter(
+            Integer.getInteger("server.maxInFlight", dbConnection.getStats().maxSize() * 4),
+            Long.getLong("server.admissionQueueTimeoutMs", 50)
+        );
 
-        server.createContext("/api/groups", new ProductGroupHandler(productGroupRepository));
-        server.createContext("/api/products", new ProductHandler(productRepository));
-        server.createContext("/api/stats/", new StatsHandler(productRepository));
+        RequestMetrics requestMetrics = new RequestMetrics();
+        MetricsFilter metricsFilter = new MetricsFilter(requestMetrics);
 
-        server.setExecutor(Executors.newCachedThreadPool());
+        // Connections the OS queues before accept() picks them up; capped by the kernel's own limit
+        Transport transport = Transport.fromSystemProperties();
+        HttpServer server = transport.create(new InetSocketAddress(8000), Integer.getInteger("server.backlog", 1024));
+
+        register(server, "/api/groups", new ProductGroupHandler(productGroupRepository, new ConditionalResponses(catalogVersions::groups, responseCache), compression), metricsFilter, admissionControl);
+        register(server, "/api/products", new ProductHandler(productRepository, searchIndex, reservations, new ConditionalResponses(catalogVersions::products, responseCache), compression), metricsFilter, admissionControl);
+        if (reservations != null) {
+            register(server, "/api/reservations", new ReservationHandler(reservations, compression), metricsFilter, admissionControl);
+        }
+        register(server, "/api/stats/", new StatsHandler(inventoryValue, new ConditionalResponses(inventoryValue::version, responseCache), compression), metricsFilter, admissionControl);
+        if (changeFeed != null) {
+            // Streams stay open for as long as the client listens, so they do not count against admission
+            server.createContext("/api/events", new ChangeFeedHandler(changeFeed)).getFilters().add(metricsFilter);
+        }
+        Map<String, Supplier<?>> stats = new LinkedHashMap<>();
+        stats.put("admission", admissionControl::getStats);
+        stats.put("executorQueueDepth", () -> executor instanceof ThreadPoolExecutor pool ? pool.getQueue().size() : 0);
+        stats.put("dbPool", dbConnection::getStats);
+        if (catalogCache != null) {
+            stats.put("catalogCache", catalogCache::getStats);
+        }
+        stats.put("inventoryValue", inventoryValue::getStats);
+        stats.put("searchIndex", searchIndex::getStats);
+        stats.put("responseCache", responseCache::getStats);
+        stats.put("compression", compression::getStats);
+        stats.put("stockUpdates", productRepository::getStockUpdateStats);
+        if (stockJournal != null) {
+            stats.put("stockJournal", stockJournal::getStats);
+        }
+        if (reservations != null) {
+            stats.put("reservations", reservations::getStats);
+        }
+        if (changeFeed != null) {
+            stats.put("changeFeed", changeFeed::getStats);
+        }
+        if (server instanceof NioHttpServer nioServer) {
+            stats.put("transport", nioServer::getStats);
+        }
+        server.createContext("/api/server/stats", new ServerStatsHandler(stats));
+        // Scrapers poll this without the key; it reports the same sections, as gauges
+        server.createContext("/metrics", new MetricsHandler(requestMetrics, stats));
+
+        server.setExecutor(executor);
         server.start();
-        System.out.println("Server is listening on port 8000");
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (changeFeed != null) {
+                changeFeed.close();
+            }
+            server.stop(1);
+            executor.shutdown();
+            if (reservations != null) {
+                reservations.close();
+            }
+            if (stockJournal != null) {
+                stockJournal.close();
+            }
+            inventoryValue.close();
+            dbConnection.close();
+        }));
+        System.out.println("Server is listening on port 8000 (" + transport.name().toLowerCase() + " transport, " + executorMode.name().toLowerCase() + " executor)");
+    }
+
+    private static void register(HttpServer server, String path, HttpHandler handler, MetricsFilter metricsFilter, AdmissionControlFilter admissionControl) {
+        List<Filter> filters = server.createContext(path, handler).getFilters();
+        filters.add(metricsFilter);
+        filters.add(admissionControl);
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,26 @@
+package ua.edu.ukma.clientserver.server;
+
+import com.sun.net.httpserver.HttpServer;
+import ua.edu.ukma.clientserver.server.nio.NioConfig;
+import ua.edu.ukma.clientserver.server.nio.NioHttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Locale;
+
+// Both are HttpServers, so contexts, filters and handlers are registered the same way on either
+public enum Transport {
+    JDK,
+    NIO;
+
+    public static Transport fromSystemProperties() {
+        return valueOf(System.getProperty("server.transport", JDK.name()).toUpperCase(Locale.ROOT));
+    }
+
+    public HttpServer create(InetSocketAddress address, int backlog) throws IOException {
+        return switch (this) {
+            case JDK -> HttpServer.create(address, backlog);
+            case NIO -> NioHttpServer.create(address, backlog, NioConfig.fromSystemProperties());
+        };
+    }
+}
@@ -0,0 +1,116 @@
+package ua.edu.ukma.clientserver.server.cache;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+public class BoundedCache<K, V> {
+
+    private final ConcurrentHashMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final EvictionPolicy evictionPolicy;
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    public BoundedCache(CacheConfig config) {
+        this.maxEntries = config.maxEntries();
+        this.ttlNanos = config.ttl().toNanos();
+        this.evictionPolicy = config.evictionPolicy();
+    }
+
+    public V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        long now = System.nanoTime();
+        if (now - entry.createdNanos > ttlNanos) {
+            if (entries.remove(key, entry)) {
+                expirations.increment();
+            }
+            misses.increment();
+            return null;
+        }
+        // Racy updates are fine here: the values only steer eviction order
+        entry.lastAccessNanos = now;
+        entry.accessCount++;
+        hits.increment();
+        return entry.value;
+    }
+
+    public void put(K key, V value) {
+        entries.put(key, new Entry<>(value, System.nanoTime()));
+        if (entries.size() > maxEntries) {
+            evict();
+        }
+    }
+
+    public void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    public void invalidateIf(Predicate<V> predicate) {
+        entries.values().removeIf(entry -> predicate.test(entry.value));
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    public CacheStats getStats() {
+        return new CacheStats(entries.size(), hits.sum(), misses.sum(), evictions.sum(), expirations.sum());
+    }
+
+    private void evict() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            // Evict a tenth of the capacity at once so the sort is paid for rarely
+            int excess = entries.size() - maxEntries + Math.max(1, maxEntries / 10);
+            // Scores are snapshotted because readers keep updating them while we sort
+            List<Candidate<K, V>> candidates = new ArrayList<>(entries.size());
+            for (Map.Entry<K, Entry<V>> mapEntry : entries.entrySet()) {
+                Entry<V> entry = mapEntry.getValue();
+                long score = evictionPolicy == EvictionPolicy.LFU ? entry.accessCount : entry.lastAccessNanos;
+                candidates.add(new Candidate<>(mapEntry.getKey(), entry, score, entry.lastAccessNanos));
+            }
+            candidates.sort(Comparator.comparingLong(Candidate<K, V>::score).thenComparingLong(Candidate::lastAccessNanos));
+            for (int i = 0; i < excess && i < candidates.size(); i++) {
+                Candidate<K, V> candidate = candidates.get(i);
+                if (entries.remove(candidate.key(), candidate.entry())) {
+                    evictions.increment();
+                }
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private record Candidate<K, V>(K key, Entry<V> entry, long score, long lastAccessNanos) {
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long createdNanos;
+        private volatile long lastAccessNanos;
+        private volatile long accessCount;
+
+        private Entry(V value, long createdNanos) {
+            this.value = value;
+            this.createdNanos = createdNanos;
+            this.lastAccessNanos = createdNanos;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package ua.edu.ukma.clientserver.server.cache;
+
+import java.time.Duration;
+import java.util.Locale;
+
+public record CacheConfig(int maxEntries, Duration ttl, EvictionPolicy evictionPolicy) {
+
+    public CacheConfig {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Cache must hold at least one entry");
+        }
+    }
+
+    public static CacheConfig defaults() {
+        return new CacheConfig(10_000, Duration.ofMinutes(1), EvictionPolicy.LRU);
+    }
+
+    public static CacheConfig fromSystemProperties() {
+        CacheConfig defaults = defaults();
+        return new CacheConfig(
+            Integer.getInteger("cache.maxEntries", defaults.maxEntries()),
+            Duration.ofMillis(Long.getLong("cache.ttlMs", defaults.ttl().toMillis())),
+            EvictionPolicy.valueOf(System.getProperty("cache.evictionPolicy", defaults.evictionPolicy().name()).toUpperCase(Locale.ROOT))
+        );
+    }
+}
@@ -0,0 +1,4 @@
+package ua.edu.ukma.clientserver.server.cache;
+
+public record CacheStats(int size, long hits, long misses, long evictions, long expirations) {
+}
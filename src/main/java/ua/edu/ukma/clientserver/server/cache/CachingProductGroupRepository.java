@@ -0,0 +1,72 @@
+package ua.edu.ukma.clientserver.server.cache;
+
+import ua.edu.ukma.clientserver.server.db.CatalogListener;
+import ua.edu.ukma.clientserver.server.db.DbConnection;
+import ua.edu.ukma.clientserver.server.db.ProductGroupRepository;
+import ua.edu.ukma.clientserver.server.models.ProductGroup;
+
+import java.util.List;
+import java.util.Optional;
+
+public class CachingProductGroupRepository extends ProductGroupRepository {
+
+    private final CatalogCache cache;
+
+    public CachingProductGroupRepository(DbConnection dbConnection, CatalogCache cache) {
+        super(dbConnection);
+        this.cache = cache;
+        // Ahead of every other listener, for the same reason as in CachingProductRepository
+        addListener(new CatalogListener() {
+            @Override
+            public void groupCreated(ProductGroup group) {
+                cache.groupWritten(group);
+            }
+
+            @Override
+            public void groupUpdated(ProductGroup group) {
+                cache.groupChanged(group.id());
+            }
+
+            @Override
+            public void groupDeleted(int groupId) {
+                cache.groupDeleted(groupId);
+            }
+        });
+    }
+
+    @Override
+    public List<ProductGroup> getAllProductGroups() {
+        List<ProductGroup> cached = cache.getAllGroups();
+        if (cached != null) {
+            return cached;
+        }
+        long generation = cache.generation();
+        List<ProductGroup> groups = List.copyOf(super.getAllProductGroups());
+        cache.loadedAllGroups(generation, groups);
+        return groups;
+    }
+
+    @Override
+    public Optional<ProductGroup> getProductGroupById(int id) {
+        ProductGroup cached = cache.getGroup(id);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        long generation = cache.generation();
+        Optional<ProductGroup> group = super.getProductGroupById(id);
+        group.ifPresent(g -> cache.loadedGroup(generation, g));
+        return group;
+    }
+
+    @Override
+    public Optional<ProductGroup> getProductGroupByName(String name) {
+        ProductGroup cached = cache.getGroupByName(name);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        long generation = cache.generation();
+        Optional<ProductGroup> group = super.getProductGroupByName(name);
+        group.ifPresent(g -> cache.loadedGroup(generation, g));
+        return group;
+    }
+}
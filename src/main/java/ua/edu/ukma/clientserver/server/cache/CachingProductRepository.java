@@ -0,0 +1,96 @@
+package ua.edu.ukma.clientserver.server.cache;
+
+import ua.edu.ukma.clientserver.server.db.CatalogListener;
+import ua.edu.ukma.clientserver.server.db.DbConnection;
+import ua.edu.ukma.clientserver.server.db.ProductRepository;
+import ua.edu.ukma.clientserver.server.models.Product;
+
+import java.util.List;
+import java.util.Optional;
+
+public class CachingProductRepository extends ProductRepository {
+
+    private final CatalogCache cache;
+
+    public CachingProductRepository(DbConnection dbConnection, CatalogCache cache) {
+        super(dbConnection);
+        this.cache = cache;
+        // Registered ahead of every other listener, so a write is out of the cache before CatalogVersions
+        // publishes the version that a conditional GET would cache the reloaded body under
+        addListener(new CatalogListener() {
+            @Override
+            public void productCreated(Product product) {
+                cache.productWritten(product);
+            }
+
+            @Override
+            public void productUpdated(Product product) {
+                cache.productChanged(product.id());
+            }
+
+            @Override
+            public void productDeleted(int id) {
+                cache.productChanged(id);
+            }
+
+            // Concurrent stock updates can finish out of order, so re-reading beats patching the cached quantity
+            @Override
+            public void stockChanged(int productId, int delta) {
+                cache.productChanged(productId);
+            }
+
+            @Override
+            public void productsImported() {
+                cache.productsChanged();
+            }
+        });
+    }
+
+    @Override
+    public List<Product> getAllProducts() {
+        List<Product> cached = cache.getAllProducts();
+        if (cached != null) {
+            return cached;
+        }
+        long generation = cache.generation();
+        List<Product> products = List.copyOf(super.getAllProducts());
+        cache.loadedAllProducts(generation, products);
+        return products;
+    }
+
+    @Override
+    public Optional<Product> getProductById(int id) {
+        Product cached = cache.getProduct(id);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        long generation = cache.generation();
+        Optional<Product> product = super.getProductById(id);
+        product.ifPresent(p -> cache.loadedProduct(generation, p));
+        return product;
+    }
+
+    @Override
+    public Optional<Product> getProductByName(String name) {
+        Product cached = cache.getProductByName(name);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        long generation = cache.generation();
+        Optional<Product> product = super.getProductByName(name);
+        product.ifPresent(p -> cache.loadedProduct(generation, p));
+        return product;
+    }
+
+    @Override
+    public List<Product> getProductsByGroupId(int groupId) {
+        List<Product> cached = cache.getProductsByGroup(groupId);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = cache.generation();
+        List<Product> products = List.copyOf(super.getProductsByGroupId(groupId));
+        cache.loadedProductsByGroup(generation, groupId, products);
+        return products;
+    }
+}
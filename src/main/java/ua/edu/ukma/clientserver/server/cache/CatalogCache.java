@@ -0,0 +1,173 @@
+package ua.edu.ukma.clientserver.server.cache;
+
+import ua.edu.ukma.clientserver.server.models.Product;
+import ua.edu.ukma.clientserver.server.models.ProductGroup;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class CatalogCache {
+
+    private static final String ALL = "all";
+
+    private final BoundedCache<Integer, Product> productsById;
+    private final BoundedCache<String, Integer> productIdsByName;
+    private final BoundedCache<Integer, List<Product>> productsByGroup;
+    private final BoundedCache<String, List<Product>> allProducts;
+    private final BoundedCache<Integer, ProductGroup> groupsById;
+    private final BoundedCache<String, Integer> groupIdsByName;
+    private final BoundedCache<String, List<ProductGroup>> allGroups;
+
+    // Bumped on every write; a read-through load only stays cached if no write happened while it ran
+    private final AtomicLong generation = new AtomicLong();
+
+    public CatalogCache(CacheConfig config) {
+        this.productsById = new BoundedCache<>(config);
+        this.productIdsByName = new BoundedCache<>(config);
+        this.productsByGroup = new BoundedCache<>(config);
+        this.allProducts = new BoundedCache<>(config);
+        this.groupsById = new BoundedCache<>(config);
+        this.groupIdsByName = new BoundedCache<>(config);
+        this.allGroups = new BoundedCache<>(config);
+    }
+
+    long generation() {
+        return generation.get();
+    }
+
+    Product getProduct(int id) {
+        return productsById.get(id);
+    }
+
+    Product getProductByName(String name) {
+        Integer id = productIdsByName.get(name);
+        Product product = id == null ? null : productsById.get(id);
+        // The name index is not cleaned up on renames, so a hit only counts if the name still matches
+        return product != null && product.name().equals(name) ? product : null;
+    }
+
+    List<Product> getProductsByGroup(int groupId) {
+        return productsByGroup.get(groupId);
+    }
+
+    List<Product> getAllProducts() {
+        return allProducts.get(ALL);
+    }
+
+    ProductGroup getGroup(int id) {
+        return groupsById.get(id);
+    }
+
+    ProductGroup getGroupByName(String name) {
+        Integer id = groupIdsByName.get(name);
+        ProductGroup group = id == null ? null : groupsById.get(id);
+        return group != null && group.name().equals(name) ? group : null;
+    }
+
+    List<ProductGroup> getAllGroups() {
+        return allGroups.get(ALL);
+    }
+
+    void loadedProduct(long loadGeneration, Product product) {
+        cacheProduct(product);
+        if (generation.get() != loadGeneration) {
+            productsById.invalidate(product.id());
+        }
+    }
+
+    void loadedProductsByGroup(long loadGeneration, int groupId, List<Product> products) {
+        productsByGroup.put(groupId, products);
+        if (generation.get() != loadGeneration) {
+            productsByGroup.invalidate(groupId);
+        }
+    }
+
+    void loadedAllProducts(long loadGeneration, List<Product> products) {
+        allProducts.put(ALL, products);
+        if (generation.get() != loadGeneration) {
+            allProducts.invalidate(ALL);
+        }
+    }
+
+    void loadedGroup(long loadGeneration, ProductGroup group) {
+        cacheGroup(group);
+        if (generation.get() != loadGeneration) {
+            groupsById.invalidate(group.id());
+        }
+    }
+
+    void loadedAllGroups(long loadGeneration, List<ProductGroup> groups) {
+        allGroups.put(ALL, groups);
+        if (generation.get() != loadGeneration) {
+            allGroups.invalidate(ALL);
+        }
+    }
+
+    void productWritten(Product product) {
+        generation.incrementAndGet();
+        cacheProduct(product);
+        invalidateProductLists();
+    }
+
+    void productChanged(int id) {
+        generation.incrementAndGet();
+        productsById.invalidate(id);
+        invalidateProductLists();
+    }
+
+    void productsChanged() {
+        generation.incrementAndGet();
+        productsById.invalidateAll();
+        invalidateProductLists();
+    }
+
+    void groupWritten(ProductGroup group) {
+        generation.incrementAndGet();
+        cacheGroup(group);
+        allGroups.invalidateAll();
+    }
+
+    void groupChanged(int id) {
+        generation.incrementAndGet();
+        groupsById.invalidate(id);
+        allGroups.invalidateAll();
+    }
+
+    void groupDeleted(int id) {
+        generation.incrementAndGet();
+        groupsById.invalidate(id);
+        allGroups.invalidateAll();
+        // Products go with their group through ON DELETE CASCADE
+        productsById.invalidateIf(product -> product.groupId() == id);
+        invalidateProductLists();
+    }
+
+    public Map<String, CacheStats> getStats() {
+        Map<String, CacheStats> stats = new LinkedHashMap<>();
+        stats.put("productsById", productsById.getStats());
+        stats.put("productIdsByName", productIdsByName.getStats());
+        stats.put("productsByGroup", productsByGroup.getStats());
+        stats.put("allProducts", allProducts.getStats());
+        stats.put("groupsById", groupsById.getStats());
+        stats.put("groupIdsByName", groupIdsByName.getStats());
+        stats.put("allGroups", allGroups.getStats());
+        return stats;
+    }
+
+    private void cacheProduct(Product product) {
+        productsById.put(product.id(), product);
+        productIdsByName.put(product.name(), product.id());
+    }
+
+    private void cacheGroup(ProductGroup group) {
+        groupsById.put(group.id(), group);
+        groupIdsByName.put(group.name(), group.id());
+    }
+
+    private void invalidateProductLists() {
+        productsByGroup.invalidateAll();
+        allProducts.invalidateAll();
+    }
+}
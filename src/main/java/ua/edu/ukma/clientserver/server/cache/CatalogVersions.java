@@ -0,0 +1,70 @@
+package ua.edu.ukma.clientserver.server.cache;
+
+import ua.edu.ukma.clientserver.server.db.CatalogListener;
+import ua.edu.ukma.clientserver.server.models.Product;
+import ua.edu.ukma.clientserver.server.models.ProductGroup;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+// Versions of the product and group collections, bumped after every committed write
+public class CatalogVersions implements CatalogListener {
+
+    private final AtomicReference<ResourceVersion> products;
+    private final AtomicReference<ResourceVersion> groups;
+
+    public CatalogVersions() {
+        ResourceVersion initial = new ResourceVersion(0, System.currentTimeMillis());
+        this.products = new AtomicReference<>(initial);
+        this.groups = new AtomicReference<>(initial);
+    }
+
+    public ResourceVersion products() {
+        return products.get();
+    }
+
+    public ResourceVersion groups() {
+        return groups.get();
+    }
+
+    @Override
+    public void productCreated(Product product) {
+        products.updateAndGet(ResourceVersion::next);
+    }
+
+    @Override
+    public void productUpdated(Product product) {
+        products.updateAndGet(ResourceVersion::next);
+    }
+
+    @Override
+    public void productDeleted(int id) {
+        products.updateAndGet(ResourceVersion::next);
+    }
+
+    @Override
+    public void stockChanged(int productId, int delta) {
+        products.updateAndGet(ResourceVersion::next);
+    }
+
+    @Override
+    public void productsImported() {
+        products.updateAndGet(ResourceVersion::next);
+    }
+
+    @Override
+    public void groupCreated(ProductGroup group) {
+        groups.updateAndGet(ResourceVersion::next);
+    }
+
+    @Override
+    public void groupUpdated(ProductGroup group) {
+        groups.updateAndGet(ResourceVersion::next);
+    }
+
+    @Override
+    public void groupDeleted(int groupId) {
+        groups.updateAndGet(ResourceVersion::next);
+        // The group's products went with it
+        products.updateAndGet(ResourceVersion::next);
+    }
+}
@@ -0,0 +1,6 @@
+package ua.edu.ukma.clientserver.server.cache;
+
+public enum EvictionPolicy {
+    LRU,
+    LFU
+}
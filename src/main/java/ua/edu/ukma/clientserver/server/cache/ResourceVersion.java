@@ -0,0 +1,13 @@
+package ua.edu.ukma.clientserver.server.cache;
+
+// modifiedMillis starts at boot time, so ETags from before a restart never match again
+public record ResourceVersion(long version, long modifiedMillis) {
+
+    public String etag() {
+        return "W/\"" + Long.toString(modifiedMillis, 36) + "-" + version + "\"";
+    }
+
+    public ResourceVersion next() {
+        return new ResourceVersion(version + 1, Math.max(modifiedMillis, System.currentTimeMillis()));
+    }
+}
@@ -0,0 +1,28 @@
+package ua.edu.ukma.clientserver.server.cache;
+
+// Already encrypted response bodies by request URI, valid only while the resource stays at the same version
+public class ResponseCache {
+
+    private final BoundedCache<String, CachedBody> bodies;
+
+    public ResponseCache(CacheConfig config) {
+        this.bodies = new BoundedCache<>(config);
+    }
+
+    public CachedBody get(String key, long version) {
+        CachedBody cached = bodies.get(key);
+        return cached != null && cached.version() == version ? cached : null;
+    }
+
+    // payloadEncoding is the compression applied before encryption, null if none
+    public void put(String key, long version, String payloadEncoding, byte[] body) {
+        bodies.put(key, new CachedBody(version, payloadEncoding, body));
+    }
+
+    public CacheStats getStats() {
+        return bodies.getStats();
+    }
+
+    public record CachedBody(long version, String payloadEncoding, byte[] body) {
+    }
+}
@@ -0,0 +1,34 @@
+package ua.edu.ukma.clientserver.server.db;
+
+import ua.edu.ukma.clientserver.server.models.Product;
+import ua.edu.ukma.clientserver.server.models.ProductGroup;
+
+// Notified by the repositories after a write has been committed
+public interface CatalogListener {
+
+    default void productCreated(Product product) {
+    }
+
+    default void productUpdated(Product product) {
+    }
+
+    default void productDeleted(int id) {
+    }
+
+    default void stockChanged(int productId, int delta) {
+    }
+
+    // Bulk writes do not report individual rows, so listeners have to reload what they keep
+    default void productsImported() {
+    }
+
+    default void groupCreated(ProductGroup group) {
+    }
+
+    default void groupUpdated(ProductGroup group) {
+    }
+
+    // Products of the group are removed by the cascading foreign key
+    default void groupDeleted(int groupId) {
+    }
+}
@@ -1,28 +1,259 @@
 package ua.edu.ukma.clientserver.server.db;
 
+import ua.edu.ukma.clientserver.server.metrics.Phase;
+import ua.edu.ukma.clientserver.server.metrics.RequestTimings;
+
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+public class DbConnection implements AutoCloseable {
 
-public class DbConnection {
+    // Connections used this recently are trusted without a validation round trip
+    private static final long VALIDATION_BYPASS_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
 
-    private final Connection connection;
+    private final String url;
+    private final String user;
+    private final String password;
+    private final PoolConfig config;
+
+    private final Semaphore permits;
+    private final BlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger waiters = new AtomicInteger();
+    private final LongAdder borrows = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+    private final LongAdder statementCacheEvictions = new LongAdder();
+    private final ScheduledExecutorService maintenance;
+    private volatile boolean closed;
 
     public DbConnection() {
-        String url = "jdbc:postgresql://localhost:5432/mydb";
-        String user = "root";
-        String password = "root";
-        String driver = "org.postgresql.Driver";
+        this(
+            System.getProperty("db.url", "jdbc:postgresql://localhost:5432/mydb"),
+            System.getProperty("db.user", "root"),
+            System.getProperty("db.password", "root"),
+            PoolConfig.fromSystemProperties()
+        );
+    }
+
+    public DbConnection(String url, String user, String password, PoolConfig config) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.config = config;
+        this.permits = new Semaphore(config.maxSize(), true);
 
         try {
-            Class.forName(driver);
-            this.connection = DriverManager.getConnection(url, user, password);
+            if (url.startsWith("jdbc:postgresql:")) {
+                Class.forName("org.postgresql.Driver");
+            }
+            for (int i = 0; i < config.minSize(); i++) {
+                idle.offerLast(open());
+            }
         } catch (SQLException | ClassNotFoundException e) {
+            close();
             throw new RuntimeException(e);
         }
+
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "db-pool-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000, config.idleTimeout().toMillis() / 2);
+        maintenance.scheduleAtFixedRate(this::maintain, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    // A request's DB phase runs from here until the connection is released, waiting for a permit included
+    protected Connection getConnection() throws SQLException {
+        RequestTimings.enter(Phase.DB);
+        try {
+            return borrow();
+        } catch (SQLException | RuntimeException e) {
+            RequestTimings.exit(Phase.DB);
+            throw e;
+        }
+    }
+
+    private Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        long start = System.nanoTime();
+        waiters.incrementAndGet();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(config.borrowTimeout().toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PoolExhaustedException("Interrupted while waiting for a database connection", e);
+        } finally {
+            waiters.decrementAndGet();
+            waitNanos.add(System.nanoTime() - start);
+        }
+        if (!acquired) {
+            timeouts.increment();
+            throw new PoolExhaustedException("Timed out after " + config.borrowTimeout().toMillis() + " ms waiting for a database connection");
+        }
+
+        try {
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null && !isUsable(pooled)) {
+                discard(pooled);
+            }
+            if (pooled == null) {
+                pooled = open();
+            }
+            active.incrementAndGet();
+            borrows.increment();
+            return pooled.lease();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
     }
 
-    protected Connection getConnection() {
-        return connection;
+    void release(PooledConnection pooled) {
+        active.decrementAndGet();
+        try {
+            if (!pooled.isBroken()) {
+                resetState(pooled);
+            }
+            if (closed || pooled.isBroken()) {
+                discard(pooled);
+            } else {
+                pooled.touch();
+                // LIFO keeps the hot connections hot and lets surplus ones age out through idle eviction
+                idle.offerFirst(pooled);
+            }
+        } finally {
+            permits.release();
+            RequestTimings.exit(Phase.DB);
+        }
+    }
+
+    public PoolStats getStats() {
+        long borrowCount = borrows.sum();
+        long attempts = borrowCount + timeouts.sum();
+        double averageWaitMillis = attempts == 0 ? 0 : waitNanos.sum() / 1_000_000.0 / attempts;
+        return new PoolStats(
+            config.maxSize(),
+            total.get(),
+            active.get(),
+            idle.size(),
+            waiters.get(),
+            borrowCount,
+            timeouts.sum(),
+            created.sum(),
+            discarded.sum(),
+            averageWaitMillis,
+            statementCacheHits.sum(),
+            statementCacheMisses.sum(),
+            statementCacheEvictions.sum()
+        );
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (maintenance != null) {
+            maintenance.shutdownNow();
+        }
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            discard(pooled);
+        }
+    }
+
+    void statementCacheHit() {
+        statementCacheHits.increment();
+    }
+
+    void statementCacheMiss() {
+        statementCacheMisses.increment();
+    }
+
+    void statementCacheEviction() {
+        statementCacheEvictions.increment();
+    }
+
+    private PooledConnection open() throws SQLException {
+        Properties properties = new Properties();
+        properties.setProperty("user", user);
+        properties.setProperty("password", password);
+        if (url.startsWith("jdbc:postgresql:")) {
+            properties.setProperty("prepareThreshold", String.valueOf(config.prepareThreshold()));
+        }
+        Connection physical = DriverManager.getConnection(url, properties);
+        total.incrementAndGet();
+        created.increment();
+        return new PooledConnection(this, physical, config.statementCacheSize());
+    }
+
+    private void discard(PooledConnection pooled) {
+        total.decrementAndGet();
+        discarded.increment();
+        pooled.closePhysical();
+    }
+
+    private boolean isUsable(PooledConnection pooled) {
+        if (System.nanoTime() - pooled.lastUsedNanos() < VALIDATION_BYPASS_NANOS) {
+            return true;
+        }
+        try {
+            int timeoutSeconds = (int) Math.max(1, config.validationTimeout().toSeconds());
+            return pooled.physical().isValid(timeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void resetState(PooledConnection pooled) {
+        try {
+            Connection physical = pooled.physical();
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            pooled.markBroken();
+        }
+    }
+
+    private void maintain() {
+        try {
+            long now = System.nanoTime();
+            long idleTimeoutNanos = config.idleTimeout().toNanos();
+            // The oldest connections sit at the tail because returns go to the head
+            PooledConnection oldest;
+            while (total.get() > config.minSize() && (oldest = idle.pollLast()) != null) {
+                if (now - oldest.lastUsedNanos() < idleTimeoutNanos) {
+                    idle.offerLast(oldest);
+                    break;
+                }
+                discard(oldest);
+            }
+            // Refill after broken connections were dropped, e.g. when the database came back after a restart
+            while (!closed && total.get() < config.minSize()) {
+                idle.offerLast(open());
+            }
+        } catch (SQLException e) {
+            System.err.println("Connection pool maintenance failed: " + e.getMessage());
+        }
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,173 @@
+package ua.edu.ukma.clientserver.server.db;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Pages through a table by (sort column, id), so a deep page costs one index range scan like the first one
+final class KeysetPager {
+
+    enum ColumnType {
+        INT,
+        STRING,
+        DECIMAL
+    }
+
+    record Column(String property, String name, ColumnType type, boolean sortable) {
+    }
+
+    private static final String ID = "id";
+
+    private final String table;
+    private final Map<String, Column> columns = new LinkedHashMap<>();
+
+    KeysetPager(String table, Column... columns) {
+        this.table = table;
+        for (Column column : columns) {
+            this.columns.put(column.property(), column);
+        }
+    }
+
+    Page fetch(Connection connection, PageRequest request, String filter, Object... filterValues) throws SQLException {
+        Column sortColumn = columns.get(request.sort());
+        if (sortColumn == null || !sortColumn.sortable()) {
+            throw new IllegalArgumentException("Unsupported sort field: " + request.sort());
+        }
+        Column idColumn = columns.get(ID);
+        List<Column> projection = projection(request.fields());
+        Set<Column> selected = new LinkedHashSet<>(projection);
+        selected.add(idColumn);
+        selected.add(sortColumn);
+
+        List<String> conditions = new ArrayList<>();
+        List<Object> values = new ArrayList<>(List.of(filterValues));
+        if (filter != null) {
+            conditions.add(filter);
+        }
+        String comparison = request.descending() ? "<" : ">";
+        if (request.after() != null) {
+            Cursor cursor = Cursor.decode(request.after(), request.sort(), request.descending());
+            if (sortColumn == idColumn) {
+                conditions.add("id " + comparison + " ?");
+            } else {
+                // A row comparison lets the database seek straight into the (column, id) index
+                conditions.add("(" + sortColumn.name() + ", id) " + comparison + " (?, ?)");
+                values.add(parse(sortColumn.type(), cursor.value()));
+            }
+            values.add(cursor.id());
+        }
+
+        String direction = request.descending() ? " DESC" : "";
+        StringBuilder sql = new StringBuilder("SELECT ");
+        sql.append(String.join(", ", selected.stream().map(Column::name).toList()));
+        sql.append(" FROM ").append(table);
+        if (!conditions.isEmpty()) {
+            sql.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+        sql.append(" ORDER BY ");
+        if (sortColumn != idColumn) {
+            sql.append(sortColumn.name()).append(direction).append(", ");
+        }
+        sql.append("id").append(direction).append(" LIMIT ?");
+
+        try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+            int index = 1;
+            for (Object value : values) {
+                statement.setObject(index++, value);
+            }
+            // One extra row tells whether another page exists
+            statement.setInt(index, request.limit() + 1);
+
+            List<Map<String, Object>> items = new ArrayList<>();
+            Object lastId = null;
+            Object lastSortValue = null;
+            String next = null;
+            ResultSet rs = statement.executeQuery();
+            while (rs.next()) {
+                if (items.size() == request.limit()) {
+                    next = new Cursor(request.sort(), request.descending(), (Integer) lastId, String.valueOf(lastSortValue)).encode();
+                    break;
+                }
+                Map<String, Object> item = new LinkedHashMap<>();
+                for (Column column : projection) {
+                    item.put(column.property(), read(rs, column));
+                }
+                items.add(item);
+                lastId = read(rs, idColumn);
+                lastSortValue = read(rs, sortColumn);
+            }
+            return new Page(items, next);
+        }
+    }
+
+    private List<Column> projection(List<String> fields) {
+        if (fields == null || fields.isEmpty()) {
+            return List.copyOf(columns.values());
+        }
+        List<Column> projection = new ArrayList<>();
+        for (String field : fields) {
+            Column column = columns.get(field);
+            if (column == null) {
+                throw new IllegalArgumentException("Unknown field: " + field);
+            }
+            projection.add(column);
+        }
+        return projection;
+    }
+
+    private static Object read(ResultSet rs, Column column) throws SQLException {
+        return switch (column.type()) {
+            case INT -> rs.getInt(column.name());
+            case STRING -> rs.getString(column.name());
+            case DECIMAL -> rs.getBigDecimal(column.name());
+        };
+    }
+
+    private static Object parse(ColumnType type, String value) {
+        try {
+            return switch (type) {
+                case INT -> Integer.parseInt(value);
+                case STRING -> value;
+                case DECIMAL -> new BigDecimal(value);
+            };
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid page token");
+        }
+    }
+
+    // The sort is part of the token so that it cannot be replayed against a differently ordered listing
+    private record Cursor(String sort, boolean descending, int id, String value) {
+
+        String encode() {
+            String raw = sort + "|" + (descending ? "d" : "a") + "|" + id + "|" + value;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String token, String sort, boolean descending) {
+            String[] parts;
+            try {
+                parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split("\\|", 4);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid page token");
+            }
+            if (parts.length != 4 || !parts[0].equals(sort) || !parts[1].equals(descending ? "d" : "a")) {
+                throw new IllegalArgumentException("Page token does not match the requested sort");
+            }
+            try {
+                return new Cursor(parts[0], descending, Integer.parseInt(parts[2]), parts[3]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid page token");
+            }
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package ua.edu.ukma.clientserver.server.db;
+
+import java.util.List;
+import java.util.Map;
+
+// next is null on the last page
+public record Page(List<Map<String, Object>> items, String next) {
+}
@@ -0,0 +1,13 @@
+package ua.edu.ukma.clientserver.server.db;
+
+import java.util.List;
+
+// An empty field list selects every column; after is the opaque token from the previous page
+public record PageRequest(
+    int limit,
+    String sort,
+    boolean descending,
+    String after,
+    List<String> fields
+) {
+}
@@ -0,0 +1,50 @@
+package ua.edu.ukma.clientserver.server.db;
+
+import java.time.Duration;
+
+public record PoolConfig(
+    int minSize,
+    int maxSize,
+    Duration borrowTimeout,
+    Duration idleTimeout,
+    Duration validationTimeout,
+    // Prepared statements kept open per connection; 0 closes them after every use
+    int statementCacheSize,
+    // Executions of a statement after which the PostgreSQL driver switches it to a named server-side statement
+    int prepareThreshold
+) {
+
+    private static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
+    // Cached statements are reused, so the second run already tells a repeated query from a one-off one
+    private static final int DEFAULT_PREPARE_THRESHOLD = 2;
+
+    public PoolConfig {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+        }
+        if (statementCacheSize < 0) {
+            throw new IllegalArgumentException("Invalid statement cache size: " + statementCacheSize);
+        }
+    }
+
+    public PoolConfig(int minSize, int maxSize, Duration borrowTimeout, Duration idleTimeout, Duration validationTimeout) {
+        this(minSize, maxSize, borrowTimeout, idleTimeout, validationTimeout, DEFAULT_STATEMENT_CACHE_SIZE, DEFAULT_PREPARE_THRESHOLD);
+    }
+
+    public static PoolConfig defaults() {
+        return new PoolConfig(2, 10, Duration.ofSeconds(5), Duration.ofMinutes(5), Duration.ofSeconds(2));
+    }
+
+    public static PoolConfig fromSystemProperties() {
+        PoolConfig defaults = defaults();
+        return new PoolConfig(
+            Integer.getInteger("db.pool.minSize", defaults.minSize()),
+            Integer.getInteger("db.pool.maxSize", defaults.maxSize()),
+            Duration.ofMillis(Long.getLong("db.pool.borrowTimeoutMs", defaults.borrowTimeout().toMillis())),
+            Duration.ofMillis(Long.getLong("db.pool.idleTimeoutMs", defaults.idleTimeout().toMillis())),
+            Duration.ofMillis(Long.getLong("db.pool.validationTimeoutMs", defaults.validationTimeout().toMillis())),
+            Integer.getInteger("db.pool.statementCacheSize", defaults.statementCacheSize()),
+            Integer.getInteger("db.prepareThreshold", defaults.prepareThreshold())
+        );
+    }
+}
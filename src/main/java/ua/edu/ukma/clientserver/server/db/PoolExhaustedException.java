@@ -0,0 +1,14 @@
+package ua.edu.ukma.clientserver.server.db;
+
+public class PoolExhaustedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public PoolExhaustedException(String message) {
+        super(message);
+    }
+
+    public PoolExhaustedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
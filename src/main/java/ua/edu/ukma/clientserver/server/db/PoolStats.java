@@ -0,0 +1,18 @@
+package ua.edu.ukma.clientserver.server.db;
+
+public record PoolStats(
+    int maxSize,
+    int total,
+    int active,
+    int idle,
+    int waiters,
+    long borrows,
+    long timeouts,
+    long created,
+    long discarded,
+    double averageWaitMillis,
+    long statementCacheHits,
+    long statementCacheMisses,
+    long statementCacheEvictions
+) {
+}
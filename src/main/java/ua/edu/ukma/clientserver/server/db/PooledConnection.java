@@ -0,0 +1,123 @@
+package ua.edu.ukma.clientserver.server.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+class PooledConnection {
+
+    private final DbConnection pool;
+    private final Connection physical;
+    private final StatementCache statements;
+    private volatile long lastUsedNanos;
+    private volatile boolean broken;
+
+    PooledConnection(DbConnection pool, Connection physical, int statementCacheSize) {
+        this.pool = pool;
+        this.physical = physical;
+        this.statements = statementCacheSize > 0 ? new StatementCache(this, pool, statementCacheSize) : null;
+        this.lastUsedNanos = System.nanoTime();
+    }
+
+    Connection physical() {
+        return physical;
+    }
+
+    long lastUsedNanos() {
+        return lastUsedNanos;
+    }
+
+    boolean isBroken() {
+        return broken;
+    }
+
+    void markBroken() {
+        broken = true;
+    }
+
+    void checkConnectionError(SQLException e) {
+        if (isConnectionError(e)) {
+            broken = true;
+        }
+    }
+
+    void touch() {
+        lastUsedNanos = System.nanoTime();
+    }
+
+    // Every borrow gets its own handle, so a stale reference kept after close() cannot touch the next borrower's work
+    Connection lease() {
+        return (Connection) Proxy.newProxyInstance(
+            Connection.class.getClassLoader(),
+            new Class<?>[]{Connection.class},
+            new Lease()
+        );
+    }
+
+    void closePhysical() {
+        if (statements != null) {
+            statements.clear();
+        }
+        try {
+            physical.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    private class Lease implements InvocationHandler {
+
+        // The proxy can be checked or closed from a thread other than the one that borrowed it
+        private volatile boolean released;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!released) {
+                        released = true;
+                        if (statements != null) {
+                            statements.checkInAll();
+                        }
+                        pool.release(PooledConnection.this);
+                    }
+                    return null;
+                case "isClosed":
+                    return released || physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + physical + "]";
+                default:
+                    break;
+            }
+            if (released) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            if (statements != null && method.getName().equals("prepareStatement")) {
+                StatementCache.Key key = StatementCache.Key.of(method, args);
+                if (key != null) {
+                    return statements.prepare((Connection) proxy, key);
+                }
+            }
+            try {
+                return method.invoke(physical, args);
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof SQLException sqlException) {
+                    checkConnectionError(sqlException);
+                }
+                throw cause;
+            }
+        }
+    }
+
+    private static boolean isConnectionError(SQLException e) {
+        String state = e.getSQLState();
+        return state != null && state.startsWith("08");
+    }
+}
@@ -2,6 +2,7 @@ package ua.edu.ukma.clientserver.server.db;
 
 import ua.edu.ukma.clientserver.server.models.ProductGroup;
 
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -9,27 +10,45 @@ import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 public class ProductGroupRepository {
+    private static final KeysetPager PAGER = new KeysetPager("product_groups",
+        new KeysetPager.Column("id", "id", KeysetPager.ColumnType.INT, true),
+        new KeysetPager.Column("name", "name", KeysetPager.ColumnType.STRING, true),
+        new KeysetPager.Column("description", "description", KeysetPager.ColumnType.STRING, false)
+    );
+
     private final DbConnection dbConnection;
+    private final List<CatalogListener> listeners = new CopyOnWriteArrayList<>();
 
     public ProductGroupRepository(DbConnection dbConnection) {
         this.dbConnection = dbConnection;
     }
 
-    public ProductGroup createProductGroup(ProductGroup group) {
+    public void addListener(CatalogListener listener) {
+        listeners.add(listener);
+    }
+
+    public WriteResult<ProductGroup> createProductGroup(ProductGroup group) {
         String sql = "INSERT INTO product_groups(name, description) VALUES (?, ?)";
-        try (PreparedStatement statement = dbConnection.getConnection().prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        try (Connection connection = dbConnection.getConnection(); PreparedStatement statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             statement.setString(1, group.name());
             statement.setString(2, group.description());
             statement.executeUpdate();
             ResultSet rs = statement.getGeneratedKeys();
             if (rs.next()) {
                 int newId = rs.getInt(1);
-                return new ProductGroup(newId, group.name(), group.description());
+                ProductGroup createdGroup = new ProductGroup(newId, group.name(), group.description());
+                notifyListeners(listener -> listener.groupCreated(createdGroup));
+                return WriteResult.created(createdGroup);
             }
             throw new SQLException("Creating product group failed, no ID obtained.");
         } catch (SQLException e) {
+            if (WriteResult.isUniqueViolation(e)) {
+                return WriteResult.conflict();
+            }
             throw new RuntimeException(e);
         }
     }
@@ -37,8 +56,8 @@ public class ProductGroupRepository {
     public List<ProductGroup> getAllProductGroups() {
         String sql = "SELECT * FROM product_groups ORDER BY id";
         List<ProductGroup> groups = new ArrayList<>();
-        try (Statement statement = dbConnection.getConnection().createStatement()) {
-            ResultSet rs = statement.executeQuery(sql);
+        try (Connection connection = dbConnection.getConnection(); PreparedStatement statement = connection.prepareStatement(sql)) {
+            ResultSet rs = statement.executeQuery();
             while (rs.next()) {
                 groups.add(mapRowToProductGroup(rs));
             }
@@ -48,9 +67,17 @@ public class ProductGroupRepository {
         }
     }
 
+    public Page listProductGroups(PageRequest request) {
+        try (Connection connection = dbConnection.getConnection()) {
+            return PAGER.fetch(connection, request, null);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public Optional<ProductGroup> getProductGroupById(int id) {
         String sql = "SELECT * FROM product_groups WHERE id = ?";
-        try (PreparedStatement statement = dbConnection.getConnection().prepareStatement(sql)) {
+        try (Connection connection = dbConnection.getConnection(); PreparedStatement statement = connection.prepareStatement(sql)) {
             statement.setInt(1, id);
             ResultSet rs = statement.executeQuery();
             if (rs.next()) {
@@ -64,7 +91,7 @@ public class ProductGroupRepository {
 
     public Optional<ProductGroup> getProductGroupByName(String name) {
         String sql = "SELECT * FROM product_groups WHERE name = ?";
-        try (PreparedStatement statement = dbConnection.getConnection().prepareStatement(sql)) {
+        try (Connection connection = dbConnection.getConnection(); PreparedStatement statement = connection.prepareStatement(sql)) {
             statement.setString(1, name);
             ResultSet rs = statement.executeQuery();
             if (rs.next()) {
@@ -76,28 +103,45 @@ public class ProductGroupRepository {
         }
     }
 
-    public void updateProductGroup(ProductGroup group) {
+    public WriteResult<ProductGroup> updateProductGroup(ProductGroup group) {
         String sql = "UPDATE product_groups SET name = ?, description = ? WHERE id = ?";
-        try (PreparedStatement statement = dbConnection.getConnection().prepareStatement(sql)) {
+        try (Connection connection = dbConnection.getConnection(); PreparedStatement statement = connection.prepareStatement(sql)) {
             statement.setString(1, group.name());
             statement.setString(2, group.description());
             statement.setInt(3, group.id());
-            statement.executeUpdate();
+            if (statement.executeUpdate() == 0) {
+                return WriteResult.notFound();
+            }
+            notifyListeners(listener -> listener.groupUpdated(group));
+            return WriteResult.updated(group);
         } catch (SQLException e) {
+            if (WriteResult.isUniqueViolation(e)) {
+                return WriteResult.conflict();
+            }
             throw new RuntimeException(e);
         }
     }
 
-    public void deleteProductGroup(int id) {
+    public WriteResult<ProductGroup> deleteProductGroup(int id) {
         String sql = "DELETE FROM product_groups WHERE id = ?";
-        try (PreparedStatement statement = dbConnection.getConnection().prepareStatement(sql)) {
+        try (Connection connection = dbConnection.getConnection(); PreparedStatement statement = connection.prepareStatement(sql)) {
             statement.setInt(1, id);
-            statement.executeUpdate();
+            if (statement.executeUpdate() == 0) {
+                return WriteResult.notFound();
+            }
+            notifyListeners(listener -> listener.groupDeleted(id));
+            return WriteResult.deleted();
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
 
+    private void notifyListeners(Consumer<CatalogListener> event) {
+        for (CatalogListener listener : listeners) {
+            event.accept(listener);
+        }
+    }
+
     private ProductGroup mapRowToProductGroup(ResultSet rs) throws SQLException {
         int id = rs.getInt("id");
         String name = rs.getString("name");
@@ -1,26 +1,75 @@
 package ua.edu.ukma.clientserver.server.db;
 
 import ua.edu.ukma.clientserver.server.models.Product;
+import ua.edu.ukma.clientserver.server.models.StockMovement;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
 
 public class ProductRepository {
+    private static final int EXPORT_FETCH_SIZE = 500;
+    private static final int IMPORT_BATCH_SIZE = 500;
+    private static final int STOCK_LOCK_STRIPES = 64;
+    private static final KeysetPager PAGER = new KeysetPager("products",
+        new KeysetPager.Column("id", "id", KeysetPager.ColumnType.INT, true),
+        new KeysetPager.Column("groupId", "group_id", KeysetPager.ColumnType.INT, false),
+        new KeysetPager.Column("name", "name", KeysetPager.ColumnType.STRING, true),
+        new KeysetPager.Column("description", "description", KeysetPager.ColumnType.STRING, false),
+        new KeysetPager.Column("manufacturer", "manufacturer", KeysetPager.ColumnType.STRING, false),
+        new KeysetPager.Column("quantity", "quantity", KeysetPager.ColumnType.INT, true),
+        new KeysetPager.Column("price", "price", KeysetPager.ColumnType.DECIMAL, true)
+    );
+
+    private static final StockJournal.Barrier NO_BARRIER = () -> {
+    };
+
     private final DbConnection dbConnection;
+    private final List<CatalogListener> listeners = new CopyOnWriteArrayList<>();
+    // Otherwise sales and restocks go through here, serialised per product
+    private final StockUpdateCoalescer stockUpdates;
+    // Set in write-behind mode; sales and restocks then go through it
+    private volatile StockJournal stockJournal;
+    // Stock writes that have started, and those whose stockChanged events have all been delivered
+    private final AtomicLong stockWritesStarted = new AtomicLong();
+    private final AtomicLong stockWritesEnded = new AtomicLong();
 
     public ProductRepository(DbConnection dbConnection) {
         this.dbConnection = dbConnection;
+        this.stockUpdates = new StockUpdateCoalescer(STOCK_LOCK_STRIPES, this::applyQueuedMovements);
+    }
+
+    public void addListener(CatalogListener listener) {
+        listeners.add(listener);
     }
 
-    public Product createProduct(Product product) {
+    public void attachStockJournal(StockJournal stockJournal) {
+        this.stockJournal = stockJournal;
+    }
+
+    public WriteResult<Product> createProduct(Product product) {
         String sql = "INSERT INTO products(group_id, name, description, manufacturer, quantity, price) VALUES (?, ?, ?, ?, ?, ?)";
-        try (PreparedStatement statement = dbConnection.getConnection().prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        try (Connection connection = dbConnection.getConnection(); PreparedStatement statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             statement.setInt(1, product.groupId());
             statement.setString(2, product.name());
             statement.setString(3, product.description());
@@ -31,10 +80,15 @@ public class ProductRepository {
             ResultSet rs = statement.getGeneratedKeys();
             if (rs.next()) {
                 int newId = rs.getInt(1);
-                return new Product(newId, product.groupId(), product.name(), product.description(), product.manufacturer(), product.quantity(), product.price());
+                Product createdProduct = new Product(newId, product.groupId(), product.name(), product.description(), product.manufacturer(), product.quantity(), product.price());
+                notifyListeners(listener -> listener.productCreated(createdProduct));
+                return WriteResult.created(createdProduct);
             }
             throw new SQLException("Creating product failed, no ID obtained.");
         } catch (SQLException e) {
+            if (WriteResult.isUniqueViolation(e)) {
+                return WriteResult.conflict();
+            }
             throw new RuntimeException(e);
         }
     }
@@ -42,8 +96,8 @@ public class ProductRepository {
     public List<Product> getAllProducts() {
         String sql = "SELECT * FROM products ORDER BY id";
         List<Product> products = new ArrayList<>();
-        try (Statement statement = dbConnection.getConnection().createStatement()) {
-            ResultSet rs = statement.executeQuery(sql);
+        try (Connection connection = dbConnection.getConnection(); PreparedStatement statement = connection.prepareStatement(sql)) {
+            ResultSet rs = statement.executeQuery();
             while (rs.next()) {
                 products.add(mapRowToProduct(rs));
             }
@@ -53,9 +107,72 @@ public class ProductRepository {
         }
     }
 
+    // groupId may be null to page through every product
+    public Page listProducts(Integer groupId, PageRequest request) {
+        try (Connection connection = dbConnection.getConnection()) {
+            if (groupId == null) {
+                return PAGER.fetch(connection, request, null);
+            }
+            return PAGER.fetch(connection, request, "group_id = ?", groupId);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void streamAllProducts(RowConsumer<Product> consumer) throws IOException {
+        String sql = "SELECT * FROM products ORDER BY id";
+        try (Connection connection = dbConnection.getConnection(); PreparedStatement statement = connection.prepareStatement(sql)) {
+            // Postgres only reads through a server-side cursor inside a transaction and with a fetch size set
+            connection.setAutoCommit(false);
+            statement.setFetchSize(EXPORT_FETCH_SIZE);
+            ResultSet rs = statement.executeQuery();
+            while (rs.next()) {
+                consumer.accept(mapRowToProduct(rs));
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public int importProducts(Iterator<Product> products) {
+        String sql = "INSERT INTO products(group_id, name, description, manufacturer, quantity, price) VALUES (?, ?, ?, ?, ?, ?)";
+        int imported = 0;
+        try (Connection connection = dbConnection.getConnection(); PreparedStatement statement = connection.prepareStatement(sql)) {
+            connection.setAutoCommit(false);
+            int pending = 0;
+            while (products.hasNext()) {
+                Product product = products.next();
+                statement.setInt(1, product.groupId());
+                statement.setString(2, product.name());
+                statement.setString(3, product.description());
+                statement.setString(4, product.manufacturer());
+                statement.setInt(5, product.quantity());
+                statement.setBigDecimal(6, product.price());
+                statement.addBatch();
+                imported++;
+                if (++pending == IMPORT_BATCH_SIZE) {
+                    statement.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                statement.executeBatch();
+            }
+            connection.commit();
+            notifyListeners(CatalogListener::productsImported);
+            return imported;
+        } catch (SQLException e) {
+            if (isConstraintViolation(e)) {
+                throw new IllegalArgumentException("Import failed near row " + imported + ": " + e.getMessage(), e);
+            }
+            throw new RuntimeException(e);
+        }
+    }
+
     public Optional<Product> getProductById(int id) {
         String sql = "SELECT * FROM products WHERE id = ?";
-        try (PreparedStatement statement = dbConnection.getConnection().prepareStatement(sql)) {
+        try (Connection connection = dbConnection.getConnection(); PreparedStatement statement = connection.prepareStatement(sql)) {
             statement.setInt(1, id);
             ResultSet rs = statement.executeQuery();
             if (rs.next()) {
@@ -69,7 +186,7 @@ public class ProductRepository {
 
     public Optional<Product> getProductByName(String name) {
         String sql = "SELECT * FROM products WHERE name = ?";
-        try (PreparedStatement statement = dbConnection.getConnection().prepareStatement(sql)) {
+        try (Connection connection = dbConnection.getConnection(); PreparedStatement statement = connection.prepareStatement(sql)) {
             statement.setString(1, name);
             ResultSet rs = statement.executeQuery();
             if (rs.next()) {
@@ -81,9 +198,10 @@ public class ProductRepository {
         }
     }
 
-    public void updateProduct(Product product) {
+    public WriteResult<Product> updateProduct(Product product) {
         String sql = "UPDATE products SET group_id = ?, name = ?, description = ?, manufacturer = ?, quantity = ?, price = ? WHERE id = ?";
-        try (PreparedStatement statement = dbConnection.getConnection().prepareStatement(sql)) {
+        StockJournal.Barrier barrier = stockBarrier();
+        try (Connection connection = dbConnection.getConnection(); PreparedStatement statement = connection.prepareStatement(sql)) {
             statement.setInt(1, product.groupId());
             statement.setString(2, product.name());
             statement.setString(3, product.description());
@@ -91,26 +209,138 @@ public class ProductRepository {
             statement.setInt(5, product.quantity());
             statement.setBigDecimal(6, product.price());
             statement.setInt(7, product.id());
-            statement.executeUpdate();
+            if (statement.executeUpdate() == 0) {
+                return WriteResult.notFound();
+            }
+            notifyListeners(listener -> listener.productUpdated(product));
+            return WriteResult.updated(product);
         } catch (SQLException e) {
+            if (WriteResult.isUniqueViolation(e)) {
+                return WriteResult.conflict();
+            }
             throw new RuntimeException(e);
+        } finally {
+            barrier.close();
         }
     }
 
-    public void deleteProduct(int id) {
+    public WriteResult<Product> deleteProduct(int id) {
         String sql = "DELETE FROM products WHERE id = ?";
-        try (PreparedStatement statement = dbConnection.getConnection().prepareStatement(sql)) {
+        StockJournal.Barrier barrier = stockBarrier();
+        try (Connection connection = dbConnection.getConnection(); PreparedStatement statement = connection.prepareStatement(sql)) {
             statement.setInt(1, id);
-            statement.executeUpdate();
+            if (statement.executeUpdate() == 0) {
+                return WriteResult.notFound();
+            }
+            notifyListeners(listener -> listener.productDeleted(id));
+            return WriteResult.deleted();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        } finally {
+            barrier.close();
+        }
+    }
+
+    public StockUpdateResult addStock(int id, int amount) {
+        StockJournal journal = stockJournal;
+        if (journal != null) {
+            return journal.append(id, amount);
+        }
+        return stockUpdates.apply(id, amount);
+    }
+
+    public StockUpdateResult sellStock(int id, int amount) {
+        StockJournal journal = stockJournal;
+        if (journal != null) {
+            return journal.append(id, -amount);
+        }
+        return stockUpdates.apply(id, -amount);
+    }
+
+    public StockUpdateStats getStockUpdateStats() {
+        return stockUpdates.getStats();
+    }
+
+    // -1 while a stock write is between its UPDATE and the end of its stockChanged events, so listeners that
+    // rebuild from a scan can tell whether a delta might reach them after the scan already counted it.
+    // Anything read between two equal epochs can neither miss nor repeat a stock delta.
+    public long stockWriteEpoch() {
+        // Ended before started: equal values mean nothing was in flight, and nothing started in between
+        long ended = stockWritesEnded.get();
+        return stockWritesStarted.get() == ended ? ended : -1;
+    }
+
+    public List<StockMovementResult> applyStockMovements(List<StockMovement> movements, boolean atomic) {
+        String sql = "UPDATE products SET quantity = quantity + ? WHERE id = ? AND quantity + ? >= 0";
+        StockJournal.Barrier barrier = stockBarrier();
+        stockWritesStarted.incrementAndGet();
+        try (Connection connection = dbConnection.getConnection(); PreparedStatement statement = connection.prepareStatement(sql)) {
+            // Any exit without commit is rolled back when the pool takes the connection back
+            connection.setAutoCommit(false);
+            // Rows are locked in id order, as the coalescer locks them, so the two cannot deadlock. The sort is
+            // stable: movements of one product still apply in the order they were given.
+            int[] order = IntStream.range(0, movements.size()).boxed()
+                .sorted(Comparator.comparingInt(i -> movements.get(i).productId()))
+                .mapToInt(Integer::intValue)
+                .toArray();
+            for (int i : order) {
+                StockMovement movement = movements.get(i);
+                statement.setInt(1, movement.delta());
+                statement.setInt(2, movement.productId());
+                statement.setInt(3, movement.delta());
+                statement.addBatch();
+            }
+            int[] batchCounts = statement.executeBatch();
+            int[] counts = new int[movements.size()];
+            for (int i = 0; i < order.length; i++) {
+                counts[order[i]] = batchCounts[i];
+            }
+
+            List<Integer> failedIds = new ArrayList<>();
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 0) {
+                    failedIds.add(movements.get(i).productId());
+                }
+            }
+            Set<Integer> existingIds = failedIds.isEmpty() ? Set.of() : findExistingIds(connection, failedIds);
+            boolean rollBack = atomic && !failedIds.isEmpty();
+            if (rollBack) {
+                connection.rollback();
+            } else {
+                connection.commit();
+            }
+
+            List<StockMovementResult> results = new ArrayList<>(movements.size());
+            for (int i = 0; i < counts.length; i++) {
+                StockMovement movement = movements.get(i);
+                StockUpdateResult.Status status;
+                if (counts[i] == 0) {
+                    status = existingIds.contains(movement.productId()) ? StockUpdateResult.Status.INSUFFICIENT_STOCK : StockUpdateResult.Status.NOT_FOUND;
+                } else {
+                    status = rollBack ? StockUpdateResult.Status.ROLLED_BACK : StockUpdateResult.Status.UPDATED;
+                }
+                results.add(new StockMovementResult(movement.productId(), movement.delta(), status));
+            }
+            if (!rollBack) {
+                for (StockMovementResult result : results) {
+                    if (result.status() == StockUpdateResult.Status.UPDATED) {
+                        notifyListeners(listener -> listener.stockChanged(result.productId(), result.delta()));
+                    }
+                }
+            }
+            return results;
         } catch (SQLException e) {
             throw new RuntimeException(e);
+        } finally {
+            barrier.close();
+            stockWritesEnded.incrementAndGet();
         }
     }
 
     public List<Product> findProducts(String query) {
         String sql = "SELECT * FROM products WHERE name ILIKE ? OR description ILIKE ? OR manufacturer ILIKE ?";
         List<Product> products = new ArrayList<>();
-        try (PreparedStatement statement = dbConnection.getConnection().prepareStatement(sql)) {
+        try (Connection connection = dbConnection.getConnection(); PreparedStatement statement = connection.prepareStatement(sql)) {
             String searchQuery = "%" + query + "%";
             statement.setString(1, searchQuery);
             statement.setString(2, searchQuery);
@@ -128,7 +358,7 @@ public class ProductRepository {
     public List<Product> getProductsByGroupId(int groupId) {
         String sql = "SELECT * FROM products WHERE group_id = ? ORDER BY id";
         List<Product> products = new ArrayList<>();
-        try (PreparedStatement statement = dbConnection.getConnection().prepareStatement(sql)) {
+        try (Connection connection = dbConnection.getConnection(); PreparedStatement statement = connection.prepareStatement(sql)) {
             statement.setInt(1, groupId);
             ResultSet rs = statement.executeQuery();
             while (rs.next()) {
@@ -142,8 +372,8 @@ public class ProductRepository {
 
     public BigDecimal getTotalValue() {
         String sql = "SELECT SUM(quantity * price) AS total_value FROM products";
-        try (Statement statement = dbConnection.getConnection().createStatement()) {
-            ResultSet rs = statement.executeQuery(sql);
+        try (Connection connection = dbConnection.getConnection(); PreparedStatement statement = connection.prepareStatement(sql)) {
+            ResultSet rs = statement.executeQuery();
             if (rs.next()) {
                 return rs.getBigDecimal("total_value");
             }
@@ -155,7 +385,7 @@ public class ProductRepository {
 
     public BigDecimal getTotalValueByGroupId(int groupId) {
         String sql = "SELECT SUM(quantity * price) AS total_value FROM products WHERE group_id = ?";
-        try (PreparedStatement statement = dbConnection.getConnection().prepareStatement(sql)) {
+        try (Connection connection = dbConnection.getConnection(); PreparedStatement statement = connection.prepareStatement(sql)) {
             statement.setInt(1, groupId);
             ResultSet rs = statement.executeQuery();
             if (rs.next()) {
@@ -167,6 +397,211 @@ public class ProductRepository {
         }
     }
 
+    // Called by the stock journal's flusher. The movements were checked when they were journaled, so they
+    // apply as they are, in one transaction with the journal sequence they bring the table up to.
+    // A product deleted since simply takes no update.
+    protected void applyJournaledDeltas(Map<Integer, Integer> deltas, long journalSeq) {
+        String sql = "UPDATE products SET quantity = quantity + ? WHERE id = ?";
+        stockWritesStarted.incrementAndGet();
+        try {
+            try (Connection connection = dbConnection.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(sql);
+                 PreparedStatement checkpoint = connection.prepareStatement("UPDATE stock_journal_checkpoint SET applied_seq = ? WHERE id = 1")) {
+                connection.setAutoCommit(false);
+                for (Map.Entry<Integer, Integer> delta : deltas.entrySet()) {
+                    if (delta.getValue() != 0) {
+                        statement.setInt(1, delta.getValue());
+                        statement.setInt(2, delta.getKey());
+                        statement.addBatch();
+                    }
+                }
+                statement.executeBatch();
+                checkpoint.setLong(1, journalSeq);
+                checkpoint.executeUpdate();
+                connection.commit();
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+            deltas.forEach((productId, delta) -> {
+                if (delta != 0) {
+                    notifyListeners(listener -> listener.stockChanged(productId, delta));
+                }
+            });
+        } finally {
+            stockWritesEnded.incrementAndGet();
+        }
+    }
+
+    long readJournalCheckpoint() {
+        try (Connection connection = dbConnection.getConnection();
+             PreparedStatement select = connection.prepareStatement("SELECT applied_seq FROM stock_journal_checkpoint WHERE id = 1")) {
+            ResultSet rs = select.executeQuery();
+            if (rs.next()) {
+                return rs.getLong(1);
+            }
+            try (PreparedStatement insert = connection.prepareStatement("INSERT INTO stock_journal_checkpoint(id, applied_seq) VALUES (1, 0)")) {
+                insert.executeUpdate();
+            }
+            return 0;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // Straight from the table: the stock journal and reservations must not start from a cached copy
+    public OptionalInt loadQuantity(int id) {
+        try (Connection connection = dbConnection.getConnection(); PreparedStatement statement = connection.prepareStatement("SELECT quantity FROM products WHERE id = ?")) {
+            statement.setInt(1, id);
+            ResultSet rs = statement.executeQuery();
+            return rs.next() ? OptionalInt.of(rs.getInt(1)) : OptionalInt.empty();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // Called by the coalescer with the stripe's lock held
+    private void applyQueuedMovements(List<StockUpdateCoalescer.QueuedMovement> movements) {
+        stockWritesStarted.incrementAndGet();
+        try {
+            applyQueuedBatch(movements);
+        } finally {
+            stockWritesEnded.incrementAndGet();
+        }
+    }
+
+    // A lone movement is one guarded UPDATE; several that queued up together are checked in arrival order
+    // against the locked rows and written back once per product.
+    private void applyQueuedBatch(List<StockUpdateCoalescer.QueuedMovement> movements) {
+        if (movements.size() == 1) {
+            StockUpdateCoalescer.QueuedMovement movement = movements.get(0);
+            movement.complete(applyMovement(movement.productId(), movement.delta()));
+            return;
+        }
+        Map<Integer, List<StockUpdateCoalescer.QueuedMovement>> byProduct = new TreeMap<>();
+        for (StockUpdateCoalescer.QueuedMovement movement : movements) {
+            byProduct.computeIfAbsent(movement.productId(), productId -> new ArrayList<>()).add(movement);
+        }
+        Map<Integer, Integer> deltas = new HashMap<>();
+        try (Connection connection = dbConnection.getConnection();
+             PreparedStatement select = connection.prepareStatement("SELECT quantity FROM products WHERE id = ? FOR UPDATE");
+             PreparedStatement update = connection.prepareStatement("UPDATE products SET quantity = ? WHERE id = ?")) {
+            connection.setAutoCommit(false);
+            List<StockUpdateCoalescer.QueuedMovement> decided = new ArrayList<>();
+            List<StockUpdateResult> results = new ArrayList<>();
+            // Rows are locked in id order, like applyStockMovements locks them
+            for (Map.Entry<Integer, List<StockUpdateCoalescer.QueuedMovement>> product : byProduct.entrySet()) {
+                int productId = product.getKey();
+                select.setInt(1, productId);
+                ResultSet rs = select.executeQuery();
+                if (!rs.next()) {
+                    for (StockUpdateCoalescer.QueuedMovement movement : product.getValue()) {
+                        decided.add(movement);
+                        results.add(StockUpdateResult.notFound());
+                    }
+                    continue;
+                }
+                int quantity = rs.getInt(1);
+                int delta = 0;
+                for (StockUpdateCoalescer.QueuedMovement movement : product.getValue()) {
+                    decided.add(movement);
+                    if (quantity + movement.delta() < 0) {
+                        results.add(StockUpdateResult.insufficientStock());
+                    } else {
+                        quantity += movement.delta();
+                        delta += movement.delta();
+                        results.add(StockUpdateResult.updated(quantity));
+                    }
+                }
+                if (delta != 0) {
+                    update.setInt(1, quantity);
+                    update.setInt(2, productId);
+                    update.addBatch();
+                    deltas.put(productId, delta);
+                }
+            }
+            if (!deltas.isEmpty()) {
+                update.executeBatch();
+            }
+            connection.commit();
+            // Only once committed: a failed transaction fails every movement in it
+            for (int i = 0; i < decided.size(); i++) {
+                decided.get(i).complete(results.get(i));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        deltas.forEach((productId, delta) -> notifyListeners(listener -> listener.stockChanged(productId, delta)));
+    }
+
+    // The stock check is part of the UPDATE, so a sale cannot pass it on a quantity another writer just changed
+    private StockUpdateResult applyMovement(int id, int delta) {
+        String sql = "UPDATE products SET quantity = quantity + ? WHERE id = ? AND quantity + ? >= 0";
+        try (Connection connection = dbConnection.getConnection(); PreparedStatement statement = connection.prepareStatement(sql, new String[]{"quantity"})) {
+            statement.setInt(1, delta);
+            statement.setInt(2, id);
+            statement.setInt(3, delta);
+            if (statement.executeUpdate() == 0) {
+                return delta < 0 && productExists(connection, id) ? StockUpdateResult.insufficientStock() : StockUpdateResult.notFound();
+            }
+            int quantity = readReturnedQuantity(statement);
+            notifyListeners(listener -> listener.stockChanged(id, delta));
+            return StockUpdateResult.updated(quantity);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private StockJournal.Barrier stockBarrier() {
+        StockJournal journal = stockJournal;
+        return journal == null ? NO_BARRIER : journal.barrier();
+    }
+
+    private void notifyListeners(Consumer<CatalogListener> event) {
+        for (CatalogListener listener : listeners) {
+            event.accept(listener);
+        }
+    }
+
+    private int readReturnedQuantity(PreparedStatement statement) throws SQLException {
+        ResultSet rs = statement.getGeneratedKeys();
+        if (rs.next()) {
+            return rs.getInt(1);
+        }
+        throw new SQLException("Updating stock failed, no quantity returned.");
+    }
+
+    private boolean productExists(Connection connection, int id) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT 1 FROM products WHERE id = ?")) {
+            statement.setInt(1, id);
+            return statement.executeQuery().next();
+        }
+    }
+
+    private Set<Integer> findExistingIds(Connection connection, List<Integer> ids) throws SQLException {
+        String placeholders = String.join(", ", Collections.nCopies(ids.size(), "?"));
+        try (PreparedStatement statement = connection.prepareStatement("SELECT id FROM products WHERE id IN (" + placeholders + ")")) {
+            for (int i = 0; i < ids.size(); i++) {
+                statement.setInt(i + 1, ids.get(i));
+            }
+            Set<Integer> existingIds = new HashSet<>();
+            ResultSet rs = statement.executeQuery();
+            while (rs.next()) {
+                existingIds.add(rs.getInt(1));
+            }
+            return existingIds;
+        }
+    }
+
+    private static boolean isConstraintViolation(SQLException e) {
+        for (SQLException current = e; current != null; current = current.getNextException()) {
+            String state = current.getSQLState();
+            if (state != null && state.startsWith("23")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private Product mapRowToProduct(ResultSet rs) throws SQLException {
         int id = rs.getInt("id");
         int groupId = rs.getInt("group_id");
@@ -0,0 +1,69 @@
+package ua.edu.ukma.clientserver.server.db;
+
+import ua.edu.ukma.clientserver.server.models.Reservation;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+// Storage behind the in-memory stock holds; nothing here is on the request path
+public class ReservationRepository {
+
+    private final DbConnection dbConnection;
+
+    public ReservationRepository(DbConnection dbConnection) {
+        this.dbConnection = dbConnection;
+    }
+
+    // Drops holds that expired while the server was down and returns the rest
+    public List<Reservation> loadOpenReservations(long nowMillis) {
+        List<Reservation> reservations = new ArrayList<>();
+        try (Connection connection = dbConnection.getConnection();
+             PreparedStatement delete = connection.prepareStatement("DELETE FROM stock_reservations WHERE expires_at <= ?");
+             PreparedStatement select = connection.prepareStatement("SELECT * FROM stock_reservations")) {
+            delete.setLong(1, nowMillis);
+            delete.executeUpdate();
+            ResultSet rs = select.executeQuery();
+            while (rs.next()) {
+                reservations.add(new Reservation(rs.getString("id"), rs.getInt("product_id"), rs.getInt("amount"), rs.getLong("expires_at")));
+            }
+            return reservations;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // One transaction for both. A hold on a product deleted in the meantime is not inserted.
+    public void saveChanges(Collection<Reservation> opened, Collection<String> closedIds) {
+        String insertSql = "INSERT INTO stock_reservations(id, product_id, amount, expires_at) SELECT ?, id, ?, ? FROM products WHERE id = ?";
+        try (Connection connection = dbConnection.getConnection();
+             PreparedStatement insert = connection.prepareStatement(insertSql);
+             PreparedStatement delete = connection.prepareStatement("DELETE FROM stock_reservations WHERE id = ?")) {
+            connection.setAutoCommit(false);
+            for (Reservation reservation : opened) {
+                insert.setString(1, reservation.id());
+                insert.setInt(2, reservation.amount());
+                insert.setLong(3, reservation.expiresAt());
+                insert.setInt(4, reservation.productId());
+                insert.addBatch();
+            }
+            for (String id : closedIds) {
+                delete.setString(1, id);
+                delete.addBatch();
+            }
+            if (!opened.isEmpty()) {
+                insert.executeBatch();
+            }
+            if (!closedIds.isEmpty()) {
+                delete.executeBatch();
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
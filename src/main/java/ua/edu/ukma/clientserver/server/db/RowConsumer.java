@@ -0,0 +1,8 @@
+package ua.edu.ukma.clientserver.server.db;
+
+import java.io.IOException;
+
+@FunctionalInterface
+public interface RowConsumer<T> {
+    void accept(T row) throws IOException;
+}
@@ -0,0 +1,227 @@
+package ua.edu.ukma.clientserver.server.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+// Prepared statements of one physical connection, kept open across borrows so repeated SQL is parsed and
+// planned once per connection. Closing a handed-out statement returns it here instead; statements whose
+// settings the caller changed are closed for real. Only the current borrower touches the cache, so it needs no locking.
+class StatementCache {
+
+    // Calls that change how a statement behaves on its next use; the statement is not reused after them
+    private static final Set<String> RECONFIGURING_METHODS = Set.of(
+        "setFetchSize", "setFetchDirection", "setMaxRows", "setLargeMaxRows", "setMaxFieldSize",
+        "setQueryTimeout", "setEscapeProcessing", "setCursorName", "setPoolable", "closeOnCompletion"
+    );
+
+    private final PooledConnection owner;
+    private final DbConnection pool;
+    private final int maxSize;
+    // Access order, so iteration starts at the least recently used statement
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    StatementCache(PooledConnection owner, DbConnection pool, int maxSize) {
+        this.owner = owner;
+        this.pool = pool;
+        this.maxSize = maxSize;
+    }
+
+    PreparedStatement prepare(Connection handle, Key key) throws SQLException {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.checkout == null) {
+            pool.statementCacheHit();
+            return entry.checkOut(handle);
+        }
+        pool.statementCacheMiss();
+        PreparedStatement statement = key.prepare(owner.physical());
+        if (entry != null) {
+            // The same SQL is already open further up the borrower's stack; this copy is not kept
+            return statement;
+        }
+        entry = new Entry(key, statement);
+        entries.put(key, entry);
+        evictOverflow();
+        return entry.checkOut(handle);
+    }
+
+    // Called when the borrower returns the connection: statements it did not close go back into the cache
+    void checkInAll() {
+        for (Entry entry : new ArrayList<>(entries.values())) {
+            if (entry.checkout != null) {
+                entry.checkout.close();
+            }
+        }
+    }
+
+    void clear() {
+        for (Entry entry : entries.values()) {
+            closeQuietly(entry.statement);
+        }
+        entries.clear();
+    }
+
+    private void evictOverflow() {
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (entries.size() > maxSize && eldest.hasNext()) {
+            Entry entry = eldest.next();
+            if (entry.checkout == null) {
+                eldest.remove();
+                closeQuietly(entry.statement);
+                pool.statementCacheEviction();
+            }
+        }
+    }
+
+    private void remove(Entry entry) {
+        entries.remove(entry.key);
+        closeQuietly(entry.statement);
+    }
+
+    private static void closeQuietly(Statement statement) {
+        try {
+            statement.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    // The prepareStatement overloads that are cached; the generated-keys variants prepare different statements
+    record Key(String sql, int autoGeneratedKeys, List<String> columnNames) {
+
+        static Key of(Method method, Object[] args) {
+            Class<?>[] types = method.getParameterTypes();
+            if (types.length == 1) {
+                return new Key((String) args[0], Statement.NO_GENERATED_KEYS, null);
+            }
+            if (types.length == 2 && types[1] == int.class) {
+                return new Key((String) args[0], (Integer) args[1], null);
+            }
+            if (types.length == 2 && types[1] == String[].class) {
+                return new Key((String) args[0], Statement.RETURN_GENERATED_KEYS, List.of((String[]) args[1]));
+            }
+            return null;
+        }
+
+        PreparedStatement prepare(Connection connection) throws SQLException {
+            if (columnNames != null) {
+                return connection.prepareStatement(sql, columnNames.toArray(String[]::new));
+            }
+            return autoGeneratedKeys == Statement.NO_GENERATED_KEYS
+                ? connection.prepareStatement(sql)
+                : connection.prepareStatement(sql, autoGeneratedKeys);
+        }
+    }
+
+    private final class Entry {
+        private final Key key;
+        private final PreparedStatement statement;
+        private Checkout checkout;
+
+        Entry(Key key, PreparedStatement statement) {
+            this.key = key;
+            this.statement = statement;
+        }
+
+        PreparedStatement checkOut(Connection handle) {
+            checkout = new Checkout(this, handle);
+            return (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class},
+                checkout
+            );
+        }
+    }
+
+    // One use of a cached statement; like a lease, a handle kept after close() cannot reach the next user's statement
+    private final class Checkout implements InvocationHandler {
+        private final Entry entry;
+        private final Connection handle;
+        private final List<ResultSet> results = new ArrayList<>(1);
+        private boolean closed;
+        private boolean reconfigured;
+        private boolean batched;
+
+        Checkout(Entry entry, Connection handle) {
+            this.entry = entry;
+            this.handle = handle;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    close();
+                    return null;
+                case "isClosed":
+                    return closed || entry.statement.isClosed();
+                case "getConnection":
+                    return handle;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "CachedStatement[" + entry.statement + "]";
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("Statement has already been closed");
+            }
+            if (RECONFIGURING_METHODS.contains(method.getName())) {
+                reconfigured = true;
+            } else if (method.getName().equals("addBatch")) {
+                batched = true;
+            }
+            Object result;
+            try {
+                result = method.invoke(entry.statement, args);
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof SQLException sqlException) {
+                    owner.checkConnectionError(sqlException);
+                }
+                throw cause;
+            }
+            // Repositories leave result sets to the statement's close, which no longer happens on return
+            if (result instanceof ResultSet resultSet) {
+                results.add(resultSet);
+            }
+            return result;
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            entry.checkout = null;
+            try {
+                for (ResultSet resultSet : results) {
+                    resultSet.close();
+                }
+                if (reconfigured || owner.isBroken()) {
+                    remove(entry);
+                    return;
+                }
+                entry.statement.clearParameters();
+                if (batched) {
+                    entry.statement.clearBatch();
+                }
+            } catch (SQLException e) {
+                remove(entry);
+            }
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package ua.edu.ukma.clientserver.server.db;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32C;
+
+// Write-behind for stock movements. A sale or restock is checked against the quantity the journal has seen,
+// appended to a memory-mapped file and acknowledged once that file is synced; concurrent appends share one
+// sync. A background flusher applies the movements to products.quantity in batches, one transaction each,
+// together with the last journal sequence it applied, so replaying the file after a crash skips what the
+// database already has. Reads and listeners see a movement once it has been flushed.
+public class StockJournal implements CatalogListener, AutoCloseable {
+
+    // seq (8), appended at millis (8), product id (4), delta (4), CRC32C of the preceding 24 bytes (4), padding (4)
+    static final int RECORD_SIZE = 32;
+    private static final int CHECKSUMMED_BYTES = 24;
+
+    private final ProductRepository repository;
+    private final StockJournalConfig config;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacityBytes;
+    private final ScheduledExecutorService flusher;
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    // Appends hold it shared; writes that set quantities in the database directly hold it exclusively
+    private final ReentrantReadWriteLock barrier = new ReentrantReadWriteLock();
+    // Quantity per product including every journaled movement; only valid while nothing else writes quantities
+    private final Map<Integer, Slot> slots = new ConcurrentHashMap<>();
+
+    // Lock order: flushLock, then forceLock, then appendLock
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Object forceLock = new Object();
+    private final Object appendLock = new Object();
+
+    // Guarded by appendLock
+    private long lastSeq;
+    private int position;
+    // Written under forceLock
+    private volatile long durableSeq;
+    private volatile int durableOffset;
+    // Written under flushLock
+    private volatile long appliedSeq;
+    private volatile int appliedOffset;
+
+    private final LongAdder appended = new LongAdder();
+    private final LongAdder applied = new LongAdder();
+    private final LongAdder syncs = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushFailures = new LongAdder();
+    private long replayed;
+
+    private StockJournal(ProductRepository repository, StockJournalConfig config) throws IOException {
+        this.repository = repository;
+        this.config = config;
+        this.capacityBytes = Math.multiplyExact(config.capacity(), RECORD_SIZE);
+        this.channel = FileChannel.open(config.path(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacityBytes);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stock-journal-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Applies what an earlier run journaled but did not flush, then starts the flusher
+    public static StockJournal open(ProductRepository repository, StockJournalConfig config) throws IOException {
+        StockJournal journal = new StockJournal(repository, config);
+        try {
+            journal.replay();
+        } catch (RuntimeException e) {
+            journal.channel.close();
+            throw e;
+        }
+        long period = config.flushInterval().toMillis();
+        journal.flusher.scheduleWithFixedDelay(journal::flushQuietly, period, period, TimeUnit.MILLISECONDS);
+        return journal;
+    }
+
+    public StockUpdateResult append(int productId, int delta) {
+        long seq;
+        int quantity;
+        barrier.readLock().lock();
+        try {
+            Slot slot = slot(productId);
+            if (slot == null) {
+                return StockUpdateResult.notFound();
+            }
+            synchronized (slot) {
+                if (slot.quantity + delta < 0) {
+                    return StockUpdateResult.insufficientStock();
+                }
+                seq = write(productId, delta);
+                slot.quantity += delta;
+                quantity = slot.quantity;
+            }
+        } finally {
+            barrier.readLock().unlock();
+        }
+        awaitDurable(seq);
+        return StockUpdateResult.updated(quantity);
+    }
+
+    // Held across a write that sets quantities in the database directly: journaled movements are applied
+    // first, and the quantities the journal checks against are reloaded afterwards
+    public Barrier barrier() {
+        barrier.writeLock().lock();
+        try {
+            drain();
+        } catch (RuntimeException e) {
+            barrier.writeLock().unlock();
+            throw e;
+        }
+        return () -> {
+            slots.clear();
+            barrier.writeLock().unlock();
+        };
+    }
+
+    // Products of a deleted group are gone; stop accepting movements for them
+    @Override
+    public void groupDeleted(int groupId) {
+        // Taking and releasing the barrier drops the slots, which is all that is needed
+        barrier().close();
+    }
+
+    public StockJournalStats getStats() {
+        long lag = Math.max(0, appended.sum() - applied.sum());
+        long lagMillis = 0;
+        int oldest = appliedOffset;
+        if (lag > 0 && oldest + RECORD_SIZE <= capacityBytes) {
+            lagMillis = Math.max(0, System.currentTimeMillis() - buffer.getLong(oldest + 8));
+        }
+        return new StockJournalStats(appended.sum(), applied.sum(), lag, lagMillis, syncs.sum(), flushes.sum(), flushFailures.sum(), replayed);
+    }
+
+    // Stops the flusher after applying everything journaled
+    @Override
+    public void close() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+            drain();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeChannel();
+        }
+    }
+
+    // As if the process died: nothing more reaches the database, the file keeps what was synced
+    void closeWithoutFlushing() {
+        flusher.shutdownNow();
+        closeChannel();
+    }
+
+    private void closeChannel() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Slot slot(int productId) {
+        Slot slot = slots.get(productId);
+        if (slot != null) {
+            return slot;
+        }
+        // Nothing is journaled for a product without a slot, so the database quantity is current
+        OptionalInt quantity = repository.loadQuantity(productId);
+        if (quantity.isEmpty()) {
+            return null;
+        }
+        Slot loaded = new Slot(quantity.getAsInt());
+        Slot raced = slots.putIfAbsent(productId, loaded);
+        return raced == null ? loaded : raced;
+    }
+
+    private long write(int productId, int delta) {
+        synchronized (appendLock) {
+            while (position + RECORD_SIZE > capacityBytes) {
+                requestFlush();
+                try {
+                    appendLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for stock journal space", e);
+                }
+            }
+            long seq = ++lastSeq;
+            int offset = position;
+            buffer.putLong(offset, seq);
+            buffer.putLong(offset + 8, System.currentTimeMillis());
+            buffer.putInt(offset + 16, productId);
+            buffer.putInt(offset + 20, delta);
+            buffer.putInt(offset + CHECKSUMMED_BYTES, checksum(offset));
+            position += RECORD_SIZE;
+            appended.increment();
+            if (seq - appliedSeq >= config.batchSize()) {
+                requestFlush();
+            }
+            return seq;
+        }
+    }
+
+    // Whoever syncs first covers every record written so far; the others find their record already durable
+    private void awaitDurable(long seq) {
+        if (durableSeq >= seq) {
+            return;
+        }
+        synchronized (forceLock) {
+            if (durableSeq >= seq) {
+                return;
+            }
+            long target;
+            int end;
+            synchronized (appendLock) {
+                target = lastSeq;
+                end = position;
+            }
+            int start = durableOffset;
+            buffer.force(start, end - start);
+            syncs.increment();
+            durableOffset = end;
+            durableSeq = target;
+        }
+    }
+
+    private void requestFlush() {
+        if (flushRequested.compareAndSet(false, true)) {
+            flusher.execute(this::flushQuietly);
+        }
+    }
+
+    private void flushQuietly() {
+        flushRequested.set(false);
+        flushLock.lock();
+        try {
+            while (flushBatch() == config.batchSize()) {
+                // Keep going while there is a backlog
+            }
+        } catch (RuntimeException e) {
+            // The movements stay in the journal and go out with the next flush
+            flushFailures.increment();
+            System.err.println("Stock journal flush failed: " + e.getMessage());
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    // Applies everything journaled so far, syncing records whose appenders have not got to it yet
+    private void drain() {
+        flushLock.lock();
+        try {
+            long target;
+            synchronized (appendLock) {
+                target = lastSeq;
+            }
+            awaitDurable(target);
+            while (appliedSeq < target) {
+                flushBatch();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    // Called with flushLock held; returns the number of movements applied
+    private int flushBatch() {
+        int start = appliedOffset;
+        int end = Math.min(durableOffset, start + config.batchSize() * RECORD_SIZE);
+        if (start < end) {
+            Map<Integer, Integer> deltas = new HashMap<>();
+            for (int offset = start; offset < end; offset += RECORD_SIZE) {
+                deltas.merge(buffer.getInt(offset + 16), buffer.getInt(offset + 20), Integer::sum);
+            }
+            long seq = buffer.getLong(end - RECORD_SIZE);
+            repository.applyJournaledDeltas(deltas, seq);
+            appliedSeq = seq;
+            appliedOffset = end;
+            applied.add((end - start) / RECORD_SIZE);
+            flushes.increment();
+        }
+        rewindIfApplied();
+        return (end - start) / RECORD_SIZE;
+    }
+
+    // Once everything is in the database the file is reused from the start. Records of the previous round
+    // left further in stay behind a sequence gap, which is where replay stops.
+    private void rewindIfApplied() {
+        synchronized (forceLock) {
+            synchronized (appendLock) {
+                if (position == 0 || lastSeq != appliedSeq) {
+                    return;
+                }
+                position = 0;
+                durableOffset = 0;
+                appliedOffset = 0;
+                appendLock.notifyAll();
+            }
+        }
+    }
+
+    private void replay() {
+        long checkpoint = repository.readJournalCheckpoint();
+        Map<Integer, Integer> deltas = new HashMap<>();
+        long last = 0;
+        for (int offset = 0; offset + RECORD_SIZE <= capacityBytes; offset += RECORD_SIZE) {
+            long seq = buffer.getLong(offset);
+            if (buffer.getInt(offset + CHECKSUMMED_BYTES) != checksum(offset) || (offset > 0 && seq != last + 1)) {
+                break;
+            }
+            if (seq > checkpoint) {
+                deltas.merge(buffer.getInt(offset + 16), buffer.getInt(offset + 20), Integer::sum);
+                replayed++;
+            }
+            last = seq;
+        }
+        last = Math.max(last, checkpoint);
+        if (!deltas.isEmpty()) {
+            repository.applyJournaledDeltas(deltas, last);
+        }
+        lastSeq = last;
+        appliedSeq = last;
+        durableSeq = last;
+    }
+
+    private int checksum(int offset) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(offset, CHECKSUMMED_BYTES));
+        return (int) crc.getValue();
+    }
+
+    @FunctionalInterface
+    public interface Barrier extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private static final class Slot {
+        private int quantity;
+
+        Slot(int quantity) {
+            this.quantity = quantity;
+        }
+    }
+}
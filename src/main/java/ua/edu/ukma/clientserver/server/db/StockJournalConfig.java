@@ -0,0 +1,37 @@
+package ua.edu.ukma.clientserver.server.db;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+public record StockJournalConfig(
+    Path path,
+    // Movements the journal file holds before appends wait for the flusher to catch up
+    int capacity,
+    Duration flushInterval,
+    // Movements applied to the database per transaction; a backlog this large also starts a flush early
+    int batchSize
+) {
+
+    public StockJournalConfig {
+        if (capacity < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("Invalid stock journal size: capacity=" + capacity + ", batchSize=" + batchSize);
+        }
+        if (flushInterval.isNegative() || flushInterval.isZero()) {
+            throw new IllegalArgumentException("Invalid stock journal flush interval: " + flushInterval);
+        }
+    }
+
+    public static StockJournalConfig defaults() {
+        return new StockJournalConfig(Path.of("stock-journal.dat"), 1 << 20, Duration.ofMillis(50), 1000);
+    }
+
+    public static StockJournalConfig fromSystemProperties() {
+        StockJournalConfig defaults = defaults();
+        return new StockJournalConfig(
+            Path.of(System.getProperty("stockJournal.path", defaults.path().toString())),
+            Integer.getInteger("stockJournal.capacity", defaults.capacity()),
+            Duration.ofMillis(Long.getLong("stockJournal.flushIntervalMs", defaults.flushInterval().toMillis())),
+            Integer.getInteger("stockJournal.batchSize", defaults.batchSize())
+        );
+    }
+}
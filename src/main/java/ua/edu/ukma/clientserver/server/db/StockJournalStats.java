@@ -0,0 +1,14 @@
+package ua.edu.ukma.clientserver.server.db;
+
+public record StockJournalStats(
+    long appended,
+    long applied,
+    // Movements acknowledged to clients but not yet in products.quantity
+    long lag,
+    long lagMillis,
+    long syncs,
+    long flushes,
+    long flushFailures,
+    long replayed
+) {
+}
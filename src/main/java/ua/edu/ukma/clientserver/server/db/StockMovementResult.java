@@ -0,0 +1,4 @@
+package ua.edu.ukma.clientserver.server.db;
+
+public record StockMovementResult(int productId, int delta, StockUpdateResult.Status status) {
+}
@@ -0,0 +1,117 @@
+package ua.edu.ukma.clientserver.server.db;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+// Serialises sales and restocks per product and folds the ones that pile up behind a busy product into one
+// transaction. Products map onto lock stripes; a caller queues its movement on the stripe, takes the stripe's
+// lock and, unless an earlier holder already handled the movement, applies everything queued there. Stripes
+// proceed in parallel, and a hot product costs one write per round instead of one per request.
+class StockUpdateCoalescer {
+
+    private final Stripe[] stripes;
+    private final Consumer<List<QueuedMovement>> applier;
+    private final LongAdder movements = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+
+    // applier is called with a stripe's lock held and must complete every movement it is given
+    StockUpdateCoalescer(int stripeCount, Consumer<List<QueuedMovement>> applier) {
+        if (Integer.bitCount(stripeCount) != 1) {
+            throw new IllegalArgumentException("Stripe count must be a power of two: " + stripeCount);
+        }
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe();
+        }
+        this.applier = applier;
+    }
+
+    StockUpdateResult apply(int productId, int delta) {
+        movements.increment();
+        Stripe stripe = stripes[spread(productId) & (stripes.length - 1)];
+        QueuedMovement movement = new QueuedMovement(productId, delta);
+        stripe.queue.add(movement);
+        stripe.lock.lock();
+        try {
+            if (!movement.isDone()) {
+                List<QueuedMovement> batch = new ArrayList<>();
+                for (QueuedMovement queued; (queued = stripe.queue.poll()) != null; ) {
+                    batch.add(queued);
+                }
+                writes.increment();
+                try {
+                    applier.accept(batch);
+                } catch (RuntimeException e) {
+                    for (QueuedMovement failed : batch) {
+                        if (!failed.isDone()) {
+                            failed.fail(e);
+                        }
+                    }
+                }
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+        return movement.result();
+    }
+
+    StockUpdateStats getStats() {
+        return new StockUpdateStats(stripes.length, movements.sum(), writes.sum());
+    }
+
+    // Sequential ids would otherwise fill the stripes in order; this spreads neighbouring hot products apart
+    private static int spread(int productId) {
+        int h = productId * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static final class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Queue<QueuedMovement> queue = new ConcurrentLinkedQueue<>();
+    }
+
+    // Completed by whichever caller holds the stripe's lock; read by its owner after taking that lock
+    static final class QueuedMovement {
+        private final int productId;
+        private final int delta;
+        private StockUpdateResult result;
+        private RuntimeException failure;
+
+        QueuedMovement(int productId, int delta) {
+            this.productId = productId;
+            this.delta = delta;
+        }
+
+        int productId() {
+            return productId;
+        }
+
+        int delta() {
+            return delta;
+        }
+
+        void complete(StockUpdateResult result) {
+            this.result = result;
+        }
+
+        void fail(RuntimeException failure) {
+            this.failure = failure;
+        }
+
+        boolean isDone() {
+            return result != null || failure != null;
+        }
+
+        StockUpdateResult result() {
+            if (failure != null) {
+                throw failure;
+            }
+            return result;
+        }
+    }
+}
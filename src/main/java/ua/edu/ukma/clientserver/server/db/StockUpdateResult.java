@@ -0,0 +1,23 @@
+package ua.edu.ukma.clientserver.server.db;
+
+public record StockUpdateResult(Status status, int quantity) {
+
+    public enum Status {
+        UPDATED,
+        NOT_FOUND,
+        INSUFFICIENT_STOCK,
+        ROLLED_BACK
+    }
+
+    public static StockUpdateResult updated(int quantity) {
+        return new StockUpdateResult(Status.UPDATED, quantity);
+    }
+
+    public static StockUpdateResult notFound() {
+        return new StockUpdateResult(Status.NOT_FOUND, 0);
+    }
+
+    public static StockUpdateResult insufficientStock() {
+        return new StockUpdateResult(Status.INSUFFICIENT_STOCK, 0);
+    }
+}
@@ -0,0 +1,5 @@
+package ua.edu.ukma.clientserver.server.db;
+
+// movements per write above 1 means requests for the same products were applied together
+public record StockUpdateStats(int stripes, long movements, long writes) {
+}
@@ -0,0 +1,46 @@
+package ua.edu.ukma.clientserver.server.db;
+
+import java.sql.SQLException;
+
+// Outcome of a create, update or delete as decided by the write statement itself, so callers need no
+// lookup beforehand and two writers racing for the same name cannot both be told they succeeded
+public record WriteResult<T>(Status status, T value) {
+
+    public enum Status {
+        CREATED,
+        UPDATED,
+        DELETED,
+        NOT_FOUND,
+        // The write would duplicate a unique name
+        CONFLICT
+    }
+
+    public static <T> WriteResult<T> created(T value) {
+        return new WriteResult<>(Status.CREATED, value);
+    }
+
+    public static <T> WriteResult<T> updated(T value) {
+        return new WriteResult<>(Status.UPDATED, value);
+    }
+
+    public static <T> WriteResult<T> deleted() {
+        return new WriteResult<>(Status.DELETED, null);
+    }
+
+    public static <T> WriteResult<T> notFound() {
+        return new WriteResult<>(Status.NOT_FOUND, null);
+    }
+
+    public static <T> WriteResult<T> conflict() {
+        return new WriteResult<>(Status.CONFLICT, null);
+    }
+
+    public boolean succeeded() {
+        return status == Status.CREATED || status == Status.UPDATED || status == Status.DELETED;
+    }
+
+    // SQLState 23505 is unique_violation in PostgreSQL and H2 alike
+    static boolean isUniqueViolation(SQLException e) {
+        return "23505".equals(e.getSQLState());
+    }
+}
@@ -0,0 +1,242 @@
+package ua.edu.ukma.clientserver.server.events;
+
+import com.google.gson.Gson;
+import ua.edu.ukma.clientserver.server.db.CatalogListener;
+import ua.edu.ukma.clientserver.server.json.Json;
+import ua.edu.ukma.clientserver.server.models.Product;
+import ua.edu.ukma.clientserver.server.models.ProductGroup;
+import ua.edu.ukma.clientserver.util.EncryptionUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Catalog writes as Server-Sent Events. Each event is encoded and encrypted once, as EncryptionUtil's Base64
+// text, and kept in a ring shared by all subscribers; a subscriber is only a position in it, so publishing
+// costs the same for one stream or thousands and never waits for a slow one. A subscriber the ring has
+// lapped, or one resuming from an event it no longer holds, gets a reset event and reloads what it shows.
+// Event ids carry the feed's start time, so an id from before a restart is not mistaken for a current one.
+public class ChangeFeed implements CatalogListener, AutoCloseable {
+
+    private static final byte[] KEEPALIVE = ": keepalive\n\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final Gson gson = Json.gson();
+    private final ChangeFeedConfig config;
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicReferenceArray<Frame> ring;
+    private final int mask;
+    // Publishing holds it; readers only take it to wait for the next event
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition published = lock.newCondition();
+    private volatile long lastSeq;
+    private volatile boolean closed;
+
+    private final AtomicInteger subscribers = new AtomicInteger();
+    private final LongAdder publishedEvents = new LongAdder();
+    private final LongAdder resumed = new LongAdder();
+    private final LongAdder resets = new LongAdder();
+    private final LongAdder rejectedSubscribers = new LongAdder();
+
+    public ChangeFeed(ChangeFeedConfig config) {
+        this.config = config;
+        this.ring = new AtomicReferenceArray<>(config.historySize());
+        this.mask = config.historySize() - 1;
+    }
+
+    public ChangeFeedConfig config() {
+        return config;
+    }
+
+    // Null once maxSubscribers streams are open. lastEventId is what the client saw last, or null for a new one.
+    public Subscription subscribe(String lastEventId) {
+        if (subscribers.incrementAndGet() > config.maxSubscribers()) {
+            subscribers.decrementAndGet();
+            rejectedSubscribers.increment();
+            return null;
+        }
+        long current = lastSeq;
+        if (lastEventId == null) {
+            return new Subscription(current, false);
+        }
+        long seq = parseSeq(lastEventId);
+        if (seq < 0 || seq > current || current - seq > ring.length()) {
+            return new Subscription(current, true);
+        }
+        resumed.increment();
+        return new Subscription(seq, false);
+    }
+
+    public ChangeFeedStats getStats() {
+        return new ChangeFeedStats(subscribers.get(), publishedEvents.sum(), resumed.sum(), resets.sum(), rejectedSubscribers.sum());
+    }
+
+    @Override
+    public void productCreated(Product product) {
+        publish("productCreated", product);
+    }
+
+    @Override
+    public void productUpdated(Product product) {
+        publish("productUpdated", product);
+    }
+
+    @Override
+    public void productDeleted(int id) {
+        publish("productDeleted", Map.of("id", id));
+    }
+
+    @Override
+    public void stockChanged(int productId, int delta) {
+        publish("stockChanged", Map.of("productId", productId, "delta", delta));
+    }
+
+    @Override
+    public void productsImported() {
+        publish("productsImported", Map.of());
+    }
+
+    @Override
+    public void groupCreated(ProductGroup group) {
+        publish("groupCreated", group);
+    }
+
+    @Override
+    public void groupUpdated(ProductGroup group) {
+        publish("groupUpdated", group);
+    }
+
+    @Override
+    public void groupDeleted(int groupId) {
+        publish("groupDeleted", Map.of("id", groupId));
+    }
+
+    // Open streams end at their next read
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            published.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void publish(String type, Object payload) {
+        // Encrypted outside the lock; only numbering and the ring slot are serialised
+        String data = EncryptionUtil.encrypt(gson.toJson(payload).getBytes(StandardCharsets.UTF_8));
+        lock.lock();
+        try {
+            long seq = lastSeq + 1;
+            ring.set((int) (seq & mask), new Frame(seq, frame(seq, type, data)));
+            lastSeq = seq;
+            published.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        publishedEvents.increment();
+    }
+
+    private byte[] frame(long seq, String type, String data) {
+        return ("id: " + eventId(seq) + "\nevent: " + type + "\ndata: " + data + "\n\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private String eventId(long seq) {
+        return epoch + "-" + seq;
+    }
+
+    private long parseSeq(String eventId) {
+        int dash = eventId.lastIndexOf('-');
+        if (dash < 0 || !eventId.substring(0, dash).equals(epoch)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(eventId.substring(dash + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private record Frame(long seq, byte[] bytes) {
+    }
+
+    // One stream's position in the feed; read from the thread serving it
+    public final class Subscription implements AutoCloseable {
+
+        private long position;
+        private boolean resetPending;
+        private boolean ended;
+        private boolean released;
+
+        private Subscription(long position, boolean resetPending) {
+            this.position = position;
+            this.resetPending = resetPending;
+        }
+
+        // The frames to write next: empty when the heartbeat is due, null once the stream should end
+        public List<byte[]> next(Duration timeout) throws InterruptedException {
+            if (ended || closed) {
+                return null;
+            }
+            if (resetPending) {
+                return List.of(reset());
+            }
+            if (lastSeq == position && !await(timeout)) {
+                return closed ? null : List.of(KEEPALIVE);
+            }
+            long last = lastSeq;
+            List<byte[]> frames = new ArrayList<>((int) Math.min(last - position, ring.length()));
+            for (long seq = position + 1; seq <= last; seq++) {
+                Frame frame = ring.get((int) (seq & mask));
+                // Overwritten by a later lap: this subscriber is too far behind to catch up
+                if (frame == null || frame.seq() != seq) {
+                    ended = true;
+                    return List.of(reset());
+                }
+                frames.add(frame.bytes());
+            }
+            position = last;
+            return frames;
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                subscribers.decrementAndGet();
+            }
+        }
+
+        private boolean await(Duration timeout) throws InterruptedException {
+            long remaining = timeout.toNanos();
+            lock.lock();
+            try {
+                while (lastSeq == position && !closed) {
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    remaining = published.awaitNanos(remaining);
+                }
+                return !closed;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Moves the subscriber to the head of the feed; its id is where the client resumes after reloading
+        private byte[] reset() {
+            resetPending = false;
+            resets.increment();
+            position = lastSeq;
+            String data = EncryptionUtil.encrypt("{}".getBytes(StandardCharsets.UTF_8));
+            return frame(position, "reset", data);
+        }
+    }
+}
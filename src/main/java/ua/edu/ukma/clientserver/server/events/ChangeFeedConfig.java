@@ -0,0 +1,34 @@
+package ua.edu.ukma.clientserver.server.events;
+
+import java.time.Duration;
+
+public record ChangeFeedConfig(
+    // Events kept for resuming and for subscribers that fall behind; one further back is told to reload
+    int historySize,
+    // Idle streams get a comment this often, so dead connections are noticed and proxies keep them open
+    Duration heartbeat,
+    int maxSubscribers
+) {
+
+    public ChangeFeedConfig {
+        if (Integer.bitCount(historySize) != 1) {
+            throw new IllegalArgumentException("Change feed history size must be a power of two: " + historySize);
+        }
+        if (heartbeat.isNegative() || heartbeat.isZero() || maxSubscribers < 1) {
+            throw new IllegalArgumentException("Invalid change feed settings: heartbeat=" + heartbeat + ", maxSubscribers=" + maxSubscribers);
+        }
+    }
+
+    public static ChangeFeedConfig defaults() {
+        return new ChangeFeedConfig(4096, Duration.ofSeconds(15), 10_000);
+    }
+
+    public static ChangeFeedConfig fromSystemProperties() {
+        ChangeFeedConfig defaults = defaults();
+        return new ChangeFeedConfig(
+            Integer.getInteger("events.historySize", defaults.historySize()),
+            Duration.ofMillis(Long.getLong("events.heartbeatMs", defaults.heartbeat().toMillis())),
+            Integer.getInteger("events.maxSubscribers", defaults.maxSubscribers())
+        );
+    }
+}
@@ -0,0 +1,11 @@
+package ua.edu.ukma.clientserver.server.events;
+
+public record ChangeFeedStats(
+    int subscribers,
+    long published,
+    long resumed,
+    // Subscribers told to reload: they fell behind the history or resumed from an event it no longer has
+    long resets,
+    long rejectedSubscribers
+) {
+}
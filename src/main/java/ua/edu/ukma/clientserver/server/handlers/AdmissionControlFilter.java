@@ -0,0 +1,93 @@
+package ua.edu.ukma.clientserver.server.handlers;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+import ua.edu.ukma.clientserver.util.EncryptionUtil;
+import ua.edu.ukma.clientserver.util.WireFormat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+public class AdmissionControlFilter extends Filter {
+
+    private final int maxInFlight;
+    private final long queueTimeoutMillis;
+    private final Semaphore permits;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public AdmissionControlFilter(int maxInFlight, long queueTimeoutMillis) {
+        this.maxInFlight = maxInFlight;
+        this.queueTimeoutMillis = queueTimeoutMillis;
+        this.permits = new Semaphore(maxInFlight);
+    }
+
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        if (!tryAdmit()) {
+            rejected.increment();
+            sendServiceUnavailable(exchange);
+            return;
+        }
+        admitted.increment();
+        try {
+            chain.doFilter(exchange);
+        } finally {
+            permits.release();
+        }
+    }
+
+    @Override
+    public String description() {
+        return "Limits the number of requests processed concurrently";
+    }
+
+    public AdmissionStats getStats() {
+        return new AdmissionStats(
+            maxInFlight,
+            maxInFlight - permits.availablePermits(),
+            queued.get(),
+            admitted.sum(),
+            rejected.sum()
+        );
+    }
+
+    private boolean tryAdmit() {
+        if (permits.tryAcquire()) {
+            return true;
+        }
+        if (queueTimeoutMillis <= 0) {
+            return false;
+        }
+        queued.incrementAndGet();
+        try {
+            return permits.tryAcquire(queueTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    private static void sendServiceUnavailable(HttpExchange exchange) throws IOException {
+        WireFormat format = WireFormat.fromMediaType(exchange.getRequestHeaders().getFirst("Accept"));
+        byte[] body = EncryptionUtil.encrypt(JsonMessages.SERVICE_UNAVAILABLE, format);
+        exchange.getRequestBody().close();
+        exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+        exchange.getResponseHeaders().set("Content-Type", format.contentType());
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        exchange.sendResponseHeaders(503, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    public record AdmissionStats(int limit, int inFlight, int queued, long admitted, long rejected) {
+    }
+}
@@ -1,17 +1,71 @@
 package ua.edu.ukma.clientserver.server.handlers;
 
 import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonWriter;
+import com.sun.net.httpserver.Headers;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
+import ua.edu.ukma.clientserver.server.cache.ResourceVersion;
+import ua.edu.ukma.clientserver.server.cache.ResponseCache;
+import ua.edu.ukma.clientserver.server.db.PageRequest;
+import ua.edu.ukma.clientserver.server.db.PoolExhaustedException;
+import ua.edu.ukma.clientserver.server.json.Json;
+import ua.edu.ukma.clientserver.server.json.Utf8Buffer;
+import ua.edu.ukma.clientserver.server.metrics.Phase;
+import ua.edu.ukma.clientserver.server.metrics.RequestTimings;
+import ua.edu.ukma.clientserver.server.metrics.TimedStreams;
+import ua.edu.ukma.clientserver.server.routing.RouteMatch;
+import ua.edu.ukma.clientserver.server.routing.Router;
 import ua.edu.ukma.clientserver.util.EncryptionUtil;
+import ua.edu.ukma.clientserver.util.WireFormat;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public abstract class BaseHandler implements HttpHandler {
 
-    protected final Gson gson = new Gson();
+    private static final int STREAM_BUFFER_SIZE = 16 * 1024;
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 500;
+    // Shorter arrays are buffered so they keep a fixed length and can go into the response cache
+    private static final int STREAMED_ARRAY_MIN_SIZE = 256;
+
+    protected final Gson gson = Json.gson();
+    protected final Router router = new Router();
+    private final ConditionalResponses conditionalResponses;
+    private final PayloadCompression compression;
+    // Not exchange attributes: the JDK server stores those on the shared HttpContext
+    private final Map<HttpExchange, CacheEntry> pendingCacheEntries = new ConcurrentHashMap<>();
+
+    protected BaseHandler() {
+        this(null, null);
+    }
+
+    // GET responses of a handler given conditionalResponses carry an ETag and may be answered with 304;
+    // with compression, bodies are compressed for clients that ask for it. Either may be null.
+    protected BaseHandler(ConditionalResponses conditionalResponses, PayloadCompression compression) {
+        this.conditionalResponses = conditionalResponses;
+        this.compression = compression;
+    }
 
     @Override
     public void handle(HttpExchange exchange) throws IOException {
@@ -19,35 +73,391 @@ public abstract class BaseHandler implements HttpHandler {
             // Set CORS headers
             exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
             exchange.getResponseHeaders().add("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
-            exchange.getResponseHeaders().add("Access-Control-Allow-Headers", "Content-Type,Authorization");
+            exchange.getResponseHeaders().add("Access-Control-Allow-Headers", "Content-Type,Authorization,If-None-Match,If-Modified-Since," + PayloadCompression.ACCEPT_HEADER);
+            exchange.getResponseHeaders().add("Access-Control-Expose-Headers", "ETag,Last-Modified," + PayloadCompression.ENCODING_HEADER);
+            exchange.getResponseHeaders().add("Vary", "Accept");
+            if (compression != null) {
+                exchange.getResponseHeaders().add("Vary", PayloadCompression.ACCEPT_HEADER);
+            }
 
             if (exchange.getRequestMethod().equalsIgnoreCase("OPTIONS")) {
+                // The custom headers make every request preflighted, so let browsers remember the answer
+                exchange.getResponseHeaders().add("Access-Control-Max-Age", "600");
                 exchange.sendResponseHeaders(204, -1); // No Content
                 return;
             }
 
             handleRequest(exchange);
+        } catch (PoolExhaustedException e) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            sendResponse(exchange, 503, JsonMessages.SERVICE_UNAVAILABLE);
         } catch (Exception e) {
             e.printStackTrace();
-            sendResponse(exchange, 500, "{\"error\":\"Internal Server Error\"}");
+            sendResponse(exchange, 500, JsonMessages.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    protected void handleRequest(HttpExchange exchange) throws IOException {
+        RouteMatch match = router.match(exchange.getRequestMethod(), exchange.getRequestURI().getPath());
+        RequestTimings.route(match.pattern());
+        switch (match.status()) {
+            case FOUND -> {
+                if (conditionalResponses != null && exchange.getRequestMethod().equals("GET")) {
+                    handleConditionalGet(exchange, match);
+                } else {
+                    match.handler().handle(exchange, match.params());
+                }
+            }
+            case METHOD_NOT_ALLOWED -> {
+                exchange.getResponseHeaders().set("Allow", String.join(", ", match.allowedMethods()));
+                sendResponse(exchange, 405, JsonMessages.METHOD_NOT_ALLOWED);
+            }
+            case NOT_FOUND -> sendResponse(exchange, 404, JsonMessages.NOT_FOUND);
+        }
+    }
+
+    private void handleConditionalGet(HttpExchange exchange, RouteMatch match) throws IOException {
+        // Read before the handler runs: a write racing with it can only make the body newer than its ETag
+        ResourceVersion version = conditionalResponses.version().get();
+        if (isNotModified(exchange.getRequestHeaders(), version)) {
+            setVersionHeaders(exchange, version);
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
         }
+
+        // One entry per representation: the wire format and compression change the stored bytes
+        String acceptedEncoding = acceptedEncoding(exchange);
+        String key = responseFormat(exchange) + (acceptedEncoding == null ? "" : "+" + acceptedEncoding) + " " + exchange.getRequestURI();
+        ResponseCache.CachedBody cached = conditionalResponses.cache().get(key, version.version());
+        if (cached != null) {
+            setVersionHeaders(exchange, version);
+            sendEncryptedBody(exchange, 200, cached.payloadEncoding(), cached.body());
+            return;
+        }
+        pendingCacheEntries.put(exchange, new CacheEntry(key, version));
+        try {
+            match.handler().handle(exchange, match.params());
+        } finally {
+            pendingCacheEntries.remove(exchange);
+        }
+    }
+
+    static boolean isNotModified(Headers requestHeaders, ResourceVersion version) {
+        // If-Modified-Since is ignored when If-None-Match is present
+        String ifNoneMatch = requestHeaders.getFirst("If-None-Match");
+        if (ifNoneMatch != null) {
+            String etag = weakTag(version.etag());
+            for (String candidate : ifNoneMatch.split(",")) {
+                String tag = weakTag(candidate.strip());
+                if (tag.equals("*") || tag.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        String ifModifiedSince = requestHeaders.getFirst("If-Modified-Since");
+        if (ifModifiedSince != null) {
+            try {
+                long since = ZonedDateTime.parse(ifModifiedSince, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+                // The date only has whole seconds: a write later in the same second as the fetch must not answer 304
+                return version.modifiedMillis() / 1000 < since / 1000;
+            } catch (DateTimeParseException e) {
+                return false;
+            }
+        }
+        return false;
     }
 
-    protected abstract void handleRequest(HttpExchange exchange) throws IOException;
+    private static String weakTag(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+
+    private static void setVersionHeaders(HttpExchange exchange, ResourceVersion version) {
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("ETag", version.etag());
+        headers.set("Last-Modified", DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(version.modifiedMillis()).atZone(ZoneOffset.UTC)));
+        // Lets browsers keep the body but makes them revalidate it on every poll
+        headers.set("Cache-Control", "no-cache");
+    }
 
     protected <T> T readRequestBody(HttpExchange exchange, Class<T> type) throws IOException {
-        String encryptedBody = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
-        String json = EncryptionUtil.decrypt(encryptedBody);
-        return gson.fromJson(json, type);
+        try (Reader reader = openRequestReader(exchange)) {
+            RequestTimings.enter(Phase.JSON);
+            try {
+                return gson.fromJson(reader, type);
+            } finally {
+                RequestTimings.exit(Phase.JSON);
+            }
+        }
+    }
+
+    protected Reader openRequestReader(HttpExchange exchange) {
+        WireFormat format = WireFormat.fromMediaType(exchange.getRequestHeaders().getFirst("Content-Type"));
+        InputStream body = TimedStreams.timed(exchange.getRequestBody(), Phase.IO);
+        // Opening already reads and decrypts the first segment
+        RequestTimings.enter(Phase.CRYPTO);
+        try {
+            return new InputStreamReader(TimedStreams.timed(EncryptionUtil.decryptingStream(body, format), Phase.CRYPTO), StandardCharsets.UTF_8);
+        } finally {
+            RequestTimings.exit(Phase.CRYPTO);
+        }
+    }
+
+    protected String queryParam(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String pair : query.split("&")) {
+            int separator = pair.indexOf('=');
+            String key = separator < 0 ? pair : pair.substring(0, separator);
+            if (key.equals(name)) {
+                return separator < 0 ? "" : URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    // Returns null when the client asked for none of the paging parameters and expects the plain list
+    protected PageRequest readPageRequest(HttpExchange exchange) {
+        String limitParam = queryParam(exchange, "limit");
+        String after = queryParam(exchange, "after");
+        String sort = queryParam(exchange, "sort");
+        String fields = queryParam(exchange, "fields");
+        if (limitParam == null && after == null && sort == null && fields == null) {
+            return null;
+        }
+
+        int limit = DEFAULT_PAGE_SIZE;
+        if (limitParam != null) {
+            try {
+                limit = Integer.parseInt(limitParam);
+            } catch (NumberFormatException e) {
+                limit = 0;
+            }
+            if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+                throw new IllegalArgumentException("Limit must be between 1 and " + MAX_PAGE_SIZE);
+            }
+        }
+        boolean descending = sort != null && sort.startsWith("-");
+        String sortField = sort == null ? "id" : sort.substring(descending ? 1 : 0);
+        List<String> fieldList = fields == null || fields.isBlank() ? List.of() : List.of(fields.split(","));
+        return new PageRequest(limit, sortField, descending, after, fieldList);
+    }
+
+    protected void sendStreamingResponse(HttpExchange exchange, int statusCode, BodyWriter bodyWriter) throws IOException {
+        CacheEntry entry = statusCode == 200 ? pendingCacheEntries.get(exchange) : null;
+        if (entry != null) {
+            setVersionHeaders(exchange, entry.version());
+        }
+        exchange.getResponseHeaders().set("Content-Type", responseFormat(exchange).contentType());
+        String encoding = acceptedEncoding(exchange);
+        OutputStream os;
+        if (encoding != null) {
+            os = new DeferredCompressionStream(exchange, statusCode, encoding);
+        } else {
+            exchange.sendResponseHeaders(statusCode, 0); // Chunked
+            os = openEncryptedBody(exchange);
+        }
+        try {
+            bodyWriter.writeTo(os);
+            os.close();
+        } catch (IOException | RuntimeException e) {
+            // Headers are gone already; ending the body without the final cipher block makes the client reject it
+            e.printStackTrace();
+            exchange.close();
+        }
+    }
+
+    // Encodes straight to UTF-8 bytes; no intermediate String of the whole body
+    protected void sendJson(HttpExchange exchange, int statusCode, Object response) throws IOException {
+        Utf8Buffer body = new Utf8Buffer(512);
+        RequestTimings.enter(Phase.JSON);
+        try {
+            gson.toJson(response, response.getClass(), gson.newJsonWriter(body));
+        } finally {
+            RequestTimings.exit(Phase.JSON);
+        }
+        sendResponse(exchange, statusCode, body.toByteArray());
+    }
+
+    // Long arrays are written element by element into the encrypting stream as they are encoded
+    protected <T> void sendJsonArray(HttpExchange exchange, int statusCode, List<T> items, Class<T> type) throws IOException {
+        if (items.size() < STREAMED_ARRAY_MIN_SIZE || (statusCode == 200 && pendingCacheEntries.containsKey(exchange))) {
+            sendJson(exchange, statusCode, items);
+            return;
+        }
+        TypeAdapter<T> adapter = gson.getAdapter(type);
+        sendStreamingResponse(exchange, statusCode, out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), STREAM_BUFFER_SIZE);
+            JsonWriter jsonWriter = gson.newJsonWriter(writer);
+            RequestTimings.enter(Phase.JSON);
+            try {
+                jsonWriter.beginArray();
+                for (T item : items) {
+                    adapter.write(jsonWriter, item);
+                }
+                jsonWriter.endArray();
+                jsonWriter.flush();
+            } finally {
+                RequestTimings.exit(Phase.JSON);
+            }
+        });
     }
 
     protected void sendResponse(HttpExchange exchange, int statusCode, String response) throws IOException {
-        String encryptedResponse = EncryptionUtil.encrypt(response);
+        sendResponse(exchange, statusCode, response.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // body may be a shared constant and is only ever read
+    protected void sendResponse(HttpExchange exchange, int statusCode, byte[] body) throws IOException {
+        String encoding = acceptedEncoding(exchange);
+        if (encoding != null && !compression.shouldCompress(body.length)) {
+            encoding = null;
+        }
+
+        CacheEntry entry = statusCode == 200 ? pendingCacheEntries.get(exchange) : null;
+        if (entry != null) {
+            byte[] payload = encoding == null ? body : compressTimed(encoding, body);
+            byte[] encrypted;
+            RequestTimings.enter(Phase.CRYPTO);
+            try {
+                encrypted = EncryptionUtil.encrypt(payload, responseFormat(exchange));
+            } finally {
+                RequestTimings.exit(Phase.CRYPTO);
+            }
+            conditionalResponses.cache().put(entry.key(), entry.version().version(), encoding, encrypted);
+            setVersionHeaders(exchange, entry.version());
+            sendEncryptedBody(exchange, statusCode, encoding, encrypted);
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", responseFormat(exchange).contentType());
+        if (encoding == null) {
+            sendPlainBody(exchange, statusCode, body);
+            return;
+        }
+        // The compressed size is not known up front; streaming it avoids keeping a second copy of the body
+        exchange.getResponseHeaders().set(PayloadCompression.ENCODING_HEADER, encoding);
+        exchange.sendResponseHeaders(statusCode, 0); // Chunked
+        try (OutputStream os = openCompressedBody(exchange, encoding)) {
+            os.write(body);
+        }
+    }
+
+    private byte[] compressTimed(String encoding, byte[] body) throws IOException {
+        RequestTimings.enter(Phase.COMPRESSION);
+        try {
+            return compression.compress(encoding, body);
+        } finally {
+            RequestTimings.exit(Phase.COMPRESSION);
+        }
+    }
+
+    private OutputStream openCompressedBody(HttpExchange exchange, String encoding) throws IOException {
+        return TimedStreams.timed(compression.compressingStream(encoding, openEncryptedBody(exchange)), Phase.COMPRESSION);
+    }
+
+    private String acceptedEncoding(HttpExchange exchange) {
+        return compression == null ? null : compression.negotiate(exchange.getRequestHeaders());
+    }
+
+    // Base64 text unless the client accepts the raw ciphertext
+    private static WireFormat responseFormat(HttpExchange exchange) {
+        return WireFormat.fromMediaType(exchange.getRequestHeaders().getFirst("Accept"));
+    }
+
+    // Timed so that time in the cipher counts as CRYPTO and only the socket writes below it as IO
+    private static OutputStream openEncryptedBody(HttpExchange exchange) {
+        return openEncryptedBody(new BufferedOutputStream(TimedStreams.timed(exchange.getResponseBody(), Phase.IO), STREAM_BUFFER_SIZE), responseFormat(exchange));
+    }
+
+    private static OutputStream openEncryptedBody(OutputStream out, WireFormat format) {
+        RequestTimings.enter(Phase.CRYPTO);
+        try {
+            return TimedStreams.timed(EncryptionUtil.encryptingStream(out, format), Phase.CRYPTO);
+        } finally {
+            RequestTimings.exit(Phase.CRYPTO);
+        }
+    }
+
+    private static void sendPlainBody(HttpExchange exchange, int statusCode, byte[] body) throws IOException {
+        WireFormat format = responseFormat(exchange);
+        exchange.sendResponseHeaders(statusCode, EncryptionUtil.encryptedLength(body.length, format));
+        try (OutputStream os = openEncryptedBody(TimedStreams.timed(exchange.getResponseBody(), Phase.IO), format)) {
+            os.write(body);
+        }
+    }
+
+    private static void sendEncryptedBody(HttpExchange exchange, int statusCode, String payloadEncoding, byte[] encrypted) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", responseFormat(exchange).contentType());
+        if (payloadEncoding != null) {
+            exchange.getResponseHeaders().set(PayloadCompression.ENCODING_HEADER, payloadEncoding);
+        }
+        exchange.sendResponseHeaders(statusCode, encrypted.length);
+        try (OutputStream os = TimedStreams.timed(exchange.getResponseBody(), Phase.IO)) {
+            os.write(encrypted);
+        }
+    }
+
+    // Holds back the start of a streamed body until it reaches the compression threshold,
+    // so short listings still go out uncompressed and with a fixed length
+    private final class DeferredCompressionStream extends OutputStream {
+
+        private final HttpExchange exchange;
+        private final int statusCode;
+        private final String encoding;
+        private final ByteArrayOutputStream head = new ByteArrayOutputStream();
+        private OutputStream out;
+        private boolean closed;
+
+        DeferredCompressionStream(HttpExchange exchange, int statusCode, String encoding) {
+            this.exchange = exchange;
+            this.statusCode = statusCode;
+            this.encoding = encoding;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (out == null) {
+                if (head.size() + len < compression.minBytes()) {
+                    head.write(b, off, len);
+                    return;
+                }
+                exchange.getResponseHeaders().set(PayloadCompression.ENCODING_HEADER, encoding);
+                exchange.sendResponseHeaders(statusCode, 0); // Chunked
+                out = openCompressedBody(exchange, encoding);
+                head.writeTo(out);
+            }
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (out != null) {
+                out.close();
+            } else {
+                compression.shouldCompress(head.size());
+                sendPlainBody(exchange, statusCode, head.toByteArray());
+            }
+        }
+    }
+
+    private record CacheEntry(String key, ResourceVersion version) {
+    }
 
-        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
-        exchange.sendResponseHeaders(statusCode, encryptedResponse.getBytes().length);
-        OutputStream os = exchange.getResponseBody();
-        os.write(encryptedResponse.getBytes());
-        os.close();
+    @FunctionalInterface
+    protected interface BodyWriter {
+        void writeTo(OutputStream out) throws IOException;
     }
-} 
\ No newline at end of file
+}
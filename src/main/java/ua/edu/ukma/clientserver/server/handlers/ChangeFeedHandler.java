@@ -0,0 +1,60 @@
+package ua.edu.ukma.clientserver.server.handlers;
+
+import com.sun.net.httpserver.HttpExchange;
+import ua.edu.ukma.clientserver.server.events.ChangeFeed;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+// Keeps one request open per subscriber and writes catalog events to it as they come. Each stream holds its
+// thread while idle, which is cheap with the virtual-thread executor and costly with the fixed one.
+public class ChangeFeedHandler extends BaseHandler {
+
+    private static final byte[] TOO_MANY_SUBSCRIBERS = JsonMessages.error("Too many event subscribers");
+    // Tells EventSource how long to wait before reconnecting
+    private static final byte[] PREAMBLE = "retry: 3000\n\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final ChangeFeed feed;
+
+    public ChangeFeedHandler(ChangeFeed feed) {
+        this.feed = feed;
+
+        router.get("/api/events", (exchange, params) -> handleSubscribe(exchange));
+    }
+
+    private void handleSubscribe(HttpExchange exchange) throws IOException {
+        // Browsers send the header on reconnect; the query parameter is for clients that cannot set headers
+        String lastEventId = exchange.getRequestHeaders().getFirst("Last-Event-ID");
+        if (lastEventId == null) {
+            lastEventId = queryParam(exchange, "lastEventId");
+        }
+        try (ChangeFeed.Subscription subscription = feed.subscribe(lastEventId)) {
+            if (subscription == null) {
+                exchange.getResponseHeaders().set("Retry-After", "5");
+                sendResponse(exchange, 503, TOO_MANY_SUBSCRIBERS);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.sendResponseHeaders(200, 0); // Chunked
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(PREAMBLE);
+                os.flush();
+                for (List<byte[]> frames; (frames = subscription.next(feed.config().heartbeat())) != null; ) {
+                    for (byte[] frame : frames) {
+                        os.write(frame);
+                    }
+                    os.flush();
+                }
+            } catch (IOException e) {
+                // The client went away; nothing to tell it
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+}
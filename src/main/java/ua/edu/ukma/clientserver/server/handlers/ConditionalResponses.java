@@ -0,0 +1,10 @@
+package ua.edu.ukma.clientserver.server.handlers;
+
+import ua.edu.ukma.clientserver.server.cache.ResourceVersion;
+import ua.edu.ukma.clientserver.server.cache.ResponseCache;
+
+import java.util.function.Supplier;
+
+// The version every GET response of a handler depends on, plus where to keep its encrypted bodies
+public record ConditionalResponses(Supplier<ResourceVersion> version, ResponseCache cache) {
+}
@@ -0,0 +1,37 @@
+package ua.edu.ukma.clientserver.server.handlers;
+
+import com.google.gson.stream.JsonWriter;
+import ua.edu.ukma.clientserver.server.json.Utf8Buffer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+// {"error":...} and {"message":...} bodies. Fixed texts are encoded once into constants; callers must not modify the arrays.
+final class JsonMessages {
+
+    static final byte[] NOT_FOUND = error("Not Found");
+    static final byte[] METHOD_NOT_ALLOWED = error("Method Not Allowed");
+    static final byte[] SERVICE_UNAVAILABLE = error("Service Unavailable");
+    static final byte[] INTERNAL_SERVER_ERROR = error("Internal Server Error");
+
+    private JsonMessages() {
+    }
+
+    static byte[] error(String text) {
+        return encode("error", text);
+    }
+
+    static byte[] message(String text) {
+        return encode("message", text);
+    }
+
+    private static byte[] encode(String name, String text) {
+        Utf8Buffer out = new Utf8Buffer(64);
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writer.beginObject().name(name).value(text).endObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
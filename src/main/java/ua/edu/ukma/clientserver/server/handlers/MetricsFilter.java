@@ -0,0 +1,35 @@
+package ua.edu.ukma.clientserver.server.handlers;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+import ua.edu.ukma.clientserver.server.metrics.RequestMetrics;
+import ua.edu.ukma.clientserver.server.metrics.RequestTimings;
+
+import java.io.IOException;
+
+// Goes ahead of admission control so shed requests are counted too; the handler reports the matched route
+public class MetricsFilter extends Filter {
+
+    private final RequestMetrics metrics;
+
+    public MetricsFilter(RequestMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        RequestTimings timings = RequestTimings.begin();
+        try {
+            chain.doFilter(exchange);
+        } finally {
+            long elapsedNanos = timings.end();
+            // -1 when the handler failed before sending headers and the server drops the connection
+            metrics.record(timings.route(), exchange.getRequestMethod(), exchange.getResponseCode(), elapsedNanos, timings);
+        }
+    }
+
+    @Override
+    public String description() {
+        return "Records request counts and latencies by route";
+    }
+}
@@ -0,0 +1,82 @@
+package ua.edu.ukma.clientserver.server.handlers;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import ua.edu.ukma.clientserver.server.metrics.RequestMetrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.RecordComponent;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// Serves the request metrics and the numeric fields of the server stats sections as Prometheus text.
+// Unencrypted, unlike the API: scrapers do not hold the key and nothing here describes the catalog.
+public class MetricsHandler implements HttpHandler {
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final RequestMetrics metrics;
+    private final Map<String, Supplier<?>> sections;
+
+    public MetricsHandler(RequestMetrics metrics, Map<String, Supplier<?>> sections) {
+        this.metrics = metrics;
+        this.sections = sections;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            StringBuilder out = new StringBuilder(16 * 1024);
+            metrics.writeTo(out);
+            sections.forEach((name, section) -> writeGauges(out, "app_" + snakeCase(name), section.get()));
+
+            byte[] body = out.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        }
+    }
+
+    // Stats sections are numbers, records of numbers or maps of those, e.g. the catalog cache's per-cache stats
+    private static void writeGauges(StringBuilder out, String name, Object value) {
+        if (value instanceof Number number) {
+            out.append("# TYPE ").append(name).append(" gauge\n");
+            out.append(name).append(' ').append(number).append('\n');
+        } else if (value instanceof Record record) {
+            for (RecordComponent component : record.getClass().getRecordComponents()) {
+                try {
+                    writeGauges(out, name + "_" + snakeCase(component.getName()), component.getAccessor().invoke(record));
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException("Cannot read " + component.getName() + " of " + record.getClass().getSimpleName(), e);
+                }
+            }
+        } else if (value instanceof Map<?, ?> map) {
+            map.forEach((key, entry) -> writeGauges(out, name + "_" + snakeCase(String.valueOf(key)), entry));
+        }
+    }
+
+    private static String snakeCase(String name) {
+        StringBuilder snake = new StringBuilder(name.length() + 8);
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isUpperCase(c)) {
+                if (i > 0) {
+                    snake.append('_');
+                }
+                snake.append(Character.toLowerCase(c));
+            } else {
+                snake.append(Character.isLetterOrDigit(c) ? c : '_');
+            }
+        }
+        return snake.toString();
+    }
+}
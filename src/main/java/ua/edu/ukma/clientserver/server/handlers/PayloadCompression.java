@@ -0,0 +1,174 @@
+package ua.edu.ukma.clientserver.server.handlers;
+
+import com.sun.net.httpserver.Headers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Compresses response JSON before it is encrypted, since ciphertext does not compress.
+// Negotiated through its own headers rather than Accept-Encoding: browsers send that on every request
+// and would try to inflate the Base64 ciphertext themselves on seeing a Content-Encoding.
+public class PayloadCompression {
+
+    public static final String ACCEPT_HEADER = "X-Accept-Payload-Encoding";
+    public static final String ENCODING_HEADER = "X-Payload-Encoding";
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final int minBytes;
+    private final int level;
+    private final LongAdder compressed = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder bytesBefore = new LongAdder();
+    private final LongAdder bytesAfter = new LongAdder();
+
+    public PayloadCompression(int minBytes, int level) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Compression level must be between -1 and 9");
+        }
+        this.minBytes = minBytes;
+        this.level = level;
+    }
+
+    public static PayloadCompression fromSystemProperties() {
+        return new PayloadCompression(
+            Integer.getInteger("compression.minBytes", 1024),
+            Integer.getInteger("compression.level", Deflater.DEFAULT_COMPRESSION)
+        );
+    }
+
+    public int minBytes() {
+        return minBytes;
+    }
+
+    // Picks the encoding with the highest q-value the client accepts, preferring gzip on a tie; null for none
+    public String negotiate(Headers requestHeaders) {
+        String accept = requestHeaders.getFirst(ACCEPT_HEADER);
+        if (accept == null) {
+            return null;
+        }
+        String best = null;
+        double bestQuality = 0;
+        for (String token : accept.split(",")) {
+            String[] parts = token.split(";");
+            String coding = parts[0].strip().toLowerCase(Locale.ROOT);
+            if (!coding.equals(GZIP) && !coding.equals(DEFLATE)) {
+                continue;
+            }
+            double quality = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].strip();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (quality > bestQuality || (quality > 0 && quality == bestQuality && coding.equals(GZIP))) {
+                best = coding;
+                bestQuality = quality;
+            }
+        }
+        return best;
+    }
+
+    // Whether a body of the given size is worth compressing; counts the ones sent as they are
+    public boolean shouldCompress(long length) {
+        if (length >= minBytes) {
+            return true;
+        }
+        skipped.increment();
+        return false;
+    }
+
+    public byte[] compress(String encoding, byte[] body) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(Math.max(64, body.length / 4));
+        try (OutputStream out = compressingStream(encoding, buffer)) {
+            out.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.toByteArray();
+    }
+
+    // Closing the returned stream finishes the compressed stream and closes out
+    public OutputStream compressingStream(String encoding, OutputStream out) throws IOException {
+        CountingStream compressedOut = new CountingStream(out);
+        OutputStream deflating = switch (encoding) {
+            // Subclassed rather than given a Deflater so close() still releases the native one they create
+            case GZIP -> new GZIPOutputStream(compressedOut, BUFFER_SIZE) {
+                {
+                    def.setLevel(level);
+                }
+            };
+            case DEFLATE -> new DeflaterOutputStream(compressedOut) {
+                {
+                    def.setLevel(level);
+                }
+            };
+            default -> throw new IllegalArgumentException("Unsupported payload encoding: " + encoding);
+        };
+        return new CountingStream(deflating) {
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                super.close();
+                compressed.increment();
+                bytesBefore.add(count);
+                bytesAfter.add(compressedOut.count);
+            }
+        };
+    }
+
+    public CompressionStats getStats() {
+        return new CompressionStats(compressed.sum(), skipped.sum(), bytesBefore.sum(), bytesAfter.sum());
+    }
+
+    private static class CountingStream extends FilterOutputStream {
+
+        long count;
+        boolean closed;
+
+        CountingStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            out.close();
+        }
+    }
+
+    public record CompressionStats(long compressed, long skipped, long bytesBefore, long bytesAfter) {
+    }
+}
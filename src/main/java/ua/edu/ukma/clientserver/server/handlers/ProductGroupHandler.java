@@ -1,7 +1,10 @@
 package ua.edu.ukma.clientserver.server.handlers;
 
 import com.sun.net.httpserver.HttpExchange;
+import ua.edu.ukma.clientserver.server.db.Page;
+import ua.edu.ukma.clientserver.server.db.PageRequest;
 import ua.edu.ukma.clientserver.server.db.ProductGroupRepository;
+import ua.edu.ukma.clientserver.server.db.WriteResult;
 import ua.edu.ukma.clientserver.server.models.ProductGroup;
 
 import java.io.IOException;
@@ -10,82 +13,75 @@ import java.util.Optional;
 
 public class ProductGroupHandler extends BaseHandler {
 
+    private static final byte[] NAME_TAKEN = JsonMessages.error("Group with this name already exists");
+    private static final byte[] NAME_TAKEN_BY_OTHER = JsonMessages.error("Another group with this name already exists");
+    private static final byte[] GROUP_NOT_FOUND = JsonMessages.error("Group not found");
+    private static final byte[] GROUP_UPDATED = JsonMessages.message("Group updated successfully");
+    private static final byte[] GROUP_DELETED = JsonMessages.message("Group deleted successfully");
+
     private final ProductGroupRepository productGroupRepository;
 
-    public ProductGroupHandler(ProductGroupRepository productGroupRepository) {
+    public ProductGroupHandler(ProductGroupRepository productGroupRepository, ConditionalResponses conditionalResponses, PayloadCompression compression) {
+        super(conditionalResponses, compression);
         this.productGroupRepository = productGroupRepository;
-    }
 
-    @Override
-    protected void handleRequest(HttpExchange exchange) throws IOException {
-        String path = exchange.getRequestURI().getPath();
-        String method = exchange.getRequestMethod();
-
-        if (path.equals("/api/groups")) {
-            if (method.equals("GET")) {
-                handleGetAllGroups(exchange);
-            } else if (method.equals("POST")) {
-                handleCreateGroup(exchange);
-            }
-        } else if (path.matches("/api/groups/\\d+")) {
-            int id = Integer.parseInt(path.substring(path.lastIndexOf('/') + 1));
-            if (method.equals("GET")) {
-                handleGetGroupById(exchange, id);
-            } else if (method.equals("PUT")) {
-                handleUpdateGroup(exchange, id);
-            } else if (method.equals("DELETE")) {
-                handleDeleteGroup(exchange, id);
-            }
-        } else {
-            sendResponse(exchange, 404, "{\"error\":\"Not Found\"}");
-        }
+        router.get("/api/groups", (exchange, params) -> handleGetAllGroups(exchange));
+        router.post("/api/groups", (exchange, params) -> handleCreateGroup(exchange));
+        router.get("/api/groups/{id:int}", (exchange, params) -> handleGetGroupById(exchange, params.getInt("id")));
+        router.put("/api/groups/{id:int}", (exchange, params) -> handleUpdateGroup(exchange, params.getInt("id")));
+        router.delete("/api/groups/{id:int}", (exchange, params) -> handleDeleteGroup(exchange, params.getInt("id")));
     }
 
     private void handleGetAllGroups(HttpExchange exchange) throws IOException {
+        try {
+            PageRequest pageRequest = readPageRequest(exchange);
+            if (pageRequest != null) {
+                Page page = productGroupRepository.listProductGroups(pageRequest);
+                sendJson(exchange, 200, page);
+                return;
+            }
+        } catch (IllegalArgumentException e) {
+            sendResponse(exchange, 400, JsonMessages.error(e.getMessage()));
+            return;
+        }
         List<ProductGroup> groups = productGroupRepository.getAllProductGroups();
-        sendResponse(exchange, 200, gson.toJson(groups));
+        sendJsonArray(exchange, 200, groups, ProductGroup.class);
     }
 
     private void handleCreateGroup(HttpExchange exchange) throws IOException {
         ProductGroup group = readRequestBody(exchange, ProductGroup.class);
-        if (productGroupRepository.getProductGroupByName(group.name()).isPresent()) {
-            sendResponse(exchange, 409, "{\"error\":\"Group with this name already exists\"}");
+        WriteResult<ProductGroup> result = productGroupRepository.createProductGroup(group);
+        if (result.status() == WriteResult.Status.CONFLICT) {
+            sendResponse(exchange, 409, NAME_TAKEN);
             return;
         }
-        ProductGroup createdGroup = productGroupRepository.createProductGroup(group);
-        sendResponse(exchange, 201, gson.toJson(createdGroup));
+        sendJson(exchange, 201, result.value());
     }
 
     private void handleGetGroupById(HttpExchange exchange, int id) throws IOException {
         Optional<ProductGroup> group = productGroupRepository.getProductGroupById(id);
         if (group.isPresent()) {
-            sendResponse(exchange, 200, gson.toJson(group.get()));
+            sendJson(exchange, 200, group.get());
         } else {
-            sendResponse(exchange, 404, "{\"error\":\"Group not found\"}");
+            sendResponse(exchange, 404, GROUP_NOT_FOUND);
         }
     }
 
     private void handleUpdateGroup(HttpExchange exchange, int id) throws IOException {
         ProductGroup group = readRequestBody(exchange, ProductGroup.class);
-        if (productGroupRepository.getProductGroupById(id).isEmpty()) {
-            sendResponse(exchange, 404, "{\"error\":\"Group not found\"}");
-            return;
-        }
-        Optional<ProductGroup> existingGroupWithSameName = productGroupRepository.getProductGroupByName(group.name());
-        if (existingGroupWithSameName.isPresent() && existingGroupWithSameName.get().id() != id) {
-            sendResponse(exchange, 409, "{\"error\":\"Another group with this name already exists\"}");
-            return;
+        WriteResult<ProductGroup> result = productGroupRepository.updateProductGroup(new ProductGroup(id, group.name(), group.description()));
+        switch (result.status()) {
+            case NOT_FOUND -> sendResponse(exchange, 404, GROUP_NOT_FOUND);
+            case CONFLICT -> sendResponse(exchange, 409, NAME_TAKEN_BY_OTHER);
+            default -> sendResponse(exchange, 200, GROUP_UPDATED);
         }
-        productGroupRepository.updateProductGroup(new ProductGroup(id, group.name(), group.description()));
-        sendResponse(exchange, 200, "{\"message\":\"Group updated successfully\"}");
     }
 
     private void handleDeleteGroup(HttpExchange exchange, int id) throws IOException {
-        if (productGroupRepository.getProductGroupById(id).isEmpty()) {
-            sendResponse(exchange, 404, "{\"error\":\"Group not found\"}");
+        if (productGroupRepository.deleteProductGroup(id).status() == WriteResult.Status.NOT_FOUND) {
+            sendResponse(exchange, 404, GROUP_NOT_FOUND);
             return;
         }
-        productGroupRepository.deleteProductGroup(id);
-        sendResponse(exchange, 200, "{\"message\":\"Group deleted successfully\"}");
+        sendResponse(exchange, 200, GROUP_DELETED);
     }
 } 
\ No newline at end of file
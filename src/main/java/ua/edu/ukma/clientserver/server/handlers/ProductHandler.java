@@ -1,159 +1,422 @@
 package ua.edu.ukma.clientserver.server.handlers;
 
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import com.sun.net.httpserver.HttpExchange;
+import ua.edu.ukma.clientserver.server.db.Page;
+import ua.edu.ukma.clientserver.server.db.PageRequest;
 import ua.edu.ukma.clientserver.server.db.ProductRepository;
+import ua.edu.ukma.clientserver.server.db.StockMovementResult;
+import ua.edu.ukma.clientserver.server.db.StockUpdateResult;
+import ua.edu.ukma.clientserver.server.db.WriteResult;
+import ua.edu.ukma.clientserver.server.metrics.Phase;
+import ua.edu.ukma.clientserver.server.metrics.RequestTimings;
 import ua.edu.ukma.clientserver.server.models.Product;
+import ua.edu.ukma.clientserver.server.models.StockMovement;
+import ua.edu.ukma.clientserver.server.reservations.ReservationResult;
+import ua.edu.ukma.clientserver.server.reservations.StockReservations;
+import ua.edu.ukma.clientserver.server.search.ProductSearchIndex;
+import ua.edu.ukma.clientserver.util.CsvUtil;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Optional;
 
 public class ProductHandler extends BaseHandler {
 
+    private static final int MAX_BATCH_SIZE = 1000;
+    private static final int DEFAULT_SEARCH_LIMIT = 20;
+    private static final int MAX_SEARCH_LIMIT = 100;
+    private static final String[] CSV_COLUMNS = {"id", "groupId", "name", "description", "manufacturer", "quantity", "price"};
+    private static final byte[] INVALID_GROUP_ID = JsonMessages.error("Invalid group ID format");
+    private static final byte[] NAME_TAKEN = JsonMessages.error("Product with this name already exists");
+    private static final byte[] NAME_TAKEN_BY_OTHER = JsonMessages.error("Another product with this name already exists");
+    private static final byte[] PRODUCT_NOT_FOUND = JsonMessages.error("Product not found");
+    private static final byte[] PRODUCT_UPDATED = JsonMessages.message("Product updated successfully");
+    private static final byte[] PRODUCT_DELETED = JsonMessages.message("Product deleted successfully");
+    private static final byte[] MISSING_SEARCH_QUERY = JsonMessages.error("Missing search query");
+    private static final byte[] SEARCH_LIMIT_OUT_OF_RANGE = JsonMessages.error("Limit must be between 1 and " + MAX_SEARCH_LIMIT);
+    private static final byte[] AMOUNT_NOT_POSITIVE = JsonMessages.error("Amount must be positive");
+    private static final byte[] STOCK_ADDED = JsonMessages.message("Stock added successfully");
+    private static final byte[] NOT_ENOUGH_STOCK = JsonMessages.error("Not enough stock");
+    private static final byte[] STOCK_SOLD = JsonMessages.message("Stock sold successfully");
+    private static final byte[] UNSUPPORTED_FORMAT = JsonMessages.error("Unsupported format");
+    private static final byte[] NO_STOCK_MOVEMENTS = JsonMessages.error("No stock movements given");
+    private static final byte[] TOO_MANY_STOCK_MOVEMENTS = JsonMessages.error("Too many stock movements, the limit is " + MAX_BATCH_SIZE);
+    private static final byte[] INVALID_STOCK_MOVEMENT = JsonMessages.error("Each stock movement needs a productId and a delta");
+
     private final ProductRepository productRepository;
+    private final ProductSearchIndex searchIndex;
+    private final StockReservations reservations;
 
-    public ProductHandler(ProductRepository productRepository) {
+    // Without reservations there is no /reserve and sales go straight to the repository
+    public ProductHandler(ProductRepository productRepository, ProductSearchIndex searchIndex, StockReservations reservations, ConditionalResponses conditionalResponses, PayloadCompression compression) {
+        super(conditionalResponses, compression);
         this.productRepository = productRepository;
+        this.searchIndex = searchIndex;
+        this.reservations = reservations;
+
+        router.get("/api/products", (exchange, params) -> handleGetProducts(exchange));
+        router.post("/api/products", (exchange, params) -> handleCreateProduct(exchange));
+        router.get("/api/products/search", (exchange, params) -> handleSearchProducts(exchange));
+        router.get("/api/products/export", (exchange, params) -> handleExportProducts(exchange));
+        router.post("/api/products/import", (exchange, params) -> handleImportProducts(exchange));
+        router.post("/api/products/stock-batch", (exchange, params) -> handleStockBatch(exchange));
+        router.get("/api/products/{id:int}", (exchange, params) -> handleGetProductById(exchange, params.getInt("id")));
+        router.put("/api/products/{id:int}", (exchange, params) -> handleUpdateProduct(exchange, params.getInt("id")));
+        router.delete("/api/products/{id:int}", (exchange, params) -> handleDeleteProduct(exchange, params.getInt("id")));
+        router.post("/api/products/{id:int}/add", (exchange, params) -> handleAddStock(exchange, params.getInt("id")));
+        router.post("/api/products/{id:int}/sell", (exchange, params) -> handleSellStock(exchange, params.getInt("id")));
+        if (reservations != null) {
+            router.post("/api/products/{id:int}/reserve", (exchange, params) -> handleReserveStock(exchange, params.getInt("id")));
+        }
     }
 
-    @Override
-    protected void handleRequest(HttpExchange exchange) throws IOException {
-        String path = exchange.getRequestURI().getPath();
-        String method = exchange.getRequestMethod();
-        String query = exchange.getRequestURI().getQuery();
+    private void handleGetProducts(HttpExchange exchange) throws IOException {
+        String groupId = queryParam(exchange, "groupId");
+        PageRequest pageRequest;
+        try {
+            pageRequest = readPageRequest(exchange);
+        } catch (IllegalArgumentException e) {
+            sendResponse(exchange, 400, JsonMessages.error(e.getMessage()));
+            return;
+        }
+        if (pageRequest != null) {
+            handleListProducts(exchange, groupId, pageRequest);
+        } else if (groupId != null) {
+            handleGetProductsByGroupId(exchange, groupId);
+        } else {
+            handleGetAllProducts(exchange);
+        }
+    }
 
-        if (path.equals("/api/products")) {
-            if (method.equals("GET")) {
-                if (query != null && query.startsWith("groupId=")) {
-                    handleGetProductsByGroupId(exchange, query);
-                } else {
-                    handleGetAllProducts(exchange);
-                }
-            } else if (method.equals("POST")) {
-                handleCreateProduct(exchange);
-            }
-        } else if (path.matches("/api/products/\\d+")) {
-            int id = Integer.parseInt(path.substring(path.lastIndexOf('/') + 1));
-            if (method.equals("GET")) {
-                handleGetProductById(exchange, id);
-            } else if (method.equals("PUT")) {
-                handleUpdateProduct(exchange, id);
-            } else if (method.equals("DELETE")) {
-                handleDeleteProduct(exchange, id);
+    private void handleListProducts(HttpExchange exchange, String groupIdParam, PageRequest pageRequest) throws IOException {
+        Integer groupId = null;
+        if (groupIdParam != null) {
+            try {
+                groupId = Integer.parseInt(groupIdParam);
+            } catch (NumberFormatException e) {
+                sendResponse(exchange, 400, INVALID_GROUP_ID);
+                return;
             }
-        } else if (path.equals("/api/products/search")) {
-            if (method.equals("GET")) {
-                handleSearchProducts(exchange);
-            }
-        } else if (path.matches("/api/products/\\d+/add")) {
-            if (method.equals("POST")) {
-                int id = Integer.parseInt(path.split("/")[3]);
-                handleAddStock(exchange, id);
-            }
-        } else if (path.matches("/api/products/\\d+/sell")) {
-            if (method.equals("POST")) {
-                int id = Integer.parseInt(path.split("/")[3]);
-                handleSellStock(exchange, id);
-            }
-        } else {
-            sendResponse(exchange, 404, "{\"error\":\"Not Found\"}");
+        }
+        try {
+            Page page = productRepository.listProducts(groupId, pageRequest);
+            sendJson(exchange, 200, page);
+        } catch (IllegalArgumentException e) {
+            sendResponse(exchange, 400, JsonMessages.error(e.getMessage()));
         }
     }
 
     private void handleGetAllProducts(HttpExchange exchange) throws IOException {
         List<Product> products = productRepository.getAllProducts();
-        sendResponse(exchange, 200, gson.toJson(products));
+        sendJsonArray(exchange, 200, products, Product.class);
     }
 
     private void handleCreateProduct(HttpExchange exchange) throws IOException {
         Product product = readRequestBody(exchange, Product.class);
-        if (productRepository.getProductByName(product.name()).isPresent()) {
-            sendResponse(exchange, 409, "{\"error\":\"Product with this name already exists\"}");
+        WriteResult<Product> result = productRepository.createProduct(product);
+        if (result.status() == WriteResult.Status.CONFLICT) {
+            sendResponse(exchange, 409, NAME_TAKEN);
             return;
         }
-        Product createdProduct = productRepository.createProduct(product);
-        sendResponse(exchange, 201, gson.toJson(createdProduct));
+        sendJson(exchange, 201, result.value());
     }
 
     private void handleGetProductById(HttpExchange exchange, int id) throws IOException {
         Optional<Product> product = productRepository.getProductById(id);
         if (product.isPresent()) {
-            sendResponse(exchange, 200, gson.toJson(product.get()));
+            sendJson(exchange, 200, product.get());
         } else {
-            sendResponse(exchange, 404, "{\"error\":\"Product not found\"}");
+            sendResponse(exchange, 404, PRODUCT_NOT_FOUND);
         }
     }
 
     private void handleUpdateProduct(HttpExchange exchange, int id) throws IOException {
         Product product = readRequestBody(exchange, Product.class);
-        if (productRepository.getProductById(id).isEmpty()) {
-            sendResponse(exchange, 404, "{\"error\":\"Product not found\"}");
-            return;
+        WriteResult<Product> result = productRepository.updateProduct(new Product(id, product.groupId(), product.name(), product.description(), product.manufacturer(), product.quantity(), product.price()));
+        switch (result.status()) {
+            case NOT_FOUND -> sendResponse(exchange, 404, PRODUCT_NOT_FOUND);
+            case CONFLICT -> sendResponse(exchange, 409, NAME_TAKEN_BY_OTHER);
+            default -> sendResponse(exchange, 200, PRODUCT_UPDATED);
         }
-        Optional<Product> existingProductWithSameName = productRepository.getProductByName(product.name());
-        if (existingProductWithSameName.isPresent() && existingProductWithSameName.get().id() != id) {
-            sendResponse(exchange, 409, "{\"error\":\"Another product with this name already exists\"}");
-            return;
-        }
-        productRepository.updateProduct(new Product(id, product.groupId(), product.name(), product.description(), product.manufacturer(), product.quantity(), product.price()));
-        sendResponse(exchange, 200, "{\"message\":\"Product updated successfully\"}");
     }
 
     private void handleDeleteProduct(HttpExchange exchange, int id) throws IOException {
-        if (productRepository.getProductById(id).isEmpty()) {
-            sendResponse(exchange, 404, "{\"error\":\"Product not found\"}");
+        if (productRepository.deleteProduct(id).status() == WriteResult.Status.NOT_FOUND) {
+            sendResponse(exchange, 404, PRODUCT_NOT_FOUND);
             return;
         }
-        productRepository.deleteProduct(id);
-        sendResponse(exchange, 200, "{\"message\":\"Product deleted successfully\"}");
+        sendResponse(exchange, 200, PRODUCT_DELETED);
     }
 
     private void handleSearchProducts(HttpExchange exchange) throws IOException {
-        String query = exchange.getRequestURI().getQuery().split("=")[1];
-        List<Product> products = productRepository.findProducts(query);
-        sendResponse(exchange, 200, gson.toJson(products));
+        String query = queryParam(exchange, "q");
+        if (query == null) {
+            sendResponse(exchange, 400, MISSING_SEARCH_QUERY);
+            return;
+        }
+        String limitParam = queryParam(exchange, "limit");
+        int limit = DEFAULT_SEARCH_LIMIT;
+        if (limitParam != null) {
+            try {
+                limit = Integer.parseInt(limitParam);
+            } catch (NumberFormatException e) {
+                limit = 0;
+            }
+            if (limit <= 0 || limit > MAX_SEARCH_LIMIT) {
+                sendResponse(exchange, 400, SEARCH_LIMIT_OUT_OF_RANGE);
+                return;
+            }
+        }
+        List<Product> products = searchIndex.search(query, limit);
+        sendJsonArray(exchange, 200, products, Product.class);
     }
 
     private void handleAddStock(HttpExchange exchange, int id) throws IOException {
-        Optional<Product> optionalProduct = productRepository.getProductById(id);
-        if (optionalProduct.isEmpty()) {
-            sendResponse(exchange, 404, "{\"error\":\"Product not found\"}");
+        AmountUpdateRequest request = readRequestBody(exchange, AmountUpdateRequest.class);
+        if (request.amount() <= 0) {
+            sendResponse(exchange, 400, AMOUNT_NOT_POSITIVE);
             return;
         }
-        Product product = optionalProduct.get();
-        AmountUpdateRequest request = readRequestBody(exchange, AmountUpdateRequest.class);
-        int newQuantity = product.quantity() + request.amount();
-        productRepository.updateProduct(new Product(id, product.groupId(), product.name(), product.description(), product.manufacturer(), newQuantity, product.price()));
-        sendResponse(exchange, 200, "{\"message\":\"Stock added successfully\"}");
+        StockUpdateResult result = productRepository.addStock(id, request.amount());
+        if (result.status() == StockUpdateResult.Status.NOT_FOUND) {
+            sendResponse(exchange, 404, PRODUCT_NOT_FOUND);
+            return;
+        }
+        sendResponse(exchange, 200, STOCK_ADDED);
     }
 
     private void handleSellStock(HttpExchange exchange, int id) throws IOException {
-        Optional<Product> optionalProduct = productRepository.getProductById(id);
-        if (optionalProduct.isEmpty()) {
-            sendResponse(exchange, 404, "{\"error\":\"Product not found\"}");
+        AmountUpdateRequest request = readRequestBody(exchange, AmountUpdateRequest.class);
+        if (request.amount() <= 0) {
+            sendResponse(exchange, 400, AMOUNT_NOT_POSITIVE);
             return;
         }
-        Product product = optionalProduct.get();
-        AmountUpdateRequest request = readRequestBody(exchange, AmountUpdateRequest.class);
-        if (product.quantity() < request.amount()) {
-            sendResponse(exchange, 400, "{\"error\":\"Not enough stock\"}");
+        StockUpdateResult result = reservations != null ? reservations.sell(id, request.amount()) : productRepository.sellStock(id, request.amount());
+        switch (result.status()) {
+            case NOT_FOUND -> sendResponse(exchange, 404, PRODUCT_NOT_FOUND);
+            case INSUFFICIENT_STOCK -> sendResponse(exchange, 400, NOT_ENOUGH_STOCK);
+            case UPDATED -> sendResponse(exchange, 200, STOCK_SOLD);
+        }
+    }
+
+    private void handleReserveStock(HttpExchange exchange, int id) throws IOException {
+        ReserveRequest request = readRequestBody(exchange, ReserveRequest.class);
+        if (request.amount <= 0) {
+            sendResponse(exchange, 400, AMOUNT_NOT_POSITIVE);
+            return;
+        }
+        ReservationResult result;
+        try {
+            result = reservations.reserve(id, request.amount, request.ttlSeconds == null ? null : Duration.ofSeconds(request.ttlSeconds));
+        } catch (IllegalArgumentException e) {
+            sendResponse(exchange, 400, JsonMessages.error(e.getMessage()));
+            return;
+        }
+        switch (result.status()) {
+            case PRODUCT_NOT_FOUND -> sendResponse(exchange, 404, PRODUCT_NOT_FOUND);
+            case INSUFFICIENT_STOCK -> sendResponse(exchange, 400, NOT_ENOUGH_STOCK);
+            default -> sendJson(exchange, 201, result.reservation());
+        }
+    }
+
+    private void handleExportProducts(HttpExchange exchange) throws IOException {
+        String format = queryParam(exchange, "format");
+        if (format == null || format.equals("ndjson")) {
+            sendStreamingResponse(exchange, 200, out -> {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                JsonWriter jsonWriter = new JsonWriter(writer);
+                jsonWriter.setLenient(true); // One top-level value per line
+                productRepository.streamAllProducts(product -> {
+                    // Rows arrive while the connection is held; this keeps Gson's share out of the DB phase
+                    RequestTimings.enter(Phase.JSON);
+                    try {
+                        gson.toJson(product, Product.class, jsonWriter);
+                        writer.write('\n');
+                    } finally {
+                        RequestTimings.exit(Phase.JSON);
+                    }
+                });
+                writer.flush();
+            });
+        } else if (format.equals("csv")) {
+            sendStreamingResponse(exchange, 200, out -> {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                CsvUtil.writeRow(writer, CSV_COLUMNS);
+                productRepository.streamAllProducts(product -> CsvUtil.writeRow(writer,
+                    String.valueOf(product.id()),
+                    String.valueOf(product.groupId()),
+                    product.name(),
+                    product.description(),
+                    product.manufacturer(),
+                    String.valueOf(product.quantity()),
+                    product.price().toPlainString()
+                ));
+                writer.flush();
+            });
+        } else {
+            sendResponse(exchange, 400, UNSUPPORTED_FORMAT);
+        }
+    }
+
+    private void handleImportProducts(HttpExchange exchange) throws IOException {
+        String format = queryParam(exchange, "format");
+        if (format != null && !format.equals("ndjson") && !format.equals("csv")) {
+            sendResponse(exchange, 400, UNSUPPORTED_FORMAT);
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(openRequestReader(exchange))) {
+            Iterator<Product> products = "csv".equals(format) ? csvProducts(reader) : ndjsonProducts(reader);
+            int imported = productRepository.importProducts(products);
+            sendResponse(exchange, 201, "{\"imported\":" + imported + "}");
+        } catch (IllegalArgumentException | JsonParseException | UncheckedIOException e) {
+            sendResponse(exchange, 400, JsonMessages.error("Invalid import data: " + e.getMessage()));
+        }
+    }
+
+    private Iterator<Product> ndjsonProducts(Reader reader) {
+        JsonReader jsonReader = new JsonReader(reader);
+        jsonReader.setLenient(true); // One top-level value per line
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                try {
+                    return jsonReader.peek() != JsonToken.END_DOCUMENT;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public Product next() {
+                RequestTimings.enter(Phase.JSON);
+                try {
+                    return gson.fromJson(jsonReader, Product.class);
+                } finally {
+                    RequestTimings.exit(Phase.JSON);
+                }
+            }
+        };
+    }
+
+    private Iterator<Product> csvProducts(BufferedReader reader) throws IOException {
+        List<String> header = CsvUtil.readRow(reader);
+        if (header == null || !header.equals(List.of(CSV_COLUMNS))) {
+            throw new IllegalArgumentException("CSV header must be " + String.join(",", CSV_COLUMNS));
+        }
+        return new Iterator<>() {
+            private List<String> row = readDataRow();
+
+            @Override
+            public boolean hasNext() {
+                return row != null;
+            }
+
+            @Override
+            public Product next() {
+                if (row == null) {
+                    throw new NoSuchElementException();
+                }
+                if (row.size() != CSV_COLUMNS.length) {
+                    throw new IllegalArgumentException("Expected " + CSV_COLUMNS.length + " columns but got " + row.size());
+                }
+                Product product = new Product(0, Integer.parseInt(row.get(1)), row.get(2), row.get(3), row.get(4), Integer.parseInt(row.get(5)), new BigDecimal(row.get(6)));
+                row = readDataRow();
+                return product;
+            }
+
+            private List<String> readDataRow() {
+                try {
+                    List<String> next;
+                    do {
+                        next = CsvUtil.readRow(reader);
+                    } while (next != null && next.size() == 1 && next.get(0).isEmpty());
+                    return next;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    private void handleStockBatch(HttpExchange exchange) throws IOException {
+        StockBatchRequest request = readRequestBody(exchange, StockBatchRequest.class);
+        if (request.movements == null || request.movements.isEmpty()) {
+            sendResponse(exchange, 400, NO_STOCK_MOVEMENTS);
+            return;
+        }
+        if (request.movements.size() > MAX_BATCH_SIZE) {
+            sendResponse(exchange, 400, TOO_MANY_STOCK_MOVEMENTS);
             return;
         }
-        int newQuantity = product.quantity() - request.amount();
-        productRepository.updateProduct(new Product(id, product.groupId(), product.name(), product.description(), product.manufacturer(), newQuantity, product.price()));
-        sendResponse(exchange, 200, "{\"message\":\"Stock sold successfully\"}");
+        List<StockMovement> movements = new ArrayList<>(request.movements.size());
+        for (MovementRequest movement : request.movements) {
+            if (movement == null || movement.productId == null || movement.delta == null) {
+                sendResponse(exchange, 400, INVALID_STOCK_MOVEMENT);
+                return;
+            }
+            movements.add(new StockMovement(movement.productId, movement.delta));
+        }
+        boolean atomic = request.mode != BatchMode.BEST_EFFORT;
+        List<StockMovementResult> results = productRepository.applyStockMovements(movements, atomic);
+
+        long applied = results.stream().filter(result -> result.status() == StockUpdateResult.Status.UPDATED).count();
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("applied", applied);
+        response.put("failed", results.size() - applied);
+        response.put("results", results);
+        boolean rolledBack = atomic && applied < results.size();
+        sendJson(exchange, rolledBack ? 409 : 200, response);
     }
 
-    private void handleGetProductsByGroupId(HttpExchange exchange, String query) throws IOException {
+    private void handleGetProductsByGroupId(HttpExchange exchange, String groupIdParam) throws IOException {
         try {
-            int groupId = Integer.parseInt(query.split("=")[1]);
+            int groupId = Integer.parseInt(groupIdParam);
             List<Product> products = productRepository.getProductsByGroupId(groupId);
-            sendResponse(exchange, 200, gson.toJson(products));
+            sendJsonArray(exchange, 200, products, Product.class);
         } catch (NumberFormatException e) {
-            sendResponse(exchange, 400, "{\"error\":\"Invalid group ID format\"}");
+            sendResponse(exchange, 400, INVALID_GROUP_ID);
         }
     }
 
+    private enum BatchMode {
+        ATOMIC,
+        BEST_EFFORT
+    }
+
+    private static class StockBatchRequest {
+        private BatchMode mode;
+        private List<MovementRequest> movements;
+    }
+
+    // Boxed so that a missing or null field is told apart from zero
+    private static class MovementRequest {
+        private Integer productId;
+        private Integer delta;
+    }
+
+    private static class ReserveRequest {
+        private int amount;
+        private Long ttlSeconds;
+    }
+
     private static class AmountUpdateRequest {
         private int amount;
 
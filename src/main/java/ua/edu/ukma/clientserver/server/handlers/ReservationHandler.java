@@ -0,0 +1,56 @@
+package ua.edu.ukma.clientserver.server.handlers;
+
+import com.sun.net.httpserver.HttpExchange;
+import ua.edu.ukma.clientserver.server.models.Reservation;
+import ua.edu.ukma.clientserver.server.reservations.ReservationResult;
+import ua.edu.ukma.clientserver.server.reservations.StockReservations;
+
+import java.io.IOException;
+import java.util.Optional;
+
+public class ReservationHandler extends BaseHandler {
+
+    private static final byte[] RESERVATION_NOT_FOUND = JsonMessages.error("Reservation not found or expired");
+    private static final byte[] PRODUCT_NOT_FOUND = JsonMessages.error("Product not found");
+    private static final byte[] NOT_ENOUGH_STOCK = JsonMessages.error("Not enough stock");
+    private static final byte[] RESERVATION_CANCELLED = JsonMessages.message("Reservation cancelled successfully");
+
+    private final StockReservations reservations;
+
+    public ReservationHandler(StockReservations reservations, PayloadCompression compression) {
+        super(null, compression);
+        this.reservations = reservations;
+
+        router.get("/api/reservations/{id}", (exchange, params) -> handleGetReservation(exchange, params.getString("id")));
+        router.post("/api/reservations/{id}/confirm", (exchange, params) -> handleConfirmReservation(exchange, params.getString("id")));
+        router.delete("/api/reservations/{id}", (exchange, params) -> handleCancelReservation(exchange, params.getString("id")));
+    }
+
+    private void handleGetReservation(HttpExchange exchange, String id) throws IOException {
+        Optional<Reservation> reservation = reservations.getReservation(id);
+        if (reservation.isPresent()) {
+            sendJson(exchange, 200, reservation.get());
+        } else {
+            sendResponse(exchange, 404, RESERVATION_NOT_FOUND);
+        }
+    }
+
+    private void handleConfirmReservation(HttpExchange exchange, String id) throws IOException {
+        ReservationResult result = reservations.confirm(id);
+        switch (result.status()) {
+            case CONFIRMED -> sendJson(exchange, 200, result.reservation());
+            case PRODUCT_NOT_FOUND -> sendResponse(exchange, 404, PRODUCT_NOT_FOUND);
+            case INSUFFICIENT_STOCK -> sendResponse(exchange, 409, NOT_ENOUGH_STOCK);
+            default -> sendResponse(exchange, 404, RESERVATION_NOT_FOUND);
+        }
+    }
+
+    private void handleCancelReservation(HttpExchange exchange, String id) throws IOException {
+        ReservationResult result = reservations.cancel(id);
+        if (result.status() == ReservationResult.Status.CANCELLED) {
+            sendResponse(exchange, 200, RESERVATION_CANCELLED);
+        } else {
+            sendResponse(exchange, 404, RESERVATION_NOT_FOUND);
+        }
+    }
+}
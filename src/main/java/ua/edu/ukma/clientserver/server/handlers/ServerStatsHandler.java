@@ -0,0 +1,26 @@
+package ua.edu.ukma.clientserver.server.handlers;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+public class ServerStatsHandler extends BaseHandler {
+
+    private final Map<String, Supplier<?>> sections;
+
+    public ServerStatsHandler(Map<String, Supplier<?>> sections) {
+        this.sections = sections;
+
+        router.get("/api/server/stats", (exchange, params) -> handleGetStats(exchange));
+    }
+
+    private void handleGetStats(HttpExchange exchange) throws IOException {
+        Map<String, Object> response = new LinkedHashMap<>();
+        sections.forEach((name, section) -> response.put(name, section.get()));
+        sendJson(exchange, 200, response);
+    }
+
+}
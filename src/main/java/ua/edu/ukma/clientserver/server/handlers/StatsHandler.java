@@ -1,57 +1,33 @@
 package ua.edu.ukma.clientserver.server.handlers;
 
 import com.sun.net.httpserver.HttpExchange;
-import ua.edu.ukma.clientserver.server.db.ProductRepository;
+import ua.edu.ukma.clientserver.server.stats.InventoryValueAggregate;
+import ua.edu.ukma.clientserver.server.stats.TotalValue;
 
 import java.io.IOException;
 import java.math.BigDecimal;
-import java.util.HashMap;
-import java.util.Map;
 
 public class StatsHandler extends BaseHandler {
 
-    private final ProductRepository productRepository;
+    private final InventoryValueAggregate inventoryValue;
 
-    public StatsHandler(ProductRepository productRepository) {
-        this.productRepository = productRepository;
-    }
+    public StatsHandler(InventoryValueAggregate inventoryValue, ConditionalResponses conditionalResponses, PayloadCompression compression) {
+        super(conditionalResponses, compression);
+        this.inventoryValue = inventoryValue;
 
-    @Override
-    protected void handleRequest(HttpExchange exchange) throws IOException {
-        String path = exchange.getRequestURI().getPath();
-        String method = exchange.getRequestMethod();
-
-        if (method.equals("GET")) {
-            if (path.equals("/api/stats/total-value")) {
-                handleGetTotalValue(exchange);
-            } else if (path.matches("/api/stats/groups/\\d+/total-value")) {
-                int groupId = Integer.parseInt(path.split("/")[4]);
-                handleGetTotalValueByGroup(exchange, groupId);
-            } else {
-                sendResponse(exchange, 404, "{\"error\":\"Not Found\"}");
-            }
-        } else {
-            sendResponse(exchange, 405, "{\"error\":\"Method Not Allowed\"}");
-        }
+        router.get("/api/stats/total-value", (exchange, params) -> handleGetTotalValue(exchange));
+        router.get("/api/stats/groups/{id:int}/total-value", (exchange, params) -> handleGetTotalValueByGroup(exchange, params.getInt("id")));
     }
 
     private void handleGetTotalValue(HttpExchange exchange) throws IOException {
-        BigDecimal totalValue = productRepository.getTotalValue();
-        if (totalValue == null) {
-            totalValue = BigDecimal.ZERO;
-        }
-        Map<String, BigDecimal> response = new HashMap<>();
-        response.put("totalValue", totalValue);
-        sendResponse(exchange, 200, gson.toJson(response));
+        sendTotalValue(exchange, inventoryValue.getTotalValue());
     }
 
     private void handleGetTotalValueByGroup(HttpExchange exchange, int groupId) throws IOException {
-        BigDecimal totalValue = productRepository.getTotalValueByGroupId(groupId);
-        if (totalValue == null) {
-            totalValue = BigDecimal.ZERO;
-        }
-        Map<String, BigDecimal> response = new HashMap<>();
-        response.put("totalValue", totalValue);
-        sendResponse(exchange, 200, gson.toJson(response));
+        sendTotalValue(exchange, inventoryValue.getTotalValueByGroupId(groupId));
+    }
+
+    private void sendTotalValue(HttpExchange exchange, BigDecimal totalValue) throws IOException {
+        sendJson(exchange, 200, new TotalValue(totalValue));
     }
-} 
\ No newline at end of file
+}
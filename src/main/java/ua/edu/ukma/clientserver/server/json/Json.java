@@ -0,0 +1,25 @@
+package ua.edu.ukma.clientserver.server.json;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import ua.edu.ukma.clientserver.server.models.Product;
+import ua.edu.ukma.clientserver.server.models.ProductGroup;
+import ua.edu.ukma.clientserver.server.stats.TotalValue;
+
+// The one Gson the server uses. Types on the hot paths get hand-written adapters instead of
+// reflection; everything else still falls back to Gson's defaults.
+public final class Json {
+
+    private static final Gson GSON = new GsonBuilder()
+        .registerTypeAdapter(Product.class, new ProductAdapter())
+        .registerTypeAdapter(ProductGroup.class, new ProductGroupAdapter())
+        .registerTypeAdapter(TotalValue.class, new TotalValueAdapter())
+        .create();
+
+    private Json() {
+    }
+
+    public static Gson gson() {
+        return GSON;
+    }
+}
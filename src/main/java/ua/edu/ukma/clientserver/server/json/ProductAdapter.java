@@ -0,0 +1,86 @@
+package ua.edu.ukma.clientserver.server.json;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import ua.edu.ukma.clientserver.server.models.Product;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+// Same field names and null handling as Gson's reflective record adapter: missing numbers read as 0, null ones are rejected,
+// unknown fields are skipped, and null strings are left out on write
+class ProductAdapter extends TypeAdapter<Product> {
+
+    @Override
+    public void write(JsonWriter out, Product product) throws IOException {
+        if (product == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("id").value(product.id());
+        out.name("groupId").value(product.groupId());
+        out.name("name").value(product.name());
+        out.name("description").value(product.description());
+        out.name("manufacturer").value(product.manufacturer());
+        out.name("quantity").value(product.quantity());
+        out.name("price").value(product.price());
+        out.endObject();
+    }
+
+    @Override
+    public Product read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        int id = 0;
+        int groupId = 0;
+        String name = null;
+        String description = null;
+        String manufacturer = null;
+        int quantity = 0;
+        BigDecimal price = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            String field = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                nullValue(in, field);
+                continue;
+            }
+            switch (field) {
+                case "id" -> id = in.nextInt();
+                case "groupId" -> groupId = in.nextInt();
+                case "name" -> name = in.nextString();
+                case "description" -> description = in.nextString();
+                case "manufacturer" -> manufacturer = in.nextString();
+                case "quantity" -> quantity = in.nextInt();
+                case "price" -> price = readBigDecimal(in);
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        return new Product(id, groupId, name, description, manufacturer, quantity, price);
+    }
+
+    // As Gson reads BigDecimal: from a number or a numeric string, keeping every digit given
+    static BigDecimal readBigDecimal(JsonReader in) throws IOException {
+        String value = in.nextString();
+        try {
+            return new BigDecimal(value);
+        } catch (NumberFormatException e) {
+            throw new JsonSyntaxException("Failed parsing '" + value + "' as BigDecimal; at path " + in.getPreviousPath(), e);
+        }
+    }
+
+    private static void nullValue(JsonReader in, String field) throws IOException {
+        if (field.equals("id") || field.equals("groupId") || field.equals("quantity")) {
+            throw new JsonParseException("null is not allowed as value for record component '" + field + "' of primitive type; at path " + in.getPath());
+        }
+        in.nextNull();
+    }
+}
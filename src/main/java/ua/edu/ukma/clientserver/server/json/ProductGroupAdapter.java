@@ -0,0 +1,60 @@
+package ua.edu.ukma.clientserver.server.json;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import ua.edu.ukma.clientserver.server.models.ProductGroup;
+
+import java.io.IOException;
+
+class ProductGroupAdapter extends TypeAdapter<ProductGroup> {
+
+    @Override
+    public void write(JsonWriter out, ProductGroup group) throws IOException {
+        if (group == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("id").value(group.id());
+        out.name("name").value(group.name());
+        out.name("description").value(group.description());
+        out.endObject();
+    }
+
+    @Override
+    public ProductGroup read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        int id = 0;
+        String name = null;
+        String description = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            String field = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                nullValue(in, field);
+                continue;
+            }
+            switch (field) {
+                case "id" -> id = in.nextInt();
+                case "name" -> name = in.nextString();
+                case "description" -> description = in.nextString();
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        return new ProductGroup(id, name, description);
+    }
+
+    private static void nullValue(JsonReader in, String field) throws IOException {
+        if (field.equals("id")) {
+            throw new JsonParseException("null is not allowed as value for record component '" + field + "' of primitive type; at path " + in.getPath());
+        }
+        in.nextNull();
+    }
+}
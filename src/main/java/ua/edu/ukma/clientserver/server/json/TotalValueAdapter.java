@@ -0,0 +1,43 @@
+package ua.edu.ukma.clientserver.server.json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import ua.edu.ukma.clientserver.server.stats.TotalValue;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+class TotalValueAdapter extends TypeAdapter<TotalValue> {
+
+    @Override
+    public void write(JsonWriter out, TotalValue totalValue) throws IOException {
+        if (totalValue == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("totalValue").value(totalValue.totalValue());
+        out.endObject();
+    }
+
+    @Override
+    public TotalValue read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        BigDecimal value = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            if (in.nextName().equals("totalValue") && in.peek() != JsonToken.NULL) {
+                value = ProductAdapter.readBigDecimal(in);
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return new TotalValue(value);
+    }
+}
@@ -0,0 +1,120 @@
+package ua.edu.ukma.clientserver.server.json;
+
+import java.io.Writer;
+import java.util.Arrays;
+
+// A Writer that encodes to UTF-8 into a growing byte array. JsonWriter emits many short strings, and an
+// OutputStreamWriter wraps each of them in a fresh CharBuffer; this keeps the only allocation the array itself.
+public final class Utf8Buffer extends Writer {
+
+    private byte[] bytes;
+    private int size;
+    // High surrogate whose low half has not been written yet
+    private char pendingHigh;
+
+    public Utf8Buffer(int initialCapacity) {
+        bytes = new byte[Math.max(initialCapacity, 16)];
+    }
+
+    @Override
+    public void write(int c) {
+        writeChar((char) c);
+    }
+
+    @Override
+    public void write(char[] chars, int off, int len) {
+        ensureCapacity(len);
+        for (int i = off; i < off + len; i++) {
+            char c = chars[i];
+            if (c < 0x80 && pendingHigh == 0 && size < bytes.length) {
+                bytes[size++] = (byte) c;
+            } else {
+                writeChar(c);
+            }
+        }
+    }
+
+    @Override
+    public void write(String text) {
+        write(text, 0, text.length());
+    }
+
+    @Override
+    public void write(String text, int off, int len) {
+        ensureCapacity(len);
+        for (int i = off; i < off + len; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80 && pendingHigh == 0 && size < bytes.length) {
+                bytes[size++] = (byte) c;
+            } else {
+                writeChar(c);
+            }
+        }
+    }
+
+    private void writeChar(char c) {
+        if (pendingHigh != 0) {
+            char high = pendingHigh;
+            pendingHigh = 0;
+            if (Character.isLowSurrogate(c)) {
+                int codePoint = Character.toCodePoint(high, c);
+                ensureCapacity(4);
+                bytes[size++] = (byte) (0xF0 | codePoint >> 18);
+                bytes[size++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                bytes[size++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                bytes[size++] = (byte) (0x80 | codePoint & 0x3F);
+                return;
+            }
+            writeReplacement();
+        }
+        ensureCapacity(3);
+        if (c < 0x80) {
+            bytes[size++] = (byte) c;
+        } else if (c < 0x800) {
+            bytes[size++] = (byte) (0xC0 | c >> 6);
+            bytes[size++] = (byte) (0x80 | c & 0x3F);
+        } else if (Character.isHighSurrogate(c)) {
+            pendingHigh = c;
+        } else if (Character.isLowSurrogate(c)) {
+            writeReplacement();
+        } else {
+            bytes[size++] = (byte) (0xE0 | c >> 12);
+            bytes[size++] = (byte) (0x80 | c >> 6 & 0x3F);
+            bytes[size++] = (byte) (0x80 | c & 0x3F);
+        }
+    }
+
+    // Unpaired surrogates become '?', as String.getBytes(UTF_8) does
+    private void writeReplacement() {
+        ensureCapacity(1);
+        bytes[size++] = '?';
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public byte[] toByteArray() {
+        flush();
+        return Arrays.copyOf(bytes, size);
+    }
+
+    @Override
+    public void flush() {
+        if (pendingHigh != 0) {
+            pendingHigh = 0;
+            writeReplacement();
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+}
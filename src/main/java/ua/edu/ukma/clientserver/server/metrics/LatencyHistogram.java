@@ -0,0 +1,86 @@
+package ua.edu.ukma.clientserver.server.metrics;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+// Log-linear buckets in the spirit of HdrHistogram at low precision: two per power of two from 16 µs
+// to about 50 s, so a bucket's bound overstates the latencies in it by at most half.
+// Recording is a binary search and two LongAdder increments, so concurrent requests never contend on a lock.
+public class LatencyHistogram {
+
+    static final long[] BOUNDS_MICROS = bounds(16, 50_000_000);
+    private static final String[] BOUND_LABELS = Arrays.stream(BOUNDS_MICROS)
+        .mapToObj(micros -> BigDecimal.valueOf(micros, 6).stripTrailingZeros().toPlainString())
+        .toArray(String[]::new);
+
+    // The last bucket takes everything above the largest bound
+    private final LongAdder[] buckets = new LongAdder[BOUNDS_MICROS.length + 1];
+    private final LongAdder sumNanos = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        buckets[bucketIndex(nanos)].increment();
+        sumNanos.add(nanos);
+    }
+
+    public Snapshot snapshot() {
+        long[] counts = new long[buckets.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return new Snapshot(counts, sumNanos.sum());
+    }
+
+    // Upper bounds are inclusive, like Prometheus' le
+    static int bucketIndex(long nanos) {
+        long micros = (Math.max(0, nanos) + 999) / 1000;
+        int index = Arrays.binarySearch(BOUNDS_MICROS, micros);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    // The bound of bucket i in seconds, as written in the le label
+    static String boundLabel(int bucket) {
+        return bucket < BOUND_LABELS.length ? BOUND_LABELS[bucket] : "+Inf";
+    }
+
+    private static long[] bounds(long smallest, long largest) {
+        long[] bounds = new long[64];
+        int count = 0;
+        for (long power = smallest; power <= largest; power *= 2) {
+            bounds[count++] = power;
+            bounds[count++] = power + power / 2;
+        }
+        return Arrays.copyOf(bounds, count);
+    }
+
+    // Bucket counts are read one by one, so a snapshot taken under load may be off by the requests in flight
+    public record Snapshot(long[] counts, long sumNanos) {
+
+        public long count() {
+            long total = 0;
+            for (long count : counts) {
+                total += count;
+            }
+            return total;
+        }
+
+        // Upper bound of the bucket holding the given quantile, in microseconds; Long.MAX_VALUE past the last bound
+        public long quantileMicros(double quantile) {
+            long rank = (long) Math.ceil(quantile * count());
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen > 0) {
+                    return i < BOUNDS_MICROS.length ? BOUNDS_MICROS[i] : Long.MAX_VALUE;
+                }
+            }
+            return 0;
+        }
+    }
+}
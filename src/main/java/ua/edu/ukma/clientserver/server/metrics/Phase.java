@@ -0,0 +1,17 @@
+package ua.edu.ukma.clientserver.server.metrics;
+
+// Where a request spends its time, as reported in the phase label of the metrics
+public enum Phase {
+    // From asking the pool for a connection until it is returned, waiting for a free one included
+    DB,
+    // Gson parsing request bodies and serialising responses
+    JSON,
+    // Compressing response payloads
+    COMPRESSION,
+    // EncryptionUtil encrypting responses and decrypting request bodies
+    CRYPTO,
+    // Reading the request body from and writing the response body to the socket
+    IO;
+
+    final String label = name().toLowerCase();
+}
@@ -0,0 +1,117 @@
+package ua.edu.ukma.clientserver.server.metrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Request counts by route, method and status, with latency histograms for whole requests and for each Phase.
+// Series are created on first use; afterwards recording only reads the maps and bumps LongAdders.
+public class RequestMetrics {
+
+    // Requests no route matched share one label, so scanning random paths cannot create unbounded series
+    public static final String UNMATCHED_ROUTE = "unmatched";
+
+    private static final Set<String> KNOWN_METHODS = Set.of("GET", "HEAD", "POST", "PUT", "DELETE", "PATCH", "OPTIONS");
+    private static final Phase[] PHASES = Phase.values();
+
+    private final ConcurrentMap<SeriesKey, Series> series = new ConcurrentHashMap<>();
+
+    public void record(String route, String method, int status, long elapsedNanos, RequestTimings timings) {
+        SeriesKey key = new SeriesKey(route == null ? UNMATCHED_ROUTE : route, KNOWN_METHODS.contains(method) ? method : "OTHER");
+        Series target = series.get(key);
+        if (target == null) {
+            target = series.computeIfAbsent(key, k -> new Series());
+        }
+        target.record(status, elapsedNanos, timings);
+    }
+
+    // Prometheus text exposition format, version 0.0.4
+    public void writeTo(StringBuilder out) {
+        List<Map.Entry<SeriesKey, Series>> entries = new ArrayList<>(series.entrySet());
+        entries.sort(Map.Entry.comparingByKey(Comparator.comparing(SeriesKey::route).thenComparing(SeriesKey::method)));
+
+        out.append("# HELP http_requests_total Requests served, by route pattern, method and status.\n");
+        out.append("# TYPE http_requests_total counter\n");
+        for (Map.Entry<SeriesKey, Series> entry : entries) {
+            String labels = entry.getKey().labels();
+            entry.getValue().statuses.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(status -> out.append("http_requests_total{").append(labels)
+                    .append(",status=\"").append(status.getKey() < 0 ? "none" : status.getKey().toString()).append("\"} ")
+                    .append(status.getValue().sum()).append('\n'));
+        }
+
+        out.append("# HELP http_request_duration_seconds Time from receiving a request until its response was written.\n");
+        out.append("# TYPE http_request_duration_seconds histogram\n");
+        for (Map.Entry<SeriesKey, Series> entry : entries) {
+            writeHistogram(out, "http_request_duration_seconds", entry.getKey().labels(), entry.getValue().latency.snapshot());
+        }
+
+        out.append("# HELP http_request_phase_seconds Time requests spent in each phase, counted once where phases nest.\n");
+        out.append("# TYPE http_request_phase_seconds histogram\n");
+        for (Map.Entry<SeriesKey, Series> entry : entries) {
+            for (Phase phase : PHASES) {
+                LatencyHistogram.Snapshot snapshot = entry.getValue().phases[phase.ordinal()].snapshot();
+                if (snapshot.count() > 0) {
+                    writeHistogram(out, "http_request_phase_seconds", entry.getKey().labels() + ",phase=\"" + phase.label + "\"", snapshot);
+                }
+            }
+        }
+    }
+
+    private static void writeHistogram(StringBuilder out, String name, String labels, LatencyHistogram.Snapshot snapshot) {
+        long cumulative = 0;
+        long[] counts = snapshot.counts();
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            out.append(name).append("_bucket{").append(labels).append(",le=\"").append(LatencyHistogram.boundLabel(i)).append("\"} ")
+                .append(cumulative).append('\n');
+        }
+        out.append(name).append("_sum{").append(labels).append("} ").append(snapshot.sumNanos() / 1e9).append('\n');
+        out.append(name).append("_count{").append(labels).append("} ").append(cumulative).append('\n');
+    }
+
+    static String escapeLabel(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private record SeriesKey(String route, String method) {
+
+        String labels() {
+            return "route=\"" + escapeLabel(route) + "\",method=\"" + method + "\"";
+        }
+    }
+
+    private static final class Series {
+        private final ConcurrentMap<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LatencyHistogram[] phases = new LatencyHistogram[PHASES.length];
+
+        Series() {
+            for (int i = 0; i < phases.length; i++) {
+                phases[i] = new LatencyHistogram();
+            }
+        }
+
+        void record(int status, long elapsedNanos, RequestTimings timings) {
+            LongAdder count = statuses.get(status);
+            if (count == null) {
+                count = statuses.computeIfAbsent(status, s -> new LongAdder());
+            }
+            count.increment();
+            latency.record(elapsedNanos);
+            if (timings != null) {
+                for (Phase phase : PHASES) {
+                    if (timings.entered(phase)) {
+                        phases[phase.ordinal()].record(timings.nanos(phase));
+                    }
+                }
+            }
+        }
+    }
+}
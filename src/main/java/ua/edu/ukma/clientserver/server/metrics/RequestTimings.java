@@ -0,0 +1,98 @@
+package ua.edu.ukma.clientserver.server.metrics;
+
+import java.util.Arrays;
+
+// Time the request handled on the current thread spends in each Phase. Phases nest like calls: entering one
+// pauses the enclosing phase, so a nanosecond is counted once, e.g. socket writes made while encrypting count as IO.
+// Outside a request (benchmarks, background threads) enter and exit do nothing.
+public final class RequestTimings {
+
+    private static final ThreadLocal<RequestTimings> CURRENT = new ThreadLocal<>();
+    private static final Phase[] PHASES = Phase.values();
+
+    private final long startNanos;
+    private final long[] phaseNanos = new long[PHASES.length];
+    private int enteredPhases;
+    private Phase[] stack = new Phase[4];
+    private int depth;
+    private long markNanos;
+    private String route;
+
+    private RequestTimings(long startNanos) {
+        this.startNanos = startNanos;
+    }
+
+    public static RequestTimings begin() {
+        RequestTimings timings = new RequestTimings(System.nanoTime());
+        CURRENT.set(timings);
+        return timings;
+    }
+
+    public static void enter(Phase phase) {
+        RequestTimings timings = CURRENT.get();
+        if (timings != null) {
+            timings.push(phase, System.nanoTime());
+        }
+    }
+
+    // Exits that do not match the innermost phase are ignored rather than corrupting the other phases
+    public static void exit(Phase phase) {
+        RequestTimings timings = CURRENT.get();
+        if (timings != null) {
+            timings.pop(phase, System.nanoTime());
+        }
+    }
+
+    // The route pattern the request matched, as opposed to its path, so that ids do not become labels
+    public static void route(String route) {
+        RequestTimings timings = CURRENT.get();
+        if (timings != null) {
+            timings.route = route;
+        }
+    }
+
+    // Closes the phases still open and returns the elapsed time of the whole request
+    public long end() {
+        long now = System.nanoTime();
+        while (depth > 0) {
+            pop(stack[depth - 1], now);
+        }
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+        return now - startNanos;
+    }
+
+    public String route() {
+        return route;
+    }
+
+    public boolean entered(Phase phase) {
+        return (enteredPhases & (1 << phase.ordinal())) != 0;
+    }
+
+    public long nanos(Phase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+
+    private void push(Phase phase, long now) {
+        if (depth > 0) {
+            phaseNanos[stack[depth - 1].ordinal()] += now - markNanos;
+        }
+        if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+        }
+        stack[depth++] = phase;
+        enteredPhases |= 1 << phase.ordinal();
+        markNanos = now;
+    }
+
+    private void pop(Phase phase, long now) {
+        if (depth == 0 || stack[depth - 1] != phase) {
+            return;
+        }
+        phaseNanos[phase.ordinal()] += now - markNanos;
+        depth--;
+        markNanos = now;
+    }
+}
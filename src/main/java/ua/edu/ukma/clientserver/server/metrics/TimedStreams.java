@@ -0,0 +1,93 @@
+package ua.edu.ukma.clientserver.server.metrics;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+// Attributes the time spent in a stream's methods to a phase; streams wrap each other, so an encrypting
+// stream over a socket stream yields CRYPTO time with the socket writes carved out as IO
+public final class TimedStreams {
+
+    private TimedStreams() {
+    }
+
+    public static OutputStream timed(OutputStream out, Phase phase) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                RequestTimings.enter(phase);
+                try {
+                    out.write(b);
+                } finally {
+                    RequestTimings.exit(phase);
+                }
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                RequestTimings.enter(phase);
+                try {
+                    out.write(b, off, len);
+                } finally {
+                    RequestTimings.exit(phase);
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                RequestTimings.enter(phase);
+                try {
+                    out.flush();
+                } finally {
+                    RequestTimings.exit(phase);
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                RequestTimings.enter(phase);
+                try {
+                    out.close();
+                } finally {
+                    RequestTimings.exit(phase);
+                }
+            }
+        };
+    }
+
+    public static InputStream timed(InputStream in, Phase phase) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                RequestTimings.enter(phase);
+                try {
+                    return in.read();
+                } finally {
+                    RequestTimings.exit(phase);
+                }
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                RequestTimings.enter(phase);
+                try {
+                    return in.read(b, off, len);
+                } finally {
+                    RequestTimings.exit(phase);
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                RequestTimings.enter(phase);
+                try {
+                    in.close();
+                } finally {
+                    RequestTimings.exit(phase);
+                }
+            }
+        };
+    }
+}
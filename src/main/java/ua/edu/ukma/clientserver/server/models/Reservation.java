@@ -0,0 +1,5 @@
+package ua.edu.ukma.clientserver.server.models;
+
+// expiresAt is in epoch milliseconds
+public record Reservation(String id, int productId, int amount, long expiresAt) {
+}
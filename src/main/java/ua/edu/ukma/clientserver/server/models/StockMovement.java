@@ -0,0 +1,4 @@
+package ua.edu.ukma.clientserver.server.models;
+
+public record StockMovement(int productId, int delta) {
+}
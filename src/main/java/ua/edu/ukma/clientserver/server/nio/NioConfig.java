@@ -0,0 +1,42 @@
+package ua.edu.ukma.clientserver.server.nio;
+
+import java.time.Duration;
+
+public record NioConfig(
+    // Also the longest request head accepted; longer ones are answered with 431
+    int bufferSize,
+    // Buffers kept for reuse; idle keep-alive connections hold none
+    int maxPooledBuffers,
+    // How long an idle connection is kept open, and how long a request head may take to arrive
+    Duration keepAliveTimeout,
+    // How long a handler waits on a client that stops reading or sending mid-request
+    Duration ioTimeout
+) {
+
+    public NioConfig {
+        if (bufferSize < 1024 || maxPooledBuffers < 0) {
+            throw new IllegalArgumentException("Invalid NIO buffer settings: bufferSize=" + bufferSize + ", maxPooledBuffers=" + maxPooledBuffers);
+        }
+        if (!isPositive(keepAliveTimeout) || !isPositive(ioTimeout)) {
+            throw new IllegalArgumentException("Invalid NIO timeouts: keepAlive=" + keepAliveTimeout + ", io=" + ioTimeout);
+        }
+    }
+
+    public static NioConfig defaults() {
+        return new NioConfig(16 * 1024, 1024, Duration.ofSeconds(30), Duration.ofSeconds(30));
+    }
+
+    public static NioConfig fromSystemProperties() {
+        NioConfig defaults = defaults();
+        return new NioConfig(
+            Integer.getInteger("nio.bufferSize", defaults.bufferSize()),
+            Integer.getInteger("nio.maxPooledBuffers", defaults.maxPooledBuffers()),
+            Duration.ofMillis(Long.getLong("nio.keepAliveTimeoutMs", defaults.keepAliveTimeout().toMillis())),
+            Duration.ofMillis(Long.getLong("nio.ioTimeoutMs", defaults.ioTimeout().toMillis()))
+        );
+    }
+
+    private static boolean isPositive(Duration duration) {
+        return !duration.isNegative() && !duration.isZero();
+    }
+}
@@ -0,0 +1,407 @@
+package ua.edu.ukma.clientserver.server.nio;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpContext;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// One client socket. While idle it belongs to the selector thread, which reads the next request head into a
+// pooled buffer; once the head is complete a worker takes over, serves that request and any pipelined behind
+// it, and hands the connection back. A worker that would block on the socket parks until the selector reports
+// it ready, so no thread is tied to a connection between requests.
+final class NioConnection {
+
+    private static final ByteBuffer CONTINUE = ByteBuffer.allocateDirect(25)
+        .put("HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.US_ASCII))
+        .flip()
+        .asReadOnlyBuffer();
+
+    private final NioHttpServer server;
+    private final SocketChannel channel;
+    private final BufferPool buffers;
+    private final long ioTimeoutNanos;
+    private final InetSocketAddress localAddress;
+    private final InetSocketAddress remoteAddress;
+    private SelectionKey key;
+
+    // A parked worker waits here for the selector to report the socket ready
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition readiness = lock.newCondition();
+    private boolean ready;
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile boolean busy;
+    private volatile long idleSince;
+    // Worker only
+    private boolean served;
+    private boolean closeAfterExchange;
+
+    // Read mode, position at the next unread byte; null while idle with nothing buffered
+    private ByteBuffer in;
+    // Write mode; held only while a response is being written
+    private ByteBuffer out;
+
+    NioConnection(NioHttpServer server, SocketChannel channel) throws IOException {
+        this.server = server;
+        this.channel = channel;
+        this.buffers = server.buffers();
+        this.ioTimeoutNanos = server.config().ioTimeout().toNanos();
+        this.localAddress = (InetSocketAddress) channel.getLocalAddress();
+        this.remoteAddress = (InetSocketAddress) channel.getRemoteAddress();
+    }
+
+    void register(Selector selector) throws ClosedChannelException {
+        idleSince = System.nanoTime();
+        key = channel.register(selector, SelectionKey.OP_READ, this);
+    }
+
+    InetSocketAddress localAddress() {
+        return localAddress;
+    }
+
+    InetSocketAddress remoteAddress() {
+        return remoteAddress;
+    }
+
+    boolean isBusy() {
+        return busy;
+    }
+
+    long idleSince() {
+        return idleSince;
+    }
+
+    // Selector thread
+    void onReady() {
+        if (busy) {
+            key.interestOps(0);
+            lock.lock();
+            try {
+                ready = true;
+                readiness.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        } else {
+            readHead();
+        }
+    }
+
+    private void readHead() {
+        try {
+            input();
+            if (fill() < 0) {
+                close();
+                return;
+            }
+            RequestHead head = RequestHead.parse(in);
+            if (head == null) {
+                if (in.position() == 0 && in.limit() == in.capacity()) {
+                    reject(431, "Request Header Fields Too Large");
+                } else {
+                    releaseInputIfEmpty();
+                }
+                return;
+            }
+            busy = true;
+            key.interestOps(0);
+            server.dispatch(this, head);
+        } catch (ProtocolException e) {
+            reject(400, "Bad Request");
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    // Worker thread: runs the request through its context's filters and handler, then the pipelined ones
+    void serve(RequestHead head) {
+        boolean handedBack = false;
+        try {
+            while (head != null) {
+                server.countRequest(served);
+                served = true;
+                HttpContext context = server.findContext(head.uri().getPath());
+                NioExchange exchange = new NioExchange(server, this, context, head);
+                try {
+                    if (context == null || context.getHandler() == null) {
+                        exchange.sendResponseHeaders(404, -1);
+                    } else {
+                        new Filter.Chain(context.getFilters(), context.getHandler()).doFilter(exchange);
+                    }
+                } catch (IOException e) {
+                    closeAfterExchange = true;
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                    closeAfterExchange = true;
+                }
+                if (exchange.malformedRequest()) {
+                    reject(400, "Bad Request");
+                    return;
+                }
+                exchange.finish();
+                if (closeAfterExchange || !head.keepAlive() || server.isStopping()) {
+                    return;
+                }
+                head = RequestHead.parse(in);
+            }
+            handBack();
+            handedBack = true;
+        } catch (ProtocolException e) {
+            reject(400, "Bad Request");
+        } finally {
+            if (!handedBack) {
+                close();
+            }
+            server.exchangeEnded();
+        }
+    }
+
+    private void handBack() {
+        releaseInputIfEmpty();
+        idleSince = System.nanoTime();
+        busy = false;
+        try {
+            key.interestOps(SelectionKey.OP_READ);
+        } catch (CancelledKeyException e) {
+            close();
+            return;
+        }
+        server.wakeup();
+    }
+
+    void closeAfterExchange() {
+        closeAfterExchange = true;
+    }
+
+    boolean closingAfterExchange() {
+        return closeAfterExchange;
+    }
+
+    // The buffered request bytes, acquiring a buffer if there is none
+    ByteBuffer input() {
+        if (in == null) {
+            in = buffers.acquire().flip();
+        }
+        return in;
+    }
+
+    // Blocks until at least one more byte is buffered; -1 at the end of the stream
+    int readMore() throws IOException {
+        input();
+        if (in.position() == 0 && in.limit() == in.capacity()) {
+            throw new ProtocolException("Request line longer than the buffer");
+        }
+        while (true) {
+            int read = fill();
+            if (read != 0) {
+                return read;
+            }
+            awaitReady(SelectionKey.OP_READ);
+        }
+    }
+
+    String readLine() throws IOException {
+        input();
+        // Relative to the position, which reading more moves back to the start of the buffer
+        int scanned = 0;
+        while (true) {
+            for (int i = in.position() + scanned; i < in.limit(); i++) {
+                if (in.get(i) == '\n') {
+                    byte[] line = new byte[i - in.position()];
+                    in.get(line);
+                    in.get();
+                    int length = line.length > 0 && line[line.length - 1] == '\r' ? line.length - 1 : line.length;
+                    return new String(line, 0, length, StandardCharsets.ISO_8859_1);
+                }
+            }
+            scanned = in.remaining();
+            if (readMore() < 0) {
+                throw new EOFException("Connection closed in the middle of a line");
+            }
+        }
+    }
+
+    void sendContinue() throws IOException {
+        if (out == null) {
+            write(CONTINUE.duplicate());
+        }
+    }
+
+    void beginResponse() {
+        out = buffers.acquire();
+    }
+
+    // Short writes are gathered in the pooled buffer. Long ones go to the socket from the caller's array,
+    // in the same call as whatever is buffered ahead of them, so a cached body is never copied here.
+    void send(byte[] bytes, int offset, int length) throws IOException {
+        if (length <= out.remaining()) {
+            out.put(bytes, offset, length);
+            return;
+        }
+        if (length >= out.capacity() / 2) {
+            out.flip();
+            try {
+                write(out, ByteBuffer.wrap(bytes, offset, length));
+            } finally {
+                out.clear();
+            }
+            return;
+        }
+        int head = out.remaining();
+        out.put(bytes, offset, head);
+        flush();
+        out.put(bytes, offset + head, length - head);
+    }
+
+    void sendAscii(String text) throws IOException {
+        if (out.remaining() < text.length()) {
+            flush();
+        }
+        for (int i = 0; i < text.length(); i++) {
+            out.put((byte) text.charAt(i));
+        }
+    }
+
+    void flush() throws IOException {
+        out.flip();
+        try {
+            if (out.hasRemaining()) {
+                write(out);
+            }
+        } finally {
+            out.clear();
+        }
+    }
+
+    void endResponse() throws IOException {
+        try {
+            flush();
+        } finally {
+            buffers.release(out);
+            out = null;
+        }
+    }
+
+    // Best effort: the connection is closed right after, whether the client reads it or not
+    void reject(int status, String reason) {
+        try {
+            channel.write(ByteBuffer.wrap(("HTTP/1.1 " + status + " " + reason + "\r\nContent-Length: 0\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII)));
+            // Closing with input left unread resets the connection, which can overtake the response
+            for (int i = 0; i < 8 && in != null; i++) {
+                if (channel.read(in.clear()) <= 0) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            // Closing anyway
+        }
+        close();
+    }
+
+    // By the thread that owns the connection: the selector while idle, the worker while busy
+    void close() {
+        abort();
+        lock.lock();
+        try {
+            if (in != null) {
+                buffers.release(in);
+                in = null;
+            }
+            if (out != null) {
+                buffers.release(out);
+                out = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // From any thread; a parked worker wakes up to a closed channel and releases the buffers itself
+    void abort() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Nothing left to do with it
+        }
+        server.connectionClosed();
+        lock.lock();
+        try {
+            readiness.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void awaitReady(int ops) throws IOException {
+        lock.lock();
+        try {
+            ready = false;
+            try {
+                key.interestOps(ops);
+            } catch (CancelledKeyException e) {
+                throw new ClosedChannelException();
+            }
+            server.wakeup();
+            long remaining = ioTimeoutNanos;
+            while (!ready) {
+                if (!channel.isOpen()) {
+                    throw new ClosedChannelException();
+                }
+                if (remaining <= 0) {
+                    throw new SocketTimeoutException("Client stalled for " + server.config().ioTimeout());
+                }
+                remaining = readiness.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void write(ByteBuffer... sources) throws IOException {
+        ByteBuffer last = sources[sources.length - 1];
+        while (true) {
+            channel.write(sources);
+            if (!last.hasRemaining()) {
+                return;
+            }
+            awaitReady(SelectionKey.OP_WRITE);
+        }
+    }
+
+    private int fill() throws IOException {
+        in.compact();
+        try {
+            return channel.read(in);
+        } finally {
+            in.flip();
+        }
+    }
+
+    private void releaseInputIfEmpty() {
+        if (in != null && !in.hasRemaining()) {
+            buffers.release(in);
+            in = null;
+        }
+    }
+}
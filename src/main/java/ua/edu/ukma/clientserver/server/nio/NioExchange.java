@@ -0,0 +1,248 @@
+package ua.edu.ukma.clientserver.server.nio;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Follows the JDK server's rules for sendResponseHeaders, so handlers cannot tell the two apart
+final class NioExchange extends HttpExchange {
+
+    // Bodies the handler left unread are skipped up to this size; past it, closing the connection is cheaper
+    private static final long MAX_DRAINED_BYTES = 64 * 1024;
+
+    private final NioHttpServer server;
+    private final NioConnection connection;
+    private final HttpContext context;
+    private final RequestHead head;
+    private final Headers responseHeaders = new Headers();
+    private final RequestBody requestBody;
+    private final ResponseBody responseBody;
+    private InputStream in;
+    private OutputStream out;
+    // Per exchange, where the JDK server keeps them on the shared context
+    private Map<String, Object> attributes;
+    private int responseCode = -1;
+    private boolean closed;
+
+    NioExchange(NioHttpServer server, NioConnection connection, HttpContext context, RequestHead head) {
+        this.server = server;
+        this.connection = connection;
+        this.context = context;
+        this.head = head;
+        this.requestBody = new RequestBody(connection, head.contentLength(), head.expectsContinue());
+        this.responseBody = new ResponseBody(connection);
+        this.in = requestBody;
+        this.out = responseBody;
+    }
+
+    @Override
+    public Headers getRequestHeaders() {
+        return head.headers();
+    }
+
+    @Override
+    public Headers getResponseHeaders() {
+        return responseHeaders;
+    }
+
+    @Override
+    public URI getRequestURI() {
+        return head.uri();
+    }
+
+    @Override
+    public String getRequestMethod() {
+        return head.method();
+    }
+
+    @Override
+    public HttpContext getHttpContext() {
+        return context;
+    }
+
+    @Override
+    public InputStream getRequestBody() {
+        return in;
+    }
+
+    @Override
+    public OutputStream getResponseBody() {
+        return out;
+    }
+
+    @Override
+    public void sendResponseHeaders(int rCode, long responseLength) throws IOException {
+        if (responseCode >= 0) {
+            throw new IOException("Headers already sent");
+        }
+        if (closed) {
+            throw new IOException("Exchange is closed");
+        }
+        if (requestBody.malformed()) {
+            // Whatever the handler made of the failed read, the connection answers 400 once it returns
+            throw new ProtocolException("Request body is malformed");
+        }
+        boolean noBodyAllowed = rCode < 200 || rCode == 204 || rCode == 304;
+        ResponseBody.Framing framing;
+        if (noBodyAllowed || head.method().equals("HEAD")) {
+            // Any Content-Length the handler set describes the body a GET would have had
+            framing = ResponseBody.Framing.NONE;
+        } else if (responseLength == 0) {
+            if (head.protocol().equals("HTTP/1.0")) {
+                framing = ResponseBody.Framing.UNTIL_CLOSE;
+                connection.closeAfterExchange();
+            } else {
+                responseHeaders.set("Transfer-Encoding", "chunked");
+                framing = ResponseBody.Framing.CHUNKED;
+            }
+        } else {
+            responseHeaders.set("Content-Length", Long.toString(Math.max(responseLength, 0)));
+            framing = responseLength < 0 ? ResponseBody.Framing.NONE : ResponseBody.Framing.FIXED;
+        }
+        if (!head.keepAlive() || server.isStopping()) {
+            connection.closeAfterExchange();
+        }
+        if (connection.closingAfterExchange()) {
+            responseHeaders.set("Connection", "close");
+        } else if (head.protocol().equals("HTTP/1.0")) {
+            responseHeaders.set("Connection", "keep-alive");
+        }
+        responseHeaders.set("Date", server.date());
+        responseCode = rCode;
+
+        connection.beginResponse();
+        byte[] bytes = responseHead(rCode).getBytes(StandardCharsets.ISO_8859_1);
+        connection.send(bytes, 0, bytes.length);
+        responseBody.start(framing, responseLength);
+        if (framing == ResponseBody.Framing.NONE) {
+            responseBody.close();
+        }
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return connection.remoteAddress();
+    }
+
+    @Override
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return connection.localAddress();
+    }
+
+    @Override
+    public String getProtocol() {
+        return head.protocol();
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        return attributes == null ? null : attributes.get(name);
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+        if (attributes == null) {
+            attributes = new HashMap<>();
+        }
+        attributes.put(name, value);
+    }
+
+    @Override
+    public void setStreams(InputStream i, OutputStream o) {
+        if (i != null) {
+            in = i;
+        }
+        if (o != null) {
+            out = o;
+        }
+    }
+
+    @Override
+    public HttpPrincipal getPrincipal() {
+        return null;
+    }
+
+    // Closing before a response was sent, or with the body cut short, drops the connection, as the JDK server does
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (responseCode < 0) {
+            connection.closeAfterExchange();
+            return;
+        }
+        requestBody.close();
+        try {
+            responseBody.close();
+        } catch (IOException e) {
+            connection.closeAfterExchange();
+        }
+    }
+
+    // The handler ran into broken body framing, and so could not have started a response
+    boolean malformedRequest() {
+        return requestBody.malformed() && responseCode < 0;
+    }
+
+    // After the handler returned: ends what it left open and leaves the connection at the next request
+    void finish() {
+        close();
+        try {
+            if (!connection.closingAfterExchange() && (requestBody.awaitingContinue() || !requestBody.drain(MAX_DRAINED_BYTES))) {
+                connection.closeAfterExchange();
+            }
+        } catch (IOException e) {
+            connection.closeAfterExchange();
+        }
+    }
+
+    private String responseHead(int rCode) {
+        StringBuilder builder = new StringBuilder(256)
+            .append("HTTP/1.1 ").append(rCode).append(' ').append(reason(rCode)).append("\r\n");
+        for (Map.Entry<String, List<String>> header : responseHeaders.entrySet()) {
+            for (String value : header.getValue()) {
+                builder.append(header.getKey()).append(": ").append(value).append("\r\n");
+            }
+        }
+        return builder.append("\r\n").toString();
+    }
+
+    private static String reason(int rCode) {
+        return switch (rCode) {
+            case 200 -> "OK";
+            case 201 -> "Created";
+            case 204 -> "No Content";
+            case 304 -> "Not Modified";
+            case 400 -> "Bad Request";
+            case 401 -> "Unauthorized";
+            case 403 -> "Forbidden";
+            case 404 -> "Not Found";
+            case 405 -> "Method Not Allowed";
+            case 409 -> "Conflict";
+            case 413 -> "Content Too Large";
+            case 429 -> "Too Many Requests";
+            case 500 -> "Internal Server Error";
+            case 503 -> "Service Unavailable";
+            default -> "";
+        };
+    }
+}
@@ -0,0 +1,75 @@
+package ua.edu.ukma.clientserver.server.nio;
+
+import com.sun.net.httpserver.Authenticator;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+final class NioHttpContext extends HttpContext {
+
+    private final NioHttpServer server;
+    private final String path;
+    private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+    // Set up before the server starts and read on every request
+    private final List<Filter> filters = new CopyOnWriteArrayList<>();
+    private volatile HttpHandler handler;
+
+    NioHttpContext(NioHttpServer server, String path, HttpHandler handler) {
+        this.server = server;
+        this.path = path;
+        this.handler = handler;
+    }
+
+    @Override
+    public HttpHandler getHandler() {
+        return handler;
+    }
+
+    @Override
+    public void setHandler(HttpHandler handler) {
+        if (handler == null) {
+            throw new NullPointerException("Null handler");
+        }
+        if (this.handler != null) {
+            throw new IllegalArgumentException("Handler already set");
+        }
+        this.handler = handler;
+    }
+
+    @Override
+    public String getPath() {
+        return path;
+    }
+
+    @Override
+    public HttpServer getServer() {
+        return server;
+    }
+
+    @Override
+    public Map<String, Object> getAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public List<Filter> getFilters() {
+        return filters;
+    }
+
+    // Left unimplemented rather than ignored, so a context is never served without the check it asked for
+    @Override
+    public Authenticator setAuthenticator(Authenticator auth) {
+        throw new UnsupportedOperationException("The NIO transport does not support authenticators");
+    }
+
+    @Override
+    public Authenticator getAuthenticator() {
+        return null;
+    }
+}
@@ -0,0 +1,354 @@
+package ua.edu.ukma.clientserver.server.nio;
+
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.BindException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// An HttpServer on a single selector thread, so contexts, filters and handlers written for the JDK server run on
+// it unchanged. The selector accepts connections, watches idle keep-alive ones and reads request heads into pooled
+// direct buffers; everything from the handler on runs on the executor. Differences from the JDK server: requests
+// may be pipelined, the exchange is finished when the handler returns, and authenticators are not supported.
+public class NioHttpServer extends HttpServer {
+
+    private static final long SWEEP_INTERVAL_MILLIS = 1000;
+    private static final long STOPPING_POLL_MILLIS = 50;
+
+    private final NioConfig config;
+    private final BufferPool buffers;
+    private final Selector selector;
+    private final List<NioHttpContext> contexts = new CopyOnWriteArrayList<>();
+    private ServerSocketChannel serverChannel;
+    private Executor executor;
+    private ExecutorService defaultExecutor;
+    private Thread selectorThread;
+    private volatile boolean stopping;
+    private volatile long stopDeadline;
+    private volatile HttpDate date;
+
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final AtomicInteger busyConnections = new AtomicInteger();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder keepAliveRequests = new LongAdder();
+
+    public NioHttpServer(NioConfig config) throws IOException {
+        this.config = config;
+        this.buffers = new BufferPool(config.bufferSize(), config.maxPooledBuffers());
+        this.selector = Selector.open();
+    }
+
+    // Like HttpServer.create: a null address leaves the server to be bound later
+    public static NioHttpServer create(InetSocketAddress address, int backlog, NioConfig config) throws IOException {
+        NioHttpServer server = new NioHttpServer(config);
+        if (address != null) {
+            server.bind(address, backlog);
+        }
+        return server;
+    }
+
+    @Override
+    public void bind(InetSocketAddress address, int backlog) throws IOException {
+        if (serverChannel != null) {
+            throw new BindException("Server already bound");
+        }
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        try {
+            channel.bind(address, backlog);
+            channel.configureBlocking(false);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        serverChannel = channel;
+    }
+
+    @Override
+    public void start() {
+        if (serverChannel == null || selectorThread != null) {
+            throw new IllegalStateException("Server not bound, or already started");
+        }
+        if (executor == null) {
+            defaultExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("nio-worker-", 0).factory());
+            executor = defaultExecutor;
+        }
+        try {
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (ClosedChannelException e) {
+            throw new UncheckedIOException(e);
+        }
+        // Not a daemon: like the JDK server's dispatcher, it keeps the process alive after main returns
+        selectorThread = Thread.ofPlatform().name("nio-selector").daemon(false).start(this::run);
+    }
+
+    @Override
+    public void setExecutor(Executor executor) {
+        if (selectorThread != null) {
+            throw new IllegalStateException("Server already started");
+        }
+        this.executor = executor;
+    }
+
+    @Override
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    // Stops accepting at once, then waits up to delay seconds for requests in progress before closing everything
+    @Override
+    public void stop(int delay) {
+        if (delay < 0) {
+            throw new IllegalArgumentException("Negative delay: " + delay);
+        }
+        stopDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(delay);
+        stopping = true;
+        if (selectorThread == null) {
+            closeQuietly(serverChannel);
+            closeQuietly(selector);
+        } else {
+            selector.wakeup();
+            boolean interrupted = false;
+            while (selectorThread.isAlive()) {
+                try {
+                    selectorThread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (defaultExecutor != null) {
+            defaultExecutor.shutdown();
+        }
+    }
+
+    @Override
+    public HttpContext createContext(String path, HttpHandler handler) {
+        if (path == null || !path.startsWith("/")) {
+            throw new IllegalArgumentException("Context path must start with /: " + path);
+        }
+        NioHttpContext context = new NioHttpContext(this, path, handler);
+        synchronized (contexts) {
+            if (contexts.stream().anyMatch(existing -> existing.getPath().equals(path))) {
+                throw new IllegalArgumentException("Context already exists: " + path);
+            }
+            contexts.add(context);
+        }
+        return context;
+    }
+
+    @Override
+    public HttpContext createContext(String path) {
+        return createContext(path, null);
+    }
+
+    @Override
+    public void removeContext(String path) {
+        if (!contexts.removeIf(context -> context.getPath().equals(path))) {
+            throw new IllegalArgumentException("No context with path " + path);
+        }
+    }
+
+    @Override
+    public void removeContext(HttpContext context) {
+        if (!contexts.remove(context)) {
+            throw new IllegalArgumentException("Context not on this server: " + context.getPath());
+        }
+    }
+
+    @Override
+    public InetSocketAddress getAddress() {
+        try {
+            return serverChannel == null ? null : (InetSocketAddress) serverChannel.getLocalAddress();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public NioStats getStats() {
+        return new NioStats(openConnections.get(), busyConnections.get(), accepted.sum(), requests.sum(),
+            keepAliveRequests.sum(), buffers.pooled(), buffers.allocated());
+    }
+
+    NioConfig config() {
+        return config;
+    }
+
+    BufferPool buffers() {
+        return buffers;
+    }
+
+    boolean isStopping() {
+        return stopping;
+    }
+
+    // The longest context path the request path starts with, as the JDK server matches them
+    HttpContext findContext(String path) {
+        NioHttpContext match = null;
+        for (NioHttpContext context : contexts) {
+            if (path.startsWith(context.getPath()) && (match == null || context.getPath().length() > match.getPath().length())) {
+                match = context;
+            }
+        }
+        return match;
+    }
+
+    void dispatch(NioConnection connection, RequestHead head) {
+        busyConnections.incrementAndGet();
+        try {
+            executor.execute(() -> connection.serve(head));
+        } catch (RejectedExecutionException e) {
+            busyConnections.decrementAndGet();
+            connection.reject(503, "Service Unavailable");
+        }
+    }
+
+    void exchangeEnded() {
+        busyConnections.decrementAndGet();
+    }
+
+    void countRequest(boolean keepAlive) {
+        requests.increment();
+        if (keepAlive) {
+            keepAliveRequests.increment();
+        }
+    }
+
+    void connectionClosed() {
+        openConnections.decrementAndGet();
+    }
+
+    void wakeup() {
+        selector.wakeup();
+    }
+
+    // Formatted once a second rather than for every response
+    String date() {
+        long second = System.currentTimeMillis() / 1000;
+        HttpDate current = date;
+        if (current == null || current.second() != second) {
+            current = new HttpDate(second, DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochSecond(second).atZone(ZoneOffset.UTC)));
+            date = current;
+        }
+        return current.text();
+    }
+
+    private void run() {
+        long nextSweep = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SWEEP_INTERVAL_MILLIS);
+        long keepAliveNanos = config.keepAliveTimeout().toNanos();
+        try {
+            while (true) {
+                selector.select(this::onSelected, stopping ? STOPPING_POLL_MILLIS : SWEEP_INTERVAL_MILLIS);
+                long now = System.nanoTime();
+                if (stopping) {
+                    closeQuietly(serverChannel);
+                    closeIdle(now);
+                    if (busyConnections.get() == 0 || now - stopDeadline >= 0) {
+                        break;
+                    }
+                } else if (now - nextSweep >= 0) {
+                    closeIdle(now - keepAliveNanos);
+                    nextSweep = now + TimeUnit.MILLISECONDS.toNanos(SWEEP_INTERVAL_MILLIS);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("NIO selector stopped: " + e.getMessage());
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof NioConnection connection) {
+                    if (connection.isBusy()) {
+                        connection.abort();
+                    } else {
+                        connection.close();
+                    }
+                }
+            }
+            closeQuietly(serverChannel);
+            closeQuietly(selector);
+        }
+    }
+
+    private void onSelected(SelectionKey key) {
+        try {
+            if (key.attachment() instanceof NioConnection connection) {
+                connection.onReady();
+            } else if (key.isAcceptable()) {
+                accept();
+            }
+        } catch (CancelledKeyException e) {
+            // Closed by its worker since the select
+        }
+    }
+
+    private void accept() {
+        while (true) {
+            SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+            } catch (IOException e) {
+                System.err.println("Failed to accept a connection: " + e.getMessage());
+                return;
+            }
+            if (channel == null) {
+                return;
+            }
+            try {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                new NioConnection(this, channel).register(selector);
+                openConnections.incrementAndGet();
+                accepted.increment();
+            } catch (IOException e) {
+                closeQuietly(channel);
+            }
+        }
+    }
+
+    // Idle since before the cutoff, including those still waiting for the rest of a request head
+    private void closeIdle(long cutoff) {
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof NioConnection connection && !connection.isBusy() && connection.idleSince() - cutoff <= 0) {
+                connection.close();
+            }
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            // Shutting down; nothing to do about it
+        }
+    }
+
+    private record HttpDate(long second, String text) {
+    }
+}
@@ -0,0 +1,14 @@
+package ua.edu.ukma.clientserver.server.nio;
+
+public record NioStats(
+    int openConnections,
+    // Connections with a request being served; the rest wait on the selector for their next one
+    int busyConnections,
+    long accepted,
+    long requests,
+    // Requests that came on a connection an earlier one had already used
+    long keepAliveRequests,
+    int pooledBuffers,
+    long allocatedBuffers
+) {
+}
@@ -0,0 +1,150 @@
+package ua.edu.ukma.clientserver.server.nio;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+// Reads a fixed-length or chunked body straight out of the connection's buffer, only as the handler asks for it
+final class RequestBody extends InputStream {
+
+    private final NioConnection connection;
+    private final boolean chunked;
+    private final byte[] single = new byte[1];
+    // Of the whole body, or of the current chunk
+    private long remaining;
+    private boolean firstChunk = true;
+    private boolean expectsContinue;
+    private boolean ended;
+    private boolean closed;
+    // The framing broke off; the rest of the connection cannot be trusted
+    private boolean malformed;
+
+    RequestBody(NioConnection connection, long contentLength, boolean expectsContinue) {
+        this.connection = connection;
+        this.chunked = contentLength == RequestHead.CHUNKED;
+        this.remaining = chunked ? 0 : contentLength;
+        this.ended = contentLength == 0;
+        this.expectsContinue = expectsContinue && !ended;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        if (closed) {
+            throw new IOException("Stream is closed");
+        }
+        return len == 0 ? 0 : consume(b, off, len);
+    }
+
+    @Override
+    public int available() {
+        return closed || ended ? 0 : (int) Math.min(remaining, connection.input().remaining());
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    // The client holds the body back until it is told to send it
+    boolean awaitingContinue() {
+        return expectsContinue;
+    }
+
+    boolean malformed() {
+        return malformed;
+    }
+
+    // Skips what the handler left unread; false when that was more than limit bytes
+    boolean drain(long limit) throws IOException {
+        long drained = 0;
+        while (!ended) {
+            int skipped = consume(null, 0, Integer.MAX_VALUE);
+            if (skipped > 0 && (drained += skipped) > limit) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Copies into target, or skips when it is null
+    private int consume(byte[] target, int off, int len) throws IOException {
+        if (malformed) {
+            throw new ProtocolException("Malformed request body");
+        }
+        if (ended) {
+            return -1;
+        }
+        if (expectsContinue) {
+            expectsContinue = false;
+            connection.sendContinue();
+        }
+        if (remaining == 0) {
+            nextChunk();
+            if (ended) {
+                return -1;
+            }
+        }
+        ByteBuffer in = connection.input();
+        if (!in.hasRemaining() && connection.readMore() < 0) {
+            throw new EOFException("Connection closed before the request body ended");
+        }
+        int n = (int) Math.min(Math.min(len, remaining), in.remaining());
+        if (target == null) {
+            in.position(in.position() + n);
+        } else {
+            in.get(target, off, n);
+        }
+        remaining -= n;
+        if (!chunked && remaining == 0) {
+            ended = true;
+        }
+        return n;
+    }
+
+    private void nextChunk() throws IOException {
+        if (!firstChunk && !connection.readLine().isEmpty()) {
+            throw malformed("Chunk longer than its size");
+        }
+        firstChunk = false;
+        String line = connection.readLine();
+        int extension = line.indexOf(';');
+        remaining = parseChunkSize(extension < 0 ? line : line.substring(0, extension));
+        if (remaining < 0) {
+            throw malformed("Malformed chunk size: " + line);
+        }
+        if (remaining == 0) {
+            // Trailers are not passed on
+            String trailer;
+            do {
+                trailer = connection.readLine();
+            } while (!trailer.isEmpty());
+            ended = true;
+        }
+    }
+
+    // Hex digits only: Long.parseLong would also take a sign, and the size has no whitespace around it
+    private static long parseChunkSize(String value) {
+        if (!value.isEmpty() && value.chars().allMatch(c -> c >= '0' && c <= '9' || c >= 'a' && c <= 'f' || c >= 'A' && c <= 'F')) {
+            try {
+                return Long.parseLong(value, 16);
+            } catch (NumberFormatException e) {
+                // Too long, reported by the caller
+            }
+        }
+        return -1;
+    }
+
+    private ProtocolException malformed(String message) {
+        malformed = true;
+        return new ProtocolException(message);
+    }
+}
@@ -0,0 +1,119 @@
+package ua.edu.ukma.clientserver.server.nio;
+
+import com.sun.net.httpserver.Headers;
+
+import java.net.ProtocolException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+// The request line and headers; contentLength is CHUNKED for a chunked body
+record RequestHead(String method, URI uri, String protocol, Headers headers, long contentLength) {
+
+    static final long CHUNKED = -1;
+
+    // Null until the buffer holds the whole head, which is then consumed from it
+    static RequestHead parse(ByteBuffer in) throws ProtocolException {
+        int start = in.position();
+        int end = in.limit();
+        // Clients may send an empty line between pipelined requests
+        while (start < end && (in.get(start) == '\r' || in.get(start) == '\n')) {
+            start++;
+        }
+        in.position(start);
+        int headEnd = -1;
+        for (int i = start; i + 3 < end; i++) {
+            if (in.get(i) == '\r' && in.get(i + 1) == '\n' && in.get(i + 2) == '\r' && in.get(i + 3) == '\n') {
+                headEnd = i;
+                break;
+            }
+        }
+        if (headEnd < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[headEnd - start];
+        in.get(start, bytes);
+        in.position(headEnd + 4);
+
+        String[] lines = new String(bytes, StandardCharsets.ISO_8859_1).split("\r\n");
+        String[] requestLine = lines[0].split(" ");
+        if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/1.")) {
+            throw new ProtocolException("Malformed request line: " + lines[0]);
+        }
+        URI uri;
+        try {
+            uri = new URI(requestLine[1]);
+        } catch (Exception e) {
+            throw new ProtocolException("Malformed request target: " + requestLine[1]);
+        }
+        // Contexts are matched on the path, which an opaque target such as mailto:x does not have
+        if (uri.isOpaque() || uri.getPath() == null) {
+            throw new ProtocolException("Request target has no path: " + requestLine[1]);
+        }
+        Headers headers = new Headers();
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon <= 0 || Character.isWhitespace(lines[i].charAt(colon - 1))) {
+                throw new ProtocolException("Malformed header: " + lines[i]);
+            }
+            headers.add(lines[i].substring(0, colon), lines[i].substring(colon + 1).strip());
+        }
+        return new RequestHead(requestLine[0], uri, requestLine[2], headers, contentLength(headers));
+    }
+
+    boolean keepAlive() {
+        String connection = headers.getFirst("Connection");
+        return protocol.equals("HTTP/1.0")
+            ? connection != null && connection.equalsIgnoreCase("keep-alive")
+            : connection == null || !connection.equalsIgnoreCase("close");
+    }
+
+    boolean expectsContinue() {
+        String expect = headers.getFirst("Expect");
+        return expect != null && expect.equalsIgnoreCase("100-continue") && !protocol.equals("HTTP/1.0");
+    }
+
+    // Framing a proxy in front could read differently is rejected (RFC 9112, section 6.3), since answering it
+    // would leave this server and the proxy disagreeing on where the next request starts
+    private static long contentLength(Headers headers) throws ProtocolException {
+        List<String> transferEncodings = headers.get("Transfer-Encoding");
+        List<String> contentLengths = headers.get("Content-Length");
+        if (transferEncodings != null) {
+            if (contentLengths != null) {
+                throw new ProtocolException("Both Transfer-Encoding and Content-Length are set");
+            }
+            if (transferEncodings.size() != 1 || !transferEncodings.get(0).equalsIgnoreCase("chunked")) {
+                throw new ProtocolException("Unsupported transfer encoding: " + transferEncodings);
+            }
+            return CHUNKED;
+        }
+        if (contentLengths == null) {
+            return 0;
+        }
+        // Repeats of one value, as separate headers or as a list, are allowed; differing ones are not
+        long length = -1;
+        for (String header : contentLengths) {
+            for (String value : header.split(",", -1)) {
+                long parsed = parseLength(value.strip());
+                if (length >= 0 && parsed != length) {
+                    throw new ProtocolException("Conflicting content lengths: " + contentLengths);
+                }
+                length = parsed;
+            }
+        }
+        return length;
+    }
+
+    private static long parseLength(String value) throws ProtocolException {
+        // Digits only: Long.parseLong would also take a sign
+        if (!value.isEmpty() && value.chars().allMatch(c -> c >= '0' && c <= '9')) {
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                // Too long, reported below
+            }
+        }
+        throw new ProtocolException("Malformed content length: " + value);
+    }
+}
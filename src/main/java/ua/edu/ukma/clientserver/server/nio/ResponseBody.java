@@ -0,0 +1,97 @@
+package ua.edu.ukma.clientserver.server.nio;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Objects;
+
+// Frames what the handler writes the way sendResponseHeaders announced it. Nothing reaches the socket until
+// the buffer fills, the handler flushes or the body ends, so a short response goes out with its head in one write.
+final class ResponseBody extends OutputStream {
+
+    enum Framing {
+        FIXED,
+        CHUNKED,
+        // HTTP/1.0 clients without chunked encoding read to the end of the connection
+        UNTIL_CLOSE,
+        NONE
+    }
+
+    private final NioConnection connection;
+    private final byte[] single = new byte[1];
+    // Null until the headers are sent
+    private Framing framing;
+    private long remaining;
+    private boolean closed;
+
+    ResponseBody(NioConnection connection) {
+        this.connection = connection;
+    }
+
+    void start(Framing framing, long length) {
+        this.framing = framing;
+        this.remaining = length;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        single[0] = (byte) b;
+        write(single, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        if (framing == null) {
+            throw new IOException("Response headers not sent yet");
+        }
+        // Before the closed check, as in the JDK server: handlers write empty bodies after sending length -1
+        if (len == 0) {
+            return;
+        }
+        if (closed) {
+            throw new IOException("Stream is closed");
+        }
+        switch (framing) {
+            case FIXED -> {
+                if (len > remaining) {
+                    throw new IOException("Too many bytes to write to stream");
+                }
+                remaining -= len;
+                connection.send(b, off, len);
+            }
+            case CHUNKED -> {
+                connection.sendAscii(Integer.toHexString(len) + "\r\n");
+                connection.send(b, off, len);
+                connection.sendAscii("\r\n");
+            }
+            case UNTIL_CLOSE -> connection.send(b, off, len);
+            case NONE -> throw new IOException("Response has no body");
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (framing != null && !closed) {
+            connection.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (framing == null || closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (framing == Framing.CHUNKED) {
+                connection.sendAscii("0\r\n\r\n");
+            } else if (framing == Framing.FIXED && remaining > 0) {
+                // The client is still waiting for the rest; only closing the connection ends the response
+                connection.closeAfterExchange();
+                throw new IOException("Insufficient bytes written to stream");
+            }
+        } finally {
+            connection.endResponse();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package ua.edu.ukma.clientserver.server.reservations;
+
+import java.time.Duration;
+
+public record ReservationConfig(
+    Duration defaultTtl,
+    Duration maxTtl,
+    // Expiry resolution; holds are released at most one tick late
+    Duration tick,
+    int wheelSize,
+    // How far the table may lag behind the holds in memory
+    Duration persistInterval
+) {
+
+    public ReservationConfig {
+        if (!isPositive(defaultTtl) || !isPositive(tick) || !isPositive(persistInterval) || maxTtl.compareTo(defaultTtl) < 0) {
+            throw new IllegalArgumentException("Invalid reservation timing: ttl=" + defaultTtl + ", maxTtl=" + maxTtl + ", tick=" + tick + ", persistInterval=" + persistInterval);
+        }
+        if (Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("Reservation wheel size must be a power of two: " + wheelSize);
+        }
+    }
+
+    public static ReservationConfig defaults() {
+        return new ReservationConfig(Duration.ofMinutes(5), Duration.ofMinutes(30), Duration.ofMillis(100), 512, Duration.ofMillis(200));
+    }
+
+    public static ReservationConfig fromSystemProperties() {
+        ReservationConfig defaults = defaults();
+        return new ReservationConfig(
+            Duration.ofSeconds(Long.getLong("reservations.ttlSeconds", defaults.defaultTtl().toSeconds())),
+            Duration.ofSeconds(Long.getLong("reservations.maxTtlSeconds", defaults.maxTtl().toSeconds())),
+            Duration.ofMillis(Long.getLong("reservations.tickMs", defaults.tick().toMillis())),
+            Integer.getInteger("reservations.wheelSize", defaults.wheelSize()),
+            Duration.ofMillis(Long.getLong("reservations.persistIntervalMs", defaults.persistInterval().toMillis()))
+        );
+    }
+
+    private static boolean isPositive(Duration duration) {
+        return !duration.isNegative() && !duration.isZero();
+    }
+}
@@ -0,0 +1,20 @@
+package ua.edu.ukma.clientserver.server.reservations;
+
+import ua.edu.ukma.clientserver.server.models.Reservation;
+
+public record ReservationResult(Status status, Reservation reservation) {
+
+    public enum Status {
+        RESERVED,
+        CONFIRMED,
+        CANCELLED,
+        PRODUCT_NOT_FOUND,
+        // Also when it has expired
+        RESERVATION_NOT_FOUND,
+        INSUFFICIENT_STOCK
+    }
+
+    static ReservationResult of(Status status) {
+        return new ReservationResult(status, null);
+    }
+}
@@ -0,0 +1,15 @@
+package ua.edu.ukma.clientserver.server.reservations;
+
+public record ReservationStats(
+    int open,
+    long reserved,
+    long confirmed,
+    long cancelled,
+    long expired,
+    // Reservations and sales turned down because the rest of the stock is held
+    long rejected,
+    // Opened or closed holds not yet written to the table
+    int unsaved,
+    long saveFailures
+) {
+}
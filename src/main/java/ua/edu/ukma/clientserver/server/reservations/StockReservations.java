@@ -0,0 +1,373 @@
+package ua.edu.ukma.clientserver.server.reservations;
+
+import ua.edu.ukma.clientserver.server.db.CatalogListener;
+import ua.edu.ukma.clientserver.server.db.ProductRepository;
+import ua.edu.ukma.clientserver.server.db.ReservationRepository;
+import ua.edu.ukma.clientserver.server.db.StockUpdateResult;
+import ua.edu.ukma.clientserver.server.models.Product;
+import ua.edu.ukma.clientserver.server.models.Reservation;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Stock held for checkouts. Holds live in memory: each product's slot knows its quantity, kept current by
+// catalog events, and how much of it is held or being sold, so reserving never touches the database.
+// Confirming a hold sells it through the repository; cancelling it or letting it expire gives the units back.
+// Direct sales go through here too so they cannot take held units. Expiry runs off a timer wheel, and opened
+// and closed holds are written to the table in the background, so a restart keeps all but the last few.
+public class StockReservations implements CatalogListener, AutoCloseable {
+
+    private static final int MAX_LOAD_ATTEMPTS = 3;
+    private static final long SETTLE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final ProductRepository productRepository;
+    private final ReservationRepository reservationRepository;
+    private final ReservationConfig config;
+    // Slots are never removed, so a hold can always find the one it was counted in
+    private final Map<Integer, Slot> slots = new ConcurrentHashMap<>();
+    private final Map<String, Reservation> open = new ConcurrentHashMap<>();
+    private final TimerWheel<Reservation> wheel;
+    private final ScheduledExecutorService timer;
+
+    // Filled by requests, drained by save(): closes first, so a close never goes out ahead of its open
+    private final Queue<String> closedQueue = new ConcurrentLinkedQueue<>();
+    private final Queue<Reservation> openedQueue = new ConcurrentLinkedQueue<>();
+    // Drained but not saved yet; only touched inside save()
+    private final Set<String> unsavedCloses = new LinkedHashSet<>();
+    private final Map<String, Reservation> unsavedOpens = new LinkedHashMap<>();
+    private final AtomicInteger unsaved = new AtomicInteger();
+
+    private final LongAdder reserved = new LongAdder();
+    private final LongAdder confirmed = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder saveFailures = new LongAdder();
+
+    public StockReservations(ProductRepository productRepository, ReservationRepository reservationRepository, ReservationConfig config) {
+        this.productRepository = productRepository;
+        this.reservationRepository = reservationRepository;
+        this.config = config;
+        long now = System.currentTimeMillis();
+        this.wheel = new TimerWheel<>(config.tick(), config.wheelSize(), now);
+        for (Reservation reservation : reservationRepository.loadOpenReservations(now)) {
+            Slot slot = slot(reservation.productId());
+            synchronized (slot) {
+                slot.held += reservation.amount();
+            }
+            open.put(reservation.id(), reservation);
+            wheel.schedule(reservation, reservation.expiresAt());
+        }
+
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stock-reservations");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long tick = config.tick().toMillis();
+        timer.scheduleAtFixedRate(() -> expireDue(System.currentTimeMillis()), tick, tick, TimeUnit.MILLISECONDS);
+        long persistInterval = config.persistInterval().toMillis();
+        timer.scheduleWithFixedDelay(this::saveQuietly, persistInterval, persistInterval, TimeUnit.MILLISECONDS);
+    }
+
+    // ttl may be null for the default; one outside (0, maxTtl] is an IllegalArgumentException
+    public ReservationResult reserve(int productId, int amount, Duration ttl) {
+        Duration holdFor = ttl == null ? config.defaultTtl() : ttl;
+        if (holdFor.isNegative() || holdFor.isZero() || holdFor.compareTo(config.maxTtl()) > 0) {
+            throw new IllegalArgumentException("TTL must be between 1 and " + config.maxTtl().toSeconds() + " seconds");
+        }
+        Slot slot = slot(productId);
+        if (!ensureLoaded(productId, slot)) {
+            return ReservationResult.of(ReservationResult.Status.PRODUCT_NOT_FOUND);
+        }
+        if (!claim(slot, amount, true)) {
+            return ReservationResult.of(ReservationResult.Status.INSUFFICIENT_STOCK);
+        }
+        Reservation reservation = new Reservation(UUID.randomUUID().toString(), productId, amount, System.currentTimeMillis() + holdFor.toMillis());
+        open.put(reservation.id(), reservation);
+        openedQueue.add(reservation);
+        unsaved.incrementAndGet();
+        wheel.schedule(reservation, reservation.expiresAt());
+        reserved.increment();
+        return new ReservationResult(ReservationResult.Status.RESERVED, reservation);
+    }
+
+    public ReservationResult confirm(String id) {
+        Reservation reservation = open.remove(id);
+        if (reservation == null) {
+            return ReservationResult.of(ReservationResult.Status.RESERVATION_NOT_FOUND);
+        }
+        if (reservation.expiresAt() <= System.currentTimeMillis()) {
+            // The wheel has not got to it yet
+            close(reservation);
+            expired.increment();
+            return ReservationResult.of(ReservationResult.Status.RESERVATION_NOT_FOUND);
+        }
+        Slot slot = slots.get(reservation.productId());
+        synchronized (slot) {
+            slot.held -= reservation.amount();
+            slot.selling += reservation.amount();
+        }
+        StockUpdateResult sale;
+        try {
+            sale = productRepository.sellStock(reservation.productId(), reservation.amount());
+        } catch (RuntimeException e) {
+            // The hold stands and can be confirmed again
+            synchronized (slot) {
+                slot.held += reservation.amount();
+            }
+            settle(slot, reservation.amount());
+            open.put(id, reservation);
+            wheel.schedule(reservation, reservation.expiresAt());
+            throw e;
+        }
+        settle(slot, reservation.amount());
+        closedQueue.add(id);
+        unsaved.incrementAndGet();
+        return switch (sale.status()) {
+            case UPDATED -> {
+                confirmed.increment();
+                yield new ReservationResult(ReservationResult.Status.CONFIRMED, reservation);
+            }
+            case NOT_FOUND -> ReservationResult.of(ReservationResult.Status.PRODUCT_NOT_FOUND);
+            // The quantity was set below what was held, by an update or a stock batch
+            default -> ReservationResult.of(ReservationResult.Status.INSUFFICIENT_STOCK);
+        };
+    }
+
+    public ReservationResult cancel(String id) {
+        Reservation reservation = open.remove(id);
+        if (reservation == null) {
+            return ReservationResult.of(ReservationResult.Status.RESERVATION_NOT_FOUND);
+        }
+        close(reservation);
+        cancelled.increment();
+        return new ReservationResult(ReservationResult.Status.CANCELLED, reservation);
+    }
+
+    public Optional<Reservation> getReservation(String id) {
+        Reservation reservation = open.get(id);
+        return reservation != null && reservation.expiresAt() > System.currentTimeMillis() ? Optional.of(reservation) : Optional.empty();
+    }
+
+    // A sale that leaves held units alone; the repository still has the final say on the quantity
+    public StockUpdateResult sell(int productId, int amount) {
+        Slot slot = slot(productId);
+        if (!ensureLoaded(productId, slot)) {
+            return StockUpdateResult.notFound();
+        }
+        if (!claim(slot, amount, false)) {
+            return StockUpdateResult.insufficientStock();
+        }
+        try {
+            return productRepository.sellStock(productId, amount);
+        } finally {
+            settle(slot, amount);
+        }
+    }
+
+    public ReservationStats getStats() {
+        return new ReservationStats(open.size(), reserved.sum(), confirmed.sum(), cancelled.sum(), expired.sum(), rejected.sum(), unsaved.get(), saveFailures.sum());
+    }
+
+    @Override
+    public void stockChanged(int productId, int delta) {
+        Slot slot = slots.get(productId);
+        if (slot != null) {
+            synchronized (slot) {
+                slot.events++;
+                slot.quantity += delta;
+            }
+        }
+    }
+
+    @Override
+    public void productUpdated(Product product) {
+        invalidate(product.id());
+    }
+
+    @Override
+    public void productDeleted(int id) {
+        invalidate(id);
+    }
+
+    @Override
+    public void productsImported() {
+        slots.keySet().forEach(this::invalidate);
+    }
+
+    // The group's products went with it
+    @Override
+    public void groupDeleted(int groupId) {
+        slots.keySet().forEach(this::invalidate);
+    }
+
+    // Stops the timer and writes out what has not been saved yet
+    @Override
+    public void close() {
+        timer.shutdown();
+        try {
+            timer.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        save();
+    }
+
+    void expireDue(long nowMillis) {
+        wheel.advance(nowMillis, reservation -> {
+            // Confirmed or cancelled holds are still in the wheel
+            if (open.remove(reservation.id(), reservation)) {
+                close(reservation);
+                expired.increment();
+            }
+        });
+    }
+
+    // An opened and a closed hold that meet here never reach the table
+    synchronized void save() {
+        for (String id; (id = closedQueue.poll()) != null; ) {
+            unsavedCloses.add(id);
+        }
+        for (Reservation reservation; (reservation = openedQueue.poll()) != null; ) {
+            unsavedOpens.put(reservation.id(), reservation);
+        }
+        for (Iterator<String> closes = unsavedCloses.iterator(); closes.hasNext(); ) {
+            if (unsavedOpens.remove(closes.next()) != null) {
+                closes.remove();
+                unsaved.addAndGet(-2);
+            }
+        }
+        if (unsavedOpens.isEmpty() && unsavedCloses.isEmpty()) {
+            return;
+        }
+        reservationRepository.saveChanges(unsavedOpens.values(), unsavedCloses);
+        unsaved.addAndGet(-(unsavedOpens.size() + unsavedCloses.size()));
+        unsavedOpens.clear();
+        unsavedCloses.clear();
+    }
+
+    private void saveQuietly() {
+        try {
+            save();
+        } catch (RuntimeException e) {
+            // Kept for the next round
+            saveFailures.increment();
+            System.err.println("Saving stock reservations failed: " + e.getMessage());
+        }
+    }
+
+    private void close(Reservation reservation) {
+        Slot slot = slots.get(reservation.productId());
+        synchronized (slot) {
+            slot.held -= reservation.amount();
+        }
+        closedQueue.add(reservation.id());
+        unsaved.incrementAndGet();
+    }
+
+    // A sale that has gone through but not settled yet counts twice, in quantity and in selling, so a shortfall
+    // seen while sales are in flight is only final once they have settled or the wait runs out
+    private boolean claim(Slot slot, int amount, boolean hold) {
+        long deadline = System.nanoTime() + SETTLE_WAIT_NANOS;
+        synchronized (slot) {
+            while (slot.free() < amount) {
+                long remaining = deadline - System.nanoTime();
+                if (slot.selling == 0 || remaining <= 0) {
+                    rejected.increment();
+                    return false;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(slot, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    rejected.increment();
+                    return false;
+                }
+            }
+            if (hold) {
+                slot.held += amount;
+            } else {
+                slot.selling += amount;
+            }
+            return true;
+        }
+    }
+
+    private void settle(Slot slot, int amount) {
+        synchronized (slot) {
+            slot.selling -= amount;
+            slot.notifyAll();
+        }
+    }
+
+    private Slot slot(int productId) {
+        return slots.computeIfAbsent(productId, id -> new Slot());
+    }
+
+    private void invalidate(int productId) {
+        Slot slot = slots.get(productId);
+        if (slot != null) {
+            synchronized (slot) {
+                slot.events++;
+                slot.loaded = false;
+            }
+        }
+    }
+
+    // Reads the quantity outside the slot's monitor and keeps it only if no event came in meanwhile: such an
+    // event may or may not be in what was read. Returns false if the product does not exist.
+    private boolean ensureLoaded(int productId, Slot slot) {
+        for (int attempt = 1; ; attempt++) {
+            long eventsBefore;
+            synchronized (slot) {
+                if (slot.loaded) {
+                    return true;
+                }
+                eventsBefore = slot.events;
+            }
+            OptionalInt quantity = productRepository.loadQuantity(productId);
+            synchronized (slot) {
+                if (slot.loaded) {
+                    return true;
+                }
+                if (slot.events == eventsBefore || attempt == MAX_LOAD_ATTEMPTS) {
+                    if (quantity.isEmpty()) {
+                        return false;
+                    }
+                    slot.quantity = quantity.getAsInt();
+                    slot.loaded = true;
+                    return true;
+                }
+            }
+        }
+    }
+
+    private static final class Slot {
+        // Guarded by the slot's monitor
+        private boolean loaded;
+        private long events;
+        private int quantity;
+        private int held;
+        private int selling;
+
+        int free() {
+            return quantity - held - selling;
+        }
+    }
+}
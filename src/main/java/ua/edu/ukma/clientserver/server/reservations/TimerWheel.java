@@ -0,0 +1,64 @@
+package ua.edu.ukma.clientserver.server.reservations;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+// Hashed timing wheel. A timeout goes into the bucket of the tick it is due on and each tick looks at its own
+// bucket only, so scheduling costs the same with a handful or a million pending. Timeouts further out than
+// one turn wait in their bucket for the turn they are due on. Nothing is ever cancelled: whoever handles an
+// expiry checks that the item is still live.
+final class TimerWheel<T> {
+
+    private final long tickMillis;
+    private final Queue<Timeout<T>>[] buckets;
+    // First tick not handed out yet
+    private volatile long nextTick;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    TimerWheel(Duration tick, int size, long startMillis) {
+        if (Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("Wheel size must be a power of two: " + size);
+        }
+        this.tickMillis = tick.toMillis();
+        this.buckets = new Queue[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.nextTick = Math.floorDiv(startMillis, tickMillis);
+    }
+
+    // Due at the first tick at or after the deadline. One scheduled while advance is on that very tick may
+    // only come out a turn later.
+    void schedule(T item, long deadlineMillis) {
+        long tick = Math.max(-Math.floorDiv(-deadlineMillis, tickMillis), nextTick);
+        buckets[(int) (tick & (buckets.length - 1))].add(new Timeout<>(item, tick));
+    }
+
+    // Called from a single thread; hands every timeout due by nowMillis to expired
+    void advance(long nowMillis, Consumer<T> expired) {
+        long now = Math.floorDiv(nowMillis, tickMillis);
+        long from = nextTick;
+        if (now < from) {
+            return;
+        }
+        nextTick = now + 1;
+        // After a stall longer than a turn, every bucket is visited once
+        long to = Math.min(now, from + buckets.length - 1);
+        for (long tick = from; tick <= to; tick++) {
+            Iterator<Timeout<T>> timeouts = buckets[(int) (tick & (buckets.length - 1))].iterator();
+            while (timeouts.hasNext()) {
+                Timeout<T> timeout = timeouts.next();
+                if (timeout.tick <= now) {
+                    timeouts.remove();
+                    expired.accept(timeout.item);
+                }
+            }
+        }
+    }
+
+    private record Timeout<T>(T item, long tick) {
+    }
+}
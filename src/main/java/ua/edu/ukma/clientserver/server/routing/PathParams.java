@@ -0,0 +1,54 @@
+package ua.edu.ukma.clientserver.server.routing;
+
+import java.util.NoSuchElementException;
+
+public final class PathParams {
+
+    static final PathParams EMPTY = new PathParams(0);
+
+    private final String[] names;
+    private final String[] strings;
+    private final int[] ints;
+    private int size;
+
+    PathParams(int capacity) {
+        this.names = new String[capacity];
+        this.strings = new String[capacity];
+        this.ints = new int[capacity];
+    }
+
+    public int getInt(String name) {
+        return ints[indexOf(name)];
+    }
+
+    public String getString(String name) {
+        int index = indexOf(name);
+        return strings[index] != null ? strings[index] : String.valueOf(ints[index]);
+    }
+
+    void pushInt(String name, int value) {
+        names[size] = name;
+        strings[size] = null;
+        ints[size] = value;
+        size++;
+    }
+
+    void pushString(String name, String value) {
+        names[size] = name;
+        strings[size] = value;
+        size++;
+    }
+
+    void pop() {
+        size--;
+    }
+
+    private int indexOf(String name) {
+        for (int i = 0; i < size; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        throw new NoSuchElementException("No path parameter named " + name);
+    }
+}
@@ -0,0 +1,10 @@
+package ua.edu.ukma.clientserver.server.routing;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+
+@FunctionalInterface
+public interface RouteHandler {
+    void handle(HttpExchange exchange, PathParams params) throws IOException;
+}
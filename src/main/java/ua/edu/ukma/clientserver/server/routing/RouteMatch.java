@@ -0,0 +1,15 @@
+package ua.edu.ukma.clientserver.server.routing;
+
+import java.util.Set;
+
+public record RouteMatch(Status status, RouteHandler handler, PathParams params, Set<String> allowedMethods,
+                         String pattern) {
+
+    static final RouteMatch NOT_FOUND = new RouteMatch(Status.NOT_FOUND, null, PathParams.EMPTY, Set.of(), null);
+
+    public enum Status {
+        FOUND,
+        NOT_FOUND,
+        METHOD_NOT_ALLOWED
+    }
+}
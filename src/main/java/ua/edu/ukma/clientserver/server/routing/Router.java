@@ -0,0 +1,149 @@
+package ua.edu.ukma.clientserver.server.routing;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Routes are kept in a trie of path segments: literal segments are hash lookups, {name} and {name:int}
+// segments capture variables, and a request is matched in a single pass over its path.
+public class Router {
+
+    private final Node root = new Node();
+    private int maxParams;
+
+    public Router get(String pattern, RouteHandler handler) {
+        return route("GET", pattern, handler);
+    }
+
+    public Router post(String pattern, RouteHandler handler) {
+        return route("POST", pattern, handler);
+    }
+
+    public Router put(String pattern, RouteHandler handler) {
+        return route("PUT", pattern, handler);
+    }
+
+    public Router delete(String pattern, RouteHandler handler) {
+        return route("DELETE", pattern, handler);
+    }
+
+    public Router route(String method, String pattern, RouteHandler handler) {
+        Node node = root;
+        int params = 0;
+        for (String segment : pattern.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            if (segment.startsWith("{") && segment.endsWith("}")) {
+                node = node.paramChild(segment.substring(1, segment.length() - 1), pattern);
+                params++;
+            } else {
+                node = node.literals.computeIfAbsent(segment, s -> new Node());
+            }
+        }
+        if (node.handlers.putIfAbsent(method, handler) != null) {
+            throw new IllegalArgumentException("Duplicate route " + method + " " + pattern);
+        }
+        if (node.pattern == null) {
+            node.pattern = pattern;
+        }
+        maxParams = Math.max(maxParams, params);
+        return this;
+    }
+
+    public RouteMatch match(String method, String path) {
+        PathParams params = maxParams == 0 ? PathParams.EMPTY : new PathParams(maxParams);
+        Node node = find(root, path, 0, params);
+        if (node == null) {
+            return RouteMatch.NOT_FOUND;
+        }
+        RouteHandler handler = node.handlers.get(method);
+        if (handler == null) {
+            return new RouteMatch(RouteMatch.Status.METHOD_NOT_ALLOWED, null, params, node.handlers.keySet(), node.pattern);
+        }
+        return new RouteMatch(RouteMatch.Status.FOUND, handler, params, node.handlers.keySet(), node.pattern);
+    }
+
+    private static Node find(Node node, String path, int start, PathParams params) {
+        while (start < path.length() && path.charAt(start) == '/') {
+            start++;
+        }
+        if (start >= path.length()) {
+            return node.handlers.isEmpty() ? null : node;
+        }
+        int end = path.indexOf('/', start);
+        if (end < 0) {
+            end = path.length();
+        }
+
+        Node literal = node.literals.get(path.substring(start, end));
+        if (literal != null) {
+            Node found = find(literal, path, end, params);
+            if (found != null) {
+                return found;
+            }
+        }
+
+        Node param = node.param;
+        if (param == null) {
+            return null;
+        }
+        if (param.intParam) {
+            long value = parseInt(path, start, end);
+            if (value < 0) {
+                return null;
+            }
+            params.pushInt(param.paramName, (int) value);
+        } else {
+            params.pushString(param.paramName, path.substring(start, end));
+        }
+        Node found = find(param, path, end, params);
+        if (found == null) {
+            params.pop();
+        }
+        return found;
+    }
+
+    // Returns -1 unless the segment is a non-negative decimal that fits in an int
+    private static long parseInt(String path, int start, int end) {
+        if (end - start > 10) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            char c = path.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value <= Integer.MAX_VALUE ? value : -1;
+    }
+
+    private static final class Node {
+        private final Map<String, Node> literals = new HashMap<>();
+        private final Map<String, RouteHandler> handlers = new LinkedHashMap<>();
+        private Node param;
+        // The pattern the node's first route was registered with, as the label requests are reported under
+        private String pattern;
+        private String paramName;
+        private boolean intParam;
+
+        private Node paramChild(String spec, String pattern) {
+            int colon = spec.indexOf(':');
+            String name = colon < 0 ? spec : spec.substring(0, colon);
+            String type = colon < 0 ? "string" : spec.substring(colon + 1);
+            if (!type.equals("string") && !type.equals("int")) {
+                throw new IllegalArgumentException("Unknown path variable type '" + type + "' in " + pattern);
+            }
+            if (param == null) {
+                param = new Node();
+                param.paramName = name;
+                param.intParam = type.equals("int");
+            } else if (!param.paramName.equals(name) || param.intParam != type.equals("int")) {
+                throw new IllegalArgumentException("Conflicting path variable {" + spec + "} in " + pattern);
+            }
+            return param;
+        }
+    }
+}
@@ -0,0 +1,541 @@
+package ua.edu.ukma.clientserver.server.search;
+
+import ua.edu.ukma.clientserver.server.db.CatalogListener;
+import ua.edu.ukma.clientserver.server.db.ProductRepository;
+import ua.edu.ukma.clientserver.server.models.Product;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// In-memory trigram index over product name, manufacturer and description, kept in sync through repository events
+public class ProductSearchIndex implements CatalogListener {
+
+    private static final int NAME = 1;
+    private static final int MANUFACTURER = 2;
+    private static final int DESCRIPTION = 4;
+    private static final double NAME_WEIGHT = 3;
+    private static final double MANUFACTURER_WEIGHT = 2;
+    private static final double DESCRIPTION_WEIGHT = 1;
+    // Share of the query's trigram weight a product has to contain; low enough to let one typo through
+    private static final double MIN_SIMILARITY = 0.5;
+
+    private final ProductRepository productRepository;
+    // Searches are lock-free; writers are serialised so postings can be replaced copy-on-write, chunk by chunk
+    private final Object writeLock = new Object();
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder rebuilds = new LongAdder();
+    private volatile Index index = new Index(new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+
+    public ProductSearchIndex(ProductRepository productRepository) {
+        this.productRepository = productRepository;
+        rebuild();
+    }
+
+    public List<Product> search(String query, int limit) {
+        searches.increment();
+        Set<String> queryTrigrams = new HashSet<>();
+        addTrigrams(query, true, queryTrigrams);
+        if (queryTrigrams.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+
+        // Trigrams are weighted by rarity, so words shared by the whole catalog hardly count towards a match
+        Index current = index;
+        int documentCount = current.documents.size();
+        List<Posting> postings = new ArrayList<>(queryTrigrams.size());
+        for (String trigram : queryTrigrams) {
+            Posting posting = current.postings.get(trigram);
+            if (posting != null) {
+                postings.add(posting);
+            }
+        }
+        if (postings.isEmpty()) {
+            return List.of();
+        }
+        postings.sort(Comparator.comparingInt(Posting::size));
+        double[] remainingMass = new double[postings.size() + 1];
+        for (int i = postings.size() - 1; i >= 0; i--) {
+            remainingMass[i] = remainingMass[i + 1] + rarity(documentCount, postings.get(i).size());
+        }
+        // Trigrams found nowhere (usually typos) count as average ones rather than as the rarest possible
+        int missing = queryTrigrams.size() - postings.size();
+        double queryMass = remainingMass[0] + missing * remainingMass[0] / postings.size();
+        double minMass = queryMass * MIN_SIMILARITY;
+
+        // Products missing from the rarest postings cannot reach minMass with the common ones alone,
+        // so only the rare postings contribute candidates and the common ones are merely joined against them
+        int seedCount = 0;
+        while (seedCount < postings.size() && remainingMass[seedCount] >= minMass) {
+            seedCount++;
+        }
+        int[] candidates = union(postings.subList(0, seedCount));
+        double[] mass = new double[candidates.length];
+        double[] score = new double[candidates.length];
+        for (Posting posting : postings) {
+            accumulate(posting, rarity(documentCount, posting.size()), candidates, mass, score);
+        }
+
+        String needle = query.toLowerCase(Locale.ROOT).strip();
+        double maxBonus = NAME_WEIGHT * queryMass;
+        Comparator<Ranked> ranking = Comparator.comparingDouble(Ranked::score)
+            .thenComparing(r -> -r.product().name().length())
+            .thenComparing(r -> -r.product().id());
+        PriorityQueue<Ranked> top = new PriorityQueue<>(limit + 1, ranking);
+        for (int c = 0; c < candidates.length; c++) {
+            if (mass[c] < minMass || (top.size() == limit && score[c] + maxBonus < top.peek().score())) {
+                continue;
+            }
+            Document document = current.documents.get(candidates[c]);
+            if (document == null) {
+                continue;
+            }
+            top.offer(new Ranked(document.product(), score[c] + document.substringBonus(needle) * queryMass));
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+
+        List<Product> results = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            results.add(top.poll().product());
+        }
+        return results.reversed();
+    }
+
+    public void rebuild() {
+        synchronized (writeLock) {
+            Map<Integer, Document> documents = new ConcurrentHashMap<>();
+            Map<String, PostingBuilder> builders = new HashMap<>();
+            try {
+                // Products arrive ordered by id, so every posting is built already sorted
+                productRepository.streamAllProducts(product -> {
+                    Document document = Document.of(product);
+                    documents.put(product.id(), document);
+                    document.trigramFields().forEach((trigram, fields) ->
+                        builders.computeIfAbsent(trigram, key -> new PostingBuilder()).append(product.id(), fields));
+                });
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            Map<String, Posting> postings = new ConcurrentHashMap<>(builders.size());
+            builders.forEach((trigram, builder) -> postings.put(trigram, builder.build()));
+            index = new Index(documents, postings);
+            rebuilds.increment();
+        }
+    }
+
+    public SearchIndexStats getStats() {
+        Index current = index;
+        return new SearchIndexStats(current.documents.size(), current.postings.size(), searches.sum(), rebuilds.sum());
+    }
+
+    @Override
+    public void productCreated(Product product) {
+        synchronized (writeLock) {
+            index.put(product);
+        }
+    }
+
+    @Override
+    public void productUpdated(Product product) {
+        synchronized (writeLock) {
+            index.put(product);
+        }
+    }
+
+    @Override
+    public void productDeleted(int id) {
+        synchronized (writeLock) {
+            index.remove(id);
+        }
+    }
+
+    @Override
+    public void stockChanged(int productId, int delta) {
+        // Text fields are untouched, so only the stored copy needs the new quantity
+        synchronized (writeLock) {
+            index.documents.computeIfPresent(productId, (id, document) -> document.withQuantityDelta(delta));
+        }
+    }
+
+    @Override
+    public void productsImported() {
+        rebuild();
+    }
+
+    @Override
+    public void groupDeleted(int groupId) {
+        synchronized (writeLock) {
+            Index current = index;
+            for (Document document : List.copyOf(current.documents.values())) {
+                if (document.product().groupId() == groupId) {
+                    current.remove(document.product().id());
+                }
+            }
+        }
+    }
+
+    private static int[] union(List<Posting> postings) {
+        int total = 0;
+        for (Posting posting : postings) {
+            total += posting.size();
+        }
+        int[] ids = new int[total];
+        int offset = 0;
+        for (Posting posting : postings) {
+            for (Chunk chunk : posting.chunks) {
+                System.arraycopy(chunk.ids, 0, ids, offset, chunk.size());
+                offset += chunk.size();
+            }
+        }
+        Arrays.sort(ids);
+        int unique = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (i == 0 || ids[i] != ids[i - 1]) {
+                ids[unique++] = ids[i];
+            }
+        }
+        return Arrays.copyOf(ids, unique);
+    }
+
+    // Both id arrays are sorted: a size mismatch is handled by binary search, otherwise by a linear merge
+    private static void accumulate(Posting posting, double rarity, int[] candidates, double[] mass, double[] score) {
+        if (candidates.length * 8L < posting.size()) {
+            for (int c = 0; c < candidates.length; c++) {
+                int fields = posting.fieldsOf(candidates[c]);
+                if (fields != 0) {
+                    mass[c] += rarity;
+                    score[c] += rarity * weightOf(fields);
+                }
+            }
+        } else if (posting.size() * 8L < candidates.length) {
+            for (Chunk chunk : posting.chunks) {
+                for (int p = 0; p < chunk.size(); p++) {
+                    int c = Arrays.binarySearch(candidates, chunk.ids[p]);
+                    if (c >= 0) {
+                        mass[c] += rarity;
+                        score[c] += rarity * weightOf(chunk.fields[p]);
+                    }
+                }
+            }
+        } else {
+            int c = 0;
+            for (Chunk chunk : posting.chunks) {
+                int p = 0;
+                while (c < candidates.length && p < chunk.size()) {
+                    if (candidates[c] < chunk.ids[p]) {
+                        c++;
+                    } else if (candidates[c] > chunk.ids[p]) {
+                        p++;
+                    } else {
+                        mass[c] += rarity;
+                        score[c] += rarity * weightOf(chunk.fields[p]);
+                        c++;
+                        p++;
+                    }
+                }
+            }
+        }
+    }
+
+    private static double rarity(int documentCount, int matchingDocuments) {
+        return Math.log(1 + (double) documentCount / (matchingDocuments + 1));
+    }
+
+    private static double weightOf(int fields) {
+        if ((fields & NAME) != 0) {
+            return NAME_WEIGHT;
+        }
+        return (fields & MANUFACTURER) != 0 ? MANUFACTURER_WEIGHT : DESCRIPTION_WEIGHT;
+    }
+
+    // Words are padded like pg_trgm does; leaving the last query word open at the end makes it match as a prefix
+    static void addTrigrams(String text, boolean openEnded, Set<String> out) {
+        if (text == null) {
+            return;
+        }
+        String normalized = text.toLowerCase(Locale.ROOT);
+        int length = normalized.length();
+        int lastWordEnd = length;
+        while (lastWordEnd > 0 && !Character.isLetterOrDigit(normalized.charAt(lastWordEnd - 1))) {
+            lastWordEnd--;
+        }
+        int start = -1;
+        for (int i = 0; i <= length; i++) {
+            boolean wordChar = i < length && Character.isLetterOrDigit(normalized.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                String padded = "  " + normalized.substring(start, i) + (openEnded && i == lastWordEnd ? "" : " ");
+                for (int j = 0; j + 3 <= padded.length(); j++) {
+                    out.add(padded.substring(j, j + 3));
+                }
+                start = -1;
+            }
+        }
+    }
+
+    private record Ranked(Product product, double score) {
+    }
+
+    // Keeps lower-cased copies of the searchable fields so ranking does not allocate per candidate
+    private record Document(Product product, String name, String manufacturer, String description) {
+
+        static Document of(Product product) {
+            return new Document(product, lowerCase(product.name()), lowerCase(product.manufacturer()), lowerCase(product.description()));
+        }
+
+        Document withQuantityDelta(int delta) {
+            Product p = product;
+            return new Document(new Product(p.id(), p.groupId(), p.name(), p.description(), p.manufacturer(), p.quantity() + delta, p.price()),
+                name, manufacturer, description);
+        }
+
+        Map<String, Integer> trigramFields() {
+            Map<String, Integer> trigramFields = new HashMap<>();
+            addFieldTrigrams(trigramFields, name, NAME);
+            addFieldTrigrams(trigramFields, manufacturer, MANUFACTURER);
+            addFieldTrigrams(trigramFields, description, DESCRIPTION);
+            return trigramFields;
+        }
+
+        // Keeps plain substring matches, which the old ILIKE search returned, ahead of fuzzy ones
+        double substringBonus(String needle) {
+            if (name.contains(needle)) {
+                return NAME_WEIGHT;
+            }
+            if (manufacturer.contains(needle)) {
+                return MANUFACTURER_WEIGHT;
+            }
+            return description.contains(needle) ? DESCRIPTION_WEIGHT : 0;
+        }
+
+        private static void addFieldTrigrams(Map<String, Integer> trigramFields, String text, int field) {
+            Set<String> trigrams = new HashSet<>();
+            addTrigrams(text, false, trigrams);
+            for (String trigram : trigrams) {
+                trigramFields.merge(trigram, field, (a, b) -> a | b);
+            }
+        }
+
+        private static String lowerCase(String field) {
+            return field == null ? "" : field.toLowerCase(Locale.ROOT);
+        }
+    }
+
+    // Immutable sorted product ids with the bit set of fields each one contains the trigram in. The ids are kept in
+    // bounded chunks, so a write copies one chunk and the chunk table rather than the whole posting.
+    private static final class Posting {
+        private static final int CHUNK_SIZE = 256;
+
+        private final Chunk[] chunks;
+        // Lowest id of each chunk, to find the one an id belongs in
+        private final int[] firstIds;
+        private final int size;
+
+        private Posting(Chunk[] chunks, int size) {
+            this.chunks = chunks;
+            this.firstIds = new int[chunks.length];
+            for (int i = 0; i < chunks.length; i++) {
+                firstIds[i] = chunks[i].ids[0];
+            }
+            this.size = size;
+        }
+
+        // From the first size entries of sorted arrays
+        static Posting of(int[] ids, byte[] fields, int size) {
+            Chunk[] chunks = new Chunk[(size + CHUNK_SIZE - 1) / CHUNK_SIZE];
+            for (int i = 0; i < chunks.length; i++) {
+                int from = i * CHUNK_SIZE;
+                int to = Math.min(size, from + CHUNK_SIZE);
+                chunks[i] = new Chunk(Arrays.copyOfRange(ids, from, to), Arrays.copyOfRange(fields, from, to));
+            }
+            return new Posting(chunks, size);
+        }
+
+        int size() {
+            return size;
+        }
+
+        // 0 when the product does not contain the trigram
+        int fieldsOf(int id) {
+            Chunk chunk = chunks[chunkOf(id)];
+            int position = Arrays.binarySearch(chunk.ids, id);
+            return position < 0 ? 0 : chunk.fields[position];
+        }
+
+        Posting with(int id, int fieldBits) {
+            int k = chunkOf(id);
+            Chunk chunk = chunks[k];
+            int position = Arrays.binarySearch(chunk.ids, id);
+            if (position >= 0) {
+                return replace(k, chunk.withFields(position, fieldBits), size);
+            }
+            int insertAt = -position - 1;
+            Chunk grown = chunk.inserted(insertAt, id, fieldBits);
+            if (grown.size() <= CHUNK_SIZE) {
+                return replace(k, grown, size + 1);
+            }
+            // New products get ever larger ids, so one landing past a full chunk starts the next one instead of
+            // leaving two half-empty ones behind
+            int split = insertAt == chunk.size() ? chunk.size() : grown.size() / 2;
+            Chunk[] newChunks = new Chunk[chunks.length + 1];
+            System.arraycopy(chunks, 0, newChunks, 0, k);
+            newChunks[k] = grown.range(0, split);
+            newChunks[k + 1] = grown.range(split, grown.size());
+            System.arraycopy(chunks, k + 1, newChunks, k + 2, chunks.length - k - 1);
+            return new Posting(newChunks, size + 1);
+        }
+
+        Posting without(int id) {
+            int k = chunkOf(id);
+            Chunk chunk = chunks[k];
+            int position = Arrays.binarySearch(chunk.ids, id);
+            if (position < 0) {
+                return this;
+            }
+            if (size == 1) {
+                return null;
+            }
+            if (chunk.size() > 1) {
+                return replace(k, chunk.removed(position), size - 1);
+            }
+            Chunk[] newChunks = new Chunk[chunks.length - 1];
+            System.arraycopy(chunks, 0, newChunks, 0, k);
+            System.arraycopy(chunks, k + 1, newChunks, k, chunks.length - k - 1);
+            return new Posting(newChunks, size - 1);
+        }
+
+        private Posting replace(int k, Chunk chunk, int newSize) {
+            Chunk[] newChunks = chunks.clone();
+            newChunks[k] = chunk;
+            return new Posting(newChunks, newSize);
+        }
+
+        // The last chunk starting at or below id, or the first one for an id below them all
+        private int chunkOf(int id) {
+            int position = Arrays.binarySearch(firstIds, id);
+            return position >= 0 ? position : Math.max(0, -position - 2);
+        }
+    }
+
+    private static final class Chunk {
+        private final int[] ids;
+        private final byte[] fields;
+
+        Chunk(int[] ids, byte[] fields) {
+            this.ids = ids;
+            this.fields = fields;
+        }
+
+        int size() {
+            return ids.length;
+        }
+
+        Chunk withFields(int position, int fieldBits) {
+            byte[] newFields = fields.clone();
+            newFields[position] = (byte) fieldBits;
+            return new Chunk(ids, newFields);
+        }
+
+        Chunk inserted(int position, int id, int fieldBits) {
+            int[] newIds = new int[ids.length + 1];
+            byte[] newFields = new byte[ids.length + 1];
+            System.arraycopy(ids, 0, newIds, 0, position);
+            System.arraycopy(fields, 0, newFields, 0, position);
+            newIds[position] = id;
+            newFields[position] = (byte) fieldBits;
+            System.arraycopy(ids, position, newIds, position + 1, ids.length - position);
+            System.arraycopy(fields, position, newFields, position + 1, ids.length - position);
+            return new Chunk(newIds, newFields);
+        }
+
+        Chunk removed(int position) {
+            int[] newIds = new int[ids.length - 1];
+            byte[] newFields = new byte[ids.length - 1];
+            System.arraycopy(ids, 0, newIds, 0, position);
+            System.arraycopy(fields, 0, newFields, 0, position);
+            System.arraycopy(ids, position + 1, newIds, position, ids.length - position - 1);
+            System.arraycopy(fields, position + 1, newFields, position, ids.length - position - 1);
+            return new Chunk(newIds, newFields);
+        }
+
+        Chunk range(int from, int to) {
+            return new Chunk(Arrays.copyOfRange(ids, from, to), Arrays.copyOfRange(fields, from, to));
+        }
+    }
+
+    private static final class PostingBuilder {
+        private int[] ids = new int[4];
+        private byte[] fields = new byte[4];
+        private int size;
+
+        void append(int id, int fieldBits) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                fields = Arrays.copyOf(fields, size * 2);
+            }
+            ids[size] = id;
+            fields[size] = (byte) fieldBits;
+            size++;
+        }
+
+        Posting build() {
+            return Posting.of(ids, fields, size);
+        }
+    }
+
+    private record Index(Map<Integer, Document> documents, Map<String, Posting> postings) {
+
+        // Callers hold the write lock, so the read-modify-write of each posting cannot interleave
+        void put(Product product) {
+            Document document = Document.of(product);
+            Document previous = documents.put(product.id(), document);
+            Map<String, Integer> trigramFields = document.trigramFields();
+            if (previous != null) {
+                for (String trigram : previous.trigramFields().keySet()) {
+                    if (!trigramFields.containsKey(trigram)) {
+                        unindex(trigram, product.id());
+                    }
+                }
+            }
+            trigramFields.forEach((trigram, fields) -> {
+                Posting posting = postings.get(trigram);
+                postings.put(trigram, posting == null ? Posting.of(new int[]{product.id()}, new byte[]{fields.byteValue()}, 1) : posting.with(product.id(), fields));
+            });
+        }
+
+        void remove(int id) {
+            Document previous = documents.remove(id);
+            if (previous != null) {
+                for (String trigram : previous.trigramFields().keySet()) {
+                    unindex(trigram, id);
+                }
+            }
+        }
+
+        private void unindex(String trigram, int id) {
+            Posting posting = postings.get(trigram);
+            if (posting == null) {
+                return;
+            }
+            Posting remaining = posting.without(id);
+            if (remaining == null) {
+                postings.remove(trigram);
+            } else {
+                postings.put(trigram, remaining);
+            }
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package ua.edu.ukma.clientserver.server.search;
+
+public record SearchIndexStats(
+    int products,
+    int trigrams,
+    long searches,
+    long rebuilds
+) {
+}
@@ -0,0 +1,10 @@
+package ua.edu.ukma.clientserver.server.stats;
+
+public record InventoryStats(
+    int products,
+    int groups,
+    long reconciliations,
+    long corrections,
+    long skippedReconciliations
+) {
+}
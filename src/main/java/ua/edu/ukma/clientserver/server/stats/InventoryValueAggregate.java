@@ -0,0 +1,259 @@
+package ua.edu.ukma.clientserver.server.stats;
+
+import ua.edu.ukma.clientserver.server.cache.ResourceVersion;
+import ua.edu.ukma.clientserver.server.db.CatalogListener;
+import ua.edu.ukma.clientserver.server.db.ProductRepository;
+import ua.edu.ukma.clientserver.server.models.Product;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Keeps the inventory value (quantity * price) per group and overall, so the stats endpoints never scan the table
+public class InventoryValueAggregate implements CatalogListener, AutoCloseable {
+
+    private static final int PRICE_SCALE = 2;
+    private static final int MAX_IMPORT_RELOAD_ATTEMPTS = 3;
+
+    private final ProductRepository productRepository;
+    // Events apply under the read lock so that a reconciliation can swap in fresh totals between them
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final LongAdder events = new LongAdder();
+    private final LongAdder reconciliations = new LongAdder();
+    private final LongAdder corrections = new LongAdder();
+    private final LongAdder skippedReconciliations = new LongAdder();
+    // Bumped after every change to the totals, including a reconciliation that replaces them without an event
+    private final AtomicReference<ResourceVersion> version = new AtomicReference<>(new ResourceVersion(0, System.currentTimeMillis()));
+    private final ScheduledExecutorService reconciler;
+    private volatile Totals totals = new Totals();
+
+    public InventoryValueAggregate(ProductRepository productRepository, Duration reconcileInterval) {
+        this.productRepository = productRepository;
+        install(load());
+
+        this.reconciler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "inventory-reconciler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = reconcileInterval.toMillis();
+        reconciler.scheduleWithFixedDelay(this::reconcileQuietly, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public BigDecimal getTotalValue() {
+        return BigDecimal.valueOf(totals.total.sum(), PRICE_SCALE);
+    }
+
+    public BigDecimal getTotalValueByGroupId(int groupId) {
+        LongAdder groupTotal = totals.byGroup.get(groupId);
+        return BigDecimal.valueOf(groupTotal == null ? 0 : groupTotal.sum(), PRICE_SCALE);
+    }
+
+    public ResourceVersion version() {
+        return version.get();
+    }
+
+    // Compares the aggregate against the database and replaces it on drift; returns true if it was corrected
+    public boolean reconcile() {
+        if (tryReconcile() != Reconciliation.CORRECTED) {
+            return false;
+        }
+        corrections.increment();
+        return true;
+    }
+
+    public InventoryStats getStats() {
+        Totals current = totals;
+        return new InventoryStats(
+            current.products.size(),
+            current.byGroup.size(),
+            reconciliations.sum(),
+            corrections.sum(),
+            skippedReconciliations.sum()
+        );
+    }
+
+    @Override
+    public void productCreated(Product product) {
+        apply(() -> totals.put(product.id(), ProductValue.of(product)));
+    }
+
+    @Override
+    public void productUpdated(Product product) {
+        apply(() -> totals.put(product.id(), ProductValue.of(product)));
+    }
+
+    @Override
+    public void productDeleted(int id) {
+        apply(() -> totals.remove(id));
+    }
+
+    @Override
+    public void stockChanged(int productId, int delta) {
+        apply(() -> totals.addStock(productId, delta));
+    }
+
+    @Override
+    public void productsImported() {
+        // If it keeps racing with other writes, the next scheduled reconciliation picks the import up
+        for (int attempt = 0; attempt < MAX_IMPORT_RELOAD_ATTEMPTS; attempt++) {
+            if (tryReconcile() != Reconciliation.SKIPPED) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void groupDeleted(int groupId) {
+        apply(() -> totals.removeGroup(groupId));
+    }
+
+    @Override
+    public void close() {
+        reconciler.shutdownNow();
+    }
+
+    private Reconciliation tryReconcile() {
+        reconciliations.increment();
+        // A stock write committed before the scan may still deliver its delta after the swap, counting it twice
+        long stockEpoch = productRepository.stockWriteEpoch();
+        if (stockEpoch < 0) {
+            skippedReconciliations.increment();
+            return Reconciliation.SKIPPED;
+        }
+        long eventsBefore = events.sum();
+        Totals loaded = load();
+
+        lock.writeLock().lock();
+        try {
+            // A write that landed during the scan may or may not be in it, so leave the decision to the next run
+            if (events.sum() != eventsBefore || productRepository.stockWriteEpoch() != stockEpoch) {
+                skippedReconciliations.increment();
+                return Reconciliation.SKIPPED;
+            }
+            if (loaded.products.equals(totals.products)) {
+                return Reconciliation.IN_SYNC;
+            }
+            totals = loaded;
+            version.updateAndGet(ResourceVersion::next);
+            return Reconciliation.CORRECTED;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void apply(Runnable event) {
+        lock.readLock().lock();
+        try {
+            event.run();
+            events.increment();
+            version.updateAndGet(ResourceVersion::next);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void install(Totals loaded) {
+        lock.writeLock().lock();
+        try {
+            totals = loaded;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Totals load() {
+        Totals loaded = new Totals();
+        try {
+            productRepository.streamAllProducts(product -> loaded.put(product.id(), ProductValue.of(product)));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return loaded;
+    }
+
+    private void reconcileQuietly() {
+        try {
+            if (reconcile()) {
+                System.err.println("Inventory value aggregate drifted from the database and was reloaded");
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Inventory value reconciliation failed: " + e.getMessage());
+        }
+    }
+
+    private enum Reconciliation {
+        IN_SYNC,
+        CORRECTED,
+        SKIPPED
+    }
+
+    private record ProductValue(int groupId, int quantity, long priceCents) {
+
+        static ProductValue of(Product product) {
+            long priceCents = product.price().setScale(PRICE_SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+            return new ProductValue(product.groupId(), product.quantity(), priceCents);
+        }
+
+        long value() {
+            return quantity * priceCents;
+        }
+    }
+
+    private static final class Totals {
+        private final Map<Integer, ProductValue> products = new ConcurrentHashMap<>();
+        private final Map<Integer, LongAdder> byGroup = new ConcurrentHashMap<>();
+        private final LongAdder total = new LongAdder();
+
+        // Each product changes inside its own compute, so the running sums only ever see whole deltas
+        void put(int id, ProductValue value) {
+            products.compute(id, (key, previous) -> {
+                if (previous != null) {
+                    add(previous.groupId(), -previous.value());
+                }
+                add(value.groupId(), value.value());
+                return value;
+            });
+        }
+
+        void remove(int id) {
+            products.computeIfPresent(id, (key, previous) -> {
+                add(previous.groupId(), -previous.value());
+                return null;
+            });
+        }
+
+        void addStock(int id, int delta) {
+            products.computeIfPresent(id, (key, previous) -> {
+                add(previous.groupId(), delta * previous.priceCents());
+                return new ProductValue(previous.groupId(), previous.quantity() + delta, previous.priceCents());
+            });
+        }
+
+        void removeGroup(int groupId) {
+            Map<Integer, ProductValue> snapshot = new HashMap<>(products);
+            snapshot.forEach((id, value) -> {
+                if (value.groupId() == groupId) {
+                    remove(id);
+                }
+            });
+            byGroup.remove(groupId);
+        }
+
+        private void add(int groupId, long value) {
+            byGroup.computeIfAbsent(groupId, key -> new LongAdder()).add(value);
+            total.add(value);
+        }
+    }
+}
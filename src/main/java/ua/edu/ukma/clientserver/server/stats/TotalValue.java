@@ -0,0 +1,6 @@
+package ua.edu.ukma.clientserver.server.stats;
+
+import java.math.BigDecimal;
+
+public record TotalValue(BigDecimal totalValue) {
+}
@@ -0,0 +1,43 @@
+package ua.edu.ukma.clientserver.util;
+
+import javax.crypto.Cipher;
+import java.security.GeneralSecurityException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// A shared pool rather than a ThreadLocal: with virtual threads every request runs on a fresh thread
+final class CipherPool {
+
+    private static final int MAX_POOLED_CIPHERS = Runtime.getRuntime().availableProcessors() * 4;
+
+    private final String transformation;
+    private final Queue<Cipher> ciphers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    CipherPool(String transformation) {
+        this.transformation = transformation;
+    }
+
+    Cipher borrow() {
+        Cipher cipher = ciphers.poll();
+        if (cipher != null) {
+            pooled.decrementAndGet();
+            return cipher;
+        }
+        try {
+            return Cipher.getInstance(transformation);
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Error creating cipher", e);
+        }
+    }
+
+    // Ciphers are always re-initialised on borrow, so one left mid-operation is safe to return
+    void release(Cipher cipher) {
+        if (pooled.incrementAndGet() <= MAX_POOLED_CIPHERS) {
+            ciphers.offer(cipher);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package ua.edu.ukma.clientserver.util;
+
+import java.util.Locale;
+
+public enum EncryptionAlgorithm {
+    // Unauthenticated; kept so payloads from clients that predate the envelope format still decrypt
+    AES_CBC("AES/CBC/PKCS5Padding"),
+    AES_GCM("AES/GCM/NoPadding");
+
+    final CipherPool ciphers;
+
+    EncryptionAlgorithm(String transformation) {
+        this.ciphers = new CipherPool(transformation);
+    }
+
+    public static EncryptionAlgorithm fromSystemProperties() {
+        return valueOf(System.getProperty("encryption.algorithm", AES_GCM.name()).toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,13 @@
+package ua.edu.ukma.clientserver.util;
+
+import javax.crypto.SecretKey;
+
+// id travels in every envelope header, so it has to fit in a byte
+public record EncryptionKey(int id, SecretKey key) {
+
+    public EncryptionKey {
+        if (id < 0 || id > 255) {
+            throw new IllegalArgumentException("Key id must be between 0 and 255");
+        }
+    }
+}
@@ -1,60 +1,226 @@
 package ua.edu.ukma.clientserver.util;
 
 import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.CipherOutputStream;
+import javax.crypto.SecretKey;
 import javax.crypto.spec.IvParameterSpec;
-import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.SecureRandom;
 import java.util.Base64;
 
+// Encrypts with AES-GCM envelopes (see GcmEnvelope) and still reads the older bare IV + AES-CBC payloads
 public class EncryptionUtil {
 
-    private static final String ALGORITHM = "AES/CBC/PKCS5Padding";
-    // This is a hardcoded key. In a real application, this should be managed securely.
-    private static final byte[] KEY = "MySuperSecretKeyForEncryption123".getBytes(StandardCharsets.UTF_8);
     private static final int IV_LENGTH_BYTES = 16;
+    private static final int BLOCK_SIZE_BYTES = 16;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static volatile Settings settings = new Settings(KeyRing.development(), EncryptionAlgorithm.AES_GCM, true);
+
+    // Switching to AES_CBC makes the server answer clients that cannot read envelopes yet
+    public static void configure(KeyProvider keys, EncryptionAlgorithm algorithm, boolean acceptLegacy) {
+        if (algorithm == EncryptionAlgorithm.AES_CBC && !acceptLegacy) {
+            throw new IllegalArgumentException("Encrypting with AES-CBC requires accepting legacy payloads");
+        }
+        settings = new Settings(keys, algorithm, acceptLegacy);
+    }
+
+    public static void configureFromSystemProperties() {
+        configure(KeyRing.fromSystemProperties(), EncryptionAlgorithm.fromSystemProperties(),
+            Boolean.parseBoolean(System.getProperty("encryption.acceptLegacy", "true")));
+    }
 
     public static String encrypt(String plainText) {
-        try {
-            SecretKeySpec secretKey = new SecretKeySpec(KEY, "AES");
-            Cipher cipher = Cipher.getInstance(ALGORITHM);
+        return encrypt(plainText.getBytes(StandardCharsets.UTF_8));
+    }
 
-            byte[] iv = new byte[IV_LENGTH_BYTES];
-            new SecureRandom().nextBytes(iv);
-            IvParameterSpec ivParameterSpec = new IvParameterSpec(iv);
+    public static String encrypt(byte[] plainBytes) {
+        return Base64.getEncoder().encodeToString(encryptRaw(plainBytes));
+    }
 
-            cipher.init(Cipher.ENCRYPT_MODE, secretKey, ivParameterSpec);
-            byte[] cipherText = cipher.doFinal(plainText.getBytes(StandardCharsets.UTF_8));
+    // The encrypted body as sent in the given format: ASCII Base64 text or the raw bytes
+    public static byte[] encrypt(byte[] plainBytes, WireFormat format) {
+        byte[] encrypted = encryptRaw(plainBytes);
+        return format == WireFormat.BINARY ? encrypted : Base64.getEncoder().encode(encrypted);
+    }
 
-            byte[] encryptedData = new byte[iv.length + cipherText.length];
-            System.arraycopy(iv, 0, encryptedData, 0, iv.length);
-            System.arraycopy(cipherText, 0, encryptedData, iv.length, cipherText.length);
+    private static byte[] encryptRaw(byte[] plainBytes) {
+        Settings current = settings;
+        if (current.algorithm() == EncryptionAlgorithm.AES_GCM) {
+            return GcmEnvelope.encrypt(plainBytes, current.keys().current());
+        }
+        Cipher cipher = EncryptionAlgorithm.AES_CBC.ciphers.borrow();
+        try {
+            byte[] iv = new byte[IV_LENGTH_BYTES];
+            RANDOM.nextBytes(iv);
+            cipher.init(Cipher.ENCRYPT_MODE, current.keys().legacyKey(), new IvParameterSpec(iv));
 
-            return Base64.getEncoder().encodeToString(encryptedData);
+            byte[] encryptedData = new byte[IV_LENGTH_BYTES + cipher.getOutputSize(plainBytes.length)];
+            System.arraycopy(iv, 0, encryptedData, 0, IV_LENGTH_BYTES);
+            cipher.doFinal(plainBytes, 0, plainBytes.length, encryptedData, IV_LENGTH_BYTES);
+            return encryptedData;
         } catch (Exception e) {
             throw new RuntimeException("Error encrypting data", e);
+        } finally {
+            EncryptionAlgorithm.AES_CBC.ciphers.release(cipher);
         }
     }
 
     public static String decrypt(String encryptedText) {
+        byte[] encryptedData = Base64.getDecoder().decode(encryptedText);
+        Settings current = settings;
+        EncryptionKey key = GcmEnvelope.keyOf(encryptedData, current.keys());
+        if (key != null) {
+            try {
+                return new String(GcmEnvelope.decrypt(encryptedData, key), StandardCharsets.UTF_8);
+            } catch (GeneralSecurityException e) {
+                // A legacy IV can start like an envelope header by chance
+                if (!current.acceptLegacy()) {
+                    throw new RuntimeException("Error decrypting data", e);
+                }
+            }
+        }
+        if (!current.acceptLegacy()) {
+            throw new RuntimeException("Error decrypting data: not an encryption envelope");
+        }
+
+        Cipher cipher = EncryptionAlgorithm.AES_CBC.ciphers.borrow();
         try {
-            byte[] encryptedData = Base64.getDecoder().decode(encryptedText);
+            cipher.init(Cipher.DECRYPT_MODE, current.keys().legacyKey(), new IvParameterSpec(encryptedData, 0, IV_LENGTH_BYTES));
+            byte[] decryptedText = cipher.doFinal(encryptedData, IV_LENGTH_BYTES, encryptedData.length - IV_LENGTH_BYTES);
+            return new String(decryptedText, StandardCharsets.UTF_8);
+        } catch (Exception e) {
+            throw new RuntimeException("Error decrypting data", e);
+        } finally {
+            EncryptionAlgorithm.AES_CBC.ciphers.release(cipher);
+        }
+    }
+
+    // Length of encrypt() output for a plaintext of the given size, so responses can be sent with a fixed length
+    public static long encryptedLength(long plainLength) {
+        return encryptedLength(plainLength, WireFormat.BASE64);
+    }
 
+    public static long encryptedLength(long plainLength, WireFormat format) {
+        long cipherLength = settings.algorithm() == EncryptionAlgorithm.AES_GCM
+            ? GcmEnvelope.encryptedLength(plainLength)
+            : IV_LENGTH_BYTES + (plainLength / BLOCK_SIZE_BYTES + 1) * BLOCK_SIZE_BYTES;
+        return format == WireFormat.BINARY ? cipherLength : (cipherLength + 2) / 3 * 4;
+    }
+
+    public static OutputStream encryptingStream(OutputStream out) {
+        return encryptingStream(out, WireFormat.BASE64);
+    }
+
+    public static OutputStream encryptingStream(OutputStream out, WireFormat format) {
+        Settings current = settings;
+        OutputStream encoded = format == WireFormat.BINARY ? out : Base64.getEncoder().wrap(out);
+        if (current.algorithm() == EncryptionAlgorithm.AES_GCM) {
+            try {
+                return new GcmEnvelope.EncryptingStream(encoded, current.keys().current());
+            } catch (IOException e) {
+                throw new RuntimeException("Error encrypting data", e);
+            }
+        }
+
+        Cipher cipher = EncryptionAlgorithm.AES_CBC.ciphers.borrow();
+        try {
             byte[] iv = new byte[IV_LENGTH_BYTES];
-            System.arraycopy(encryptedData, 0, iv, 0, iv.length);
-            IvParameterSpec ivParameterSpec = new IvParameterSpec(iv);
+            RANDOM.nextBytes(iv);
+            cipher.init(Cipher.ENCRYPT_MODE, current.keys().legacyKey(), new IvParameterSpec(iv));
 
-            byte[] cipherText = new byte[encryptedData.length - iv.length];
-            System.arraycopy(encryptedData, iv.length, cipherText, 0, cipherText.length);
+            encoded.write(iv);
+            return new CipherOutputStream(encoded, cipher) {
+                private boolean closed;
 
-            SecretKeySpec secretKey = new SecretKeySpec(KEY, "AES");
-            Cipher cipher = Cipher.getInstance(ALGORITHM);
-            cipher.init(Cipher.DECRYPT_MODE, secretKey, ivParameterSpec);
+                @Override
+                public void close() throws IOException {
+                    if (closed) {
+                        return;
+                    }
+                    closed = true;
+                    try {
+                        super.close();
+                    } finally {
+                        EncryptionAlgorithm.AES_CBC.ciphers.release(cipher);
+                    }
+                }
+            };
+        } catch (Exception e) {
+            EncryptionAlgorithm.AES_CBC.ciphers.release(cipher);
+            throw new RuntimeException("Error encrypting data", e);
+        }
+    }
 
-            byte[] decryptedText = cipher.doFinal(cipherText);
-            return new String(decryptedText, StandardCharsets.UTF_8);
+    public static InputStream decryptingStream(InputStream in) {
+        return decryptingStream(in, WireFormat.BASE64);
+    }
+
+    public static InputStream decryptingStream(InputStream in, WireFormat format) {
+        Settings current = settings;
+        try {
+            InputStream encoded = format == WireFormat.BINARY ? in : Base64.getDecoder().wrap(in);
+            byte[] header = encoded.readNBytes(GcmEnvelope.HEADER_LENGTH);
+            byte[] consumed = header;
+            EncryptionKey key = GcmEnvelope.keyOf(header, current.keys());
+            if (key != null) {
+                GcmEnvelope.DecryptingStream envelope = new GcmEnvelope.DecryptingStream(encoded, header, key);
+                if (envelope.open()) {
+                    return envelope;
+                }
+                if (!current.acceptLegacy()) {
+                    throw new IllegalArgumentException("Encrypted data failed authentication");
+                }
+                byte[] firstSegment = envelope.rawFirstSegment();
+                consumed = new byte[header.length + firstSegment.length];
+                System.arraycopy(header, 0, consumed, 0, header.length);
+                System.arraycopy(firstSegment, 0, consumed, header.length, firstSegment.length);
+            } else if (!current.acceptLegacy()) {
+                throw new IllegalArgumentException("Encrypted data is not an encryption envelope");
+            }
+            return legacyDecryptingStream(new SequenceInputStream(new ByteArrayInputStream(consumed), encoded), current.keys().legacyKey());
         } catch (Exception e) {
             throw new RuntimeException("Error decrypting data", e);
         }
     }
-} 
\ No newline at end of file
+
+    private static InputStream legacyDecryptingStream(InputStream encoded, SecretKey key) throws IOException, GeneralSecurityException {
+        byte[] iv = encoded.readNBytes(IV_LENGTH_BYTES);
+        if (iv.length != IV_LENGTH_BYTES) {
+            throw new IllegalArgumentException("Encrypted data is too short");
+        }
+        Cipher cipher = EncryptionAlgorithm.AES_CBC.ciphers.borrow();
+        try {
+            cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(iv));
+        } catch (GeneralSecurityException e) {
+            EncryptionAlgorithm.AES_CBC.ciphers.release(cipher);
+            throw e;
+        }
+        return new CipherInputStream(encoded, cipher) {
+            private boolean closed;
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                try {
+                    super.close();
+                } finally {
+                    EncryptionAlgorithm.AES_CBC.ciphers.release(cipher);
+                }
+            }
+        };
+    }
+
+    private record Settings(KeyProvider keys, EncryptionAlgorithm algorithm, boolean acceptLegacy) {
+    }
+}
@@ -0,0 +1,365 @@
+package ua.edu.ukma.clientserver.util;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+// Version byte, key id byte and a random salt, followed by AES-GCM segments each ending in its tag.
+// Splitting into segments keeps both directions streamable: the JDK's GCM holds back all plaintext until the
+// single tag is verified. The segments are sealed under a key of their own, HKDF-SHA256 of the ring key with
+// the salt and the header, so no two envelopes share a key and the ring key is never used with GCM directly.
+// Each nonce is then just the segment index + last-segment flag, so segments cannot be reordered, and a
+// truncated body fails because its final segment lacks the flag.
+final class GcmEnvelope {
+
+    // Version 1 sealed every envelope under the ring key itself with a 7-byte random nonce prefix; it is not read
+    static final byte VERSION = 2;
+    static final int SALT_LENGTH = 32;
+    static final int HEADER_LENGTH = 2 + SALT_LENGTH;
+    static final int TAG_LENGTH = 16;
+    static final int SEGMENT_SIZE = 64 * 1024;
+
+    private static final int NONCE_LENGTH = 12;
+    private static final int SEGMENT_KEY_LENGTH = 32;
+    private static final String HMAC = "HmacSHA256";
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private GcmEnvelope() {
+    }
+
+    static long encryptedLength(long plainLength) {
+        long segments = Math.max(1, (plainLength + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+        return HEADER_LENGTH + plainLength + segments * TAG_LENGTH;
+    }
+
+    // The key a payload starting with this header claims to use, or null if it is not an envelope
+    static EncryptionKey keyOf(byte[] header, KeyProvider keys) {
+        if (header.length < HEADER_LENGTH || header[0] != VERSION) {
+            return null;
+        }
+        return keys.find(header[1] & 0xFF);
+    }
+
+    static byte[] newHeader(EncryptionKey key) {
+        byte[] header = new byte[HEADER_LENGTH];
+        byte[] salt = new byte[SALT_LENGTH];
+        RANDOM.nextBytes(salt);
+        header[0] = VERSION;
+        header[1] = (byte) key.id();
+        System.arraycopy(salt, 0, header, 2, SALT_LENGTH);
+        return header;
+    }
+
+    static byte[] encrypt(byte[] plain, EncryptionKey key) {
+        return encrypt(plain, key, newHeader(key));
+    }
+
+    static byte[] encrypt(byte[] plain, EncryptionKey key, byte[] header) {
+        byte[] encrypted = new byte[Math.toIntExact(encryptedLength(plain.length))];
+        System.arraycopy(header, 0, encrypted, 0, HEADER_LENGTH);
+        Cipher cipher = EncryptionAlgorithm.AES_GCM.ciphers.borrow();
+        try {
+            SecretKey segmentKey = segmentKey(key, header);
+            int in = 0;
+            int out = HEADER_LENGTH;
+            int segment = 0;
+            boolean last;
+            do {
+                int length = Math.min(SEGMENT_SIZE, plain.length - in);
+                last = in + length == plain.length;
+                init(cipher, Cipher.ENCRYPT_MODE, segmentKey, header, segment++, last);
+                out += cipher.doFinal(plain, in, length, encrypted, out);
+                in += length;
+            } while (!last);
+            return encrypted;
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Error encrypting data", e);
+        } finally {
+            EncryptionAlgorithm.AES_GCM.ciphers.release(cipher);
+        }
+    }
+
+    static byte[] decrypt(byte[] encrypted, EncryptionKey key) throws GeneralSecurityException {
+        if (encrypted.length < HEADER_LENGTH + TAG_LENGTH) {
+            throw new AEADBadTagException("Encrypted data is too short");
+        }
+        long segments = Math.max(1, (encrypted.length - HEADER_LENGTH + SEGMENT_SIZE + TAG_LENGTH - 1) / (SEGMENT_SIZE + TAG_LENGTH));
+        byte[] plain = new byte[Math.toIntExact(encrypted.length - HEADER_LENGTH - segments * TAG_LENGTH)];
+        Cipher cipher = EncryptionAlgorithm.AES_GCM.ciphers.borrow();
+        try {
+            SecretKey segmentKey = segmentKey(key, encrypted);
+            int in = HEADER_LENGTH;
+            int out = 0;
+            for (int segment = 0; segment < segments; segment++) {
+                int length = Math.min(SEGMENT_SIZE + TAG_LENGTH, encrypted.length - in);
+                init(cipher, Cipher.DECRYPT_MODE, segmentKey, encrypted, segment, segment == segments - 1);
+                out += cipher.doFinal(encrypted, in, length, plain, out);
+                in += length;
+            }
+            return plain;
+        } finally {
+            EncryptionAlgorithm.AES_GCM.ciphers.release(cipher);
+        }
+    }
+
+    // The AES-256 key the segments of the envelope starting with this header are sealed under
+    static SecretKey segmentKey(EncryptionKey key, byte[] header) throws GeneralSecurityException {
+        byte[] salt = Arrays.copyOfRange(header, 2, HEADER_LENGTH);
+        byte[] info = Arrays.copyOf(header, HEADER_LENGTH);
+        return new SecretKeySpec(hkdf(key.key().getEncoded(), salt, info, SEGMENT_KEY_LENGTH), "AES");
+    }
+
+    // RFC 5869 extract-then-expand; salt must not be empty
+    static byte[] hkdf(byte[] inputKey, byte[] salt, byte[] info, int length) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance(HMAC);
+        mac.init(new SecretKeySpec(salt, HMAC));
+        mac.init(new SecretKeySpec(mac.doFinal(inputKey), HMAC));
+        byte[] output = new byte[length];
+        byte[] block = new byte[0];
+        for (int offset = 0, counter = 1; offset < length; counter++) {
+            mac.update(block);
+            mac.update(info);
+            mac.update((byte) counter);
+            block = mac.doFinal();
+            int chunk = Math.min(block.length, length - offset);
+            System.arraycopy(block, 0, output, offset, chunk);
+            offset += chunk;
+        }
+        return output;
+    }
+
+    // Unique within an envelope, which is all a key used for one envelope needs
+    static byte[] nonce(int segment, boolean last) {
+        byte[] nonce = new byte[NONCE_LENGTH];
+        nonce[7] = (byte) (segment >>> 24);
+        nonce[8] = (byte) (segment >>> 16);
+        nonce[9] = (byte) (segment >>> 8);
+        nonce[10] = (byte) segment;
+        nonce[11] = (byte) (last ? 1 : 0);
+        return nonce;
+    }
+
+    private static void init(Cipher cipher, int mode, SecretKey segmentKey, byte[] header, int segment, boolean last)
+            throws GeneralSecurityException {
+        cipher.init(mode, segmentKey, new GCMParameterSpec(TAG_LENGTH * 8, nonce(segment, last)));
+        cipher.updateAAD(header, 0, HEADER_LENGTH);
+    }
+
+    static final class EncryptingStream extends OutputStream {
+
+        private static final int INITIAL_BUFFER_SIZE = 4 * 1024;
+
+        private final OutputStream out;
+        private final SecretKey segmentKey;
+        private final byte[] header;
+        private final Cipher cipher = EncryptionAlgorithm.AES_GCM.ciphers.borrow();
+        // Grown up to SEGMENT_SIZE, so short responses do not pay for a full segment
+        private byte[] plain = new byte[INITIAL_BUFFER_SIZE];
+        private byte[] sealed = new byte[INITIAL_BUFFER_SIZE + TAG_LENGTH];
+        private int buffered;
+        private int segment;
+        private boolean closed;
+
+        EncryptingStream(OutputStream out, EncryptionKey key) throws IOException {
+            this.out = out;
+            this.header = newHeader(key);
+            try {
+                this.segmentKey = segmentKey(key, header);
+                out.write(header);
+            } catch (GeneralSecurityException e) {
+                EncryptionAlgorithm.AES_GCM.ciphers.release(cipher);
+                throw new IOException("Error encrypting data", e);
+            } catch (IOException e) {
+                EncryptionAlgorithm.AES_GCM.ciphers.release(cipher);
+                throw e;
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                // A full segment is only sealed once more data arrives, since the last one is sealed differently
+                if (buffered == SEGMENT_SIZE) {
+                    seal(false);
+                }
+                if (buffered == plain.length) {
+                    grow(buffered + len);
+                }
+                int chunk = Math.min(len, plain.length - buffered);
+                System.arraycopy(b, off, plain, buffered, chunk);
+                buffered += chunk;
+                off += chunk;
+                len -= chunk;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                seal(true);
+                out.close();
+            } finally {
+                EncryptionAlgorithm.AES_GCM.ciphers.release(cipher);
+            }
+        }
+
+        private void grow(int needed) {
+            int size = Math.min(SEGMENT_SIZE, Math.max(plain.length * 2, needed));
+            plain = Arrays.copyOf(plain, size);
+            sealed = new byte[size + TAG_LENGTH];
+        }
+
+        private void seal(boolean last) throws IOException {
+            try {
+                init(cipher, Cipher.ENCRYPT_MODE, segmentKey, header, segment++, last);
+                int length = cipher.doFinal(plain, 0, buffered, sealed, 0);
+                out.write(sealed, 0, length);
+                buffered = 0;
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Error encrypting data", e);
+            }
+        }
+    }
+
+    static final class DecryptingStream extends InputStream {
+
+        private static final int INITIAL_BUFFER_SIZE = 4 * 1024;
+        // One byte past a full segment: a segment is the last one exactly when nothing follows it
+        private static final int MAX_READ = SEGMENT_SIZE + TAG_LENGTH + 1;
+
+        private final InputStream in;
+        private final EncryptionKey key;
+        private final byte[] header;
+        private final Cipher cipher = EncryptionAlgorithm.AES_GCM.ciphers.borrow();
+        // Derived with the first segment
+        private SecretKey segmentKey;
+        private byte[] sealed = new byte[INITIAL_BUFFER_SIZE];
+        private byte[] plain = new byte[0];
+        private int sealedLength;
+        private boolean carried;
+        private int position;
+        private int limit;
+        private int segment;
+        private boolean finished;
+        private boolean closed;
+
+        DecryptingStream(InputStream in, byte[] header, EncryptionKey key) {
+            this.in = in;
+            this.header = header;
+            this.key = key;
+        }
+
+        // Opens the first segment. On false the stream is unusable and only rawFirstSegment() is left,
+        // so a payload that merely looked like an envelope can be handed to another decoder.
+        boolean open() throws IOException {
+            try {
+                nextSegment();
+                return true;
+            } catch (GeneralSecurityException e) {
+                closed = true;
+                EncryptionAlgorithm.AES_GCM.ciphers.release(cipher);
+                return false;
+            }
+        }
+
+        byte[] rawFirstSegment() {
+            return Arrays.copyOf(sealed, sealedLength + (carried ? 1 : 0));
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (position == limit) {
+                if (finished) {
+                    return -1;
+                }
+                try {
+                    nextSegment();
+                } catch (GeneralSecurityException e) {
+                    throw new IOException("Error decrypting data", e);
+                }
+            }
+            int chunk = Math.min(len, limit - position);
+            System.arraycopy(plain, position, b, off, chunk);
+            position += chunk;
+            return chunk;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                in.close();
+            } finally {
+                EncryptionAlgorithm.AES_GCM.ciphers.release(cipher);
+            }
+        }
+
+        private void nextSegment() throws IOException, GeneralSecurityException {
+            int read = 0;
+            if (carried) {
+                sealed[0] = sealed[sealedLength];
+                read = 1;
+            }
+            while (read < MAX_READ) {
+                if (read == sealed.length) {
+                    sealed = Arrays.copyOf(sealed, Math.min(MAX_READ, sealed.length * 2));
+                }
+                int n = in.read(sealed, read, sealed.length - read);
+                if (n < 0) {
+                    break;
+                }
+                read += n;
+            }
+            carried = read == MAX_READ;
+            sealedLength = carried ? read - 1 : read;
+            if (sealedLength < TAG_LENGTH) {
+                throw new AEADBadTagException("Encrypted data is truncated");
+            }
+            if (plain.length < sealedLength - TAG_LENGTH) {
+                plain = new byte[sealedLength - TAG_LENGTH];
+            }
+            if (segmentKey == null) {
+                segmentKey = segmentKey(key, header);
+            }
+            init(cipher, Cipher.DECRYPT_MODE, segmentKey, header, segment++, !carried);
+            limit = cipher.doFinal(sealed, 0, sealedLength, plain, 0);
+            position = 0;
+            finished = !carried;
+        }
+    }
+}
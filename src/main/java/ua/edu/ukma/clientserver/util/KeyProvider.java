@@ -0,0 +1,15 @@
+package ua.edu.ukma.clientserver.util;
+
+import javax.crypto.SecretKey;
+
+// Where EncryptionUtil gets its keys from; the current key may change between any two calls
+public interface KeyProvider {
+
+    EncryptionKey current();
+
+    // null for ids this provider never had or has already retired
+    EncryptionKey find(int id);
+
+    // Legacy CBC payloads carry no key id, so they are all decrypted with this one
+    SecretKey legacyKey();
+}
@@ -0,0 +1,98 @@
+package ua.edu.ukma.clientserver.util;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+// Keeps the current key plus the few before it, so payloads encrypted just before a rotation still decrypt
+public class KeyRing implements KeyProvider {
+
+    // The key the bundled frontend shares with the server; only for development setups
+    private static final SecretKey DEVELOPMENT_KEY = aesKey("MySuperSecretKeyForEncryption123".getBytes(StandardCharsets.UTF_8));
+
+    private final SecretKey legacyKey;
+    private final int retainedKeys;
+    // Oldest first, the last one is current; replaced as a whole on rotation
+    private volatile List<EncryptionKey> keys;
+
+    public KeyRing(List<EncryptionKey> keys, SecretKey legacyKey, int retainedKeys) {
+        if (keys.isEmpty()) {
+            throw new IllegalArgumentException("A key ring needs at least one key");
+        }
+        if (retainedKeys < 1) {
+            throw new IllegalArgumentException("A key ring must retain at least one key");
+        }
+        this.keys = List.copyOf(keys.subList(Math.max(0, keys.size() - retainedKeys), keys.size()));
+        this.legacyKey = legacyKey;
+        this.retainedKeys = retainedKeys;
+    }
+
+    public static KeyRing development() {
+        return new KeyRing(List.of(new EncryptionKey(0, DEVELOPMENT_KEY)), DEVELOPMENT_KEY, 4);
+    }
+
+    // encryption.keys lists "id:base64Key" pairs oldest first; the development key is used if it is not set
+    public static KeyRing fromSystemProperties() {
+        String configured = System.getProperty("encryption.keys");
+        int retainedKeys = Integer.getInteger("encryption.retainedKeys", 4);
+        if (configured == null || configured.isBlank()) {
+            return new KeyRing(List.of(new EncryptionKey(0, DEVELOPMENT_KEY)), DEVELOPMENT_KEY, retainedKeys);
+        }
+        List<EncryptionKey> keys = new ArrayList<>();
+        for (String entry : configured.split(",")) {
+            int separator = entry.indexOf(':');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Keys must be given as id:base64Key");
+            }
+            keys.add(new EncryptionKey(Integer.parseInt(entry.substring(0, separator).strip()),
+                aesKey(Base64.getDecoder().decode(entry.substring(separator + 1).strip()))));
+        }
+        String legacy = System.getProperty("encryption.legacyKey");
+        SecretKey legacyKey = legacy == null ? DEVELOPMENT_KEY : aesKey(Base64.getDecoder().decode(legacy));
+        return new KeyRing(keys, legacyKey, retainedKeys);
+    }
+
+    public static SecretKey aesKey(byte[] material) {
+        if (material.length != 16 && material.length != 24 && material.length != 32) {
+            throw new IllegalArgumentException("AES keys must be 16, 24 or 32 bytes long");
+        }
+        return new SecretKeySpec(material, "AES");
+    }
+
+    // Makes key current under the next id, retiring the oldest key beyond the retention limit
+    public synchronized EncryptionKey rotate(SecretKey key) {
+        List<EncryptionKey> rotated = new ArrayList<>(keys);
+        EncryptionKey next = new EncryptionKey((current().id() + 1) & 0xFF, key);
+        rotated.removeIf(existing -> existing.id() == next.id());
+        rotated.add(next);
+        while (rotated.size() > retainedKeys) {
+            rotated.removeFirst();
+        }
+        keys = List.copyOf(rotated);
+        return next;
+    }
+
+    @Override
+    public EncryptionKey current() {
+        List<EncryptionKey> snapshot = keys;
+        return snapshot.getLast();
+    }
+
+    @Override
+    public EncryptionKey find(int id) {
+        for (EncryptionKey key : keys) {
+            if (key.id() == id) {
+                return key;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public SecretKey legacyKey() {
+        return legacyKey;
+    }
+}
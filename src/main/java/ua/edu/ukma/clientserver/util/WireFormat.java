@@ -0,0 +1,43 @@
+package ua.edu.ukma.clientserver.util;
+
+import java.util.Locale;
+
+// How an encrypted body travels: Base64 text for existing clients, or the raw encrypted bytes
+public enum WireFormat {
+    BASE64("text/plain; charset=UTF-8"),
+    BINARY("application/octet-stream");
+
+    private static final String BINARY_MEDIA_TYPE = "application/octet-stream";
+
+    private final String contentType;
+
+    WireFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public String contentType() {
+        return contentType;
+    }
+
+    // Reads a Content-Type or Accept header; anything but an accepted application/octet-stream means Base64
+    public static WireFormat fromMediaType(String header) {
+        if (header == null) {
+            return BASE64;
+        }
+        for (String range : header.split(",")) {
+            String[] parts = range.split(";");
+            if (!parts[0].strip().toLowerCase(Locale.ROOT).equals(BINARY_MEDIA_TYPE)) {
+                continue;
+            }
+            boolean refused = false;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].strip();
+                refused |= parameter.startsWith("q=") && parameter.substring(2).matches("0(\\.0*)?");
+            }
+            if (!refused) {
+                return BINARY;
+            }
+        }
+        return BASE64;
+    }
+}
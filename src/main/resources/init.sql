@@ -16,4 +16,27 @@ CREATE TABLE IF NOT EXISTS products (
         FOREIGN KEY(group_id)
         REFERENCES product_groups(id)
         ON DELETE CASCADE
-); 
\ No newline at end of file
+); 
+
+-- Keyset pagination seeks on (sort column, id)
+CREATE INDEX IF NOT EXISTS idx_products_group_id ON products(group_id, id);
+CREATE INDEX IF NOT EXISTS idx_products_price ON products(price, id);
+CREATE INDEX IF NOT EXISTS idx_products_quantity ON products(quantity, id);
+
+-- Last stock journal entry applied to products.quantity, written in the same transaction (write-behind mode)
+CREATE TABLE IF NOT EXISTS stock_journal_checkpoint (
+    id INTEGER PRIMARY KEY,
+    applied_seq BIGINT NOT NULL
+);
+
+-- Open stock holds, written behind the in-memory reservations and reloaded on startup
+CREATE TABLE IF NOT EXISTS stock_reservations (
+    id VARCHAR(36) PRIMARY KEY,
+    product_id INTEGER NOT NULL,
+    amount INTEGER NOT NULL,
+    expires_at BIGINT NOT NULL,
+    CONSTRAINT fk_reservation_product
+        FOREIGN KEY(product_id)
+        REFERENCES products(id)
+        ON DELETE CASCADE
+);
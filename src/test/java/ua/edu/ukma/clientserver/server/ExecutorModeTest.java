@@ -0,0 +1,45 @@
+package ua.edu.ukma.clientserver.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExecutorModeTest {
+
+    @Test
+    void testEveryModeCreatesWorkingExecutor() throws Exception {
+        for (ExecutorMode mode : ExecutorMode.values()) {
+            ExecutorService executor = mode.create(2);
+            try {
+                Future<Thread> ran = executor.submit(Thread::currentThread);
+                Thread thread = ran.get(5, TimeUnit.SECONDS);
+                assertNotSame(Thread.currentThread(), thread, mode.name());
+                assertEquals(mode == ExecutorMode.VIRTUAL, thread.isVirtual(), mode.name());
+            } finally {
+                executor.shutdown();
+                assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS), mode.name());
+            }
+        }
+    }
+
+    @Test
+    void testModeIsReadFromSystemPropertyCaseInsensitively() {
+        String previous = System.getProperty("server.executor");
+        try {
+            System.clearProperty("server.executor");
+            assertEquals(ExecutorMode.VIRTUAL, ExecutorMode.fromSystemProperties());
+            System.setProperty("server.executor", "fixed");
+            assertEquals(ExecutorMode.FIXED, ExecutorMode.fromSystemProperties());
+        } finally {
+            if (previous == null) {
+                System.clearProperty("server.executor");
+            } else {
+                System.setProperty("server.executor", previous);
+            }
+        }
+    }
+}
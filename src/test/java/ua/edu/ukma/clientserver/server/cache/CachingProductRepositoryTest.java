@@ -0,0 +1,142 @@
+package ua.edu.ukma.clientserver.server.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ua.edu.ukma.clientserver.server.db.BaseRepositoryTest;
+import ua.edu.ukma.clientserver.server.db.CatalogListener;
+import ua.edu.ukma.clientserver.server.models.Product;
+import ua.edu.ukma.clientserver.server.models.ProductGroup;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingProductRepositoryTest extends BaseRepositoryTest {
+
+    private CatalogCache cache;
+    private CachingProductRepository productRepository;
+    private CachingProductGroupRepository productGroupRepository;
+    private int groupId;
+
+    @BeforeEach
+    void setupRepos() {
+        cache = new CatalogCache(CacheConfig.defaults());
+        productRepository = new CachingProductRepository(dbConnection, cache);
+        productGroupRepository = new CachingProductGroupRepository(dbConnection, cache);
+
+        ProductGroup group = productGroupRepository.createProductGroup(new ProductGroup(0, "Test Group", "")).value();
+        this.groupId = group.id();
+    }
+
+    @Test
+    void testReadsAreServedFromCache() throws SQLException {
+        Product product = productRepository.createProduct(new Product(0, groupId, "Cached", "Desc", "Manu", 10, BigDecimal.ONE)).value();
+        productRepository.getAllProducts();
+
+        // Bypass the repository so only a cache hit can still see the product
+        try (Statement st = connection.createStatement()) {
+            st.executeUpdate("UPDATE products SET quantity = 99");
+        }
+
+        assertEquals(10, productRepository.getProductById(product.id()).orElseThrow().quantity());
+        assertEquals(10, productRepository.getProductByName("Cached").orElseThrow().quantity());
+        assertEquals(10, productRepository.getAllProducts().get(0).quantity());
+        assertTrue(cache.getStats().get("productsById").hits() > 0);
+    }
+
+    @Test
+    void testWritesInvalidateListsAndIndexes() {
+        Product product = productRepository.createProduct(new Product(0, groupId, "Old Name", "Desc", "Manu", 10, BigDecimal.ONE)).value();
+        assertEquals(1, productRepository.getProductsByGroupId(groupId).size());
+
+        productRepository.updateProduct(new Product(product.id(), groupId, "New Name", "Desc", "Manu", 5, BigDecimal.ONE));
+        productRepository.createProduct(new Product(0, groupId, "Second", "Desc", "Manu", 1, BigDecimal.ONE));
+
+        assertEquals(5, productRepository.getProductById(product.id()).orElseThrow().quantity());
+        assertFalse(productRepository.getProductByName("Old Name").isPresent());
+        assertEquals(2, productRepository.getProductsByGroupId(groupId).size());
+
+        productRepository.deleteProduct(product.id());
+        assertFalse(productRepository.getProductById(product.id()).isPresent());
+        assertEquals(1, productRepository.getAllProducts().size());
+    }
+
+    @Test
+    void testGroupDeleteEvictsItsProducts() {
+        Product product = productRepository.createProduct(new Product(0, groupId, "Doomed", "Desc", "Manu", 10, BigDecimal.ONE)).value();
+        productRepository.getProductById(product.id());
+
+        productGroupRepository.deleteProductGroup(groupId);
+
+        assertFalse(productGroupRepository.getProductGroupById(groupId).isPresent());
+        assertFalse(productRepository.getProductById(product.id()).isPresent());
+        assertTrue(productRepository.getAllProducts().isEmpty());
+    }
+
+    @Test
+    void testReadsRightAfterTheVersionBumpSeeTheWrite() {
+        Product product = productRepository.createProduct(new Product(0, groupId, "Versioned", "Desc", "Manu", 10, BigDecimal.ONE)).value();
+        productRepository.getAllProducts();
+        productRepository.getProductById(product.id());
+
+        CatalogVersions versions = new CatalogVersions();
+        productRepository.addListener(versions);
+        // A conditional GET that gets in between the version bump and the writer returning
+        List<String> seen = new ArrayList<>();
+        productRepository.addListener(new CatalogListener() {
+            @Override
+            public void productUpdated(Product updated) {
+                seen.add(versions.products().version() + ":" + productRepository.getAllProducts().get(0).quantity());
+            }
+
+            @Override
+            public void stockChanged(int productId, int delta) {
+                seen.add(versions.products().version() + ":" + productRepository.getProductById(productId).orElseThrow().quantity());
+            }
+        });
+
+        productRepository.updateProduct(new Product(product.id(), groupId, "Versioned", "Desc", "Manu", 5, BigDecimal.ONE));
+        productRepository.addStock(product.id(), 3);
+
+        assertEquals(List.of("1:5", "2:8"), seen);
+    }
+
+    @Test
+    void testBoundedCacheEvictsAndExpires() throws InterruptedException {
+        BoundedCache<Integer, String> lru = new BoundedCache<>(new CacheConfig(10, Duration.ofMinutes(1), EvictionPolicy.LRU));
+        for (int i = 0; i < 10; i++) {
+            lru.put(i, "v" + i);
+        }
+        lru.get(0);
+        lru.put(10, "v10");
+
+        assertEquals("v0", lru.get(0));
+        assertNull(lru.get(1));
+        assertTrue(lru.getStats().evictions() > 0);
+
+        BoundedCache<Integer, String> shortLived = new BoundedCache<>(new CacheConfig(10, Duration.ofMillis(1), EvictionPolicy.LFU));
+        shortLived.put(1, "v1");
+        Thread.sleep(5);
+        assertNull(shortLived.get(1));
+        assertEquals(1, shortLived.getStats().expirations());
+    }
+
+    @Test
+    void testGroupsAreCached() {
+        List<ProductGroup> groups = productGroupRepository.getAllProductGroups();
+        assertEquals(1, groups.size());
+
+        productGroupRepository.updateProductGroup(new ProductGroup(groupId, "Renamed", ""));
+
+        Optional<ProductGroup> renamed = productGroupRepository.getProductGroupByName("Renamed");
+        assertTrue(renamed.isPresent());
+        assertFalse(productGroupRepository.getProductGroupByName("Test Group").isPresent());
+        assertEquals("Renamed", productGroupRepository.getAllProductGroups().get(0).name());
+    }
+}
@@ -0,0 +1,49 @@
+package ua.edu.ukma.clientserver.server.cache;
+
+import org.junit.jupiter.api.Test;
+import ua.edu.ukma.clientserver.server.models.ProductGroup;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CatalogVersionsTest {
+
+    @Test
+    void testWritesBumpOnlyTheirCollection() {
+        CatalogVersions versions = new CatalogVersions();
+        ResourceVersion products = versions.products();
+        ResourceVersion groups = versions.groups();
+
+        versions.stockChanged(1, 5);
+        assertEquals(products.version() + 1, versions.products().version());
+        assertEquals(groups, versions.groups());
+        assertNotEquals(products.etag(), versions.products().etag());
+
+        versions.groupUpdated(new ProductGroup(1, "G", ""));
+        assertEquals(groups.version() + 1, versions.groups().version());
+        assertEquals(products.version() + 1, versions.products().version());
+    }
+
+    @Test
+    void testGroupDeletionBumpsProducts() {
+        CatalogVersions versions = new CatalogVersions();
+        long products = versions.products().version();
+
+        versions.groupDeleted(1);
+
+        assertEquals(products + 1, versions.products().version());
+    }
+
+    @Test
+    void testCachedBodyIsIgnoredOnceVersionMoves() {
+        ResponseCache cache = new ResponseCache(new CacheConfig(16, Duration.ofMinutes(1), EvictionPolicy.LRU));
+        cache.put("/api/products", 3, "gzip", new byte[]{1, 2, 3});
+
+        ResponseCache.CachedBody cached = cache.get("/api/products", 3);
+        assertArrayEquals(new byte[]{1, 2, 3}, cached.body());
+        assertEquals("gzip", cached.payloadEncoding());
+        assertNull(cache.get("/api/products", 4));
+        assertNull(cache.get("/api/groups", 3));
+    }
+}
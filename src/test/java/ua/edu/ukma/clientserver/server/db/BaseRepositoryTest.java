@@ -15,9 +15,9 @@ import java.sql.Statement;
 
 public abstract class BaseRepositoryTest {
 
-    private static final String JDBC_URL = "jdbc:h2:mem:testdb;DB_CLOSE_DELAY=-1";
-    private static final String USER = "sa";
-    private static final String PASSWORD = "";
+    protected static final String JDBC_URL = "jdbc:h2:mem:testdb;DB_CLOSE_DELAY=-1";
+    protected static final String USER = "sa";
+    protected static final String PASSWORD = "";
 
     protected Connection connection;
     protected DbConnection dbConnection;
@@ -25,17 +25,13 @@ public abstract class BaseRepositoryTest {
     @BeforeEach
     void setUp() throws SQLException, IOException {
         connection = DriverManager.getConnection(JDBC_URL, USER, PASSWORD);
-        dbConnection = new DbConnection() {
-            @Override
-            public Connection getConnection() {
-                return connection;
-            }
-        };
+        dbConnection = new DbConnection(JDBC_URL, USER, PASSWORD, PoolConfig.defaults());
         runInitScript();
     }
 
     @AfterEach
     void tearDown() throws SQLException {
+        dbConnection.close();
         try (Statement st = connection.createStatement()) {
             st.execute("DROP ALL OBJECTS");
         }
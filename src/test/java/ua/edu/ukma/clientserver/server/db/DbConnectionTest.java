@@ -0,0 +1,149 @@
+package ua.edu.ukma.clientserver.server.db;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DbConnectionTest extends BaseRepositoryTest {
+
+    private DbConnection pool;
+
+    @AfterEach
+    void closePool() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    @Test
+    void testReturnedConnectionIsReused() throws SQLException {
+        pool = new DbConnection(JDBC_URL, USER, PASSWORD, new PoolConfig(1, 2, Duration.ofSeconds(1), Duration.ofMinutes(1), Duration.ofSeconds(1)));
+
+        try (Connection first = pool.getConnection()) {
+            assertEquals(1, pool.getStats().active());
+        }
+        try (Connection second = pool.getConnection()) {
+            assertFalse(second.isClosed());
+        }
+
+        PoolStats stats = pool.getStats();
+        assertEquals(0, stats.active());
+        assertEquals(1, stats.idle());
+        assertEquals(1, stats.created());
+        assertEquals(2, stats.borrows());
+    }
+
+    @Test
+    void testBorrowTimesOutWhenPoolIsExhausted() throws SQLException {
+        pool = new DbConnection(JDBC_URL, USER, PASSWORD, new PoolConfig(0, 1, Duration.ofMillis(50), Duration.ofMinutes(1), Duration.ofSeconds(1)));
+
+        try (Connection ignored = pool.getConnection()) {
+            assertThrows(PoolExhaustedException.class, pool::getConnection);
+        }
+
+        assertEquals(1, pool.getStats().timeouts());
+        try (Connection connection = pool.getConnection()) {
+            assertFalse(connection.isClosed());
+        }
+    }
+
+    @Test
+    void testClosedHandleCannotBeUsed() throws SQLException {
+        pool = new DbConnection(JDBC_URL, USER, PASSWORD, PoolConfig.defaults());
+
+        Connection connection = pool.getConnection();
+        connection.close();
+
+        assertTrue(connection.isClosed());
+        assertThrows(SQLException.class, connection::createStatement);
+    }
+
+    @Test
+    void testUncommittedTransactionIsRolledBackOnReturn() throws SQLException {
+        pool = new DbConnection(JDBC_URL, USER, PASSWORD, new PoolConfig(1, 1, Duration.ofSeconds(1), Duration.ofMinutes(1), Duration.ofSeconds(1)));
+
+        try (Connection connection = pool.getConnection()) {
+            connection.setAutoCommit(false);
+            connection.createStatement().executeUpdate("INSERT INTO product_groups(name, description) VALUES ('Pending', '')");
+        }
+
+        try (Connection connection = pool.getConnection()) {
+            assertTrue(connection.getAutoCommit());
+            assertFalse(connection.createStatement().executeQuery("SELECT * FROM product_groups").next());
+        }
+    }
+
+    @Test
+    void testBrokenConnectionIsReplaced() throws SQLException {
+        pool = new DbConnection(JDBC_URL, USER, PASSWORD, new PoolConfig(1, 1, Duration.ofSeconds(1), Duration.ofMinutes(1), Duration.ofSeconds(1)));
+
+        try (Connection connection = pool.getConnection()) {
+            connection.unwrap(Connection.class).close();
+        }
+
+        try (Connection connection = pool.getConnection()) {
+            assertTrue(connection.createStatement().executeQuery("SELECT 1").next());
+        }
+        assertEquals(2, pool.getStats().created());
+    }
+
+    @Test
+    void testPreparedStatementsAreReusedAcrossBorrows() throws SQLException {
+        pool = new DbConnection(JDBC_URL, USER, PASSWORD, new PoolConfig(1, 1, Duration.ofSeconds(1), Duration.ofMinutes(1), Duration.ofSeconds(1)));
+        String sql = "SELECT COUNT(*) FROM product_groups WHERE id > ?";
+
+        PreparedStatement physical;
+        ResultSet leftOpen;
+        try (Connection connection = pool.getConnection(); PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setInt(1, 0);
+            leftOpen = statement.executeQuery();
+            physical = statement.unwrap(PreparedStatement.class);
+            assertSame(connection, statement.getConnection());
+        }
+        assertTrue(leftOpen.isClosed());
+
+        try (Connection connection = pool.getConnection(); PreparedStatement statement = connection.prepareStatement(sql)) {
+            assertSame(physical, statement.unwrap(PreparedStatement.class));
+            // Parameters of the previous use were cleared
+            assertThrows(SQLException.class, statement::executeQuery);
+            // The same SQL open twice at once gets a second statement
+            try (PreparedStatement nested = connection.prepareStatement(sql)) {
+                assertNotSame(physical, nested.unwrap(PreparedStatement.class));
+            }
+        }
+
+        PoolStats stats = pool.getStats();
+        assertEquals(1, stats.statementCacheHits());
+        assertEquals(2, stats.statementCacheMisses());
+    }
+
+    @Test
+    void testReconfiguredAndOverflowingStatementsAreClosed() throws SQLException {
+        pool = new DbConnection(JDBC_URL, USER, PASSWORD, new PoolConfig(1, 1, Duration.ofSeconds(1), Duration.ofMinutes(1), Duration.ofSeconds(1), 2, 2));
+
+        PreparedStatement reconfigured;
+        try (Connection connection = pool.getConnection(); PreparedStatement statement = connection.prepareStatement("SELECT 1")) {
+            statement.setFetchSize(10);
+            reconfigured = statement.unwrap(PreparedStatement.class);
+        }
+        assertTrue(reconfigured.isClosed());
+
+        PreparedStatement first;
+        try (Connection connection = pool.getConnection()) {
+            try (PreparedStatement statement = connection.prepareStatement("SELECT 1")) {
+                first = statement.unwrap(PreparedStatement.class);
+            }
+            connection.prepareStatement("SELECT 2").close();
+            connection.prepareStatement("SELECT 3").close();
+        }
+        assertTrue(first.isClosed());
+        assertEquals(1, pool.getStats().statementCacheEvictions());
+    }
+}
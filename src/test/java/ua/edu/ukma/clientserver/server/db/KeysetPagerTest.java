@@ -0,0 +1,87 @@
+package ua.edu.ukma.clientserver.server.db;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ua.edu.ukma.clientserver.server.models.Product;
+import ua.edu.ukma.clientserver.server.models.ProductGroup;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeysetPagerTest extends BaseRepositoryTest {
+
+    private ProductRepository productRepository;
+    private ProductGroupRepository productGroupRepository;
+    private int groupId;
+    private int otherGroupId;
+
+    @BeforeEach
+    void setupRepos() {
+        productRepository = new ProductRepository(dbConnection);
+        productGroupRepository = new ProductGroupRepository(dbConnection);
+        groupId = productGroupRepository.createProductGroup(new ProductGroup(0, "Group", "")).value().id();
+        otherGroupId = productGroupRepository.createProductGroup(new ProductGroup(0, "Other", "")).value().id();
+        for (int i = 0; i < 7; i++) {
+            // Prices repeat so that the id tie-breaker is exercised
+            productRepository.createProduct(new Product(0, i % 2 == 0 ? groupId : otherGroupId, "Product " + i, "Desc", "Manu", 10 - i, BigDecimal.valueOf(i % 3)));
+        }
+    }
+
+    @Test
+    void testPagesCoverEveryRowOnce() {
+        List<Object> ids = new ArrayList<>();
+        String after = null;
+        int pages = 0;
+        do {
+            Page page = productRepository.listProducts(null, new PageRequest(3, "id", false, after, List.of()));
+            page.items().forEach(item -> ids.add(item.get("id")));
+            after = page.next();
+            pages++;
+        } while (after != null);
+
+        assertEquals(3, pages);
+        assertEquals(7, ids.size());
+        assertEquals(7, ids.stream().distinct().count());
+    }
+
+    @Test
+    void testSortByPriceDescendingWithProjection() {
+        List<String> names = new ArrayList<>();
+        String after = null;
+        do {
+            Page page = productRepository.listProducts(null, new PageRequest(2, "price", true, after, List.of("name", "price")));
+            for (Map<String, Object> item : page.items()) {
+                assertEquals(List.of("name", "price"), List.copyOf(item.keySet()));
+                names.add((String) item.get("name"));
+            }
+            after = page.next();
+        } while (after != null);
+
+        assertEquals(List.of("Product 5", "Product 2", "Product 4", "Product 1", "Product 6", "Product 3", "Product 0"), names);
+    }
+
+    @Test
+    void testGroupFilterAndGroupListing() {
+        Page page = productRepository.listProducts(otherGroupId, new PageRequest(10, "name", false, null, List.of("name")));
+        assertEquals(3, page.items().size());
+        assertNull(page.next());
+
+        Page groups = productGroupRepository.listProductGroups(new PageRequest(1, "name", true, null, List.of()));
+        assertEquals("Other", groups.items().get(0).get("name"));
+        assertEquals("Group", productGroupRepository.listProductGroups(new PageRequest(1, "name", true, groups.next(), List.of())).items().get(0).get("name"));
+    }
+
+    @Test
+    void testInvalidRequestsAreRejected() {
+        String next = productRepository.listProducts(null, new PageRequest(1, "id", false, null, List.of())).next();
+
+        assertThrows(IllegalArgumentException.class, () -> productRepository.listProducts(null, new PageRequest(1, "description", false, null, List.of())));
+        assertThrows(IllegalArgumentException.class, () -> productRepository.listProducts(null, new PageRequest(1, "id", false, null, List.of("secret"))));
+        assertThrows(IllegalArgumentException.class, () -> productRepository.listProducts(null, new PageRequest(1, "price", false, next, List.of())));
+        assertThrows(IllegalArgumentException.class, () -> productRepository.listProducts(null, new PageRequest(1, "id", false, "not a token", List.of())));
+    }
+}
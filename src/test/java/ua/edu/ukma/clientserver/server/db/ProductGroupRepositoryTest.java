@@ -21,7 +21,7 @@ class ProductGroupRepositoryTest extends BaseRepositoryTest {
     @Test
     void testCreateAndGetProductGroup() {
         ProductGroup group = new ProductGroup(0, "Groceries", "Food items");
-        ProductGroup createdGroup = productGroupRepository.createProductGroup(group);
+        ProductGroup createdGroup = productGroupRepository.createProductGroup(group).value();
 
         assertNotEquals(0, createdGroup.id());
         assertEquals("Groceries", createdGroup.name());
@@ -42,7 +42,7 @@ class ProductGroupRepositoryTest extends BaseRepositoryTest {
 
     @Test
     void testUpdateProductGroup() {
-        ProductGroup group = productGroupRepository.createProductGroup(new ProductGroup(0, "Original Name", "Original Desc"));
+        ProductGroup group = productGroupRepository.createProductGroup(new ProductGroup(0, "Original Name", "Original Desc")).value();
         ProductGroup updatedGroup = new ProductGroup(group.id(), "New Name", "New Desc");
 
         productGroupRepository.updateProductGroup(updatedGroup);
@@ -55,7 +55,7 @@ class ProductGroupRepositoryTest extends BaseRepositoryTest {
 
     @Test
     void testDeleteProductGroup() {
-        ProductGroup group = productGroupRepository.createProductGroup(new ProductGroup(0, "To Be Deleted", ""));
+        ProductGroup group = productGroupRepository.createProductGroup(new ProductGroup(0, "To Be Deleted", "")).value();
         
         productGroupRepository.deleteProductGroup(group.id());
 
@@ -63,6 +63,18 @@ class ProductGroupRepositoryTest extends BaseRepositoryTest {
         assertFalse(foundGroup.isPresent());
     }
 
+    @Test
+    void testWritesReportConflictsAndMissingRows() {
+        productGroupRepository.createProductGroup(new ProductGroup(0, "Taken", ""));
+        ProductGroup other = productGroupRepository.createProductGroup(new ProductGroup(0, "Other", "")).value();
+
+        assertEquals(WriteResult.Status.CONFLICT, productGroupRepository.createProductGroup(new ProductGroup(0, "Taken", "")).status());
+        assertEquals(WriteResult.Status.CONFLICT, productGroupRepository.updateProductGroup(new ProductGroup(other.id(), "Taken", "")).status());
+        assertEquals(WriteResult.Status.NOT_FOUND, productGroupRepository.updateProductGroup(new ProductGroup(999, "Ghost", "")).status());
+        assertEquals(WriteResult.Status.DELETED, productGroupRepository.deleteProductGroup(other.id()).status());
+        assertEquals(WriteResult.Status.NOT_FOUND, productGroupRepository.deleteProductGroup(other.id()).status());
+    }
+
     @Test
     void testGetProductGroupByName() {
         productGroupRepository.createProductGroup(new ProductGroup(0, "FindMe", ""));
@@ -4,10 +4,17 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import ua.edu.ukma.clientserver.server.models.Product;
 import ua.edu.ukma.clientserver.server.models.ProductGroup;
+import ua.edu.ukma.clientserver.server.models.StockMovement;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -22,14 +29,14 @@ class ProductRepositoryTest extends BaseRepositoryTest {
         productGroupRepository = new ProductGroupRepository(dbConnection);
         productRepository = new ProductRepository(dbConnection);
 
-        ProductGroup group = productGroupRepository.createProductGroup(new ProductGroup(0, "Test Group", ""));
+        ProductGroup group = productGroupRepository.createProductGroup(new ProductGroup(0, "Test Group", "")).value();
         this.groupId = group.id();
     }
 
     @Test
     void testCreateAndGetProduct() {
         Product product = new Product(0, groupId, "Test Product", "Desc", "Manu", 10, BigDecimal.valueOf(9.99));
-        Product createdProduct = productRepository.createProduct(product);
+        Product createdProduct = productRepository.createProduct(product).value();
 
         assertNotEquals(0, createdProduct.id());
         assertEquals("Test Product", createdProduct.name());
@@ -41,7 +48,7 @@ class ProductRepositoryTest extends BaseRepositoryTest {
 
     @Test
     void testUpdateProduct() {
-        Product product = productRepository.createProduct(new Product(0, groupId, "Original Name", "Desc", "Manu", 10, BigDecimal.valueOf(9.99)));
+        Product product = productRepository.createProduct(new Product(0, groupId, "Original Name", "Desc", "Manu", 10, BigDecimal.valueOf(9.99))).value();
         Product updatedProduct = new Product(product.id(), groupId, "New Name", "New Desc", "New Manu", 20, BigDecimal.valueOf(19.99));
         
         productRepository.updateProduct(updatedProduct);
@@ -54,7 +61,7 @@ class ProductRepositoryTest extends BaseRepositoryTest {
     
     @Test
     void testDeleteProduct() {
-        Product product = productRepository.createProduct(new Product(0, groupId, "To Be Deleted", "Desc", "Manu", 10, BigDecimal.valueOf(9.99)));
+        Product product = productRepository.createProduct(new Product(0, groupId, "To Be Deleted", "Desc", "Manu", 10, BigDecimal.valueOf(9.99))).value();
         
         productRepository.deleteProduct(product.id());
 
@@ -62,6 +69,19 @@ class ProductRepositoryTest extends BaseRepositoryTest {
         assertFalse(foundProduct.isPresent());
     }
 
+    @Test
+    void testWritesReportConflictsAndMissingRows() {
+        Product first = productRepository.createProduct(new Product(0, groupId, "Taken", "Desc", "Manu", 10, BigDecimal.ONE)).value();
+        Product second = productRepository.createProduct(new Product(0, groupId, "Free", "Desc", "Manu", 10, BigDecimal.ONE)).value();
+
+        assertEquals(WriteResult.Status.CONFLICT, productRepository.createProduct(new Product(0, groupId, "Taken", "", "", 1, BigDecimal.ONE)).status());
+        assertEquals(WriteResult.Status.CONFLICT, productRepository.updateProduct(new Product(second.id(), groupId, "Taken", "", "", 1, BigDecimal.ONE)).status());
+        assertEquals(WriteResult.Status.UPDATED, productRepository.updateProduct(new Product(first.id(), groupId, "Taken", "Renamed in place", "", 1, BigDecimal.ONE)).status());
+        assertEquals(WriteResult.Status.NOT_FOUND, productRepository.updateProduct(new Product(999, groupId, "Ghost", "", "", 1, BigDecimal.ONE)).status());
+        assertEquals(WriteResult.Status.DELETED, productRepository.deleteProduct(second.id()).status());
+        assertEquals(WriteResult.Status.NOT_FOUND, productRepository.deleteProduct(second.id()).status());
+    }
+
     @Test
     void testFindProducts() {
         productRepository.createProduct(new Product(0, groupId, "Apple", "A fruit", "Farm", 10, BigDecimal.ONE));
@@ -74,7 +94,7 @@ class ProductRepositoryTest extends BaseRepositoryTest {
 
     @Test
     void testGetProductsByGroupId() {
-        ProductGroup newGroup = productGroupRepository.createProductGroup(new ProductGroup(0, "Another Group", ""));
+        ProductGroup newGroup = productGroupRepository.createProductGroup(new ProductGroup(0, "Another Group", "")).value();
         productRepository.createProduct(new Product(0, groupId, "Product A", "", "", 1, BigDecimal.ONE));
         productRepository.createProduct(new Product(0, newGroup.id(), "Product B", "", "", 1, BigDecimal.ONE));
 
@@ -94,11 +114,185 @@ class ProductRepositoryTest extends BaseRepositoryTest {
 
     @Test
     void testGetTotalValueByGroupId() {
-        ProductGroup newGroup = productGroupRepository.createProductGroup(new ProductGroup(0, "Another Group", ""));
+        ProductGroup newGroup = productGroupRepository.createProductGroup(new ProductGroup(0, "Another Group", "")).value();
         productRepository.createProduct(new Product(0, groupId, "P1", "", "", 10, BigDecimal.valueOf(1.50))); // 15.00
         productRepository.createProduct(new Product(0, newGroup.id(), "P2", "", "", 5, BigDecimal.valueOf(10.00))); // 50.00
         
         BigDecimal groupValue = productRepository.getTotalValueByGroupId(groupId);
         assertEquals(0, BigDecimal.valueOf(15.00).compareTo(groupValue));
     }
-} 
\ No newline at end of file
+
+    @Test
+    void testAddAndSellStock() {
+        Product product = productRepository.createProduct(new Product(0, groupId, "Stocked", "", "", 10, BigDecimal.ONE)).value();
+
+        assertEquals(StockUpdateResult.updated(15), productRepository.addStock(product.id(), 5));
+        assertEquals(StockUpdateResult.updated(3), productRepository.sellStock(product.id(), 12));
+        assertEquals(StockUpdateResult.insufficientStock(), productRepository.sellStock(product.id(), 4));
+        assertEquals(StockUpdateResult.notFound(), productRepository.sellStock(product.id() + 1000, 1));
+        assertEquals(StockUpdateResult.notFound(), productRepository.addStock(product.id() + 1000, 1));
+        assertEquals(3, productRepository.getProductById(product.id()).orElseThrow().quantity());
+    }
+
+    @Test
+    void testConcurrentSellsNeverOversell() throws InterruptedException {
+        int stock = 1000;
+        int attempts = 3000;
+        Product product = productRepository.createProduct(new Product(0, groupId, "Hot Item", "", "", stock, BigDecimal.ONE)).value();
+
+        AtomicInteger sold = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(32);
+        for (int i = 0; i < attempts; i++) {
+            executor.execute(() -> {
+                StockUpdateResult result = productRepository.sellStock(product.id(), 1);
+                if (result.status() == StockUpdateResult.Status.UPDATED) {
+                    sold.incrementAndGet();
+                } else {
+                    rejected.incrementAndGet();
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        assertEquals(stock, sold.get());
+        assertEquals(attempts - stock, rejected.get());
+        assertEquals(0, productRepository.getProductById(product.id()).orElseThrow().quantity());
+    }
+
+    @Test
+    void testConcurrentMovementsOnSeveralProductsAddUp() throws InterruptedException {
+        Product tea = productRepository.createProduct(new Product(0, groupId, "Tea", "", "", 100, BigDecimal.ONE)).value();
+        Product coffee = productRepository.createProduct(new Product(0, groupId, "Coffee", "", "", 0, BigDecimal.ONE)).value();
+        AtomicInteger notified = new AtomicInteger();
+        productRepository.addListener(new CatalogListener() {
+            @Override
+            public void stockChanged(int productId, int delta) {
+                notified.addAndGet(delta);
+            }
+        });
+
+        AtomicInteger teaSold = new AtomicInteger();
+        AtomicInteger missing = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        for (int i = 0; i < 400; i++) {
+            int task = i;
+            executor.execute(() -> {
+                switch (task % 4) {
+                    case 0, 1 -> {
+                        if (productRepository.sellStock(tea.id(), 1).status() == StockUpdateResult.Status.UPDATED) {
+                            teaSold.incrementAndGet();
+                        }
+                    }
+                    case 2 -> productRepository.addStock(coffee.id(), 2);
+                    default -> {
+                        if (productRepository.sellStock(coffee.id() + 1000, 1).status() == StockUpdateResult.Status.NOT_FOUND) {
+                            missing.incrementAndGet();
+                        }
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        assertEquals(100, teaSold.get());
+        assertEquals(100, missing.get());
+        assertEquals(0, productRepository.getProductById(tea.id()).orElseThrow().quantity());
+        assertEquals(200, productRepository.getProductById(coffee.id()).orElseThrow().quantity());
+        assertEquals(100, notified.get());
+        StockUpdateStats stats = productRepository.getStockUpdateStats();
+        assertEquals(400, stats.movements());
+        assertTrue(stats.writes() <= stats.movements());
+    }
+
+    @Test
+    void testApplyStockMovementsAtomically() {
+        Product first = productRepository.createProduct(new Product(0, groupId, "First", "", "", 10, BigDecimal.ONE)).value();
+        Product second = productRepository.createProduct(new Product(0, groupId, "Second", "", "", 1, BigDecimal.ONE)).value();
+
+        List<StockMovementResult> results = productRepository.applyStockMovements(List.of(
+            new StockMovement(first.id(), -4),
+            new StockMovement(second.id(), -2),
+            new StockMovement(second.id() + 1000, 5)
+        ), true);
+
+        assertEquals(StockUpdateResult.Status.ROLLED_BACK, results.get(0).status());
+        assertEquals(StockUpdateResult.Status.INSUFFICIENT_STOCK, results.get(1).status());
+        assertEquals(StockUpdateResult.Status.NOT_FOUND, results.get(2).status());
+        assertEquals(10, productRepository.getProductById(first.id()).orElseThrow().quantity());
+    }
+
+    @Test
+    void testApplyStockMovementsBestEffort() {
+        Product first = productRepository.createProduct(new Product(0, groupId, "First", "", "", 10, BigDecimal.ONE)).value();
+        Product second = productRepository.createProduct(new Product(0, groupId, "Second", "", "", 1, BigDecimal.ONE)).value();
+
+        List<StockMovementResult> results = productRepository.applyStockMovements(List.of(
+            new StockMovement(first.id(), -4),
+            new StockMovement(second.id(), -2),
+            new StockMovement(first.id(), 7)
+        ), false);
+
+        assertEquals(StockUpdateResult.Status.UPDATED, results.get(0).status());
+        assertEquals(StockUpdateResult.Status.INSUFFICIENT_STOCK, results.get(1).status());
+        assertEquals(StockUpdateResult.Status.UPDATED, results.get(2).status());
+        assertEquals(13, productRepository.getProductById(first.id()).orElseThrow().quantity());
+        assertEquals(1, productRepository.getProductById(second.id()).orElseThrow().quantity());
+    }
+
+    @Test
+    void testApplyStockMovementsAnswersInRequestOrder() {
+        Product first = productRepository.createProduct(new Product(0, groupId, "First", "", "", 10, BigDecimal.ONE)).value();
+        Product second = productRepository.createProduct(new Product(0, groupId, "Second", "", "", 1, BigDecimal.ONE)).value();
+
+        // Applied in id order, but each product's own movements keep theirs
+        List<StockMovementResult> results = productRepository.applyStockMovements(List.of(
+            new StockMovement(second.id(), -1),
+            new StockMovement(first.id(), -10),
+            new StockMovement(second.id(), -1),
+            new StockMovement(first.id(), 3)
+        ), false);
+
+        assertEquals(List.of(second.id(), first.id(), second.id(), first.id()), results.stream().map(StockMovementResult::productId).toList());
+        assertEquals(List.of(StockUpdateResult.Status.UPDATED, StockUpdateResult.Status.UPDATED, StockUpdateResult.Status.INSUFFICIENT_STOCK, StockUpdateResult.Status.UPDATED),
+            results.stream().map(StockMovementResult::status).toList());
+        assertEquals(3, productRepository.getProductById(first.id()).orElseThrow().quantity());
+        assertEquals(0, productRepository.getProductById(second.id()).orElseThrow().quantity());
+    }
+
+    @Test
+    void testStreamAllProducts() throws IOException {
+        productRepository.createProduct(new Product(0, groupId, "P1", "", "", 1, BigDecimal.ONE));
+        productRepository.createProduct(new Product(0, groupId, "P2", "", "", 2, BigDecimal.TEN));
+
+        List<String> names = new ArrayList<>();
+        productRepository.streamAllProducts(product -> names.add(product.name()));
+
+        assertEquals(List.of("P1", "P2"), names);
+    }
+
+    @Test
+    void testImportProducts() {
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < 1234; i++) {
+            products.add(new Product(0, groupId, "Imported " + i, "", "", i, BigDecimal.ONE));
+        }
+
+        assertEquals(1234, productRepository.importProducts(products.iterator()));
+        assertEquals(1234, productRepository.getAllProducts().size());
+    }
+
+    @Test
+    void testImportIsAllOrNothing() {
+        productRepository.createProduct(new Product(0, groupId, "Existing", "", "", 1, BigDecimal.ONE));
+        List<Product> products = List.of(
+            new Product(0, groupId, "New", "", "", 1, BigDecimal.ONE),
+            new Product(0, groupId, "Existing", "", "", 1, BigDecimal.ONE)
+        );
+
+        assertThrows(IllegalArgumentException.class, () -> productRepository.importProducts(products.iterator()));
+        assertEquals(1, productRepository.getAllProducts().size());
+    }
+}
@@ -0,0 +1,134 @@
+package ua.edu.ukma.clientserver.server.db;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ua.edu.ukma.clientserver.server.models.Product;
+import ua.edu.ukma.clientserver.server.models.ProductGroup;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StockJournalTest extends BaseRepositoryTest {
+
+    @TempDir
+    Path directory;
+
+    private ProductRepository productRepository;
+    private int groupId;
+    private StockJournal journal;
+
+    @BeforeEach
+    void setupRepos() {
+        productRepository = new ProductRepository(dbConnection);
+        groupId = new ProductGroupRepository(dbConnection).createProductGroup(new ProductGroup(0, "Group", "")).value().id();
+    }
+
+    @AfterEach
+    void closeJournal() {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    @Test
+    void testSalesAreCheckedAgainstJournaledStockAndFlushedLater() throws IOException {
+        // Long interval and batch: nothing reaches the table until the journal is closed
+        journal = open(10, Duration.ofHours(1), 1000);
+        Product product = productRepository.createProduct(new Product(0, groupId, "Tea", "", "", 10, BigDecimal.ONE)).value();
+        List<Integer> changes = new ArrayList<>();
+        productRepository.addListener(new CatalogListener() {
+            @Override
+            public void stockChanged(int productId, int delta) {
+                changes.add(delta);
+            }
+        });
+
+        assertEquals(StockUpdateResult.updated(4), productRepository.sellStock(product.id(), 6));
+        assertEquals(StockUpdateResult.Status.INSUFFICIENT_STOCK, productRepository.sellStock(product.id(), 5).status());
+        assertEquals(StockUpdateResult.updated(7), productRepository.addStock(product.id(), 3));
+        assertEquals(StockUpdateResult.Status.NOT_FOUND, productRepository.sellStock(999, 1).status());
+        assertEquals(10, productRepository.getProductById(product.id()).orElseThrow().quantity());
+        assertEquals(2, journal.getStats().lag());
+
+        journal.close();
+        journal = null;
+        assertEquals(7, productRepository.getProductById(product.id()).orElseThrow().quantity());
+        // One event per product and flush, with the movements summed
+        assertEquals(List.of(-3), changes);
+    }
+
+    @Test
+    void testReplaysWhatWasNotFlushed() throws IOException {
+        journal = open(10, Duration.ofHours(1), 1000);
+        Product product = productRepository.createProduct(new Product(0, groupId, "Tea", "", "", 10, BigDecimal.ONE)).value();
+        productRepository.sellStock(product.id(), 2);
+        productRepository.sellStock(product.id(), 3);
+        journal.closeWithoutFlushing();
+
+        journal = open(10, Duration.ofHours(1), 1000);
+        assertEquals(2, journal.getStats().replayed());
+        assertEquals(5, productRepository.getProductById(product.id()).orElseThrow().quantity());
+        productRepository.sellStock(product.id(), 1);
+        journal.closeWithoutFlushing();
+
+        // The first two movements are behind the checkpoint now and must not be applied twice
+        journal = open(10, Duration.ofHours(1), 1000);
+        assertEquals(1, journal.getStats().replayed());
+        assertEquals(4, productRepository.getProductById(product.id()).orElseThrow().quantity());
+    }
+
+    @Test
+    void testDirectQuantityWritesWaitForTheJournal() throws IOException {
+        journal = open(10, Duration.ofHours(1), 1000);
+        Product product = productRepository.createProduct(new Product(0, groupId, "Tea", "", "", 10, BigDecimal.ONE)).value();
+        productRepository.sellStock(product.id(), 4);
+
+        productRepository.updateProduct(new Product(product.id(), groupId, "Tea", "", "", 2, BigDecimal.ONE));
+        assertEquals(2, productRepository.getProductById(product.id()).orElseThrow().quantity());
+        assertEquals(0, journal.getStats().lag());
+        // The journal checks against the new quantity, not the one it had seen
+        assertEquals(StockUpdateResult.Status.INSUFFICIENT_STOCK, productRepository.sellStock(product.id(), 3).status());
+        assertEquals(StockUpdateResult.updated(0), productRepository.sellStock(product.id(), 2));
+    }
+
+    @Test
+    void testConcurrentSalesThroughAFullJournalNeverOversell() throws Exception {
+        // Four records of space and small batches, so appenders keep waiting for the flusher to rewind the file
+        journal = open(4, Duration.ofMillis(5), 2);
+        Product product = productRepository.createProduct(new Product(0, groupId, "Tea", "", "", 50, BigDecimal.ONE)).value();
+        AtomicInteger sold = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 80; i++) {
+            executor.execute(() -> {
+                if (productRepository.sellStock(product.id(), 1).status() == StockUpdateResult.Status.UPDATED) {
+                    sold.incrementAndGet();
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals(50, sold.get());
+        journal.close();
+        journal = null;
+        assertEquals(0, productRepository.getProductById(product.id()).orElseThrow().quantity());
+    }
+
+    private StockJournal open(int capacity, Duration flushInterval, int batchSize) throws IOException {
+        StockJournal opened = StockJournal.open(productRepository, new StockJournalConfig(directory.resolve("stock.journal"), capacity, flushInterval, batchSize));
+        productRepository.attachStockJournal(opened);
+        return opened;
+    }
+}
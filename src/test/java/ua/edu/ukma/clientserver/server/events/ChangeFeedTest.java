@@ -0,0 +1,103 @@
+package ua.edu.ukma.clientserver.server.events;
+
+import org.junit.jupiter.api.Test;
+import ua.edu.ukma.clientserver.server.models.ProductGroup;
+import ua.edu.ukma.clientserver.util.EncryptionUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChangeFeedTest {
+
+    private static final Duration NO_WAIT = Duration.ofMillis(1);
+
+    @Test
+    void testSubscribersGetEncryptedEventsFromWhereTheyJoined() throws InterruptedException {
+        ChangeFeed feed = new ChangeFeed(new ChangeFeedConfig(16, Duration.ofSeconds(15), 10));
+        feed.groupCreated(new ProductGroup(1, "Old", ""));
+        ChangeFeed.Subscription subscription = feed.subscribe(null);
+        feed.groupUpdated(new ProductGroup(1, "Fruit", "Fresh"));
+        feed.stockChanged(7, -2);
+
+        List<byte[]> frames = subscription.next(NO_WAIT);
+        assertEquals(2, frames.size());
+        assertEquals("groupUpdated", field(frames.get(0), "event"));
+        assertEquals("{\"id\":1,\"name\":\"Fruit\",\"description\":\"Fresh\"}", EncryptionUtil.decrypt(field(frames.get(0), "data")));
+        assertEquals("stockChanged", field(frames.get(1), "event"));
+        assertTrue(field(frames.get(1), "id").endsWith("-3"));
+
+        assertEquals(": keepalive\n\n", new String(subscription.next(NO_WAIT).get(0), StandardCharsets.US_ASCII));
+        subscription.close();
+        assertEquals(0, feed.getStats().subscribers());
+    }
+
+    @Test
+    void testResumesFromTheLastEventOrTellsTheClientToReload() throws InterruptedException {
+        ChangeFeed feed = new ChangeFeed(new ChangeFeedConfig(4, Duration.ofSeconds(15), 10));
+        ChangeFeed.Subscription first = feed.subscribe(null);
+        feed.productDeleted(1);
+        String seen = field(first.next(NO_WAIT).get(0), "id");
+        feed.productDeleted(2);
+        feed.productDeleted(3);
+
+        List<byte[]> replayed = feed.subscribe(seen).next(NO_WAIT);
+        assertEquals(List.of("productDeleted", "productDeleted"), replayed.stream().map(frame -> field(frame, "event")).toList());
+        assertEquals("{\"id\":3}", EncryptionUtil.decrypt(field(replayed.get(1), "data")));
+
+        // From an earlier run of the server, and from further back than the history goes
+        assertEquals("reset", field(feed.subscribe("abc-1").next(NO_WAIT).get(0), "event"));
+        for (int i = 4; i <= 8; i++) {
+            feed.productDeleted(i);
+        }
+        List<byte[]> reset = feed.subscribe(seen).next(NO_WAIT);
+        assertEquals("reset", field(reset.get(0), "event"));
+        assertTrue(field(reset.get(0), "id").endsWith("-8"));
+        assertEquals(2, feed.getStats().resets());
+    }
+
+    @Test
+    void testSubscriberLappedByTheRingIsResetAndDropped() throws InterruptedException {
+        ChangeFeed feed = new ChangeFeed(new ChangeFeedConfig(4, Duration.ofSeconds(15), 10));
+        ChangeFeed.Subscription slow = feed.subscribe(null);
+        for (int i = 1; i <= 6; i++) {
+            feed.stockChanged(1, i);
+        }
+
+        List<byte[]> frames = slow.next(NO_WAIT);
+        assertEquals(1, frames.size());
+        assertEquals("reset", field(frames.get(0), "event"));
+        assertNull(slow.next(NO_WAIT));
+    }
+
+    @Test
+    void testLimitsSubscribersAndEndsStreamsOnClose() throws InterruptedException {
+        ChangeFeed feed = new ChangeFeed(new ChangeFeedConfig(4, Duration.ofSeconds(15), 1));
+        ChangeFeed.Subscription subscription = feed.subscribe(null);
+        assertNull(feed.subscribe(null));
+        assertEquals(1, feed.getStats().rejectedSubscribers());
+
+        Thread closer = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            feed.close();
+        });
+        closer.start();
+        assertNull(subscription.next(Duration.ofSeconds(10)));
+        closer.join();
+    }
+
+    private static String field(byte[] frame, String name) {
+        for (String line : new String(frame, StandardCharsets.US_ASCII).split("\n")) {
+            if (line.startsWith(name + ": ")) {
+                return line.substring(name.length() + 2);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,114 @@
+package ua.edu.ukma.clientserver.server.handlers;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionControlFilterTest {
+
+    private static final long QUEUE_TIMEOUT_MILLIS = 200;
+
+    private final AdmissionControlFilter filter = new AdmissionControlFilter(1, QUEUE_TIMEOUT_MILLIS);
+    private final CountDownLatch entered = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private ExecutorService executor;
+    private HttpServer server;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        executor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/slow", exchange -> {
+            entered.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        }).getFilters().add(filter);
+        server.createContext("/ok", exchange -> {
+            exchange.sendResponseHeaders(200, 2);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write("ok".getBytes());
+            }
+        }).getFilters().add(filter);
+        server.createContext("/fail", exchange -> {
+            throw new IllegalStateException("handler failed");
+        }).getFilters().add(filter);
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        release.countDown();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testRequestOverLimitIsRejectedAfterQueueTimeout() throws Exception {
+        CompletableFuture<HttpResponse<Void>> slow = client.sendAsync(request("/slow"), HttpResponse.BodyHandlers.discarding());
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+        long start = System.nanoTime();
+        HttpResponse<String> rejected = client.send(request("/ok"), HttpResponse.BodyHandlers.ofString());
+        long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(503, rejected.statusCode());
+        assertEquals("1", rejected.headers().firstValue("Retry-After").orElse(null));
+        assertTrue(waitedMillis >= QUEUE_TIMEOUT_MILLIS, "rejected after " + waitedMillis + " ms");
+
+        release.countDown();
+        assertEquals(204, slow.get(5, TimeUnit.SECONDS).statusCode());
+        AdmissionControlFilter.AdmissionStats stats = filter.getStats();
+        assertEquals(1, stats.admitted());
+        assertEquals(1, stats.rejected());
+        assertEquals(0, stats.inFlight());
+    }
+
+    @Test
+    void testQueuedRequestIsAdmittedWhenPermitFreesInTime() throws Exception {
+        CompletableFuture<HttpResponse<Void>> slow = client.sendAsync(request("/slow"), HttpResponse.BodyHandlers.discarding());
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+        CompletableFuture<HttpResponse<String>> queued = client.sendAsync(request("/ok"), HttpResponse.BodyHandlers.ofString());
+        release.countDown();
+
+        assertEquals(204, slow.get(5, TimeUnit.SECONDS).statusCode());
+        assertEquals(200, queued.get(5, TimeUnit.SECONDS).statusCode());
+        assertEquals(0, filter.getStats().rejected());
+    }
+
+    @Test
+    void testPermitIsReleasedWhenHandlerThrows() throws Exception {
+        assertThrows(IOException.class, () -> client.send(request("/fail"), HttpResponse.BodyHandlers.discarding()));
+
+        assertEquals(0, filter.getStats().inFlight());
+        assertEquals(200, client.send(request("/ok"), HttpResponse.BodyHandlers.ofString()).statusCode());
+        assertEquals(0, filter.getStats().rejected());
+    }
+
+    private HttpRequest request(String path) {
+        return HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getAddress().getPort() + path)).build();
+    }
+}
@@ -0,0 +1,50 @@
+package ua.edu.ukma.clientserver.server.handlers;
+
+import com.sun.net.httpserver.Headers;
+import org.junit.jupiter.api.Test;
+import ua.edu.ukma.clientserver.server.cache.ResourceVersion;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BaseHandlerTest {
+
+    private static final Instant FETCHED = Instant.parse("2026-01-05T12:00:00.300Z");
+
+    @Test
+    void testWriteInSameSecondAsFetchIsServedAgain() {
+        // The client fetched at .300 and got Last-Modified 12:00:00; the write at .700 must still be served
+        ResourceVersion written = new ResourceVersion(2, FETCHED.plusMillis(400).toEpochMilli());
+
+        assertFalse(BaseHandler.isNotModified(ifModifiedSince(FETCHED), written));
+    }
+
+    @Test
+    void testWriteInEarlierSecondIsNotModified() {
+        ResourceVersion version = new ResourceVersion(1, FETCHED.minusMillis(500).toEpochMilli());
+
+        assertTrue(BaseHandler.isNotModified(ifModifiedSince(FETCHED), version));
+        assertFalse(BaseHandler.isNotModified(ifModifiedSince(FETCHED.minusSeconds(1)), version));
+    }
+
+    @Test
+    void testIfNoneMatchTakesPrecedenceOverIfModifiedSince() {
+        ResourceVersion version = new ResourceVersion(3, FETCHED.minusSeconds(60).toEpochMilli());
+        Headers stale = ifModifiedSince(FETCHED);
+        stale.set("If-None-Match", new ResourceVersion(2, version.modifiedMillis()).etag());
+        Headers current = ifModifiedSince(FETCHED.minusSeconds(3600));
+        current.set("If-None-Match", "\"other\", " + version.etag());
+
+        assertFalse(BaseHandler.isNotModified(stale, version));
+        assertTrue(BaseHandler.isNotModified(current, version));
+    }
+
+    private static Headers ifModifiedSince(Instant instant) {
+        Headers headers = new Headers();
+        headers.set("If-Modified-Since", DateTimeFormatter.RFC_1123_DATE_TIME.format(instant.atZone(ZoneOffset.UTC)));
+        return headers;
+    }
+}
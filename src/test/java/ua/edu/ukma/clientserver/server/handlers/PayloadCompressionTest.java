@@ -0,0 +1,56 @@
+package ua.edu.ukma.clientserver.server.handlers;
+
+import com.sun.net.httpserver.Headers;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PayloadCompressionTest {
+
+    private final PayloadCompression compression = new PayloadCompression(64, 6);
+
+    @Test
+    void testNegotiationHonoursQualityValues() {
+        assertNull(compression.negotiate(headers(null)));
+        assertNull(compression.negotiate(headers("br, identity")));
+        assertEquals("gzip", compression.negotiate(headers("deflate, gzip")));
+        assertEquals("deflate", compression.negotiate(headers("gzip;q=0.2, deflate")));
+        assertNull(compression.negotiate(headers("gzip;q=0")));
+    }
+
+    @Test
+    void testCompressedBodiesInflateBackAndAreCounted() throws IOException {
+        byte[] body = "{\"name\":\"Apple\"},".repeat(100).getBytes(StandardCharsets.UTF_8);
+
+        byte[] gzip = compression.compress("gzip", body);
+        byte[] deflate = compression.compress("deflate", body);
+
+        assertArrayEquals(body, new GZIPInputStream(new ByteArrayInputStream(gzip)).readAllBytes());
+        assertArrayEquals(body, new InflaterInputStream(new ByteArrayInputStream(deflate)).readAllBytes());
+        PayloadCompression.CompressionStats stats = compression.getStats();
+        assertEquals(2, stats.compressed());
+        assertEquals(2L * body.length, stats.bytesBefore());
+        assertEquals(gzip.length + deflate.length, stats.bytesAfter());
+    }
+
+    @Test
+    void testSmallBodiesAreSkipped() {
+        assertFalse(compression.shouldCompress(63));
+        assertTrue(compression.shouldCompress(64));
+        assertEquals(1, compression.getStats().skipped());
+    }
+
+    private static Headers headers(String accept) {
+        Headers headers = new Headers();
+        if (accept != null) {
+            headers.set(PayloadCompression.ACCEPT_HEADER, accept);
+        }
+        return headers;
+    }
+}
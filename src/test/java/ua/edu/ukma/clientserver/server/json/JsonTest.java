@@ -0,0 +1,61 @@
+package ua.edu.ukma.clientserver.server.json;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonSyntaxException;
+import org.junit.jupiter.api.Test;
+import ua.edu.ukma.clientserver.server.models.Product;
+import ua.edu.ukma.clientserver.server.models.ProductGroup;
+import ua.edu.ukma.clientserver.server.stats.TotalValue;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JsonTest {
+
+    private final Gson reflective = new Gson();
+    private final Gson gson = Json.gson();
+
+    @Test
+    void testAdaptersWriteWhatReflectionWrote() {
+        List<Object> values = List.of(
+            new Product(7, 2, "Tea <green> & \"loose\"", null, "Farm 'A'", 12, new BigDecimal("3.50")),
+            new Product(8, 2, "Ґудзик", "Ünïcode", "", 0, new BigDecimal("1E+3")),
+            new ProductGroup(3, "Drinks", null),
+            new TotalValue(new BigDecimal("1234.5600"))
+        );
+        for (Object value : values) {
+            assertEquals(reflective.toJson(value), gson.toJson(value));
+        }
+        assertEquals(reflective.toJson(values), gson.toJson(values));
+    }
+
+    @Test
+    void testAdaptersReadLikeReflection() {
+        String json = "{\"name\":\"Tea\",\"groupId\":\"2\",\"price\":\"3.50\",\"description\":null,\"extra\":{\"a\":[1,2]},\"id\":4}";
+        assertEquals(reflective.fromJson(json, Product.class), gson.fromJson(json, Product.class));
+        assertEquals(new Product(4, 2, "Tea", null, null, 0, new BigDecimal("3.50")), gson.fromJson(json, Product.class));
+
+        assertEquals(new ProductGroup(0, "Drinks", "Cold"), gson.fromJson("{\"name\":\"Drinks\",\"description\":\"Cold\"}", ProductGroup.class));
+        assertEquals(new TotalValue(new BigDecimal("10.00")), gson.fromJson("{\"totalValue\":10.00}", TotalValue.class));
+        assertThrows(JsonSyntaxException.class, () -> gson.fromJson("{\"price\":\"cheap\"}", Product.class));
+        assertThrows(JsonParseException.class, () -> gson.fromJson("{\"quantity\":null}", Product.class));
+    }
+
+    @Test
+    void testUtf8BufferEncodesLikeString() {
+        String text = "plain ascii, Ґудзик, €, 😀, lone \uD800 and \uDC00 halves, " + "x".repeat(100) + "\uD83D";
+        Utf8Buffer buffer = new Utf8Buffer(4);
+        buffer.write(text.substring(0, 30));
+        buffer.write(text.toCharArray(), 30, 20);
+        for (int i = 50; i < text.length(); i++) {
+            buffer.write(text.charAt(i));
+        }
+        assertArrayEquals(text.getBytes(StandardCharsets.UTF_8), buffer.toByteArray());
+    }
+}
@@ -0,0 +1,83 @@
+package ua.edu.ukma.clientserver.server.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestMetricsTest {
+
+    @Test
+    void testBucketBoundsAreInclusive() {
+        assertEquals(0, LatencyHistogram.bucketIndex(0));
+        assertEquals(0, LatencyHistogram.bucketIndex(TimeUnit.MICROSECONDS.toNanos(16)));
+        assertEquals(1, LatencyHistogram.bucketIndex(TimeUnit.MICROSECONDS.toNanos(16) + 1));
+        assertEquals(LatencyHistogram.BOUNDS_MICROS.length, LatencyHistogram.bucketIndex(TimeUnit.MINUTES.toNanos(5)));
+        assertEquals("0.000016", LatencyHistogram.boundLabel(0));
+        assertEquals("+Inf", LatencyHistogram.boundLabel(LatencyHistogram.BOUNDS_MICROS.length));
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(100, snapshot.count());
+        // The 50 ms median falls in the (49.152, 65.536] ms bucket
+        assertEquals(65_536, snapshot.quantileMicros(0.5));
+    }
+
+    @Test
+    void testNestedPhasesAreCountedOnce() throws InterruptedException {
+        RequestTimings timings = RequestTimings.begin();
+        RequestTimings.enter(Phase.CRYPTO);
+        RequestTimings.enter(Phase.IO);
+        Thread.sleep(20);
+        RequestTimings.exit(Phase.IO);
+        RequestTimings.exit(Phase.CRYPTO);
+        RequestTimings.route("/api/products");
+        long elapsed = timings.end();
+
+        assertTrue(timings.nanos(Phase.IO) >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertTrue(timings.nanos(Phase.CRYPTO) < timings.nanos(Phase.IO));
+        assertTrue(timings.nanos(Phase.CRYPTO) + timings.nanos(Phase.IO) <= elapsed);
+        assertTrue(timings.entered(Phase.CRYPTO));
+        assertFalse(timings.entered(Phase.DB));
+        assertEquals("/api/products", timings.route());
+
+        // Outside a request phases are not tracked at all
+        RequestTimings.enter(Phase.DB);
+        RequestTimings.exit(Phase.DB);
+        assertFalse(timings.entered(Phase.DB));
+    }
+
+    @Test
+    void testPrometheusExposition() {
+        RequestMetrics metrics = new RequestMetrics();
+        RequestTimings timings = RequestTimings.begin();
+        RequestTimings.enter(Phase.DB);
+        RequestTimings.exit(Phase.DB);
+        timings.end();
+        metrics.record("/api/products/{id:int}", "GET", 200, TimeUnit.MILLISECONDS.toNanos(3), timings);
+        metrics.record("/api/products/{id:int}", "GET", 404, TimeUnit.MILLISECONDS.toNanos(1), null);
+        metrics.record(null, "BREW", -1, 1000, null);
+
+        StringBuilder out = new StringBuilder();
+        metrics.writeTo(out);
+        String text = out.toString();
+
+        String labels = "route=\"/api/products/{id:int}\",method=\"GET\"";
+        assertTrue(text.contains("http_requests_total{" + labels + ",status=\"200\"} 1\n"));
+        assertTrue(text.contains("http_requests_total{" + labels + ",status=\"404\"} 1\n"));
+        assertTrue(text.contains("http_requests_total{route=\"unmatched\",method=\"OTHER\",status=\"none\"} 1\n"));
+        assertTrue(text.contains("http_request_duration_seconds_bucket{" + labels + ",le=\"0.000768\"} 0\n"));
+        assertTrue(text.contains("http_request_duration_seconds_bucket{" + labels + ",le=\"0.001024\"} 1\n"));
+        assertTrue(text.contains("http_request_duration_seconds_bucket{" + labels + ",le=\"0.003072\"} 2\n"));
+        assertTrue(text.contains("http_request_duration_seconds_bucket{" + labels + ",le=\"+Inf\"} 2\n"));
+        assertTrue(text.contains("http_request_duration_seconds_sum{" + labels + "} 0.004\n"));
+        assertTrue(text.contains("http_request_phase_seconds_count{" + labels + ",phase=\"db\"} 1\n"));
+        assertFalse(text.contains("phase=\"json\""));
+    }
+}
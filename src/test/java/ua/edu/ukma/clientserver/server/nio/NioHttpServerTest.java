@@ -0,0 +1,251 @@
+package ua.edu.ukma.clientserver.server.nio;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NioHttpServerTest {
+
+    private static final NioConfig CONFIG = new NioConfig(1024, 16, Duration.ofMillis(300), Duration.ofSeconds(5));
+
+    private final AtomicInteger filtered = new AtomicInteger();
+    private NioHttpServer server;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = NioHttpServer.create(new InetSocketAddress("127.0.0.1", 0), 16, CONFIG);
+        server.createContext("/echo", exchange -> {
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().set("Content-Type", "text/plain");
+            exchange.sendResponseHeaders(200, body.length == 0 ? -1 : body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        }).getFilters().add(new Filter() {
+            @Override
+            public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+                filtered.incrementAndGet();
+                chain.doFilter(exchange);
+            }
+
+            @Override
+            public String description() {
+                return "Counts requests";
+            }
+        });
+        // Streamed in writes longer than the buffer, which go to the socket without being copied into it
+        server.createContext("/stream", exchange -> {
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream os = exchange.getResponseBody()) {
+                for (int i = 0; i < 3; i++) {
+                    byte[] part = new byte[3000];
+                    Arrays.fill(part, (byte) ('a' + i));
+                    os.write(part);
+                    os.flush();
+                }
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void testServesHandlersAndFiltersOverKeepAliveConnections() throws Exception {
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        for (int i = 0; i < 3; i++) {
+            HttpResponse<String> echoed = client.send(HttpRequest.newBuilder(uri("/echo")).POST(HttpRequest.BodyPublishers.ofString("hello " + i)).build(),
+                HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, echoed.statusCode());
+            assertEquals("hello " + i, echoed.body());
+        }
+        HttpResponse<String> streamed = client.send(HttpRequest.newBuilder(uri("/stream")).build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals("a".repeat(3000) + "b".repeat(3000) + "c".repeat(3000), streamed.body());
+        assertEquals(404, client.send(HttpRequest.newBuilder(uri("/missing")).build(), HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        assertEquals(3, filtered.get());
+        NioStats stats = server.getStats();
+        assertEquals(1, stats.accepted());
+        assertEquals(5, stats.requests());
+        assertEquals(4, stats.keepAliveRequests());
+        assertEquals(1, stats.openConnections());
+    }
+
+    @Test
+    void testAnswersPipelinedRequestsInOrder() throws IOException {
+        try (Socket socket = connect()) {
+            send(socket, "POST /echo HTTP/1.1\r\nHost: x\r\nContent-Length: 5\r\n\r\nfirst"
+                + "POST /echo HTTP/1.1\r\nHost: x\r\nContent-Length: 6\r\n\r\nsecond"
+                + "GET /echo HTTP/1.1\r\nHost: x\r\nConnection: close\r\n\r\n");
+            InputStream in = socket.getInputStream();
+            assertEquals("first", readResponse(in));
+            assertEquals("second", readResponse(in));
+            assertEquals("", readResponse(in));
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    void testReadsChunkedBodiesAfterContinue() throws IOException {
+        try (Socket socket = connect()) {
+            send(socket, "POST /echo HTTP/1.1\r\nHost: x\r\nExpect: 100-continue\r\nTransfer-Encoding: chunked\r\n\r\n");
+            InputStream in = socket.getInputStream();
+            assertEquals("HTTP/1.1 100 Continue", readHead(in).split("\r\n")[0]);
+            send(socket, "5;ext=1\r\nhello\r\n6\r\n world\r\n0\r\nTrailer: x\r\n\r\n");
+            assertEquals("hello world", readResponse(in));
+        }
+    }
+
+    @Test
+    void testRejectsOversizedHeadsAndDropsIdleConnections() throws IOException, InterruptedException {
+        try (Socket socket = connect()) {
+            send(socket, "GET /echo HTTP/1.1\r\nHost: x\r\nCookie: " + "x".repeat(2000) + "\r\n\r\n");
+            InputStream in = socket.getInputStream();
+            assertTrue(readHead(in).startsWith("HTTP/1.1 431 "));
+            assertEquals(-1, in.read());
+        }
+        try (Socket socket = connect()) {
+            send(socket, "GET /echo HTTP/1.1\r\nHost: x\r\n\r\n");
+            InputStream in = socket.getInputStream();
+            assertEquals("", readResponse(in));
+            // Idle past the keep-alive timeout; the sweep runs once a second
+            assertEquals(-1, in.read());
+        }
+        Thread.sleep(100);
+        assertEquals(0, server.getStats().openConnections());
+    }
+
+    @Test
+    void testRejectsAmbiguousBodyFraming() throws IOException {
+        for (String framing : new String[]{
+            "Transfer-Encoding: chunked\r\nContent-Length: 5\r\n",
+            "Content-Length: 5\r\nContent-Length: 6\r\n",
+            "Content-Length: 5, 6\r\n",
+            "Content-Length: +5\r\n"
+        }) {
+            try (Socket socket = connect()) {
+                send(socket, "POST /echo HTTP/1.1\r\nHost: x\r\n" + framing + "\r\nhello");
+                InputStream in = socket.getInputStream();
+                assertTrue(readHead(in).startsWith("HTTP/1.1 400 "), framing);
+                assertEquals(-1, in.read());
+            }
+        }
+        // Repeating the same length is not ambiguous
+        try (Socket socket = connect()) {
+            send(socket, "POST /echo HTTP/1.1\r\nHost: x\r\nContent-Length: 5\r\nContent-Length: 5\r\n\r\nhello");
+            assertEquals("hello", readResponse(socket.getInputStream()));
+        }
+        assertEquals(1, filtered.get());
+    }
+
+    @Test
+    void testRejectsMalformedChunkSizes() throws IOException {
+        // Like the application's handlers, which answer 500 to any exception
+        server.createContext("/recover", exchange -> {
+            try {
+                exchange.getRequestBody().readAllBytes();
+                exchange.sendResponseHeaders(204, -1);
+            } catch (IOException e) {
+                exchange.sendResponseHeaders(500, -1);
+            }
+            exchange.close();
+        });
+        for (String path : new String[]{"/echo", "/recover"}) {
+            for (String size : new String[]{"+1a", "-0", " 1a ", "1a ", "0x1a", ""}) {
+                try (Socket socket = connect()) {
+                    send(socket, "POST " + path + " HTTP/1.1\r\nHost: x\r\nTransfer-Encoding: chunked\r\n\r\n"
+                        + size + "\r\n" + "x".repeat(26) + "\r\n0\r\n\r\n");
+                    InputStream in = socket.getInputStream();
+                    assertTrue(readHead(in).startsWith("HTTP/1.1 400 "), path + " '" + size + "'");
+                    assertEquals(-1, in.read());
+                }
+            }
+        }
+        // Upper-case digits and an extension after the size are fine
+        try (Socket socket = connect()) {
+            send(socket, "POST /echo HTTP/1.1\r\nHost: x\r\nTransfer-Encoding: chunked\r\n\r\n1A;name=value\r\n" + "x".repeat(26) + "\r\n0\r\n\r\n");
+            assertEquals("x".repeat(26), readResponse(socket.getInputStream()));
+        }
+    }
+
+    @Test
+    void testRejectsRequestTargetsWithoutAPath() throws IOException {
+        try (Socket socket = connect()) {
+            send(socket, "GET mailto:x HTTP/1.1\r\nHost: x\r\n\r\n");
+            InputStream in = socket.getInputStream();
+            assertTrue(readHead(in).startsWith("HTTP/1.1 400 "));
+            assertEquals(-1, in.read());
+        }
+        // Also behind a request that was served, where the head is parsed by the worker
+        try (Socket socket = connect()) {
+            send(socket, "GET /echo HTTP/1.1\r\nHost: x\r\n\r\nGET mailto:x HTTP/1.1\r\nHost: x\r\n\r\n");
+            InputStream in = socket.getInputStream();
+            assertEquals("", readResponse(in));
+            assertTrue(readHead(in).startsWith("HTTP/1.1 400 "));
+            assertEquals(-1, in.read());
+        }
+        assertEquals(1, filtered.get());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + path);
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket("127.0.0.1", server.getAddress().getPort());
+        socket.setSoTimeout(5000);
+        return socket;
+    }
+
+    private static void send(Socket socket, String text) throws IOException {
+        socket.getOutputStream().write(text.getBytes(StandardCharsets.US_ASCII));
+        socket.getOutputStream().flush();
+    }
+
+    private static String readHead(InputStream in) throws IOException {
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        while (!head.toString(StandardCharsets.US_ASCII).endsWith("\r\n\r\n")) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("Connection closed in the response head");
+            }
+            head.write(b);
+        }
+        return head.toString(StandardCharsets.US_ASCII);
+    }
+
+    // The body of a fixed-length 200 response
+    private static String readResponse(InputStream in) throws IOException {
+        String head = readHead(in);
+        assertTrue(head.startsWith("HTTP/1.1 200 "), head);
+        int length = 0;
+        for (String line : head.split("\r\n")) {
+            if (line.regionMatches(true, 0, "Content-Length: ", 0, 16)) {
+                length = Integer.parseInt(line.substring(16));
+            }
+        }
+        return new String(in.readNBytes(length), StandardCharsets.US_ASCII);
+    }
+}
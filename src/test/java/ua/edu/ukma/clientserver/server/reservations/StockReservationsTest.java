@@ -0,0 +1,131 @@
+package ua.edu.ukma.clientserver.server.reservations;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ua.edu.ukma.clientserver.server.db.BaseRepositoryTest;
+import ua.edu.ukma.clientserver.server.db.ProductGroupRepository;
+import ua.edu.ukma.clientserver.server.db.ProductRepository;
+import ua.edu.ukma.clientserver.server.db.ReservationRepository;
+import ua.edu.ukma.clientserver.server.db.StockUpdateResult;
+import ua.edu.ukma.clientserver.server.models.Product;
+import ua.edu.ukma.clientserver.server.models.ProductGroup;
+import ua.edu.ukma.clientserver.server.models.Reservation;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StockReservationsTest extends BaseRepositoryTest {
+
+    private static final ReservationConfig CONFIG = new ReservationConfig(Duration.ofMinutes(5), Duration.ofMinutes(30), Duration.ofMillis(100), 64, Duration.ofHours(1));
+
+    private ProductRepository productRepository;
+    private StockReservations reservations;
+    private Product product;
+
+    @BeforeEach
+    void setupReservations() {
+        productRepository = new ProductRepository(dbConnection);
+        int groupId = new ProductGroupRepository(dbConnection).createProductGroup(new ProductGroup(0, "Group", "")).value().id();
+        product = productRepository.createProduct(new Product(0, groupId, "Tea", "", "", 10, BigDecimal.ONE)).value();
+        reservations = open();
+    }
+
+    @AfterEach
+    void closeReservations() {
+        reservations.close();
+    }
+
+    @Test
+    void testHeldStockIsNotSoldTwice() {
+        Reservation reservation = reservations.reserve(product.id(), 6, null).reservation();
+
+        assertEquals(ReservationResult.Status.INSUFFICIENT_STOCK, reservations.reserve(product.id(), 5, null).status());
+        assertEquals(StockUpdateResult.Status.INSUFFICIENT_STOCK, reservations.sell(product.id(), 5).status());
+        assertEquals(StockUpdateResult.updated(6), reservations.sell(product.id(), 4));
+        assertEquals(ReservationResult.Status.PRODUCT_NOT_FOUND, reservations.reserve(product.id() + 1000, 1, null).status());
+
+        assertEquals(ReservationResult.Status.CONFIRMED, reservations.confirm(reservation.id()).status());
+        assertEquals(0, quantity());
+        assertEquals(ReservationResult.Status.RESERVATION_NOT_FOUND, reservations.confirm(reservation.id()).status());
+        assertTrue(reservations.getReservation(reservation.id()).isEmpty());
+    }
+
+    @Test
+    void testCancelledAndExpiredHoldsGiveStockBack() {
+        Reservation cancelled = reservations.reserve(product.id(), 4, null).reservation();
+        Reservation expiring = reservations.reserve(product.id(), 6, Duration.ofSeconds(1)).reservation();
+        assertEquals(ReservationResult.Status.INSUFFICIENT_STOCK, reservations.reserve(product.id(), 1, null).status());
+
+        assertEquals(ReservationResult.Status.CANCELLED, reservations.cancel(cancelled.id()).status());
+        assertEquals(ReservationResult.Status.RESERVATION_NOT_FOUND, reservations.cancel(cancelled.id()).status());
+        reservations.expireDue(System.currentTimeMillis() + 2000);
+
+        assertEquals(ReservationResult.Status.RESERVATION_NOT_FOUND, reservations.confirm(expiring.id()).status());
+        assertEquals(ReservationResult.Status.RESERVED, reservations.reserve(product.id(), 10, null).status());
+        assertEquals(10, quantity());
+        ReservationStats stats = reservations.getStats();
+        assertEquals(1, stats.open());
+        assertEquals(1, stats.cancelled());
+        assertEquals(1, stats.expired());
+        assertThrows(IllegalArgumentException.class, () -> reservations.reserve(product.id(), 1, Duration.ofHours(1)));
+    }
+
+    @Test
+    void testOpenHoldsSurviveARestart() {
+        Reservation kept = reservations.reserve(product.id(), 7, null).reservation();
+        Reservation dropped = reservations.reserve(product.id(), 2, null).reservation();
+        reservations.save();
+        reservations.cancel(dropped.id());
+        reservations.close();
+        assertEquals(0, reservations.getStats().unsaved());
+
+        reservations = open();
+        assertEquals(kept, reservations.getReservation(kept.id()).orElseThrow());
+        assertTrue(reservations.getReservation(dropped.id()).isEmpty());
+        assertEquals(StockUpdateResult.Status.INSUFFICIENT_STOCK, reservations.sell(product.id(), 4).status());
+        assertEquals(ReservationResult.Status.CONFIRMED, reservations.confirm(kept.id()).status());
+        assertEquals(3, quantity());
+    }
+
+    @Test
+    void testConcurrentHoldsAndSalesNeverOvercommit() throws InterruptedException {
+        productRepository.addStock(product.id(), 90);
+        AtomicInteger taken = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        for (int i = 0; i < 300; i++) {
+            int task = i;
+            executor.execute(() -> {
+                boolean succeeded = task % 2 == 0
+                    ? reservations.reserve(product.id(), 1, null).status() == ReservationResult.Status.RESERVED
+                    : reservations.sell(product.id(), 1).status() == StockUpdateResult.Status.UPDATED;
+                if (succeeded) {
+                    taken.incrementAndGet();
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        assertEquals(100, taken.get());
+        assertEquals(200, reservations.getStats().rejected());
+        // Whatever was not sold is held
+        assertEquals(reservations.getStats().open(), quantity());
+    }
+
+    private int quantity() {
+        return productRepository.getProductById(product.id()).orElseThrow().quantity();
+    }
+
+    private StockReservations open() {
+        StockReservations opened = new StockReservations(productRepository, new ReservationRepository(dbConnection), CONFIG);
+        productRepository.addListener(opened);
+        return opened;
+    }
+}
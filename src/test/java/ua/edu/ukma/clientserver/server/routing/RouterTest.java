@@ -0,0 +1,76 @@
+package ua.edu.ukma.clientserver.server.routing;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RouterTest {
+
+    private final RouteHandler list = (exchange, params) -> { };
+    private final RouteHandler search = (exchange, params) -> { };
+    private final RouteHandler byId = (exchange, params) -> { };
+    private final RouteHandler sell = (exchange, params) -> { };
+    private final RouteHandler byName = (exchange, params) -> { };
+
+    private Router router;
+
+    @BeforeEach
+    void setUp() {
+        router = new Router()
+            .get("/api/products", list)
+            .get("/api/products/search", search)
+            .get("/api/products/{id:int}", byId)
+            .delete("/api/products/{id:int}", byId)
+            .post("/api/products/{id:int}/sell", sell)
+            .get("/api/tags/{name}", byName);
+    }
+
+    @Test
+    void testLiteralRoutesWinOverVariables() {
+        RouteMatch match = router.match("GET", "/api/products/search");
+        assertEquals(RouteMatch.Status.FOUND, match.status());
+        assertSame(search, match.handler());
+    }
+
+    @Test
+    void testTypedPathVariables() {
+        RouteMatch match = router.match("POST", "/api/products/42/sell");
+        assertSame(sell, match.handler());
+        assertEquals(42, match.params().getInt("id"));
+        assertEquals("/api/products/{id:int}/sell", match.pattern());
+
+        RouteMatch tag = router.match("GET", "/api/tags/fresh");
+        assertSame(byName, tag.handler());
+        assertEquals("fresh", tag.params().getString("name"));
+    }
+
+    @Test
+    void testNonNumericOrOverflowingIdIsNotFound() {
+        assertEquals(RouteMatch.Status.NOT_FOUND, router.match("GET", "/api/products/abc").status());
+        assertEquals(RouteMatch.Status.NOT_FOUND, router.match("GET", "/api/products/99999999999").status());
+        assertEquals(RouteMatch.Status.NOT_FOUND, router.match("GET", "/api/products/1/unknown").status());
+        assertEquals(RouteMatch.Status.NOT_FOUND, router.match("GET", "/api").status());
+    }
+
+    @Test
+    void testWrongMethodIsReportedWithAllowedMethods() {
+        RouteMatch match = router.match("PUT", "/api/products/7");
+        assertEquals(RouteMatch.Status.METHOD_NOT_ALLOWED, match.status());
+        assertEquals(Set.of("GET", "DELETE"), match.allowedMethods());
+        assertEquals("/api/products/{id:int}", match.pattern());
+    }
+
+    @Test
+    void testTrailingSlashIsIgnored() {
+        assertSame(list, router.match("GET", "/api/products/").handler());
+    }
+
+    @Test
+    void testConflictingRoutesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> router.get("/api/products/{id:int}", byId));
+        assertThrows(IllegalArgumentException.class, () -> router.get("/api/products/{name}/other", byId));
+    }
+}
@@ -0,0 +1,116 @@
+package ua.edu.ukma.clientserver.server.search;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ua.edu.ukma.clientserver.server.db.BaseRepositoryTest;
+import ua.edu.ukma.clientserver.server.db.ProductGroupRepository;
+import ua.edu.ukma.clientserver.server.db.ProductRepository;
+import ua.edu.ukma.clientserver.server.models.Product;
+import ua.edu.ukma.clientserver.server.models.ProductGroup;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductSearchIndexTest extends BaseRepositoryTest {
+
+    private ProductRepository productRepository;
+    private ProductGroupRepository productGroupRepository;
+    private ProductSearchIndex searchIndex;
+    private int groupId;
+
+    @BeforeEach
+    void setupIndex() {
+        productRepository = new ProductRepository(dbConnection);
+        productGroupRepository = new ProductGroupRepository(dbConnection);
+        groupId = productGroupRepository.createProductGroup(new ProductGroup(0, "Food", "")).value().id();
+        productRepository.createProduct(new Product(0, groupId, "Apple", "A fruit", "Farm", 10, BigDecimal.ONE));
+        productRepository.createProduct(new Product(0, groupId, "Banana", "A yellow fruit", "Farm", 20, BigDecimal.TEN));
+        productRepository.createProduct(new Product(0, groupId, "Car", "A vehicle", "Factory", 30, BigDecimal.ZERO));
+        productRepository.createProduct(new Product(0, groupId, "Fruit Juice", "Drink", "Juicer", 5, BigDecimal.ONE));
+
+        searchIndex = new ProductSearchIndex(productRepository);
+        productRepository.addListener(searchIndex);
+        productGroupRepository.addListener(searchIndex);
+    }
+
+    @Test
+    void testNameMatchesRankAboveDescriptionMatches() {
+        List<String> names = names(searchIndex.search("fruit", 10));
+
+        assertEquals(List.of("Fruit Juice", "Apple", "Banana"), names);
+    }
+
+    @Test
+    void testPrefixAndTypoTolerance() {
+        assertEquals(List.of("Banana"), names(searchIndex.search("ban", 10)));
+        assertEquals(List.of("Banana"), names(searchIndex.search("bananna", 10)));
+        assertEquals(List.of("Car"), names(searchIndex.search("vehicel", 10)));
+        assertTrue(searchIndex.search("xyz", 10).isEmpty());
+    }
+
+    @Test
+    void testLimitKeepsBestMatches() {
+        assertEquals(List.of("Fruit Juice"), names(searchIndex.search("fruit", 1)));
+    }
+
+    @Test
+    void testIndexFollowsRepositoryWrites() {
+        Product car = productRepository.getProductByName("Car").orElseThrow();
+        productRepository.updateProduct(new Product(car.id(), groupId, "Truck", "A vehicle", "Factory", 30, BigDecimal.ZERO));
+        productRepository.addStock(car.id(), 2);
+        productRepository.createProduct(new Product(0, groupId, "Cherry", "Red fruit", "Orchard", 1, BigDecimal.ONE));
+
+        assertTrue(searchIndex.search("car", 10).isEmpty());
+        assertEquals(32, searchIndex.search("truck", 10).get(0).quantity());
+        assertEquals(List.of("Cherry"), names(searchIndex.search("cherry", 10)));
+
+        productRepository.deleteProduct(car.id());
+        assertTrue(searchIndex.search("truck", 10).isEmpty());
+
+        productGroupRepository.deleteProductGroup(groupId);
+        assertTrue(searchIndex.search("fruit", 10).isEmpty());
+        assertEquals(0, searchIndex.getStats().products());
+    }
+
+    @Test
+    void testImportRebuildsIndex() {
+        productRepository.importProducts(List.of(new Product(0, groupId, "Imported Melon", "Sweet", "Farm", 1, BigDecimal.ONE)).iterator());
+
+        assertEquals(List.of("Imported Melon"), names(searchIndex.search("melon", 10)));
+    }
+
+    @Test
+    void testPostingsSpanningSeveralChunksFollowWrites() {
+        List<Product> imported = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            imported.add(new Product(0, groupId, (i % 2 == 0 ? "Widget " : "Gadget ") + i, "", "Maker", 1, BigDecimal.ONE));
+        }
+        productRepository.importProducts(imported.iterator());
+
+        // Renamed in between the existing widgets, and removed again, spread over every chunk
+        Set<String> expected = new HashSet<>();
+        for (Product product : productRepository.getAllProducts()) {
+            if (product.name().startsWith("Gadget")) {
+                String name = product.name().replace("Gadget", "Widget");
+                productRepository.updateProduct(new Product(product.id(), groupId, name, "", "Maker", 1, BigDecimal.ONE));
+                expected.add(name);
+            } else if (product.name().startsWith("Widget") && product.id() % 3 == 0) {
+                productRepository.deleteProduct(product.id());
+            } else if (product.name().startsWith("Widget")) {
+                expected.add(product.name());
+            }
+        }
+
+        assertEquals(expected, new HashSet<>(names(searchIndex.search("widget", 1000))));
+        assertTrue(searchIndex.search("gadget", 10).isEmpty());
+    }
+
+    private static List<String> names(List<Product> products) {
+        return products.stream().map(Product::name).toList();
+    }
+}
@@ -0,0 +1,168 @@
+package ua.edu.ukma.clientserver.server.stats;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ua.edu.ukma.clientserver.server.cache.ResourceVersion;
+import ua.edu.ukma.clientserver.server.db.BaseRepositoryTest;
+import ua.edu.ukma.clientserver.server.db.CatalogListener;
+import ua.edu.ukma.clientserver.server.db.ProductGroupRepository;
+import ua.edu.ukma.clientserver.server.db.ProductRepository;
+import ua.edu.ukma.clientserver.server.models.Product;
+import ua.edu.ukma.clientserver.server.models.ProductGroup;
+import ua.edu.ukma.clientserver.server.models.StockMovement;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InventoryValueAggregateTest extends BaseRepositoryTest {
+
+    private ProductRepository productRepository;
+    private ProductGroupRepository productGroupRepository;
+    private InventoryValueAggregate aggregate;
+    private int groupId;
+
+    @BeforeEach
+    void setupAggregate() {
+        productRepository = new ProductRepository(dbConnection);
+        productGroupRepository = new ProductGroupRepository(dbConnection);
+        groupId = productGroupRepository.createProductGroup(new ProductGroup(0, "Group", "")).value().id();
+        productRepository.createProduct(new Product(0, groupId, "Existing", "Desc", "Manu", 2, new BigDecimal("1.25")));
+
+        aggregate = new InventoryValueAggregate(productRepository, Duration.ofHours(1));
+        productRepository.addListener(aggregate);
+        productGroupRepository.addListener(aggregate);
+    }
+
+    @AfterEach
+    void closeAggregate() {
+        aggregate.close();
+    }
+
+    @Test
+    void testInitialLoad() {
+        assertEquals(new BigDecimal("2.50"), aggregate.getTotalValue());
+        assertEquals(new BigDecimal("2.50"), aggregate.getTotalValueByGroupId(groupId));
+        assertEquals(0, aggregate.getTotalValueByGroupId(groupId + 1).signum());
+    }
+
+    @Test
+    void testWritesKeepTotalsInStepWithDatabase() {
+        int otherGroupId = productGroupRepository.createProductGroup(new ProductGroup(0, "Other", "")).value().id();
+        Product product = productRepository.createProduct(new Product(0, groupId, "Apple", "Desc", "Manu", 10, new BigDecimal("0.99"))).value();
+        productRepository.addStock(product.id(), 5);
+        productRepository.sellStock(product.id(), 3);
+        productRepository.sellStock(product.id(), 100);
+        productRepository.applyStockMovements(List.of(new StockMovement(product.id(), -2), new StockMovement(product.id(), 4)), true);
+        productRepository.updateProduct(new Product(product.id(), otherGroupId, "Apple", "Desc", "Manu", product.quantity(), new BigDecimal("2.00")));
+        productRepository.addStock(product.id(), 1);
+
+        assertTotalsMatchDatabase(groupId, otherGroupId);
+        assertEquals(new BigDecimal("22.00"), aggregate.getTotalValueByGroupId(otherGroupId));
+
+        productRepository.deleteProduct(product.id());
+        productGroupRepository.deleteProductGroup(groupId);
+
+        assertEquals(0, aggregate.getTotalValue().signum());
+        assertTotalsMatchDatabase(groupId, otherGroupId);
+        assertFalse(aggregate.reconcile());
+    }
+
+    @Test
+    void testImportReloadsTotals() {
+        productRepository.importProducts(List.of(
+            new Product(0, groupId, "Imported 1", "Desc", "Manu", 3, new BigDecimal("10.00")),
+            new Product(0, groupId, "Imported 2", "Desc", "Manu", 1, new BigDecimal("0.50"))
+        ).iterator());
+
+        assertEquals(new BigDecimal("33.00"), aggregate.getTotalValue());
+        assertEquals(0, aggregate.getStats().corrections());
+    }
+
+    @Test
+    void testReconciliationCorrectsDrift() throws SQLException {
+        // Bypass the repository so only reconciliation can notice the change
+        try (Statement st = connection.createStatement()) {
+            st.executeUpdate("UPDATE products SET quantity = 4");
+        }
+        assertEquals(new BigDecimal("2.50"), aggregate.getTotalValue());
+
+        assertTrue(aggregate.reconcile());
+        assertEquals(new BigDecimal("5.00"), aggregate.getTotalValue());
+        assertEquals(1, aggregate.getStats().corrections());
+    }
+
+    @Test
+    void testVersionMovesWithEveryChangeToTheTotals() throws SQLException {
+        ResourceVersion initial = aggregate.version();
+        Product product = productRepository.getProductByName("Existing").orElseThrow();
+        productRepository.addStock(product.id(), 1);
+        ResourceVersion afterEvent = aggregate.version();
+        assertTrue(afterEvent.version() > initial.version());
+
+        assertFalse(aggregate.reconcile());
+        assertEquals(afterEvent, aggregate.version());
+
+        // A correction swaps the totals without any catalog event, so only the aggregate can tell clients
+        try (Statement st = connection.createStatement()) {
+            st.executeUpdate("UPDATE products SET quantity = 7");
+        }
+        assertTrue(aggregate.reconcile());
+        assertTrue(aggregate.version().version() > afterEvent.version());
+        assertNotEquals(afterEvent.etag(), aggregate.version().etag());
+    }
+
+    @Test
+    void testReconciliationDoesNotCountAStockEventTwice() throws Exception {
+        Product product = productRepository.getProductByName("Existing").orElseThrow();
+        // Holds each stock event back from the aggregate, which is notified after it
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch released = new CountDownLatch(1);
+        ProductRepository repository = new ProductRepository(dbConnection);
+        repository.addListener(new CatalogListener() {
+            @Override
+            public void stockChanged(int productId, int delta) {
+                held.countDown();
+                try {
+                    released.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        aggregate.close();
+        aggregate = new InventoryValueAggregate(repository, Duration.ofHours(1));
+        repository.addListener(aggregate);
+
+        Thread writer = new Thread(() -> repository.applyStockMovements(List.of(new StockMovement(product.id(), 4)), true));
+        writer.start();
+        assertTrue(held.await(5, TimeUnit.SECONDS));
+        // Committed, so a scan would see it, but the aggregate has yet to get the event
+        assertFalse(aggregate.reconcile());
+        released.countDown();
+        writer.join();
+
+        assertEquals(new BigDecimal("7.50"), aggregate.getTotalValue());
+        assertEquals(1, aggregate.getStats().skippedReconciliations());
+        assertFalse(aggregate.reconcile());
+        assertEquals(0, aggregate.getStats().corrections());
+    }
+
+    private void assertTotalsMatchDatabase(int... groupIds) {
+        assertEquals(0, orZero(productRepository.getTotalValue()).compareTo(aggregate.getTotalValue()));
+        for (int id : groupIds) {
+            assertEquals(0, orZero(productRepository.getTotalValueByGroupId(id)).compareTo(aggregate.getTotalValueByGroupId(id)));
+        }
+    }
+
+    private static BigDecimal orZero(BigDecimal value) {
+        return value == null ? BigDecimal.ZERO : value;
+    }
+}
@@ -0,0 +1,27 @@
+package ua.edu.ukma.clientserver.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CsvUtilTest {
+
+    @Test
+    void testRoundTrip() throws IOException {
+        StringWriter writer = new StringWriter();
+        CsvUtil.writeRow(writer, "plain", "with,comma", "with \"quotes\"", "multi\nline", "");
+        CsvUtil.writeRow(writer, "second", "row");
+
+        BufferedReader reader = new BufferedReader(new StringReader(writer.toString()));
+        assertEquals(List.of("plain", "with,comma", "with \"quotes\"", "multi\nline", ""), CsvUtil.readRow(reader));
+        assertEquals(List.of("second", "row"), CsvUtil.readRow(reader));
+        assertNull(CsvUtil.readRow(reader));
+    }
+}
@@ -1,12 +1,42 @@
 package ua.edu.ukma.clientserver.util;
 
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class EncryptionUtilTest {
 
+    private static final int SEGMENT_SIZE = GcmEnvelope.SEGMENT_SIZE;
+    private static final HexFormat HEX = HexFormat.of();
+
+    @AfterEach
+    void restoreDefaults() {
+        EncryptionUtil.configure(KeyRing.development(), EncryptionAlgorithm.AES_GCM, true);
+    }
+
     @Test
     void testEncryptDecrypt() {
         String originalText = "This is a secret message.";
@@ -36,4 +66,196 @@ class EncryptionUtilTest {
         assertNotEquals(originalText, encryptedText);
         assertEquals(originalText, decryptedText);
     }
-} 
\ No newline at end of file
+
+    @Test
+    void testStreamsMatchStringFormat() throws IOException {
+        String originalText = "{\"name\":\"streamed\"}\n".repeat(1000);
+
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        try (OutputStream out = EncryptionUtil.encryptingStream(encrypted)) {
+            out.write(originalText.getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(originalText, EncryptionUtil.decrypt(encrypted.toString(StandardCharsets.UTF_8)));
+
+        String encryptedText = EncryptionUtil.encrypt(originalText);
+        try (InputStream in = EncryptionUtil.decryptingStream(new ByteArrayInputStream(encryptedText.getBytes(StandardCharsets.UTF_8)))) {
+            assertEquals(originalText, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void testEncryptedLengthMatchesOutput() throws IOException {
+        for (EncryptionAlgorithm algorithm : EncryptionAlgorithm.values()) {
+            EncryptionUtil.configure(KeyRing.development(), algorithm, true);
+            for (int length = 0; length < 100; length++) {
+                String encryptedText = EncryptionUtil.encrypt("x".repeat(length));
+                assertEquals(encryptedText.length(), EncryptionUtil.encryptedLength(length));
+            }
+            for (int length : new int[]{SEGMENT_SIZE - 1, SEGMENT_SIZE, SEGMENT_SIZE + 1, 2 * SEGMENT_SIZE}) {
+                byte[] plainBytes = new byte[length];
+                assertEquals(EncryptionUtil.encryptedLength(length, WireFormat.BINARY), EncryptionUtil.encrypt(plainBytes, WireFormat.BINARY).length);
+                assertEquals(EncryptionUtil.encryptedLength(length, WireFormat.BINARY), encryptStream(plainBytes).length);
+            }
+        }
+    }
+
+    @Test
+    void testSegmentedStreamsRoundTrip() throws IOException {
+        byte[] plainBytes = new byte[3 * SEGMENT_SIZE + 123];
+        new Random(42).nextBytes(plainBytes);
+
+        byte[] streamed = encryptStream(plainBytes);
+        byte[] whole = EncryptionUtil.encrypt(plainBytes, WireFormat.BINARY);
+
+        assertArrayEquals(plainBytes, decryptStream(streamed));
+        assertArrayEquals(plainBytes, decryptStream(whole));
+    }
+
+    @Test
+    void testTamperedOrTruncatedEnvelopesAreRejected() {
+        byte[] plainBytes = new byte[2 * SEGMENT_SIZE + 10];
+        byte[] encrypted = EncryptionUtil.encrypt(plainBytes, WireFormat.BINARY);
+        EncryptionUtil.configure(KeyRing.development(), EncryptionAlgorithm.AES_GCM, false);
+
+        byte[] tampered = encrypted.clone();
+        // In the second segment, so the stream opens and fails while reading
+        tampered[GcmEnvelope.HEADER_LENGTH + SEGMENT_SIZE + GcmEnvelope.TAG_LENGTH + 100] ^= 1;
+        assertThrows(RuntimeException.class, () -> EncryptionUtil.decrypt(Base64.getEncoder().encodeToString(tampered)));
+        assertThrows(IOException.class, () -> decryptStream(tampered));
+
+        // Dropping whole trailing segments leaves a body whose last segment lacks the final flag
+        byte[] truncated = Arrays.copyOf(encrypted, encrypted.length - (10 + 16));
+        assertThrows(RuntimeException.class, () -> EncryptionUtil.decrypt(Base64.getEncoder().encodeToString(truncated)));
+        assertThrows(IOException.class, () -> decryptStream(truncated));
+    }
+
+    @Test
+    void testLegacyCbcPayloadsStillDecrypt() throws IOException {
+        EncryptionUtil.configure(KeyRing.development(), EncryptionAlgorithm.AES_CBC, true);
+        String legacy = EncryptionUtil.encrypt("{\"legacy\":true}");
+        byte[] legacyStream = encryptStream("legacy stream".getBytes(StandardCharsets.UTF_8));
+
+        EncryptionUtil.configure(KeyRing.development(), EncryptionAlgorithm.AES_GCM, true);
+        assertEquals("{\"legacy\":true}", EncryptionUtil.decrypt(legacy));
+        assertEquals("legacy stream", new String(decryptStream(legacyStream), StandardCharsets.UTF_8));
+
+        EncryptionUtil.configure(KeyRing.development(), EncryptionAlgorithm.AES_GCM, false);
+        assertThrows(RuntimeException.class, () -> EncryptionUtil.decrypt(legacy));
+    }
+
+    @Test
+    void testLegacyIvThatLooksLikeAnEnvelopeHeaderFallsBackToCbc() throws Exception {
+        // Forge a legacy payload whose random IV starts with the envelope version and the current key id,
+        // long enough to pass for an envelope header and tag
+        byte[] iv = new byte[16];
+        iv[0] = GcmEnvelope.VERSION;
+        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        cipher.init(Cipher.ENCRYPT_MODE, KeyRing.development().legacyKey(), new IvParameterSpec(iv));
+        byte[] ciphertext = cipher.doFinal("{\"lucky\":1,\"padding\":\"..........................\"}".getBytes(StandardCharsets.UTF_8));
+        byte[] legacy = new byte[iv.length + ciphertext.length];
+        System.arraycopy(iv, 0, legacy, 0, iv.length);
+        System.arraycopy(ciphertext, 0, legacy, iv.length, ciphertext.length);
+
+        assertTrue(legacy.length >= GcmEnvelope.HEADER_LENGTH + GcmEnvelope.TAG_LENGTH);
+        String expected = "{\"lucky\":1,\"padding\":\"..........................\"}";
+        assertEquals(expected, EncryptionUtil.decrypt(Base64.getEncoder().encodeToString(legacy)));
+        assertEquals(expected, new String(decryptStream(legacy), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testSegmentKeysAreDerivedWithHkdfSha256() throws Exception {
+        // RFC 5869, test case 1
+        byte[] okm = GcmEnvelope.hkdf(new byte[]{11, 11, 11, 11, 11, 11, 11, 11, 11, 11, 11, 11, 11, 11, 11, 11, 11, 11, 11, 11, 11, 11},
+            HEX.parseHex("000102030405060708090a0b0c"), HEX.parseHex("f0f1f2f3f4f5f6f7f8f9"), 42);
+        assertEquals("3cb25f25faacd57a90434f64d0362f2a2d2d0a90cf1a5a4c5db02d56ecc4c5bf34007208d5b887185865", HEX.formatHex(okm));
+
+        // Salt 00..1f: the ring key is the HKDF input, the salt is the salt and the whole header is the info
+        byte[] header = HEX.parseHex("0200000102030405060708090a0b0c0d0e0f101112131415161718191a1b1c1d1e1f");
+        EncryptionKey key = KeyRing.development().current();
+        assertEquals("c4c31e058190edb25b5b0175cc01a9b0b1f066fef7d8ba01323b9c1942f4cb89",
+            HEX.formatHex(GcmEnvelope.segmentKey(key, header).getEncoded()));
+        assertEquals(HEX.formatHex(header) + "2857ca1fc2dc05fa61fe92484e13275ef05b42909f115936e597daf4006365",
+            HEX.formatHex(GcmEnvelope.encrypt("{\"sealed\":true}".getBytes(StandardCharsets.UTF_8), key, header)));
+    }
+
+    @Test
+    void testNoncesCountSegmentsUnderAFreshKeyPerEnvelope() throws Exception {
+        assertEquals("000000000000000000000000", HEX.formatHex(GcmEnvelope.nonce(0, false)));
+        assertEquals("000000000000000102030401", HEX.formatHex(GcmEnvelope.nonce(0x01020304, true)));
+
+        EncryptionKey key = KeyRing.development().current();
+        byte[] first = GcmEnvelope.encrypt(new byte[10], key);
+        byte[] second = GcmEnvelope.encrypt(new byte[10], key);
+        assertFalse(Arrays.equals(first, 2, GcmEnvelope.HEADER_LENGTH, second, 2, GcmEnvelope.HEADER_LENGTH));
+        assertFalse(Arrays.equals(GcmEnvelope.segmentKey(key, first).getEncoded(), GcmEnvelope.segmentKey(key, second).getEncoded()));
+
+        // The salt is bound to the segments: moving one envelope's body under another's header fails
+        byte[] swapped = first.clone();
+        System.arraycopy(second, 0, swapped, 0, GcmEnvelope.HEADER_LENGTH);
+        assertThrows(AEADBadTagException.class, () -> GcmEnvelope.decrypt(swapped, key));
+    }
+
+    @Test
+    void testRotatedKeysDecryptUntilRetired() {
+        KeyRing keys = new KeyRing(List.of(new EncryptionKey(7, KeyRing.aesKey(new byte[32]))), KeyRing.development().legacyKey(), 2);
+        EncryptionUtil.configure(keys, EncryptionAlgorithm.AES_GCM, false);
+        String underFirstKey = EncryptionUtil.encrypt("first");
+
+        EncryptionKey second = keys.rotate(KeyRing.aesKey(new byte[16]));
+        String underSecondKey = EncryptionUtil.encrypt("second");
+
+        assertEquals(8, second.id());
+        assertEquals(8, Base64.getDecoder().decode(underSecondKey)[1]);
+        assertEquals("first", EncryptionUtil.decrypt(underFirstKey));
+        assertEquals("second", EncryptionUtil.decrypt(underSecondKey));
+
+        keys.rotate(KeyRing.aesKey(new byte[24]));
+        assertNull(keys.find(7));
+        assertThrows(RuntimeException.class, () -> EncryptionUtil.decrypt(underFirstKey));
+        assertEquals("second", EncryptionUtil.decrypt(underSecondKey));
+    }
+
+    private static byte[] encryptStream(byte[] plainBytes) throws IOException {
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        try (OutputStream out = EncryptionUtil.encryptingStream(encrypted, WireFormat.BINARY)) {
+            // Uneven writes so segment boundaries fall inside them
+            for (int offset = 0; offset < plainBytes.length; offset += 10_000) {
+                out.write(plainBytes, offset, Math.min(10_000, plainBytes.length - offset));
+            }
+        }
+        return encrypted.toByteArray();
+    }
+
+    private static byte[] decryptStream(byte[] encrypted) throws IOException {
+        try (InputStream in = EncryptionUtil.decryptingStream(new ByteArrayInputStream(encrypted), WireFormat.BINARY)) {
+            return in.readAllBytes();
+        }
+    }
+
+    @Test
+    void testBinaryFormatCarriesRawCiphertext() throws IOException {
+        String originalText = "{\"name\":\"binary\"}\n".repeat(100);
+        byte[] plainBytes = originalText.getBytes(StandardCharsets.UTF_8);
+
+        byte[] binary = EncryptionUtil.encrypt(plainBytes, WireFormat.BINARY);
+        assertEquals(EncryptionUtil.encryptedLength(plainBytes.length, WireFormat.BINARY), binary.length);
+        assertEquals(originalText, EncryptionUtil.decrypt(Base64.getEncoder().encodeToString(binary)));
+
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        try (OutputStream out = EncryptionUtil.encryptingStream(streamed, WireFormat.BINARY)) {
+            out.write(plainBytes);
+        }
+        try (InputStream in = EncryptionUtil.decryptingStream(new ByteArrayInputStream(streamed.toByteArray()), WireFormat.BINARY)) {
+            assertEquals(originalText, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void testWireFormatNegotiation() {
+        assertEquals(WireFormat.BASE64, WireFormat.fromMediaType(null));
+        assertEquals(WireFormat.BASE64, WireFormat.fromMediaType("text/plain; charset=UTF-8"));
+        assertEquals(WireFormat.BINARY, WireFormat.fromMediaType("application/octet-stream"));
+        assertEquals(WireFormat.BINARY, WireFormat.fromMediaType("text/plain;q=0.5, application/octet-stream"));
+        assertEquals(WireFormat.BASE64, WireFormat.fromMediaType("application/octet-stream;q=0, */*"));
+    }
+}